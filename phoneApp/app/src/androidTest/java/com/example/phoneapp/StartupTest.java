@@ -0,0 +1,57 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertTrue;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Time to first status, in the spirit of a Macrobenchmark startup test:
+ * the activity is launched several times and the median from onCreate to
+ * the first analysis on screen is logged and checked against a budget. The
+ * emulator sample provides that analysis, so no watch is needed.
+ *
+ * <p>Launches share the test process, so after the first one the process
+ * and the shipped resources are warm; a Macrobenchmark module would kill
+ * the process between iterations.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupTest {
+    private static final String TAG = "StartupTest";
+    private static final int LAUNCHES = 5;
+    private static final long BUDGET_MILLIS = 1_500;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @Test
+    public void firstStatusWithinBudget() {
+        long[] times = new long[LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+                times[i] = awaitFirstStatus(scenario);
+            }
+        }
+        Arrays.sort(times);
+        long median = times[LAUNCHES / 2];
+        Log.i(TAG, "Time to first status: median " + median + " ms, all " + Arrays.toString(times));
+        assertTrue("Median time to first status " + median + " ms", median <= BUDGET_MILLIS);
+    }
+
+    private static long awaitFirstStatus(ActivityScenario<MainActivity> scenario) {
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+        long[] millis = {-1};
+        while (millis[0] < 0 && SystemClock.uptimeMillis() < deadline) {
+            scenario.onActivity(activity -> millis[0] = activity.getFirstStatusMillis());
+            SystemClock.sleep(10);
+        }
+        assertTrue("No status within " + TIMEOUT_MILLIS + " ms", millis[0] >= 0);
+        return millis[0];
+    }
+}
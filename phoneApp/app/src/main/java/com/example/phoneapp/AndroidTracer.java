@@ -0,0 +1,19 @@
+package com.example.phoneapp;
+
+import android.os.Trace;
+
+import com.example.phoneapp.metrics.Tracer;
+
+/** Pipeline stages as sections in a system trace (Perfetto, systrace). */
+final class AndroidTracer implements Tracer {
+
+    @Override
+    public void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.phoneapp;
+
+import android.bluetooth.BluetoothServerSocket;
+import android.bluetooth.BluetoothSocket;
+
+import com.example.phoneapp.ingest.SensorConnection;
+import com.example.phoneapp.ingest.SensorTransport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/** RFCOMM server socket as a transport; a watch is known by its Bluetooth address. */
+final class BluetoothTransport implements SensorTransport {
+    private final BluetoothServerSocket serverSocket;
+
+    BluetoothTransport(BluetoothServerSocket serverSocket) {
+        this.serverSocket = serverSocket;
+    }
+
+    @Override
+    public SensorConnection accept() throws IOException {
+        BluetoothSocket socket = serverSocket.accept();
+        String deviceId = socket.getRemoteDevice().getAddress();
+        return new SensorConnection() {
+            @Override
+            public String getDeviceId() {
+                return deviceId;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return socket.getInputStream();
+            }
+
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return socket.getOutputStream();
+            }
+
+            @Override
+            public void close() throws IOException {
+                socket.close();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
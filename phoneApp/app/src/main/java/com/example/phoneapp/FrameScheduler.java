@@ -0,0 +1,49 @@
+package com.example.phoneapp;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import com.example.phoneapp.metrics.LatencyHistogram;
+import com.example.phoneapp.metrics.MetricsRegistry;
+import com.example.shared.CoalescingUpdater;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs coalesced UI updates on the main thread at the start of the next
+ * display frame, so at most one lands per frame.
+ */
+final class FrameScheduler implements CoalescingUpdater.Scheduler {
+    private final Handler mainHandler;
+    // Posted but not run yet; grows when the main looper falls behind
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LatencyHistogram lateness = new LatencyHistogram();
+
+    FrameScheduler(Handler mainHandler) {
+        this.mainHandler = mainHandler;
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        pending.incrementAndGet();
+        long dueNanos = System.nanoTime() + delayMillis * 1_000_000L;
+        // Choreographer is per-looper, so it has to be reached from the main thread
+        mainHandler.postDelayed(() -> Choreographer.getInstance()
+                .postFrameCallback(frameTimeNanos -> {
+                    pending.decrementAndGet();
+                    lateness.record(System.nanoTime() - dueNanos);
+                    task.run();
+                }), delayMillis);
+    }
+
+    void registerMetrics(MetricsRegistry registry) {
+        registry.gauge("ui.pending_posts", pending::get);
+        registry.register("ui.post_lateness", lateness);
+    }
+}
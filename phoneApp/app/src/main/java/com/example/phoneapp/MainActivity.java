@@ -3,7 +3,6 @@ package com.example.phoneapp;
 import android.Manifest;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothServerSocket;
-import android.bluetooth.BluetoothSocket;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.pm.PackageManager;
@@ -11,7 +10,10 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
 import android.widget.TextView;
 
@@ -22,9 +24,27 @@ import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
+import com.example.phoneapp.ingest.IngestServer;
+import com.example.phoneapp.ingest.StreamConnection;
+import com.example.phoneapp.metrics.MetricsRegistry;
+import com.example.phoneapp.metrics.Tracer;
+import com.example.shared.CoalescingUpdater;
+import com.example.shared.SensorFrame;
+import com.example.shared.StreamFrameDecoder;
+import com.example.shared.WindowFeatures;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -33,50 +53,107 @@ public class MainActivity extends AppCompatActivity {
     private static final UUID MY_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
     private static final int PERMISSION_REQUEST_CODE = 123;
     private static final int REQUEST_ENABLE_BT = 456;
+    private static final byte[] EMULATOR_SAMPLE = "HR:90.0".getBytes(StandardCharsets.US_ASCII);
+    private static final String EMULATOR_DEVICE = "emulator";
+    private static final long UI_UPDATE_INTERVAL_MILLIS =
+            CoalescingUpdater.intervalForRate(CoalescingUpdater.DEFAULT_MAX_RATE_HZ);
 
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothServerSocket serverSocket;
-    private BluetoothSocket socket;
     private TextView statusText;
     private TextView dataText;
     private Handler mainHandler;
     private ExecutorService executorService;
-    private EmotionalStateAnalyzer emotionalStateAnalyzer;
+    // Null until the catalog is loaded after the first frame, and for good if it cannot be
     private RecommendationEngine recommendationEngine;
+    private Button youtubeButton;
     private SwipeRefreshLayout swipeRefreshLayout;
+    // Every watch gets its own analyzer and pipeline in here
+    private IngestServer ingestServer;
+    private boolean bluetoothServerStarted;
+    // Edited thresholds are picked up on the next pull to refresh, no restart needed
+    private RuleFile ruleFile;
+    // Latest text and state per watch, in a stable order for display
+    private final Map<String, DisplayedData> deviceData = new ConcurrentSkipListMap<>();
+    // Only the latest text is shown, at most once per frame and 10 times a second
+    private CoalescingUpdater<String> statusUpdater;
+    private CoalescingUpdater<DisplayedData> dataUpdater;
+    // Main thread; the recommendation is only rebuilt when the shown state changes
+    private EmotionalState renderedState;
+    private String renderedRecommendation;
+    private DisplayedData renderedData;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final Tracer tracer = new AndroidTracer();
+    // Time to first status: from onCreate to the first analysis on screen
+    private long createdMillis;
+    private volatile long firstStatusMillis = -1;
 
-    private boolean isListening = true;
     private static final int AUTO_REFRESH_INTERVAL = 1000;
 
     @RequiresApi(api = Build.VERSION_CODES.S)
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        createdMillis = SystemClock.uptimeMillis();
         setContentView(R.layout.activity_main);
 
         statusText = findViewById(R.id.statusText);
         dataText = findViewById(R.id.dataText);
-        Button youtubeButton = findViewById(R.id.youtubeButton);
+        youtubeButton = findViewById(R.id.youtubeButton);
         swipeRefreshLayout = findViewById(R.id.swipeRefreshLayout);
 
         mainHandler = new Handler(Looper.getMainLooper());
-        executorService = Executors.newFixedThreadPool(2);
-        emotionalStateAnalyzer = new EmotionalStateAnalyzer();
-        recommendationEngine = new RecommendationEngine(this, youtubeButton);
+        FrameScheduler frameScheduler = new FrameScheduler(mainHandler);
+        frameScheduler.registerMetrics(metrics);
+        statusUpdater = new CoalescingUpdater<>(frameScheduler, UI_UPDATE_INTERVAL_MILLIS, statusText::setText);
+        dataUpdater = new CoalescingUpdater<>(frameScheduler, UI_UPDATE_INTERVAL_MILLIS, this::renderData);
+        // Setup work only; each watch connection gets a reader thread from the server
+        executorService = Executors.newSingleThreadExecutor();
+        metrics.gauge("startup.first_status_millis", () -> firstStatusMillis);
+
+        // Debug screen: long-press the status line for the current metrics
+        statusText.setOnLongClickListener(v -> {
+            showMetrics();
+            return true;
+        });
+
+        // Nothing below is needed to draw the layout, so it waits for the first frame
+        View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                content.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Runs once this frame has been drawn
+                mainHandler.post(MainActivity.this::startAfterFirstDraw);
+                return true;
+            }
+        });
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.S)
+    private void startAfterFirstDraw() {
+        if (isFinishing() || isDestroyed()) {
+            return;
+        }
+        ingestServer = new IngestServer(new IngestListener());
+        ingestServer.setTracer(tracer);
+        ingestServer.setMetrics(metrics);
+        ingestServer.setHistoryDirectory(new File(getFilesDir(), "history"));
+        ruleFile = new RuleFile(new File(getFilesDir(), "rules.txt"));
+        loadCatalog();
+        loadModel();
+        reloadRules();
 
         checkAndRequestPermissions();
         initializeBluetooth();
 
-        String data = "HR:90";
-        processReceivedData(data);
+        feedEmulatorSample();
 
         swipeRefreshLayout.setOnRefreshListener(() -> {
-            processReceivedData(data);
+            reloadRules();
+            feedEmulatorSample();
 //            initializeBluetooth();
             swipeRefreshLayout.setRefreshing(false);
         });
-
-
     }
 
     @RequiresApi(api = Build.VERSION_CODES.S)
@@ -170,23 +247,17 @@ public class MainActivity extends AppCompatActivity {
                 if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH) != PackageManager.PERMISSION_GRANTED) {
                     return;
                 }
+                if (bluetoothServerStarted) {
+                    return;
+                }
 
-                serverSocket = bluetoothAdapter.listenUsingRfcommWithServiceRecord("PhoneApp", MY_UUID);
+                BluetoothServerSocket serverSocket =
+                        bluetoothAdapter.listenUsingRfcommWithServiceRecord("PhoneApp", MY_UUID);
+                // Keeps accepting, so every watch in the household can connect
+                ingestServer.serve(new BluetoothTransport(serverSocket));
+                bluetoothServerStarted = true;
                 updateStatus("Waiting for WearOS device connection...");
                 updateUI("No Data");
-
-                while (isListening) {
-                    try {
-                        socket = serverSocket.accept();
-                        if (socket != null) {
-                            updateStatus("Connected to WearOS device");
-                            startDataReception();
-                            break;
-                        }
-                    } catch (IOException e) {
-                        Log.e(TAG, "Socket accept failed", e);
-                    }
-                }
             } catch (IOException e) {
                 Log.e(TAG, "Server socket creation failed", e);
                 updateStatus("Bluetooth server error: " + e.getMessage());
@@ -194,127 +265,292 @@ public class MainActivity extends AppCompatActivity {
         });
     }
 
-    private void startDataReception() {
+    // Callbacks come from the server's reader and presenter threads
+    private final class IngestListener implements IngestServer.Listener {
+        @Override
+        public void onResult(String deviceId, SensorPipeline.AnalysisResult result) {
+            presentResult(deviceId, result);
+        }
+
+        @Override
+        public void onStateChanged(String deviceId, EmotionalState previous, EmotionalState current) {
+            Log.i(TAG, deviceId + ": " + previous + " -> " + current);
+        }
+
+        @Override
+        public void onConnected(String deviceId) {
+            if (!deviceId.equals(EMULATOR_DEVICE)) {
+                updateStatus("Connected to WearOS device " + deviceId);
+            }
+        }
+
+        @Override
+        public void onDisconnected(String deviceId, IOException error) {
+            if (deviceId.equals(EMULATOR_DEVICE)) {
+                return;
+            }
+            if (error == null) {
+                updateStatus("Connection closed by WearOS device " + deviceId);
+            } else {
+                Log.e(TAG, "Data reception error", error);
+                updateStatus("Connection lost: " + error.getMessage());
+            }
+            logPipelineStats(deviceId);
+        }
+
+        @Override
+        public void onStopped(IOException error) {
+            if (error != null) {
+                Log.e(TAG, "Socket accept failed", error);
+                updateStatus("Bluetooth server error: " + error.getMessage());
+            }
+        }
+    }
+
+    // Runs the sample through the same path as real watch data, as a watch of its own.
+    // On the executor: the first submit opens the watch's history and snapshot.
+    private void feedEmulatorSample() {
+        executorService.execute(() -> ingestServer.submit(
+                new StreamConnection(EMULATOR_DEVICE, new ByteArrayInputStream(EMULATOR_SAMPLE))));
+    }
+
+    // Called on a watch's presenter thread with its newest result only
+    private void presentResult(String deviceId, SensorPipeline.AnalysisResult result) {
+        if (result.enoughData) {
+            deviceData.put(deviceId, new DisplayedData("Raw Data: " + describeFrame(result.frame) +
+                    "\nEmotional State: " + result.state, result.state));
+        } else {
+            // Per watch, so a watch still warming up does not hide the others
+            deviceData.put(deviceId, new DisplayedData("Insufficient data to process emotional state.", null));
+        }
+        showDevices();
+    }
+
+    // One block per watch; the recommendation follows the most worrying state.
+    // Synchronized so two watches cannot publish each other's stale view.
+    private synchronized void showDevices() {
+        StringBuilder text = new StringBuilder();
+        EmotionalState shown = null;
+        boolean labelled = deviceData.size() > 1;
+        for (Map.Entry<String, DisplayedData> entry : deviceData.entrySet()) {
+            if (text.length() > 0) {
+                text.append("\n\n");
+            }
+            if (labelled) {
+                text.append("Watch ").append(entry.getKey()).append('\n');
+            }
+            text.append(entry.getValue().text);
+            EmotionalState state = entry.getValue().state;
+            if (state != null && (shown == null || severity(state) > severity(shown))) {
+                shown = state;
+            }
+        }
+        dataUpdater.update(new DisplayedData(text.toString(), shown));
+    }
+
+    private static int severity(EmotionalState state) {
+        switch (state) {
+            case ANXIOUS:
+                return 3;
+            case STRESSED:
+                return 2;
+            case NORMAL:
+                return 1;
+            case CALM:
+                return 0;
+            default:
+                return -1;
+        }
+    }
+
+    // Only used for the text shown on screen, not on the receive path
+    private static String describeFrame(SensorFrame frame) {
+        if (frame.isHeartRate()) {
+            return "HR:" + frame.values[0];
+        } else if (frame.isAccelerometer()) {
+            return "ACC:" + frame.values[0] + "," + frame.values[1] + "," + frame.values[2];
+        } else if (frame.isInterBeatInterval()) {
+            return "IBI:" + frame.values[0];
+        } else if (frame.isFeatures()) {
+            return "Features: HR " + frame.values[WindowFeatures.HR_MEAN] +
+                    ", movement " + frame.values[WindowFeatures.ACC_MEAN] +
+                    ", steps " + (int) frame.values[WindowFeatures.STEP_COUNT];
+        }
+        return "type " + frame.type;
+    }
+
+    private void logPipelineStats(String deviceId) {
+        SensorPipeline pipeline = ingestServer.getSession(deviceId).getPipeline();
+        StreamFrameDecoder decoder = pipeline.getDecoder();
+        Log.i(TAG, deviceId + ": frames decoded: " + decoder.getFramesDecoded() +
+                ", garbled bytes: " + decoder.getGarbledBytes() +
+                ", dropped bytes: " + decoder.getDroppedBytes() +
+                ", resyncs: " + decoder.getResyncCount());
+        Log.i(TAG, deviceId + ": " + pipeline.getDecoderMetrics());
+        Log.i(TAG, deviceId + ": " + pipeline.getAnalyzerMetrics());
+        Log.i(TAG, deviceId + ": " + pipeline.getPresenterMetrics());
+        Log.i(TAG, deviceId + ": " + pipeline.getEndToEndMetrics());
+    }
+
+    // Parsed once, off the main thread. A broken translation falls back to the
+    // default catalog, and without that the screen goes on without recommendations.
+    private void loadCatalog() {
+        executorService.execute(() -> {
+            RecommendationCatalog catalog;
+            try {
+                catalog = RecommendationCatalog.load(Locale.getDefault());
+            } catch (IOException e) {
+                Log.e(TAG, "Recommendations for " + Locale.getDefault() + " not loaded", e);
+                try {
+                    catalog = RecommendationCatalog.load(Locale.ROOT);
+                } catch (IOException again) {
+                    Log.e(TAG, "No recommendations", again);
+                    return;
+                }
+            }
+            mainHandler.post(() -> {
+                recommendationEngine = new RecommendationEngine(this, youtubeButton, catalog);
+                // Whatever arrived in the meantime was shown without one
+                if (renderedData != null) {
+                    renderData(renderedData);
+                }
+            });
+        });
+    }
+
+    // files/model.txt replaces the shipped model; a rules file, if any, still wins over both
+    private void loadModel() {
+        File modelFile = new File(getFilesDir(), "model.txt");
         executorService.execute(() -> {
+            LogisticRegressionClassifier model = null;
+            if (modelFile.exists()) {
+                try {
+                    model = LogisticRegressionClassifier.load(modelFile);
+                } catch (IOException e) {
+                    Log.e(TAG, "Ignoring " + modelFile, e);
+                }
+            }
             try {
-                InputStream inputStream = socket.getInputStream();
-                byte[] buffer = new byte[1024];
-                int bytes;
-
-                while (isListening) {
-                    bytes = inputStream.read(buffer);
-                    if (bytes > 0) {
-                        String data = new String(buffer, 0, bytes);
-                        processReceivedData(data);
-                    }
+                if (model == null) {
+                    model = LogisticRegressionClassifier.loadDefault();
                 }
+                ingestServer.setClassifier(model);
             } catch (IOException e) {
-                Log.e(TAG, "Data reception error", e);
-                updateStatus("Connection lost: " + e.getMessage());
+                Log.e(TAG, "No model, keeping the built-in thresholds", e);
             }
         });
     }
 
-//  Notice: Because of using the emulators to run the application, implementing
-//  some parts is not possible due to virtual machine constraints.
-//  Some code is commented and basic simpler approach is used, so that the application
-//  can run and we can see how it works.
-//  The commented out code is the part of the project and may be used for some functionalities,
-//  but - as mentioned previously - it requires physical device.
-
-//    Simple Implementation to Run and See the Basic Working Principle of Application
-    private void processReceivedData(String data) {
-
-        String[] parts = data.split(":");
-        if (parts.length != 2) return;
-
-        if (parts[0].equals("HR")) {
-            float heartRate = Float.parseFloat(parts[1]);
-            emotionalStateAnalyzer.setHeartRate(heartRate);
-        } else if (parts[0].equals("ACC")) {
-            String[] values = parts[1].split(",");
-            if (values.length == 3) {
-                float[] acceleration = new float[]{
-                        Float.parseFloat(values[0]),
-                        Float.parseFloat(values[1]),
-                        Float.parseFloat(values[2])
-
-                };
-                emotionalStateAnalyzer.setACC(acceleration);
+    // Off the main thread; only the executor touches ruleFile
+    private void reloadRules() {
+        executorService.execute(() -> {
+            try {
+                RuleTableClassifier rules = ruleFile.reloadIfChanged();
+                if (rules != null) {
+                    ingestServer.setClassifier(rules);
+                    Log.i(TAG, rules.getRuleCount() + " rules loaded from " + ruleFile.getFile());
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Keeping the current rules", e);
+                updateStatus("Rules not loaded: " + e.getMessage());
             }
-        }
+        });
+    }
 
-        if(true){
-            EmotionalState state = emotionalStateAnalyzer.analyzeEmotionalState();
-            String recommendation = recommendationEngine.getRecommendation(state);
+    private void showMetrics() {
+        new AlertDialog.Builder(this)
+                .setTitle("Metrics")
+                .setMessage(metrics.toJson())
+                .setPositiveButton("Save", (dialog, which) -> exportMetrics())
+                .setNegativeButton("Close", null)
+                .show();
+    }
 
-            String diagnose = ("Raw Data: " + data +
-                    "\nEmotional State: " + state +
-                    "\nRecommendation: " + recommendation);
+    // Own thread, so a full executor cannot hold it up
+    private void exportMetrics() {
+        File file = new File(getFilesDir(), "metrics.json");
+        new Thread(() -> {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                metrics.writeJson(out);
+                Log.i(TAG, "Metrics written to " + file);
+            } catch (IOException e) {
+                Log.e(TAG, "Metrics export failed", e);
+            }
+        }, "metrics-export").start();
+    }
 
-            updateUI(diagnose);
-        } else {
-            mainHandler.post(() -> updateUI("Insufficient data to process emotional state."));
+    // Main thread; the recommendation engine updates views as a side effect
+    private void renderData(DisplayedData data) {
+        tracer.beginSection("render");
+        try {
+            renderedData = data;
+            if (data.state != null && firstStatusMillis < 0) {
+                firstStatusMillis = SystemClock.uptimeMillis() - createdMillis;
+                Log.i(TAG, "Time to first status: " + firstStatusMillis + " ms");
+                reportFullyDrawn();
+            }
+            if (data.state == null || recommendationEngine == null) {
+                dataText.setText(data.text);
+                return;
+            }
+            if (data.state != renderedState) {
+                renderedRecommendation = recommendationEngine.getRecommendation(data.state);
+                renderedState = data.state;
+            }
+            dataText.setText(data.text + "\nRecommendation: " + renderedRecommendation);
+        } finally {
+            tracer.endSection();
         }
     }
 
-
-//    The Original Code for Intended Functionality
-
-//    private void processReceivedData(String data) {
-//
-//        String[] parts = data.split(":");
-//        if (parts.length != 2) return;
-//
-//        if (parts[0].equals("HR")) {
-//            float heartRate = Float.parseFloat(parts[1]);
-//            emotionalStateAnalyzer.addHeartRateData(heartRate);
-//        } else if (parts[0].equals("ACC")) {
-//            String[] values = parts[1].split(",");
-//            if (values.length == 3) {
-//                float[] acceleration = new float[]{
-//                        Float.parseFloat(values[0]),
-//                        Float.parseFloat(values[1]),
-//                        Float.parseFloat(values[2])
-//                };
-//
-//                emotionalStateAnalyzer.addAccelerometerData(acceleration);
-//            }
-//        }
-//
-//        if (emotionalStateAnalyzer.hasEnoughData()) {
-//            EmotionalState state = emotionalStateAnalyzer.analyzeEmotionalState();
-//            String recommendation = recommendationEngine.getRecommendation(state);
-//
-//            String diagnose = ("Raw Data: " + data +
-//                    "\nEmotional State: " + state +
-//                    "\nRecommendation: " + recommendation);
-//
-//            updateUI(diagnose);
-//        } else {
-//            mainHandler.post(() -> updateUI("Insufficient data to process emotional state."));
-//        }
-//    }
-
     private void updateUI(String string) {
-        mainHandler.post(() -> dataText.setText(string));
+        dataUpdater.update(new DisplayedData(string, null));
     }
 
     private void updateStatus(String message) {
-        mainHandler.post(() -> statusText.setText(message));
+        statusUpdater.update(message);
+    }
+
+    /** Milliseconds from onCreate to the first analysis on screen, or -1 until then. */
+    long getFirstStatusMillis() {
+        return firstStatusMillis;
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        isListening = false;
+        // Closes the server socket and every watch connection, flushes history
+        if (ingestServer != null) {
+            ingestServer.close();
+        }
+        exportMetrics();
         executorService.shutdown();
+        Log.i(TAG, "Data text: " + dataUpdater + "; status text: " + statusUpdater);
+    }
 
-        try {
-            if (socket != null) socket.close();
-            if (serverSocket != null) serverSocket.close();
-        } catch (IOException e) {
-            Log.e(TAG, "Error closing sockets", e);
+    // Content of the data text; equal values are not rendered twice
+    private static final class DisplayedData {
+        final String text;
+        // Null for plain messages, otherwise a recommendation is appended
+        final EmotionalState state;
+
+        DisplayedData(String text, EmotionalState state) {
+            this.text = text;
+            this.state = state;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof DisplayedData)) {
+                return false;
+            }
+            DisplayedData other = (DisplayedData) o;
+            return state == other.state && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(text, state);
         }
     }
 }
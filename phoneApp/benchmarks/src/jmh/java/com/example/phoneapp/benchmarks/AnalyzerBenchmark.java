@@ -0,0 +1,94 @@
+package com.example.phoneapp.benchmarks;
+
+import com.example.phoneapp.EmotionalState;
+import com.example.phoneapp.EmotionalStateAnalyzer;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-sample cost of the analyzer with windows that are already full, so
+ * every add also evicts. Window length and sample rate together decide how
+ * many samples the windows hold.
+ */
+@State(Scope.Thread)
+public class AnalyzerBenchmark {
+    private static final int VALUES = 1024;
+
+    @Param({"10", "30", "120"})
+    public int windowSeconds;
+
+    @Param({"1", "50", "200"})
+    public int sampleRateHz;
+
+    private EmotionalStateAnalyzer analyzer;
+    private final float[] heartRates = new float[VALUES];
+    private final float[] accelerations = new float[VALUES * 3];
+    private long periodNanos;
+    private long timestamp;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        for (int i = 0; i < VALUES; i++) {
+            heartRates[i] = 65 + random.nextFloat() * 35;
+            accelerations[3 * i] = random.nextFloat() * 4 - 2;
+            accelerations[3 * i + 1] = 9.81f + random.nextFloat() * 2 - 1;
+            accelerations[3 * i + 2] = random.nextFloat() * 4 - 2;
+        }
+
+        long windowMillis = windowSeconds * 1000L;
+        analyzer = new EmotionalStateAnalyzer(windowMillis, windowMillis);
+        periodNanos = 1_000_000_000L / sampleRateHz;
+        timestamp = 1_000_000_000L;
+        // One window and a bit, so both windows are full
+        long samples = (long) sampleRateHz * windowSeconds + sampleRateHz;
+        for (long i = 0; i < samples; i++) {
+            addSample();
+        }
+    }
+
+    private void addSample() {
+        int index = next++ & (VALUES - 1);
+        timestamp += periodNanos;
+        analyzer.addHeartRateData(timestamp, heartRates[index]);
+        analyzer.addAccelerometerData(timestamp,
+                accelerations[3 * index], accelerations[3 * index + 1], accelerations[3 * index + 2]);
+    }
+
+    @Benchmark
+    public float addHeartRate() {
+        int index = next++ & (VALUES - 1);
+        timestamp += periodNanos;
+        analyzer.addHeartRateData(timestamp, heartRates[index]);
+        return analyzer.getHeartRate();
+    }
+
+    @Benchmark
+    public float addAccelerometer() {
+        int index = next++ & (VALUES - 1);
+        timestamp += periodNanos;
+        analyzer.addAccelerometerData(timestamp,
+                accelerations[3 * index], accelerations[3 * index + 1], accelerations[3 * index + 2]);
+        return analyzer.getAverageMovement();
+    }
+
+    // What the classifier reads off the windows
+    @Benchmark
+    public float averageAndVariability() {
+        return analyzer.getAverageHeartRate() + analyzer.getHeartRateVariability()
+                + analyzer.getAverageMovement();
+    }
+
+    @Benchmark
+    public EmotionalState analyze() {
+        analyzer.setHeartRate(heartRates[next++ & (VALUES - 1)]);
+        return analyzer.analyzeEmotionalState();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.phoneapp.benchmarks;
+
+import com.example.phoneapp.EmotionalState;
+import com.example.phoneapp.EmotionalStateClassifier;
+import com.example.phoneapp.LogisticRegressionClassifier;
+import com.example.phoneapp.RuleTableClassifier;
+import com.example.phoneapp.ThresholdClassifier;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The compiled-in thresholds against the same rules read from
+ * default-rules.txt, and the shipped logistic regression model, on inputs
+ * spread over every state so none gets to exit on its first branch every
+ * time. With and without HRV, since RMSSD decides whether the later
+ * conditions are reached, and the model takes its missing weights instead.
+ */
+@State(Scope.Thread)
+public class ClassifierBenchmark {
+    private static final int INPUTS = 1024;
+
+    @Param({"thresholds", "rules", "model"})
+    public String classifier;
+
+    @Param({"false", "true"})
+    public boolean hrv;
+
+    private EmotionalStateClassifier instance;
+    private final float[][] inputs = new float[INPUTS][];
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (classifier.equals("rules")) {
+            instance = RuleTableClassifier.loadDefault();
+        } else if (classifier.equals("model")) {
+            instance = LogisticRegressionClassifier.loadDefault();
+        } else {
+            instance = ThresholdClassifier.INSTANCE;
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < INPUTS; i++) {
+            float[] features = new float[EmotionalStateClassifier.FEATURE_COUNT];
+            features[EmotionalStateClassifier.HEART_RATE] = 60 + random.nextFloat() * 40;
+            features[EmotionalStateClassifier.AVERAGE_HEART_RATE] = features[EmotionalStateClassifier.HEART_RATE];
+            features[EmotionalStateClassifier.HEART_RATE_SPREAD] = random.nextFloat() * 8;
+            features[EmotionalStateClassifier.AVERAGE_MOVEMENT] = 9 + random.nextFloat() * 4;
+            features[EmotionalStateClassifier.RMSSD] = hrv ? 10 + random.nextFloat() * 40 : Float.NaN;
+            features[EmotionalStateClassifier.MOVEMENT_RMS] = features[EmotionalStateClassifier.AVERAGE_MOVEMENT] + 0.5f;
+            inputs[i] = features;
+        }
+    }
+
+    @Benchmark
+    public EmotionalState classify() {
+        return instance.classify(inputs[next++ & (INPUTS - 1)]);
+    }
+}
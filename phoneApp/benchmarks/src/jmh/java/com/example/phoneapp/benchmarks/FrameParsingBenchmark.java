@@ -0,0 +1,113 @@
+package com.example.phoneapp.benchmarks;
+
+import com.example.shared.FrameDecoder;
+import com.example.shared.FrameEncoder;
+import com.example.shared.SensorFrame;
+import com.example.shared.StreamFrameDecoder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encoding and decoding what the watch sends, per frame. The batch mixes
+ * heart rate and accelerometer frames the way a 1 Hz / 50 Hz stream does,
+ * in both the binary format and the legacy "HR:72.0" text frames.
+ */
+@State(Scope.Thread)
+public class FrameParsingBenchmark {
+    static final int FRAMES = 1020;
+    // Typical size of one RFCOMM read
+    static final int READ_SIZE = 512;
+
+    @Param({"binary", "text"})
+    public String format;
+
+    private final long[] timestamps = new long[FRAMES];
+    private final float[][] samples = new float[FRAMES][];
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    private final ByteBuffer encoded = ByteBuffer.allocate(FRAMES * 64);
+    private final StreamFrameDecoder streamDecoder = new StreamFrameDecoder();
+    private final SensorFrame frame = new SensorFrame();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long timestamp = 1_000_000_000L;
+        for (int i = 0; i < FRAMES; i++) {
+            timestamp += 20_000_000L;
+            timestamps[i] = timestamp;
+            float bpm = 60 + random.nextFloat() * 40;
+            float x = random.nextFloat() * 2 - 1;
+            float y = 9.81f + random.nextFloat() - 0.5f;
+            float z = random.nextFloat() * 2 - 1;
+            samples[i] = i % 51 == 0 ? new float[] {bpm} : new float[] {x, y, z};
+        }
+        encode(encoded);
+        bytes = new byte[encoded.position()];
+        encoded.flip();
+        encoded.get(bytes);
+        buffer = ByteBuffer.wrap(bytes);
+    }
+
+    private void encode(ByteBuffer out) {
+        for (int i = 0; i < FRAMES; i++) {
+            float[] sample = samples[i];
+            boolean heartRate = sample.length == 1;
+            if (format.equals("binary")) {
+                if (heartRate) {
+                    FrameEncoder.encodeHeartRate(out, timestamps[i], sample[0]);
+                } else {
+                    FrameEncoder.encodeAccelerometer(out, timestamps[i], sample[0], sample[1], sample[2]);
+                }
+            } else {
+                String text = heartRate
+                        ? String.format(Locale.US, "HR:%.1f", sample[0])
+                        : String.format(Locale.US, "ACC:%.2f,%.2f,%.2f", sample[0], sample[1], sample[2]);
+                out.put(text.getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    // The watch's side; text frames were formatted like this before the binary format
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int encodeBuffer() {
+        encoded.clear();
+        encode(encoded);
+        return encoded.position();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void decodeBuffer(Blackhole blackhole) {
+        buffer.clear();
+        while (FrameDecoder.decode(buffer, frame) > 0) {
+            blackhole.consume(frame.values[0]);
+        }
+    }
+
+    // The reader thread's path: socket-sized chunks into the ring buffer, frames out
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void decodeStream(Blackhole blackhole) {
+        streamDecoder.reset();
+        for (int offset = 0; offset < bytes.length; offset += READ_SIZE) {
+            streamDecoder.feed(bytes, offset, Math.min(READ_SIZE, bytes.length - offset));
+            while (streamDecoder.next(frame)) {
+                blackhole.consume(frame.values[0]);
+            }
+        }
+        // Text frames have no terminator, the last one waits for more data
+    }
+}
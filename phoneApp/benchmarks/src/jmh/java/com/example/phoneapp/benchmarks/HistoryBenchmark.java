@@ -0,0 +1,170 @@
+package com.example.phoneapp.benchmarks;
+
+import com.example.phoneapp.EmotionalState;
+import com.example.phoneapp.GorillaEncoder;
+import com.example.phoneapp.RollupBucket;
+import com.example.phoneapp.Rollups;
+import com.example.phoneapp.TimeSeries;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A synthetic month of heart rate at 1 Hz, kept the way SensorHistory keeps
+ * it: four hot segments and the rest archived. The "last 30 days" trend is
+ * read three ways: one bucket per day from the rollups, the same from the
+ * time series (summaries where a segment fits, decoding at the edges), and
+ * a full scan of the raw samples.
+ *
+ * <p>Compressing one segment's worth of heart rate and of accelerometer is
+ * measured too, and so is recording: one accelerometer sample appended to
+ * a time series of hot segments only, rollovers included. The compression
+ * ratios are printed during setup: about 10x for a heart rate that holds
+ * for seconds at a time, 4.5x for the month's random walk, and 1.3x for
+ * accelerometer noise, which XOR cannot do much with.
+ */
+@State(Scope.Benchmark)
+public class HistoryBenchmark {
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int DAYS = 30;
+    // Midnight UTC
+    private static final long START_MILLIS = 1_700_006_400_000L;
+    private static final int SEGMENT_CAPACITY = 1 << 16;
+
+    private File directory;
+    private TimeSeries heartRate;
+    private TimeSeries accelerometer;
+    private Rollups rollups;
+
+    private final long[] segmentMillis = new long[SEGMENT_CAPACITY];
+    private final float[][] heartRateSegment = new float[SEGMENT_CAPACITY][1];
+    private final float[][] accelerometerSegment = new float[SEGMENT_CAPACITY][3];
+    private final GorillaEncoder heartRateEncoder = new GorillaEncoder(1);
+    private final GorillaEncoder accelerometerEncoder = new GorillaEncoder(3);
+    private final RollupBucket summary = new RollupBucket();
+    private final TimeSeries.Aggregate aggregate = new TimeSeries.Aggregate();
+    private double dailyMeanSum;
+    private int nextSample;
+    private long appendNanos;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("history").toFile();
+        heartRate = new TimeSeries(new File(directory, "heart_rate"), 1, SEGMENT_CAPACITY, 4, 40);
+        rollups = new Rollups(new File(directory, "rollups"));
+        accelerometer = new TimeSeries(new File(directory, "accelerometer"), 3, SEGMENT_CAPACITY, 8);
+
+        Random random = new Random(7);
+        float bpm = 70;
+        long end = START_MILLIS + DAYS * DAY_MILLIS;
+        for (long t = START_MILLIS; t < end; t += 1000 + random.nextInt(5)) {
+            bpm = Math.max(50, Math.min(130, Math.round(bpm + random.nextGaussian())));
+            heartRate.append(TimeUnit.MILLISECONDS.toNanos(t), bpm);
+            rollups.addHeartRate(t, bpm);
+            rollups.addMovement(t, 9.81f + (float) random.nextGaussian());
+            rollups.addState(t, bpm > 100 ? EmotionalState.ANXIOUS : bpm < 65 ? EmotionalState.CALM
+                    : EmotionalState.NORMAL);
+        }
+        heartRate.flush();
+        rollups.flush();
+
+        long t = START_MILLIS;
+        for (int i = 0; i < SEGMENT_CAPACITY; i++) {
+            t += 20 + random.nextInt(2);
+            segmentMillis[i] = t;
+            heartRateSegment[i][0] = 60 + (i / 120) % 20;
+            for (int c = 0; c < 3; c++) {
+                accelerometerSegment[i][c] = (c == 2 ? 9.81f : 0f) + (float) random.nextGaussian() * 0.3f;
+            }
+        }
+        // Raw, a sample is 4 bytes of time delta and 4 per column
+        System.out.printf("%nMonth: %d samples, %d archived segments, %.1f MB archived%n",
+                heartRate.size(), heartRate.getArchivedSegmentCount(), heartRate.getArchivedBytes() / 1e6);
+        System.out.printf("Compression: heart rate %.1fx, accelerometer %.1fx%n",
+                SEGMENT_CAPACITY * 8.0 / encodeHeartRate(),
+                SEGMENT_CAPACITY * 16.0 / encodeAccelerometer());
+    }
+
+    @TearDown
+    public void tearDown() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Benchmark
+    public int encodeHeartRate() {
+        heartRateEncoder.reset();
+        for (int i = 0; i < SEGMENT_CAPACITY; i++) {
+            heartRateEncoder.append(segmentMillis[i], heartRateSegment[i]);
+        }
+        return heartRateEncoder.getByteCount();
+    }
+
+    @Benchmark
+    public int encodeAccelerometer() {
+        accelerometerEncoder.reset();
+        for (int i = 0; i < SEGMENT_CAPACITY; i++) {
+            accelerometerEncoder.append(segmentMillis[i], accelerometerSegment[i]);
+        }
+        return accelerometerEncoder.getByteCount();
+    }
+
+    @Benchmark
+    public void appendAccelerometer() throws IOException {
+        int i = nextSample++ & (SEGMENT_CAPACITY - 1);
+        appendNanos += 20_000_000L;
+        float[] sample = accelerometerSegment[i];
+        accelerometer.append(appendNanos, sample[0], sample[1], sample[2]);
+    }
+
+    @Benchmark
+    public double monthlyTrendFromRollups() throws IOException {
+        dailyMeanSum = 0;
+        rollups.visit(Rollups.Resolution.DAY, START_MILLIS, START_MILLIS + DAYS * DAY_MILLIS,
+                bucket -> dailyMeanSum += bucket.heartRate.mean);
+        return dailyMeanSum;
+    }
+
+    @Benchmark
+    public long monthlySummaryFromRollups() throws IOException {
+        return rollups.summarize(START_MILLIS, START_MILLIS + DAYS * DAY_MILLIS, summary)
+                .getStateMillis(EmotionalState.ANXIOUS);
+    }
+
+    @Benchmark
+    public double monthlyTrendFromTimeSeries() {
+        dailyMeanSum = 0;
+        heartRate.downsample(0, TimeUnit.MILLISECONDS.toNanos(START_MILLIS),
+                TimeUnit.MILLISECONDS.toNanos(START_MILLIS + DAYS * DAY_MILLIS),
+                TimeUnit.MILLISECONDS.toNanos(DAY_MILLIS),
+                (bucketStartNanos, bucket) -> dailyMeanSum += bucket.mean());
+        return dailyMeanSum;
+    }
+
+    @Benchmark
+    public long monthlyScanOfRawSamples() {
+        aggregate.clear();
+        return heartRate.scan(Long.MIN_VALUE, Long.MAX_VALUE, (timestampNanos, values) -> {
+            aggregate.count++;
+            aggregate.sum += values[0];
+        });
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.phoneapp.benchmarks;
+
+import com.example.phoneapp.EmotionalState;
+import com.example.phoneapp.RecommendationCatalog;
+import com.example.phoneapp.RecommendationContent;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Looking up the recommendation shown for each analyzed frame, and loading
+ * the catalog it comes from, which happens once at startup. The Android
+ * side of RecommendationEngine (the YouTube button) is not included.
+ */
+@State(Scope.Thread)
+public class RecommendationBenchmark {
+
+    @Param({"ANXIOUS", "STRESSED", "CALM", "NORMAL"})
+    public EmotionalState state;
+
+    private RecommendationCatalog catalog;
+
+    @Setup
+    public void setUp() throws IOException {
+        catalog = RecommendationCatalog.load(Locale.ENGLISH);
+    }
+
+    @Benchmark
+    public RecommendationContent recommendation() {
+        return catalog.get(state);
+    }
+
+    @Benchmark
+    public RecommendationCatalog loadCatalog() throws IOException {
+        return RecommendationCatalog.load(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.phoneapp.benchmarks;
+
+import com.example.phoneapp.AnalyzerSnapshot;
+import com.example.phoneapp.EmotionalState;
+import com.example.phoneapp.EmotionalStateAnalyzer;
+import com.example.phoneapp.LogisticRegressionClassifier;
+import com.example.phoneapp.PersonalBaseline;
+import com.example.phoneapp.StateTracker;
+import com.example.phoneapp.ingest.IngestServer;
+import com.example.phoneapp.ingest.StreamConnection;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * What the phone does between launch and the first status on screen, minus
+ * Android: loading the model, getting a watch's analyzer ready, and the
+ * whole way from a first frame to its result through a fresh IngestServer
+ * (session, pipeline threads, analysis). History is left out of the last
+ * one: SensorHistory keeps its files open until the process ends.
+ *
+ * <p>Getting the analyzer ready is measured both ways: restored from a
+ * snapshot (windows, baseline and debounced state), and rebuilt by feeding
+ * it the window of samples the snapshot stands in for. On the phone the rebuild also means waiting those 30 s
+ * for the samples to arrive, which no benchmark shows.
+ */
+@State(Scope.Thread)
+public class StartupBenchmark {
+    private static final long SECOND = 1_000_000_000L;
+    private static final byte[] FIRST_FRAME = "HR:90.0".getBytes(StandardCharsets.US_ASCII);
+
+    private File directory;
+    private AnalyzerSnapshot snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("startup").toFile();
+        snapshot = new AnalyzerSnapshot(new File(directory, "analyzer.bin"));
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer();
+        analyzer.setBaseline(new PersonalBaseline());
+        feedWindow(analyzer);
+        StateTracker tracker = new StateTracker();
+        tracker.update(analyzer, 30 * SECOND);
+        snapshot.save(analyzer, tracker);
+    }
+
+    @TearDown
+    public void tearDown() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    // 30 s of heart rate at 1 Hz, with accelerometer at 50 Hz for the last 10 s
+    private static void feedWindow(EmotionalStateAnalyzer analyzer) {
+        for (int i = 0; i <= 30 * 50; i++) {
+            long t = i * SECOND / 50;
+            if (i % 50 == 0) {
+                analyzer.addHeartRateData(t, 70 + i % 11);
+            }
+            if (i >= 20 * 50) {
+                analyzer.addAccelerometerData(t, 0.3f, -0.2f, 9.81f + (i % 5) * 0.05f);
+            }
+        }
+    }
+
+    @Benchmark
+    public LogisticRegressionClassifier loadModel() throws IOException {
+        return LogisticRegressionClassifier.loadDefault();
+    }
+
+    @Benchmark
+    public EmotionalStateAnalyzer restoreAnalyzer() {
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer();
+        analyzer.setBaseline(new PersonalBaseline());
+        snapshot.restore(analyzer, new StateTracker());
+        return analyzer;
+    }
+
+    @Benchmark
+    public EmotionalStateAnalyzer rebuildAnalyzer() {
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer();
+        feedWindow(analyzer);
+        return analyzer;
+    }
+
+    @Benchmark
+    public EmotionalState firstStatus() throws InterruptedException {
+        CountDownLatch received = new CountDownLatch(1);
+        EmotionalState[] state = new EmotionalState[1];
+        IngestServer server = new IngestServer((deviceId, result) -> {
+            state[0] = result.state;
+            received.countDown();
+        });
+        try {
+            server.submit(new StreamConnection("emulator", new ByteArrayInputStream(FIRST_FRAME)));
+            received.await();
+        } finally {
+            server.close();
+        }
+        return state[0];
+    }
+}
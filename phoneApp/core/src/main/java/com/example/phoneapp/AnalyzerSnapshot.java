@@ -0,0 +1,348 @@
+package com.example.phoneapp;
+
+import com.example.phoneapp.metrics.Counter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * What the analyzer has built up for one watch, on disk, so an app that
+ * Android killed shows a state as soon as the first frame arrives instead
+ * of after a full window of samples: the windows with their running mean
+ * and variance, the {@link PersonalBaseline} and the debounced state of
+ * the {@link StateTracker}.
+ *
+ * <pre>
+ * header    magic, version, sequence, payload length, CRC-32 of the payload
+ * sections  tag, length, content; one each for windows, baseline and state
+ * </pre>
+ *
+ * A few kilobytes at the default window lengths; restoring it is a copy
+ * into the window arrays and sketches, with nothing recomputed.
+ *
+ * <p>There are two slots, written in turn, each through a temporary file
+ * and a rename. The slot not being written always holds the snapshot
+ * before, and restoring takes the newest slot that checks out.
+ *
+ * <p>Sections are self-describing, so a newer snapshot restores what this
+ * version knows and skips the rest, and a section that no longer fits,
+ * e.g. after the window lengths changed, is left out on its own. A
+ * snapshot of an unknown version is not restored at all; the analyzer
+ * starts empty, as it did before snapshots existed. Version 1, the windows
+ * alone in a single file, is still read.
+ *
+ * <p>{@link #saveLater} is called from the thread that owns the analyzer
+ * and only serializes there; the file is written on another thread.
+ */
+public final class AnalyzerSnapshot {
+    private static final int MAGIC = 0x414e4c5a; // "ANLZ"
+    private static final short VERSION = 2;
+    private static final short VERSION_WINDOWS_ONLY = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int VERSION_1_HEADER_SIZE = 16;
+    private static final int SECTION_HEADER_SIZE = 6;
+
+    private static final short SECTION_WINDOWS = 1;
+    private static final short SECTION_BASELINE = 2;
+    private static final short SECTION_STATE = 3;
+
+    private final File legacyFile;
+    private final File[] slots;
+    private final CRC32 crc = new CRC32();
+    // Serialized by the owner's thread, then written by the writer; never both at once
+    private final AtomicBoolean idle = new AtomicBoolean(true);
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private int pendingLength;
+    private long sequence;
+    private int nextSlot;
+
+    private final Counter saves = new Counter();
+    private final Counter failedSaves = new Counter();
+    private final Counter skippedSaves = new Counter();
+    private final Counter rejected = new Counter();
+
+    /** Slots are {@code file} with ".0" and ".1" appended; {@code file} itself is version 1's. */
+    public AnalyzerSnapshot(File file) {
+        legacyFile = file;
+        slots = new File[] {new File(file.getPath() + ".0"), new File(file.getPath() + ".1")};
+    }
+
+    /**
+     * Loads the newest usable snapshot into {@code analyzer}, its baseline
+     * if it has one, and {@code tracker}, none of which may have seen a
+     * frame yet. A snapshot that cannot be used is counted, never thrown,
+     * and leaves them empty.
+     *
+     * @param tracker null if states are not debounced
+     * @return false if no snapshot checked out
+     */
+    public boolean restore(EmotionalStateAnalyzer analyzer, StateTracker tracker) {
+        long[] sequences = {readSequence(slots[0]), readSequence(slots[1])};
+        int newest = sequences[1] > sequences[0] ? 1 : 0;
+        // Even if nothing checks out, what is written next must rank as newer
+        sequence = Math.max(0, sequences[newest]);
+        for (int slot : new int[] {newest, 1 - newest}) {
+            if (sequences[slot] < 0) {
+                continue;
+            }
+            if (restoreSlot(slots[slot], analyzer, tracker)) {
+                sequence = sequences[slot];
+                nextSlot = 1 - slot;
+                return true;
+            }
+            rejected.increment();
+        }
+        if (sequences[0] < 0 && sequences[1] < 0 && legacyFile.exists()) {
+            if (restoreVersion1(analyzer)) {
+                return true;
+            }
+            rejected.increment();
+        }
+        return false;
+    }
+
+    // -1 if the slot is missing or not a snapshot at all
+    private long readSequence(File slot) {
+        if (!slot.exists() || !load(slot, HEADER_SIZE) || buffer.getInt(0) != MAGIC) {
+            return -1;
+        }
+        return buffer.getLong(8);
+    }
+
+    private boolean restoreSlot(File slot, EmotionalStateAnalyzer analyzer, StateTracker tracker) {
+        if (!load(slot, Integer.MAX_VALUE) || buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION) {
+            return false;
+        }
+        int payload = buffer.getInt(16);
+        if (!checksumMatches(HEADER_SIZE, payload, buffer.getInt(20))) {
+            return false;
+        }
+        int end = HEADER_SIZE + payload;
+        int position = HEADER_SIZE;
+        while (position + SECTION_HEADER_SIZE <= end) {
+            short tag = buffer.getShort(position);
+            int length = buffer.getInt(position + 2);
+            int start = position + SECTION_HEADER_SIZE;
+            if (length < 0 || length > end - start) {
+                break;
+            }
+            buffer.limit(start + length).position(start);
+            readSection(tag, analyzer, tracker);
+            buffer.limit(buffer.capacity());
+            position = start + length;
+        }
+        return true;
+    }
+
+    // A section that does not fit is dropped alone; unknown ones come from a newer version
+    private void readSection(short tag, EmotionalStateAnalyzer analyzer, StateTracker tracker) {
+        try {
+            switch (tag) {
+                case SECTION_WINDOWS:
+                    analyzer.readState(buffer);
+                    break;
+                case SECTION_BASELINE:
+                    readBaseline(analyzer.getBaseline());
+                    break;
+                case SECTION_STATE:
+                    if (tracker != null) {
+                        tracker.readFrom(buffer);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            if (tag == SECTION_WINDOWS) {
+                analyzer.clearState();
+            }
+            rejected.increment();
+        }
+    }
+
+    // The baseline also keeps a file of its own, saved less often; the newer of the two wins
+    private void readBaseline(PersonalBaseline baseline) {
+        if (baseline == null) {
+            return;
+        }
+        int start = buffer.position();
+        PersonalBaseline stored = new PersonalBaseline();
+        stored.readFrom(buffer);
+        if (stored.getSampleCount() >= baseline.getSampleCount()) {
+            buffer.position(start);
+            baseline.readFrom(buffer);
+        }
+    }
+
+    private boolean restoreVersion1(EmotionalStateAnalyzer analyzer) {
+        if (!load(legacyFile, Integer.MAX_VALUE) || buffer.getInt(0) != MAGIC
+                || buffer.getShort(4) != VERSION_WINDOWS_ONLY) {
+            return false;
+        }
+        int payload = buffer.getInt(8);
+        if (!checksumMatches(VERSION_1_HEADER_SIZE, payload, buffer.getInt(12))) {
+            return false;
+        }
+        buffer.limit(VERSION_1_HEADER_SIZE + payload).position(VERSION_1_HEADER_SIZE);
+        try {
+            analyzer.readState(buffer);
+            return true;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            analyzer.clearState();
+            return false;
+        }
+    }
+
+    private boolean checksumMatches(int offset, int length, int expected) {
+        if (length < 0 || length > buffer.limit() - offset) {
+            return false;
+        }
+        crc.reset();
+        crc.update(buffer.array(), offset, length);
+        return (int) crc.getValue() == expected;
+    }
+
+    // Reads up to maxBytes of 'file' into the buffer, flipped; false if it is shorter than a header
+    private boolean load(File file, int maxBytes) {
+        int length = (int) Math.min(file.length(), maxBytes);
+        ensureCapacity(length);
+        buffer.clear();
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while (buffer.position() < length
+                    && (n = in.read(buffer.array(), buffer.position(), length - buffer.position())) > 0) {
+                buffer.position(buffer.position() + n);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        buffer.flip();
+        return buffer.limit() >= VERSION_1_HEADER_SIZE;
+    }
+
+    /**
+     * Serializes what {@code analyzer} and {@code tracker} hold now, on the
+     * caller's thread, and writes it on {@code writer}. Skipped if the
+     * previous snapshot is still being written; the next one will do.
+     *
+     * @return false if skipped
+     */
+    public boolean saveLater(EmotionalStateAnalyzer analyzer, StateTracker tracker, Executor writer) {
+        if (!idle.compareAndSet(true, false)) {
+            skippedSaves.increment();
+            return false;
+        }
+        serialize(analyzer, tracker);
+        try {
+            writer.execute(this::writePending);
+            return true;
+        } catch (RejectedExecutionException e) {
+            idle.set(true);
+            skippedSaves.increment();
+            return false;
+        }
+    }
+
+    /** Same as {@link #saveLater}, written on the caller's thread, e.g. on shutdown. */
+    public void save(EmotionalStateAnalyzer analyzer, StateTracker tracker) {
+        if (!idle.compareAndSet(true, false)) {
+            skippedSaves.increment();
+            return;
+        }
+        serialize(analyzer, tracker);
+        writePending();
+    }
+
+    private void serialize(EmotionalStateAnalyzer analyzer, StateTracker tracker) {
+        PersonalBaseline baseline = analyzer.getBaseline();
+        ensureCapacity(HEADER_SIZE + 3 * SECTION_HEADER_SIZE + analyzer.stateSize()
+                + PersonalBaseline.BYTES + StateTracker.BYTES);
+        buffer.clear();
+        buffer.position(HEADER_SIZE);
+        int start = beginSection(SECTION_WINDOWS);
+        analyzer.writeState(buffer);
+        endSection(start);
+        if (baseline != null) {
+            start = beginSection(SECTION_BASELINE);
+            baseline.writeTo(buffer);
+            endSection(start);
+        }
+        if (tracker != null) {
+            start = beginSection(SECTION_STATE);
+            tracker.writeTo(buffer);
+            endSection(start);
+        }
+        int payload = buffer.position() - HEADER_SIZE;
+        crc.reset();
+        crc.update(buffer.array(), HEADER_SIZE, payload);
+        sequence++;
+        buffer.putInt(0, MAGIC).putShort(4, VERSION).putShort(6, (short) 0).putLong(8, sequence)
+                .putInt(16, payload).putInt(20, (int) crc.getValue());
+        pendingLength = HEADER_SIZE + payload;
+    }
+
+    private int beginSection(short tag) {
+        buffer.putShort(tag).putInt(0);
+        return buffer.position();
+    }
+
+    private void endSection(int start) {
+        buffer.putInt(start - 4, buffer.position() - start);
+    }
+
+    // Into the older slot, so the newer one survives whatever happens to this write
+    private void writePending() {
+        try {
+            File slot = slots[nextSlot];
+            File temporary = new File(slot.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temporary)) {
+                out.write(buffer.array(), 0, pendingLength);
+            } catch (IOException e) {
+                failedSaves.increment();
+                return;
+            }
+            if (!temporary.renameTo(slot)) {
+                failedSaves.increment();
+                return;
+            }
+            nextSlot = 1 - nextSlot;
+            saves.increment();
+        } finally {
+            idle.set(true);
+        }
+    }
+
+    public Counter getSaves() {
+        return saves;
+    }
+
+    public Counter getFailedSaves() {
+        return failedSaves;
+    }
+
+    /** Saves skipped because the one before was still being written. */
+    public Counter getSkippedSaves() {
+        return skippedSaves;
+    }
+
+    /** Slots, or sections of one, that were found but could not be restored. */
+    public Counter getRejected() {
+        return rejected;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.phoneapp;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link TimeSeriesSegment} that aged out of the hot tier, compressed with
+ * {@link GorillaEncoder} into a file of its own.
+ *
+ * <pre>
+ * header   magic, version, columns, count,
+ *          first and last timestamp (microseconds),
+ *          min/max/sum per column, data length
+ * data     Gorilla bit stream, timestamps in milliseconds
+ * crc      CRC-32 of everything before it
+ * </pre>
+ *
+ * Only the header is kept in memory. The data is read and checked when a
+ * query needs it, so opening a long history costs one small read per file.
+ */
+final class ArchivedSegment {
+    private static final int MAGIC = 0x5453475a; // "TSGZ"
+    private static final short VERSION = 1;
+
+    private static final int SUMMARY_OFFSET = 32;
+    private static final int SUMMARY_SIZE = 16; // float min, float max, double sum
+
+    final File file;
+    private final int columns;
+    private final int count;
+    private final long firstMicros;
+    private final long lastMicros;
+    private final float[] min;
+    private final float[] max;
+    private final double[] sum;
+    private final int dataLength;
+
+    private ArchivedSegment(File file, int columns, ByteBuffer header) {
+        this.file = file;
+        this.columns = columns;
+        count = header.getInt(8);
+        firstMicros = header.getLong(16);
+        lastMicros = header.getLong(24);
+        min = new float[columns];
+        max = new float[columns];
+        sum = new double[columns];
+        for (int c = 0; c < columns; c++) {
+            int offset = SUMMARY_OFFSET + c * SUMMARY_SIZE;
+            min[c] = header.getFloat(offset);
+            max[c] = header.getFloat(offset + 4);
+            sum[c] = header.getDouble(offset + 8);
+        }
+        dataLength = header.getInt(headerSize(columns) - 4);
+    }
+
+    private static int headerSize(int columns) {
+        return SUMMARY_OFFSET + columns * SUMMARY_SIZE + 4;
+    }
+
+    /**
+     * Compresses every sample of {@code segment} into {@code file}, through a
+     * temporary file so a crash never leaves half an archive behind.
+     */
+    static ArchivedSegment write(File file, TimeSeriesSegment segment, int columns,
+                                 GorillaEncoder encoder) throws IOException {
+        encoder.reset();
+        ByteBuffer header = ByteBuffer.allocate(headerSize(columns)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] min = new float[columns];
+        float[] max = new float[columns];
+        double[] sum = new double[columns];
+        for (int c = 0; c < columns; c++) {
+            min[c] = Float.POSITIVE_INFINITY;
+            max[c] = Float.NEGATIVE_INFINITY;
+        }
+        segment.scan(Long.MIN_VALUE, Long.MAX_VALUE, new float[columns], (timestampNanos, values) -> {
+            encoder.append(Math.floorDiv(timestampNanos, 1_000_000L), values);
+            for (int c = 0; c < columns; c++) {
+                min[c] = Math.min(min[c], values[c]);
+                max[c] = Math.max(max[c], values[c]);
+                sum[c] += values[c];
+            }
+        });
+
+        header.putInt(0, MAGIC);
+        header.putShort(4, VERSION);
+        header.putShort(6, (short) columns);
+        header.putInt(8, encoder.getCount());
+        header.putLong(16, segment.firstMicros());
+        header.putLong(24, segment.lastMicros());
+        for (int c = 0; c < columns; c++) {
+            int offset = SUMMARY_OFFSET + c * SUMMARY_SIZE;
+            header.putFloat(offset, min[c]);
+            header.putFloat(offset + 4, max[c]);
+            header.putDouble(offset + 8, sum[c]);
+        }
+        header.putInt(headerSize(columns) - 4, encoder.getByteCount());
+
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, header.capacity());
+        crc.update(encoder.getBytes(), 0, encoder.getByteCount());
+        ByteBuffer trailer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt(0, (int) crc.getValue());
+
+        File temporary = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temporary)) {
+            out.write(header.array());
+            out.write(encoder.getBytes(), 0, encoder.getByteCount());
+            out.write(trailer.array());
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Cannot rename " + temporary + " to " + file);
+        }
+        return new ArchivedSegment(file, columns, header);
+    }
+
+    static ArchivedSegment open(File file, int columns) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(headerSize(columns)).order(ByteOrder.LITTLE_ENDIAN);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < header.capacity()) {
+                throw new IOException("Truncated archive: " + file);
+            }
+            raf.readFully(header.array());
+            if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION) {
+                throw new IOException("Not an archived segment: " + file);
+            }
+            if (header.getShort(6) != columns) {
+                throw new IOException("Expected " + columns + " columns in " + file + ", found " + header.getShort(6));
+            }
+            ArchivedSegment segment = new ArchivedSegment(file, columns, header);
+            if (segment.dataLength < 0 || raf.length() != header.capacity() + segment.dataLength + 4L) {
+                throw new IOException("Truncated archive: " + file);
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Reads the whole file into {@code buffer}, grown if too small, and
+     * checks it.
+     *
+     * @return the buffer the data is in, starting at {@link #dataOffset}
+     */
+    byte[] read(byte[] buffer) throws IOException {
+        int length = (int) fileSize();
+        if (buffer == null || buffer.length < length) {
+            buffer = new byte[length];
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.readFully(buffer, 0, length);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer, 0, length - 4);
+        int stored = ByteBuffer.wrap(buffer, length - 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        if (stored != (int) crc.getValue()) {
+            throw new IOException("Checksum mismatch in " + file);
+        }
+        return buffer;
+    }
+
+    int dataOffset() {
+        return headerSize(columns);
+    }
+
+    int dataLength() {
+        return dataLength;
+    }
+
+    long fileSize() {
+        return headerSize(columns) + dataLength + 4L;
+    }
+
+    /** Whether the summaries in the header answer for all of {@code [fromMicros, toMicros]}. */
+    boolean within(long fromMicros, long toMicros) {
+        return fromMicros <= firstMicros && toMicros >= lastMicros;
+    }
+
+    void addSummary(int column, TimeSeries.Aggregate out) {
+        out.add(count, min[column], max[column], sum[column]);
+    }
+
+    int count() {
+        return count;
+    }
+
+    long firstMicros() {
+        return firstMicros;
+    }
+
+    long lastMicros() {
+        return lastMicros;
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.phoneapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free queue between exactly one producer thread and one
+ * consumer thread. Slots are preallocated and items are copied in and out,
+ * so passing an item allocates nothing.
+ *
+ * <p>What happens when the producer finds the queue full depends on the
+ * {@link OverflowPolicy}. For DROP_OLDEST and COALESCE_LATEST the producer
+ * discards the oldest item by advancing the head itself. The consumer copies
+ * an item out before claiming it with a CAS on the head, and retries if the
+ * producer got there first, so it never keeps a half-overwritten item.
+ */
+public final class BoundedSpscQueue<T extends BoundedSpscQueue.Slot<T>> {
+
+    public enum OverflowPolicy {
+        /** Producer waits for space; back-pressure travels upstream. */
+        BLOCK,
+        /** Oldest queued item is discarded to make room. */
+        DROP_OLDEST,
+        /** Like DROP_OLDEST, and the consumer skips straight to the newest item. */
+        COALESCE_LATEST
+    }
+
+    /** Queue items copy themselves so that slots can be reused. */
+    public interface Slot<T> {
+        void copyFrom(T other);
+    }
+
+    public interface SlotFactory<T> {
+        T create();
+    }
+
+    private final T[] slots;
+    private final int mask;
+    private final OverflowPolicy policy;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean closed;
+
+    // Producer-side counters
+    private volatile long offered;
+    private volatile long dropped;
+    private volatile int maxDepth;
+    // Consumer-side counter
+    private volatile long coalesced;
+
+    public BoundedSpscQueue(int capacity, OverflowPolicy policy, SlotFactory<T> factory) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        @SuppressWarnings("unchecked")
+        T[] array = (T[]) new Slot<?>[capacity];
+        slots = array;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = factory.create();
+        }
+        mask = capacity - 1;
+        this.policy = policy;
+    }
+
+    /**
+     * Copies {@code item} into the queue. Producer thread only.
+     *
+     * @return false if the queue is closed, or the policy is BLOCK and the
+     *         thread was interrupted while waiting for space
+     */
+    public boolean offer(T item) {
+        long t = tail.get();
+        int idle = 0;
+        while (true) {
+            if (closed) {
+                return false;
+            }
+            long h = head.get();
+            if (t - h < slots.length) {
+                break;
+            }
+            if (policy == OverflowPolicy.BLOCK) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+                idle(idle++);
+            } else if (head.compareAndSet(h, h + 1)) {
+                dropped++;
+            }
+        }
+
+        slots[(int) (t & mask)].copyFrom(item);
+        tail.lazySet(t + 1);
+
+        offered++;
+        int depth = (int) (t + 1 - head.get());
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the next item into {@code into}. Consumer thread only. With
+     * COALESCE_LATEST, everything but the newest item is skipped.
+     *
+     * @return false if the queue is empty
+     */
+    public boolean poll(T into) {
+        while (true) {
+            long h = head.get();
+            long t = tail.get();
+            if (h == t) {
+                return false;
+            }
+            long index = policy == OverflowPolicy.COALESCE_LATEST ? t - 1 : h;
+            into.copyFrom(slots[(int) (index & mask)]);
+            if (head.compareAndSet(h, index + 1)) {
+                if (index > h) {
+                    coalesced += index - h;
+                }
+                return true;
+            }
+            // The producer dropped the item while we were copying it; try again
+        }
+    }
+
+    /**
+     * Waits for the next item. Consumer thread only.
+     *
+     * @return false once the queue is closed and drained, or if the thread
+     *         was interrupted
+     */
+    public boolean take(T into) {
+        int idle = 0;
+        while (!poll(into)) {
+            if (closed) {
+                // Pick up anything published just before the close
+                return poll(into);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            idle(idle++);
+        }
+        return true;
+    }
+
+    /**
+     * Stops accepting items. The consumer still gets what is queued, then
+     * {@link #take} returns false.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getOffered() {
+        return offered;
+    }
+
+    /** Items discarded by the producer because the queue was full. */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /** Items skipped by the consumer under COALESCE_LATEST. */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    // Yield for a while, then back off to short parks
+    static void idle(int attempt) {
+        if (attempt < 64) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(attempt < 1024 ? 50_000L : 1_000_000L);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.phoneapp;
+
+public enum EmotionalState {
+    UNKNOWN,
+    NORMAL,
+    ANXIOUS,
+    STRESSED,
+    CALM
+}
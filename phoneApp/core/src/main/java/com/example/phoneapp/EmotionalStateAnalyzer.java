@@ -0,0 +1,273 @@
+package com.example.phoneapp;
+
+import com.example.shared.FeatureExtractor;
+import com.example.shared.SensorFrame;
+import com.example.shared.WindowFeatures;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+public class EmotionalStateAnalyzer {
+    // Windows span sensor time, not sample counts, so both streams cover the same period
+    public static final long DEFAULT_HEART_RATE_WINDOW_MILLIS = 30_000;
+    public static final long DEFAULT_MOVEMENT_WINDOW_MILLIS = 10_000;
+    private final TimeWindow heartRateWindow;
+    private final TimeWindow movementIntensityWindow;
+    private final HrvEngine hrvEngine = new HrvEngine();
+    private final HrvEngine.HrvSnapshot hrv = new HrvEngine.HrvSnapshot();
+    // Same feature code the watch runs in edge-processing mode, applied to raw samples
+    private final FeatureExtractor featureExtractor = new FeatureExtractor();
+    private final WindowFeatures latestFeatures = new WindowFeatures();
+    private final WindowFeatures receivedFeatures = new WindowFeatures();
+    private boolean hasFeatures;
+    private final float[] classifierInput = new float[EmotionalStateClassifier.FEATURE_COUNT];
+    private volatile EmotionalStateClassifier classifier = ThresholdClassifier.INSTANCE;
+    private PersonalBaseline baseline;
+
+    private float heartRate;
+    private float[] ACC;
+
+    // Thresholds for emotional state detection
+    static final float ANXIETY_HR_THRESHOLD = 90.0f;
+    static final float STRESS_HR_THRESHOLD = 85.0f;
+    static final float CALM_HR_THRESHOLD = 75.0f;
+
+    // Low RMSSD (reduced vagal tone) is a much stronger stress signal than HR spread
+    static final float ANXIETY_RMSSD_THRESHOLD = 20.0f;
+    static final float STRESS_RMSSD_THRESHOLD = 25.0f;
+
+    public EmotionalStateAnalyzer() {
+        this(DEFAULT_HEART_RATE_WINDOW_MILLIS, DEFAULT_MOVEMENT_WINDOW_MILLIS);
+    }
+
+    public EmotionalStateAnalyzer(long heartRateWindowMillis, long movementWindowMillis) {
+        heartRateWindow = new TimeWindow(TimeUnit.MILLISECONDS.toNanos(heartRateWindowMillis));
+        movementIntensityWindow = new TimeWindow(TimeUnit.MILLISECONDS.toNanos(movementWindowMillis));
+    }
+
+    public float getHeartRate() {
+        return heartRate;
+    }
+
+    public void setHeartRate(float heartRate) {
+        this.heartRate = heartRate;
+    }
+
+    public float[] getACC() {
+        return ACC;
+    }
+
+    public void setACC(float[] ACC) {
+        this.ACC = ACC;
+    }
+
+    /**
+     * Routes one decoded frame to the matching window. Legacy text frames
+     * carry no sensor time, so {@code receivedNanos} is used for them instead.
+     */
+    public void addFrame(SensorFrame frame, long receivedNanos) {
+        long timestampNanos = frame.timestampNanos != SensorFrame.NO_TIMESTAMP
+                ? frame.timestampNanos
+                : receivedNanos;
+
+        if (frame.isHeartRate()) {
+            setHeartRate(frame.values[0]);
+            addHeartRateData(timestampNanos, frame.values[0]);
+        } else if (frame.isAccelerometer()) {
+            if (ACC == null) {
+                ACC = new float[3];
+            }
+            System.arraycopy(frame.values, 0, ACC, 0, 3);
+            addAccelerometerData(timestampNanos, frame.values[0], frame.values[1], frame.values[2]);
+        } else if (frame.isInterBeatInterval()) {
+            addInterBeatInterval(timestampNanos, frame.values[0]);
+        } else if (receivedFeatures.readFrom(frame)) {
+            if (receivedFeatures.heartRateCount() > 0) {
+                setHeartRate(receivedFeatures.heartRateMean());
+            }
+            addWindowFeatures(receivedFeatures);
+        }
+    }
+
+    // Timestamps are the sensor timestamps from the watch, in nanoseconds
+    public void addHeartRateData(long timestampNanos, float heartRate) {
+        heartRateWindow.add(timestampNanos, heartRate);
+        if (featureExtractor.addHeartRate(timestampNanos, heartRate)) {
+            setLatestFeatures(featureExtractor.completed());
+        }
+        updateBaseline(timestampNanos);
+    }
+
+    public void addAccelerometerData(long timestampNanos, float[] acceleration) {
+        addAccelerometerData(timestampNanos, acceleration[0], acceleration[1], acceleration[2]);
+    }
+
+    public void addAccelerometerData(long timestampNanos, float x, float y, float z) {
+        // Calculate movement intensity using magnitude of acceleration
+        float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+
+        movementIntensityWindow.add(timestampNanos, magnitude);
+        if (featureExtractor.addAccelerometer(timestampNanos, x, y, z)) {
+            setLatestFeatures(featureExtractor.completed());
+        }
+    }
+
+    // Features computed on the watch; each window stands in for its raw samples
+    public void addWindowFeatures(WindowFeatures features) {
+        if (features.heartRateCount() > 0) {
+            heartRateWindow.add(features.endTimestampNanos, features.heartRateMean());
+        }
+        if (features.accelerometerCount() > 0) {
+            movementIntensityWindow.add(features.endTimestampNanos, features.movementMean());
+        }
+        setLatestFeatures(features);
+        updateBaseline(features.endTimestampNanos);
+    }
+
+    // Heart rate paces the baseline; only full windows say anything about the wearer
+    private void updateBaseline(long timestampNanos) {
+        if (baseline != null && hasEnoughData()) {
+            baseline.update(timestampNanos, heartRateWindow.mean(), movementIntensityWindow.mean());
+        }
+    }
+
+    /** Learns what is normal for this wearer and classifies relative to it. Set before analysis starts. */
+    public void setBaseline(PersonalBaseline baseline) {
+        this.baseline = baseline;
+    }
+
+    /** Null unless one was set. */
+    public PersonalBaseline getBaseline() {
+        return baseline;
+    }
+
+    public boolean hasFeatures() {
+        return hasFeatures;
+    }
+
+    /** Most recent complete feature window, from either the watch or raw data. */
+    public WindowFeatures getLatestFeatures() {
+        return latestFeatures;
+    }
+
+    private void setLatestFeatures(WindowFeatures features) {
+        latestFeatures.copyFrom(features);
+        hasFeatures = true;
+    }
+
+    /** Size of {@link #writeState}'s output for what the windows hold now. */
+    public int stateSize() {
+        return 4 + 1 + 3 * 4 + heartRateWindow.serializedSize() + movementIntensityWindow.serializedSize()
+                + hrvEngine.serializedSize();
+    }
+
+    /**
+     * Writes the windows and the latest readings, which is what takes a full
+     * window of samples to build up again. The baseline keeps its own file,
+     * and the feature extractor refills within one of its windows.
+     */
+    public void writeState(ByteBuffer out) {
+        out.putFloat(heartRate);
+        out.put((byte) (ACC != null ? 1 : 0));
+        for (int i = 0; i < 3; i++) {
+            out.putFloat(ACC != null ? ACC[i] : 0f);
+        }
+        heartRateWindow.writeTo(out);
+        movementIntensityWindow.writeTo(out);
+        hrvEngine.writeTo(out);
+    }
+
+    /**
+     * Restores what {@link #writeState} wrote, before any frame is added.
+     *
+     * @throws IllegalArgumentException if it was written with other window
+     *                                  lengths; {@link #clearState} then
+     *                                  undoes what was already read
+     */
+    public void readState(ByteBuffer in) {
+        heartRate = in.getFloat();
+        boolean hasAcc = in.get() != 0;
+        if (hasAcc && ACC == null) {
+            ACC = new float[3];
+        }
+        for (int i = 0; i < 3; i++) {
+            float value = in.getFloat();
+            if (hasAcc) {
+                ACC[i] = value;
+            }
+        }
+        heartRateWindow.readFrom(in);
+        movementIntensityWindow.readFrom(in);
+        hrvEngine.readFrom(in);
+    }
+
+    /** Empties the windows, as before the first frame. The baseline is kept. */
+    public void clearState() {
+        heartRate = 0f;
+        ACC = null;
+        heartRateWindow.clear();
+        movementIntensityWindow.clear();
+        hrvEngine.clear();
+    }
+
+    public void addInterBeatInterval(long timestampNanos, float intervalMillis) {
+        hrvEngine.addInterval(timestampNanos, intervalMillis);
+    }
+
+    public HrvEngine.HrvSnapshot getHrv(HrvEngine.HrvSnapshot out) {
+        return hrvEngine.snapshot(out);
+    }
+
+    // Both windows have been receiving samples for their whole duration
+    public boolean hasEnoughData() {
+        return heartRateWindow.isFull() &&
+                movementIntensityWindow.isFull();
+    }
+
+    public float getAverageHeartRate() {
+        return heartRateWindow.mean();
+    }
+
+    public float getHeartRateVariability() {
+        return heartRateWindow.standardDeviation();
+    }
+
+    public float getAverageMovement() {
+        return movementIntensityWindow.mean();
+    }
+
+    public float getMovementRms() {
+        return movementIntensityWindow.rms();
+    }
+
+    public EmotionalState analyzeEmotionalState() {
+        return classifier.classify(getFeatures(classifierInput));
+    }
+
+    /**
+     * Fills {@code out} with what a classifier sees, indexed as in
+     * {@link EmotionalStateClassifier}, relative to the baseline if there is one.
+     */
+    public float[] getFeatures(float[] out) {
+        hrvEngine.snapshot(hrv);
+        out[EmotionalStateClassifier.HEART_RATE] = getHeartRate();
+        out[EmotionalStateClassifier.AVERAGE_HEART_RATE] = heartRateWindow.mean();
+        out[EmotionalStateClassifier.HEART_RATE_SPREAD] = heartRateWindow.standardDeviation();
+        out[EmotionalStateClassifier.AVERAGE_MOVEMENT] = movementIntensityWindow.mean();
+        out[EmotionalStateClassifier.RMSSD] = hrv.ready ? hrv.rmssdMillis : Float.NaN;
+        out[EmotionalStateClassifier.MOVEMENT_RMS] = movementIntensityWindow.rms();
+        if (baseline != null) {
+            baseline.normalize(out);
+        }
+        return out;
+    }
+
+    /** Takes effect with the next analysis; may be called from any thread. */
+    public void setClassifier(EmotionalStateClassifier classifier) {
+        this.classifier = classifier;
+    }
+
+    public EmotionalStateClassifier getClassifier() {
+        return classifier;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.phoneapp;
+
+/**
+ * Turns the analyzer's current readings into a state. The readings come as
+ * a feature vector indexed by the constants below; a value that is not
+ * available yet, such as RMSSD before enough beats arrived, is NaN.
+ *
+ * <p>Called on the analyzer thread for every frame, so implementations
+ * must not allocate and must be safe to share between analyzers.
+ */
+public interface EmotionalStateClassifier {
+    /** Latest heart rate, bpm. */
+    int HEART_RATE = 0;
+    /** Mean heart rate over the analyzer's window, bpm. */
+    int AVERAGE_HEART_RATE = 1;
+    /** Standard deviation of heart rate over the window, bpm. */
+    int HEART_RATE_SPREAD = 2;
+    /** Mean acceleration magnitude over the movement window, m/s^2. */
+    int AVERAGE_MOVEMENT = 3;
+    /** RMSSD of beat-to-beat intervals, ms; NaN until the HRV engine is ready. */
+    int RMSSD = 4;
+    /** RMS of acceleration magnitude over the movement window, m/s^2. */
+    int MOVEMENT_RMS = 5;
+    int FEATURE_COUNT = 6;
+
+    EmotionalState classify(float[] features);
+
+    /** How rule and model files refer to a feature, e.g. "heartRate". */
+    static String featureName(int feature) {
+        switch (feature) {
+            case HEART_RATE:
+                return "heartRate";
+            case AVERAGE_HEART_RATE:
+                return "averageHeartRate";
+            case HEART_RATE_SPREAD:
+                return "heartRateSpread";
+            case AVERAGE_MOVEMENT:
+                return "averageMovement";
+            case RMSSD:
+                return "rmssd";
+            case MOVEMENT_RMS:
+                return "movementRms";
+            default:
+                throw new IndexOutOfBoundsException("Feature " + feature);
+        }
+    }
+
+    /** @return the feature called {@code name}, or -1 */
+    static int featureIndex(String name) {
+        for (int i = 0; i < FEATURE_COUNT; i++) {
+            if (featureName(i).equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.phoneapp;
+
+/**
+ * Reads back what a {@link GorillaEncoder} wrote, one sample at a time.
+ * Reusable: {@link #reset} points it at the next block.
+ */
+public final class GorillaDecoder {
+    private final int columns;
+    private final int[] previousBits;
+    private final int[] previousLeading;
+    private final int[] previousTrailing;
+
+    private byte[] bytes;
+    private long bitPosition;
+    private long bitLimit;
+    private int remaining;
+    private boolean first;
+    private long millis;
+    private long delta;
+
+    public GorillaDecoder(int columns) {
+        this.columns = columns;
+        previousBits = new int[columns];
+        previousLeading = new int[columns];
+        previousTrailing = new int[columns];
+    }
+
+    /**
+     * @param count how many samples were appended, as the encoder reported;
+     *              the bit stream itself does not say where it ends
+     */
+    public void reset(byte[] bytes, int offset, int length, int count) {
+        this.bytes = bytes;
+        bitPosition = 8L * offset;
+        bitLimit = 8L * (offset + length);
+        remaining = count;
+        first = true;
+        delta = 0;
+    }
+
+    /**
+     * Decodes the next sample into {@code values}, one per column.
+     *
+     * @return false once every sample was read
+     * @throws IllegalStateException if the data ends early
+     */
+    public boolean next(float[] values) {
+        if (remaining == 0) {
+            return false;
+        }
+        if (first) {
+            millis = readBits(64);
+            for (int c = 0; c < columns; c++) {
+                previousBits[c] = (int) readBits(32);
+                previousLeading[c] = -1;
+                values[c] = Float.intBitsToFloat(previousBits[c]);
+            }
+            first = false;
+        } else {
+            delta += readDeltaOfDelta();
+            millis += delta;
+            for (int c = 0; c < columns; c++) {
+                values[c] = Float.intBitsToFloat(readValue(c));
+            }
+        }
+        remaining--;
+        return true;
+    }
+
+    /** Of the sample {@link #next} just returned. */
+    public long getTimestampMillis() {
+        return millis;
+    }
+
+    private long readDeltaOfDelta() {
+        if (readBits(1) == 0) {
+            return 0;
+        }
+        if (readBits(1) == 0) {
+            return signed(readBits(7), 7);
+        }
+        if (readBits(1) == 0) {
+            return signed(readBits(9), 9);
+        }
+        if (readBits(1) == 0) {
+            return signed(readBits(12), 12);
+        }
+        return readBits(64);
+    }
+
+    // The encoder's ranges run from -(2^(n-1) - 1) to 2^(n-1), so the top value is positive
+    private static long signed(long value, int bits) {
+        return value > (1L << (bits - 1)) ? value - (1L << bits) : value;
+    }
+
+    private int readValue(int column) {
+        if (readBits(1) == 0) {
+            return previousBits[column];
+        }
+        int xor;
+        if (readBits(1) == 0) {
+            int trailing = previousTrailing[column];
+            int length = 32 - previousLeading[column] - trailing;
+            xor = (int) readBits(length) << trailing;
+        } else {
+            int leading = (int) readBits(5);
+            int length = (int) readBits(5) + 1;
+            int trailing = 32 - leading - length;
+            xor = (int) readBits(length) << trailing;
+            previousLeading[column] = leading;
+            previousTrailing[column] = trailing;
+        }
+        previousBits[column] ^= xor;
+        return previousBits[column];
+    }
+
+    private long readBits(int bits) {
+        if (bitPosition + bits > bitLimit) {
+            throw new IllegalStateException("Compressed data ends early");
+        }
+        long value = 0;
+        while (bits > 0) {
+            int index = (int) (bitPosition >>> 3);
+            int available = 8 - (int) (bitPosition & 7);
+            int take = Math.min(available, bits);
+            int chunk = ((bytes[index] & 0xff) >>> (available - take)) & ((1 << take) - 1);
+            value = (value << take) | chunk;
+            bits -= take;
+            bitPosition += take;
+        }
+        return value;
+    }
+}
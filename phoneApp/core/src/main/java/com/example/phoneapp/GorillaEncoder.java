@@ -0,0 +1,151 @@
+package com.example.phoneapp;
+
+import java.util.Arrays;
+
+/**
+ * Compresses samples the way Facebook's Gorilla does, for history that is
+ * kept for long but rarely read:
+ *
+ * <ul>
+ * <li>timestamps as the change in the gap since the previous sample, which
+ *     for a sensor sampling at a steady rate is zero or close to it and
+ *     takes one to nine bits;</li>
+ * <li>each column's value XORed with the one before it; heart rate rarely
+ *     changes between samples, which costs one bit, and similar values
+ *     leave a short run of meaningful bits in the middle.</li>
+ * </ul>
+ *
+ * Timestamps are kept to the millisecond. Read back with {@link GorillaDecoder}.
+ */
+public final class GorillaEncoder {
+    private final int columns;
+    private final int[] previousBits;
+    // Per column, the window of meaningful bits the last XOR was stored in; -1 before any
+    private final int[] previousLeading;
+    private final int[] previousTrailing;
+
+    private byte[] bytes = new byte[256];
+    private long bitCount;
+    private int count;
+    private long previousMillis;
+    private long previousDelta;
+
+    public GorillaEncoder(int columns) {
+        if (columns <= 0) {
+            throw new IllegalArgumentException("Columns must be positive: " + columns);
+        }
+        this.columns = columns;
+        previousBits = new int[columns];
+        previousLeading = new int[columns];
+        previousTrailing = new int[columns];
+        reset();
+    }
+
+    public void reset() {
+        // Bits are ORed in, so the used bytes must start out clear
+        Arrays.fill(bytes, 0, getByteCount(), (byte) 0);
+        bitCount = 0;
+        count = 0;
+        previousDelta = 0;
+        Arrays.fill(previousLeading, -1);
+    }
+
+    /** Timestamps should not go back; if they do it costs space, not correctness. */
+    public void append(long timestampMillis, float[] values) {
+        if (count == 0) {
+            writeBits(timestampMillis, 64);
+            for (int c = 0; c < columns; c++) {
+                previousBits[c] = Float.floatToRawIntBits(values[c]);
+                writeBits(previousBits[c], 32);
+            }
+        } else {
+            long delta = timestampMillis - previousMillis;
+            writeDeltaOfDelta(delta - previousDelta);
+            previousDelta = delta;
+            for (int c = 0; c < columns; c++) {
+                writeValue(c, Float.floatToRawIntBits(values[c]));
+            }
+        }
+        previousMillis = timestampMillis;
+        count++;
+    }
+
+    // Gorilla's buckets: '0', then '10', '110' and '1110' with 7, 9 and 12 bits, else '1111' and all 64
+    private void writeDeltaOfDelta(long dod) {
+        if (dod == 0) {
+            writeBits(0, 1);
+        } else if (dod >= -63 && dod <= 64) {
+            writeBits(0b10, 2);
+            writeBits(dod, 7);
+        } else if (dod >= -255 && dod <= 256) {
+            writeBits(0b110, 3);
+            writeBits(dod, 9);
+        } else if (dod >= -2047 && dod <= 2048) {
+            writeBits(0b1110, 4);
+            writeBits(dod, 12);
+        } else {
+            writeBits(0b1111, 4);
+            writeBits(dod, 64);
+        }
+    }
+
+    private void writeValue(int column, int bits) {
+        int xor = bits ^ previousBits[column];
+        previousBits[column] = bits;
+        if (xor == 0) {
+            writeBits(0, 1);
+            return;
+        }
+        int leading = Math.min(Integer.numberOfLeadingZeros(xor), 31);
+        int trailing = Integer.numberOfTrailingZeros(xor);
+        int previous = previousLeading[column];
+        if (previous >= 0 && leading >= previous && trailing >= previousTrailing[column]) {
+            // Fits the last window; no need to say where it is
+            int length = 32 - previous - previousTrailing[column];
+            writeBits(0b10, 2);
+            writeBits(xor >>> previousTrailing[column], length);
+        } else {
+            int length = 32 - leading - trailing;
+            writeBits(0b11, 2);
+            writeBits(leading, 5);
+            writeBits(length - 1, 5);
+            writeBits(xor >>> trailing, length);
+            previousLeading[column] = leading;
+            previousTrailing[column] = trailing;
+        }
+    }
+
+    // Low 'bits' bits of value, most significant first
+    private void writeBits(long value, int bits) {
+        long needed = (bitCount + bits + 7) >>> 3;
+        if (needed > bytes.length) {
+            bytes = Arrays.copyOf(bytes, (int) Math.max(needed, bytes.length * 2L));
+        }
+        while (bits > 0) {
+            int index = (int) (bitCount >>> 3);
+            int free = 8 - (int) (bitCount & 7);
+            int take = Math.min(free, bits);
+            int chunk = (int) (value >>> (bits - take)) & ((1 << take) - 1);
+            bytes[index] |= (byte) (chunk << (free - take));
+            bits -= take;
+            bitCount += take;
+        }
+    }
+
+    public int getColumnCount() {
+        return columns;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getByteCount() {
+        return (int) ((bitCount + 7) >>> 3);
+    }
+
+    /** The encoded bytes; only the first {@link #getByteCount} are meaningful. Shared, not copied. */
+    public byte[] getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.phoneapp;
+
+import com.example.shared.SensorFrame;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming heart-rate variability over a rolling window of inter-beat
+ * intervals (IBIs, in milliseconds):
+ *
+ * <ul>
+ *   <li>SDNN - standard deviation of the IBIs</li>
+ *   <li>RMSSD - root mean square of successive IBI differences</li>
+ *   <li>pNN50 - share of successive differences larger than 50 ms</li>
+ * </ul>
+ *
+ * Each metric is the mean or standard deviation of one {@link TimeWindow}
+ * (IBIs, squared differences, and 0/1 for "difference over 50 ms"), so a new
+ * beat costs amortized O(1) and reading the metrics never rescans.
+ *
+ * <p>Intervals outside a physiological range are treated as artifacts
+ * (missed or doubled beats): they are dropped and the next interval is not
+ * differenced against the one before the artifact. A
+ * {@link SensorFrame#BEAT_GAP} from the watch breaks the series the same
+ * way without counting as an artifact.
+ */
+public class HrvEngine {
+    public static final long DEFAULT_WINDOW_MILLIS = 60_000;
+    public static final int DEFAULT_MIN_BEATS = 30;
+
+    private static final float MIN_IBI_MILLIS = 300f;  // 200 BPM
+    private static final float MAX_IBI_MILLIS = 2000f; // 30 BPM
+    private static final float NN50_MILLIS = 50f;
+
+    private final TimeWindow intervals;
+    private final TimeWindow squaredDifferences;
+    private final TimeWindow nn50;
+    private final int minBeats;
+
+    private float previousInterval = Float.NaN;
+    private long rejectedIntervals;
+
+    public HrvEngine() {
+        this(DEFAULT_WINDOW_MILLIS, DEFAULT_MIN_BEATS);
+    }
+
+    public HrvEngine(long windowMillis, int minBeats) {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        intervals = new TimeWindow(windowNanos);
+        squaredDifferences = new TimeWindow(windowNanos);
+        nn50 = new TimeWindow(windowNanos);
+        this.minBeats = minBeats;
+    }
+
+    /**
+     * @param timestampNanos sensor time of the beat that ends the interval
+     * @param intervalMillis time since the previous beat
+     */
+    public void addInterval(long timestampNanos, float intervalMillis) {
+        if (intervalMillis == SensorFrame.BEAT_GAP) {
+            previousInterval = Float.NaN;
+            return;
+        }
+        if (!(intervalMillis >= MIN_IBI_MILLIS && intervalMillis <= MAX_IBI_MILLIS)) {
+            rejectedIntervals++;
+            previousInterval = Float.NaN;
+            return;
+        }
+
+        intervals.add(timestampNanos, intervalMillis);
+        if (!Float.isNaN(previousInterval)) {
+            float difference = intervalMillis - previousInterval;
+            squaredDifferences.add(timestampNanos, difference * difference);
+            nn50.add(timestampNanos, Math.abs(difference) > NN50_MILLIS ? 1f : 0f);
+        }
+        previousInterval = intervalMillis;
+    }
+
+    /** Enough beats in the window for the metrics to mean something. */
+    public boolean isReady() {
+        return intervals.size() >= minBeats;
+    }
+
+    public float getSdnn() {
+        return intervals.standardDeviation();
+    }
+
+    public float getRmssd() {
+        return (float) Math.sqrt(squaredDifferences.mean());
+    }
+
+    public float getPnn50() {
+        return nn50.mean();
+    }
+
+    public float getMeanInterval() {
+        return intervals.mean();
+    }
+
+    public int getBeatCount() {
+        return intervals.size();
+    }
+
+    public long getRejectedIntervals() {
+        return rejectedIntervals;
+    }
+
+    /** Copies the current metrics into {@code out} without allocating. */
+    public HrvSnapshot snapshot(HrvSnapshot out) {
+        out.ready = isReady();
+        out.beatCount = intervals.size();
+        out.meanIntervalMillis = intervals.mean();
+        out.sdnnMillis = getSdnn();
+        out.rmssdMillis = getRmssd();
+        out.pnn50 = getPnn50();
+        return out;
+    }
+
+    /** Size of {@link #writeTo}'s output for the beats held now. */
+    public int serializedSize() {
+        return 4 + intervals.serializedSize() + squaredDifferences.serializedSize() + nn50.serializedSize();
+    }
+
+    public void writeTo(ByteBuffer out) {
+        out.putFloat(previousInterval);
+        intervals.writeTo(out);
+        squaredDifferences.writeTo(out);
+        nn50.writeTo(out);
+    }
+
+    /** Restores what {@link #writeTo} wrote; the engine must have the same window. */
+    public void readFrom(ByteBuffer in) {
+        previousInterval = in.getFloat();
+        intervals.readFrom(in);
+        squaredDifferences.readFrom(in);
+        nn50.readFrom(in);
+    }
+
+    public void clear() {
+        intervals.clear();
+        squaredDifferences.clear();
+        nn50.clear();
+        previousInterval = Float.NaN;
+    }
+
+    /** Point-in-time copy of the HRV metrics, reusable across calls. */
+    public static final class HrvSnapshot {
+        public boolean ready;
+        public int beatCount;
+        public float meanIntervalMillis;
+        public float sdnnMillis;
+        public float rmssdMillis;
+        public float pnn50;
+    }
+}
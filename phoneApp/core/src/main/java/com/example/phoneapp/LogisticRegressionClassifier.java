@@ -0,0 +1,208 @@
+package com.example.phoneapp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Multinomial logistic regression over the analyzer's window features,
+ * learned from labelled sessions by {@link ModelTrainer} instead of set by
+ * hand, so a high resting heart rate alone need not read as stress.
+ *
+ * <p>Each feature is centred and scaled as during training. A feature that
+ * is missing (NaN), such as RMSSD without beat data, contributes a learned
+ * per-class weight of its own instead. The state with the highest score
+ * wins; softmax would not change the order, so it is never computed.
+ *
+ * <p>The model file is plain text, a few hundred bytes:
+ *
+ * <pre>
+ * model logistic 1
+ * features averageHeartRate heartRateSpread averageMovement movementRms rmssd
+ * mean     ...one value per feature
+ * scale    ...
+ * CALM     bias, then per feature its weight and its missing weight
+ * ...
+ * </pre>
+ */
+public final class LogisticRegressionClassifier implements EmotionalStateClassifier {
+    public static final String DEFAULT_MODEL = "default-model.txt";
+
+    private static final String HEADER = "model logistic 1";
+
+    private final int[] features;
+    private final float[] means;
+    private final float[] scales;
+    private final EmotionalState[] classes;
+    // Per class: bias, then per feature weight and missing weight, as in the file
+    private final float[] weights;
+    // Same, with the scale folded into the weights for classify()
+    private final float[] scaledWeights;
+
+    LogisticRegressionClassifier(int[] features, float[] means, float[] scales,
+                                 EmotionalState[] classes, float[] weights) {
+        int stride = 1 + 2 * features.length;
+        if (means.length != features.length || scales.length != features.length
+                || weights.length != classes.length * stride) {
+            throw new IllegalArgumentException("Model dimensions do not match");
+        }
+        this.features = features;
+        this.means = means;
+        this.scales = scales;
+        this.classes = classes;
+        this.weights = weights;
+        scaledWeights = weights.clone();
+        for (int c = 0; c < classes.length; c++) {
+            for (int f = 0; f < features.length; f++) {
+                scaledWeights[c * stride + 1 + 2 * f] /= scales[f];
+            }
+        }
+    }
+
+    @Override
+    public EmotionalState classify(float[] input) {
+        int[] features = this.features;
+        float[] means = this.means;
+        float[] weights = scaledWeights;
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        int at = 0;
+        for (int c = 0; c < classes.length; c++) {
+            float score = weights[at++];
+            for (int f = 0; f < features.length; f++, at += 2) {
+                float value = input[features[f]];
+                score += value == value ? weights[at] * (value - means[f]) : weights[at + 1];
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return classes[best];
+    }
+
+    public EmotionalState[] getClasses() {
+        return classes.clone();
+    }
+
+    public static LogisticRegressionClassifier load(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    /** The model shipped with the app, see {@link #DEFAULT_MODEL}. */
+    public static LogisticRegressionClassifier loadDefault() throws IOException {
+        InputStream in = LogisticRegressionClassifier.class.getResourceAsStream(DEFAULT_MODEL);
+        if (in == null) {
+            throw new IOException("Missing resource " + DEFAULT_MODEL);
+        }
+        try {
+            return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } finally {
+            in.close();
+        }
+    }
+
+    public static LogisticRegressionClassifier parse(Reader source) throws IOException {
+        List<String[]> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                lines.add(line.split("\\s+"));
+            }
+        }
+        if (lines.size() < 5 || !String.join(" ", lines.get(0)).equals(HEADER)) {
+            throw new IOException("Not a logistic regression model");
+        }
+
+        String[] names = expect(lines.get(1), "features", -1);
+        int[] features = new int[names.length - 1];
+        for (int f = 0; f < features.length; f++) {
+            features[f] = EmotionalStateClassifier.featureIndex(names[f + 1]);
+            if (features[f] < 0) {
+                throw new IOException("Unknown feature '" + names[f + 1] + "'");
+            }
+        }
+        float[] means = floats(expect(lines.get(2), "mean", features.length + 1), 1, features.length);
+        float[] scales = floats(expect(lines.get(3), "scale", features.length + 1), 1, features.length);
+        for (float scale : scales) {
+            if (!(scale > 0)) {
+                throw new IOException("Scales must be positive");
+            }
+        }
+
+        int classCount = lines.size() - 4;
+        int stride = 1 + 2 * features.length;
+        EmotionalState[] classes = new EmotionalState[classCount];
+        float[] weights = new float[classCount * stride];
+        for (int c = 0; c < classCount; c++) {
+            String[] tokens = lines.get(4 + c);
+            try {
+                classes[c] = EmotionalState.valueOf(tokens[0].toUpperCase(Locale.US));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown state '" + tokens[0] + "'");
+            }
+            if (tokens.length != stride + 1) {
+                throw new IOException("Expected " + stride + " weights for " + tokens[0]);
+            }
+            System.arraycopy(floats(tokens, 1, stride), 0, weights, c * stride, stride);
+        }
+        return new LogisticRegressionClassifier(features, means, scales, classes, weights);
+    }
+
+    public void write(Writer out) throws IOException {
+        out.write(HEADER + "\n");
+        out.write("features");
+        for (int feature : features) {
+            out.write(" " + EmotionalStateClassifier.featureName(feature));
+        }
+        out.write("\nmean");
+        writeFloats(out, means, 0, means.length);
+        out.write("\nscale");
+        writeFloats(out, scales, 0, scales.length);
+        int stride = 1 + 2 * features.length;
+        for (int c = 0; c < classes.length; c++) {
+            out.write("\n" + classes[c].name());
+            writeFloats(out, weights, c * stride, stride);
+        }
+        out.write("\n");
+    }
+
+    private static String[] expect(String[] tokens, String key, int length) throws IOException {
+        if (!tokens[0].equals(key) || (length >= 0 && tokens.length != length)) {
+            throw new IOException("Malformed '" + key + "' line");
+        }
+        return tokens;
+    }
+
+    private static float[] floats(String[] tokens, int from, int count) throws IOException {
+        float[] values = new float[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                values[i] = Float.parseFloat(tokens[from + i]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed number in '" + tokens[0] + "' line", e);
+        }
+        return values;
+    }
+
+    // Float.toString is the shortest text that reads back as the same float
+    private static void writeFloats(Writer out, float[] values, int from, int count) throws IOException {
+        for (int i = from; i < from + count; i++) {
+            out.write(" " + Float.toString(values[i]));
+        }
+    }
+}
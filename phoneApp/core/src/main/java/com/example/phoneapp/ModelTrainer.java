@@ -0,0 +1,182 @@
+package com.example.phoneapp;
+
+import java.util.Arrays;
+
+/**
+ * Fits a {@link LogisticRegressionClassifier} to labelled feature vectors
+ * with plain full-batch gradient descent and L2 regularisation. There is
+ * no randomness anywhere and the math is strict, so the same samples in
+ * the same order always give the same model, bit for bit.
+ *
+ * <p>Meant for a desktop JVM (see {@code replay.TrainTool}); it keeps
+ * every sample in memory.
+ */
+public final class ModelTrainer {
+    public static final int DEFAULT_ITERATIONS = 2000;
+    public static final double DEFAULT_LEARNING_RATE = 0.5;
+    public static final double DEFAULT_L2 = 1e-4;
+
+    private final int[] features;
+    private final EmotionalState[] classes;
+    private float[] samples = new float[1024];
+    private int[] labels = new int[256];
+    private int count;
+
+    private int iterations = DEFAULT_ITERATIONS;
+    private double learningRate = DEFAULT_LEARNING_RATE;
+    private double l2 = DEFAULT_L2;
+
+    /**
+     * @param features which of the {@link EmotionalStateClassifier} features the model uses
+     * @param classes  the states it can tell apart
+     */
+    public ModelTrainer(int[] features, EmotionalState... classes) {
+        this.features = features.clone();
+        this.classes = classes.clone();
+    }
+
+    public ModelTrainer setIterations(int iterations) {
+        this.iterations = iterations;
+        return this;
+    }
+
+    public ModelTrainer setLearningRate(double learningRate) {
+        this.learningRate = learningRate;
+        return this;
+    }
+
+    public ModelTrainer setL2(double l2) {
+        this.l2 = l2;
+        return this;
+    }
+
+    /**
+     * @param input a full feature vector, as from {@link EmotionalStateAnalyzer#getFeatures}
+     * @return false if {@code label} is not one of the classes, so the sample was skipped
+     */
+    public boolean add(float[] input, EmotionalState label) {
+        int index = indexOf(label);
+        if (index < 0) {
+            return false;
+        }
+        int width = features.length;
+        if ((count + 1) * width > samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        if (count == labels.length) {
+            labels = Arrays.copyOf(labels, count * 2);
+        }
+        for (int f = 0; f < width; f++) {
+            samples[count * width + f] = input[features[f]];
+        }
+        labels[count++] = index;
+        return true;
+    }
+
+    public int getSampleCount() {
+        return count;
+    }
+
+    public LogisticRegressionClassifier train() {
+        if (count == 0) {
+            throw new IllegalStateException("No samples");
+        }
+        int width = features.length;
+        float[] means = new float[width];
+        float[] scales = new float[width];
+        standardization(means, scales);
+
+        // Standardized inputs; per feature a value (0 if missing) and a missing indicator
+        int inputs = 2 * width;
+        double[] x = new double[count * inputs];
+        for (int i = 0; i < count; i++) {
+            for (int f = 0; f < width; f++) {
+                float value = samples[i * width + f];
+                boolean missing = Float.isNaN(value);
+                x[i * inputs + 2 * f] = missing ? 0 : (value - means[f]) / scales[f];
+                x[i * inputs + 2 * f + 1] = missing ? 1 : 0;
+            }
+        }
+
+        int stride = 1 + inputs;
+        double[] w = new double[classes.length * stride];
+        double[] gradient = new double[w.length];
+        double[] p = new double[classes.length];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            Arrays.fill(gradient, 0);
+            for (int i = 0; i < count; i++) {
+                softmax(w, x, i * inputs, inputs, p);
+                for (int c = 0; c < classes.length; c++) {
+                    double error = p[c] - (labels[i] == c ? 1 : 0);
+                    int at = c * stride;
+                    gradient[at] += error;
+                    for (int k = 0; k < inputs; k++) {
+                        gradient[at + 1 + k] += error * x[i * inputs + k];
+                    }
+                }
+            }
+            for (int j = 0; j < w.length; j++) {
+                boolean bias = j % stride == 0;
+                w[j] -= learningRate * (gradient[j] / count + (bias ? 0 : l2 * w[j]));
+            }
+        }
+
+        float[] weights = new float[w.length];
+        for (int j = 0; j < w.length; j++) {
+            weights[j] = (float) w[j];
+        }
+        return new LogisticRegressionClassifier(features.clone(), means, scales, classes.clone(), weights);
+    }
+
+    // Mean and standard deviation of the values present; scale 1 if there is no spread
+    private void standardization(float[] means, float[] scales) {
+        int width = features.length;
+        for (int f = 0; f < width; f++) {
+            double sum = 0;
+            double sumSquares = 0;
+            int present = 0;
+            for (int i = 0; i < count; i++) {
+                float value = samples[i * width + f];
+                if (!Float.isNaN(value)) {
+                    sum += value;
+                    sumSquares += (double) value * value;
+                    present++;
+                }
+            }
+            double mean = present == 0 ? 0 : sum / present;
+            double variance = present == 0 ? 0 : sumSquares / present - mean * mean;
+            means[f] = (float) mean;
+            scales[f] = variance > 1e-12 ? (float) Math.sqrt(variance) : 1f;
+        }
+    }
+
+    private void softmax(double[] w, double[] x, int offset, int inputs, double[] p) {
+        int stride = 1 + inputs;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < classes.length; c++) {
+            double score = w[c * stride];
+            for (int k = 0; k < inputs; k++) {
+                score += w[c * stride + 1 + k] * x[offset + k];
+            }
+            p[c] = score;
+            max = Math.max(max, score);
+        }
+        double sum = 0;
+        for (int c = 0; c < classes.length; c++) {
+            p[c] = StrictMath.exp(p[c] - max);
+            sum += p[c];
+        }
+        for (int c = 0; c < classes.length; c++) {
+            p[c] /= sum;
+        }
+    }
+
+    private int indexOf(EmotionalState state) {
+        for (int c = 0; c < classes.length; c++) {
+            if (classes[c] == state) {
+                return c;
+            }
+        }
+        return -1;
+    }
+}
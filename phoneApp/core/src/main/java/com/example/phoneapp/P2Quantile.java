@@ -0,0 +1,146 @@
+package com.example.phoneapp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming estimate of one quantile in constant memory, after Jain and
+ * Chlamtac's P-square algorithm: five markers track the minimum, the maximum,
+ * the quantile itself and two points halfway to it, and are nudged along a
+ * parabola as values arrive. Nothing is stored per value, so a year of
+ * data costs the same 76 bytes as a minute.
+ *
+ * <p>Exact until the fifth value; after that typically within a percent
+ * or two of the true quantile on smooth distributions.
+ */
+public final class P2Quantile {
+    /** Size of {@link #writeTo}'s output. */
+    public static final int BYTES = 8 + 8 + 5 * 8 + 5 * 4;
+
+    private final double p;
+    // Marker heights, kept sorted; the first values themselves until there are five
+    private final double[] heights = new double[5];
+    // Marker positions, 1-based ranks
+    private final int[] positions = new int[5];
+    private final double[] increments;
+    private final double[] initialDesired;
+    private long count;
+
+    public P2Quantile(double p) {
+        if (!(p > 0 && p < 1)) {
+            throw new IllegalArgumentException("Quantile must be in (0, 1): " + p);
+        }
+        this.p = p;
+        increments = new double[]{0, p / 2, p, (1 + p) / 2, 1};
+        initialDesired = new double[]{1, 1 + 2 * p, 1 + 4 * p, 3 + 2 * p, 5};
+    }
+
+    public void add(double x) {
+        if (count < 5) {
+            // Insertion sort of the first five
+            int i = (int) count++;
+            while (i > 0 && heights[i - 1] > x) {
+                heights[i] = heights[i - 1];
+                i--;
+            }
+            heights[i] = x;
+            if (count == 5) {
+                for (int m = 0; m < 5; m++) {
+                    positions[m] = m + 1;
+                }
+            }
+            return;
+        }
+
+        int k;
+        if (x < heights[0]) {
+            heights[0] = x;
+            k = 0;
+        } else if (x >= heights[4]) {
+            heights[4] = x;
+            k = 3;
+        } else {
+            k = 0;
+            while (x >= heights[k + 1]) {
+                k++;
+            }
+        }
+        for (int m = k + 1; m < 5; m++) {
+            positions[m]++;
+        }
+        count++;
+
+        for (int m = 1; m <= 3; m++) {
+            double d = desired(m) - positions[m];
+            if ((d >= 1 && positions[m + 1] - positions[m] > 1)
+                    || (d <= -1 && positions[m - 1] - positions[m] < -1)) {
+                int s = d > 0 ? 1 : -1;
+                double candidate = parabolic(m, s);
+                heights[m] = heights[m - 1] < candidate && candidate < heights[m + 1]
+                        ? candidate
+                        : linear(m, s);
+                positions[m] += s;
+            }
+        }
+    }
+
+    // Where marker m should be after count values; a function of count alone
+    private double desired(int m) {
+        return initialDesired[m] + increments[m] * (count - 5);
+    }
+
+    private double parabolic(int m, int s) {
+        double below = positions[m] - positions[m - 1];
+        double above = positions[m + 1] - positions[m];
+        return heights[m] + s / (double) (positions[m + 1] - positions[m - 1])
+                * ((below + s) * (heights[m + 1] - heights[m]) / above
+                + (above - s) * (heights[m] - heights[m - 1]) / below);
+    }
+
+    private double linear(int m, int s) {
+        return heights[m] + s * (heights[m + s] - heights[m]) / (positions[m + s] - positions[m]);
+    }
+
+    /** The current estimate, or NaN before the first value. */
+    public double quantile() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (count < 5) {
+            return heights[(int) Math.round(p * (count - 1))];
+        }
+        return heights[2];
+    }
+
+    public double getP() {
+        return p;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void writeTo(ByteBuffer out) {
+        out.putDouble(p).putLong(count);
+        for (int m = 0; m < 5; m++) {
+            out.putDouble(heights[m]);
+        }
+        for (int m = 0; m < 5; m++) {
+            out.putInt(positions[m]);
+        }
+    }
+
+    /** Restores what {@link #writeTo} wrote; the sketch must be for the same quantile. */
+    public void readFrom(ByteBuffer in) {
+        double storedP = in.getDouble();
+        if (storedP != p) {
+            throw new IllegalArgumentException("Sketch is for quantile " + storedP + ", not " + p);
+        }
+        count = in.getLong();
+        for (int m = 0; m < 5; m++) {
+            heights[m] = in.getDouble();
+        }
+        for (int m = 0; m < 5; m++) {
+            positions[m] = in.getInt();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.phoneapp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What is normal for one wearer, learned as the data comes in: quantiles of
+ * window-mean heart rate and movement, each kept by a {@link P2Quantile}.
+ * Once calibrated it shifts the analyzer's features so that the wearer's
+ * resting heart rate and typical movement land where the classifiers
+ * expect an average wearer's, and thresholds become deviations from the
+ * personal baseline. An athlete resting at 50 bpm then reads as calm at 50
+ * and stressed well before 85.
+ *
+ * <p>All of it fits in a few hundred bytes, saved every
+ * {@link #SAVE_INTERVAL_SAMPLES} samples and on shutdown, so a restarted
+ * app picks up where it left off instead of replaying the history.
+ *
+ * <p>Not thread-safe, except the getters used for metrics; owned by the
+ * analyzer thread.
+ */
+public final class PersonalBaseline {
+    /** Resting heart rate of the wearers the shipped thresholds and model were made for. */
+    public static final float REFERENCE_RESTING_HEART_RATE = 65f;
+    /** Their median movement, gravity included. */
+    public static final float REFERENCE_MOVEMENT = 11f;
+
+    public static final long DEFAULT_SAMPLE_INTERVAL_MILLIS = 10_000;
+    /** An hour of wear at the default interval. */
+    public static final int DEFAULT_MIN_SAMPLES = 360;
+    static final int SAVE_INTERVAL_SAMPLES = 30;
+
+    private static final int MAGIC = 0x42415345; // "BASE"
+    private static final int VERSION = 1;
+    private static final int SKETCHES = 5;
+    /**
+     * Size of {@link #writeTo}'s output. The saved file is the same size: its
+     * header takes the place of the pacing, which is not saved there.
+     */
+    public static final int BYTES = SKETCHES * P2Quantile.BYTES + 8;
+
+    private static final long NO_SAMPLE = Long.MIN_VALUE;
+
+    // Resting rate is a low quantile: the wearer spends a good part of the day above it
+    private final P2Quantile restingHeartRate = new P2Quantile(0.1);
+    private final P2Quantile medianHeartRate = new P2Quantile(0.5);
+    private final P2Quantile highHeartRate = new P2Quantile(0.9);
+    private final P2Quantile medianMovement = new P2Quantile(0.5);
+    private final P2Quantile highMovement = new P2Quantile(0.9);
+    private final P2Quantile[] sketches = {
+            restingHeartRate, medianHeartRate, highHeartRate, medianMovement, highMovement
+    };
+
+    private final long sampleIntervalNanos;
+    private final int minSamples;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BYTES);
+    private File file;
+    private long lastSampleNanos = NO_SAMPLE;
+    private long failedSaves;
+
+    // Applied to the features; only change once calibrated
+    private volatile float heartRateShift;
+    private volatile float movementShift;
+    private volatile boolean calibrated;
+
+    public PersonalBaseline() {
+        this(DEFAULT_SAMPLE_INTERVAL_MILLIS, DEFAULT_MIN_SAMPLES);
+    }
+
+    public PersonalBaseline(long sampleIntervalMillis, int minSamples) {
+        this.sampleIntervalNanos = TimeUnit.MILLISECONDS.toNanos(sampleIntervalMillis);
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Opens the baseline saved in {@code file}, or starts a new one if there
+     * is none. Either way it is saved back there from then on.
+     *
+     * @throws IOException if the file exists but cannot be read back
+     */
+    public static PersonalBaseline open(File file, long sampleIntervalMillis, int minSamples) throws IOException {
+        PersonalBaseline baseline = new PersonalBaseline(sampleIntervalMillis, minSamples);
+        baseline.file = file;
+        if (file.exists()) {
+            baseline.load(file);
+        }
+        return baseline;
+    }
+
+    public static PersonalBaseline open(File file) throws IOException {
+        return open(file, DEFAULT_SAMPLE_INTERVAL_MILLIS, DEFAULT_MIN_SAMPLES);
+    }
+
+    /**
+     * Offers the analyzer's current window means; only one sample per
+     * interval of sensor time is taken.
+     */
+    public void update(long timestampNanos, float averageHeartRate, float averageMovement) {
+        // A sensor clock that went back means the watch rebooted; start the interval over
+        if (lastSampleNanos != NO_SAMPLE && timestampNanos >= lastSampleNanos
+                && timestampNanos - lastSampleNanos < sampleIntervalNanos) {
+            return;
+        }
+        lastSampleNanos = timestampNanos;
+        restingHeartRate.add(averageHeartRate);
+        medianHeartRate.add(averageHeartRate);
+        highHeartRate.add(averageHeartRate);
+        medianMovement.add(averageMovement);
+        highMovement.add(averageMovement);
+        updateShifts();
+        if (file != null && getSampleCount() % SAVE_INTERVAL_SAMPLES == 0) {
+            save();
+        }
+    }
+
+    private void updateShifts() {
+        if (getSampleCount() < minSamples) {
+            return;
+        }
+        heartRateShift = (float) restingHeartRate.quantile() - REFERENCE_RESTING_HEART_RATE;
+        movementShift = (float) medianMovement.quantile() - REFERENCE_MOVEMENT;
+        calibrated = true;
+    }
+
+    /** Moves {@code features} onto the reference wearer's scale; a no-op until calibrated. */
+    public void normalize(float[] features) {
+        if (!calibrated) {
+            return;
+        }
+        float heartRate = heartRateShift;
+        float movement = movementShift;
+        features[EmotionalStateClassifier.HEART_RATE] -= heartRate;
+        features[EmotionalStateClassifier.AVERAGE_HEART_RATE] -= heartRate;
+        features[EmotionalStateClassifier.AVERAGE_MOVEMENT] -= movement;
+        features[EmotionalStateClassifier.MOVEMENT_RMS] -= movement;
+    }
+
+    public boolean isCalibrated() {
+        return calibrated;
+    }
+
+    public long getSampleCount() {
+        return restingHeartRate.getCount();
+    }
+
+    /** How far this wearer's resting heart rate is above the reference, once calibrated. */
+    public float getHeartRateShift() {
+        return heartRateShift;
+    }
+
+    public float getMovementShift() {
+        return movementShift;
+    }
+
+    public float getRestingHeartRate() {
+        return (float) restingHeartRate.quantile();
+    }
+
+    public float getMedianHeartRate() {
+        return (float) medianHeartRate.quantile();
+    }
+
+    public float getHighHeartRate() {
+        return (float) highHeartRate.quantile();
+    }
+
+    public float getMedianMovement() {
+        return (float) medianMovement.quantile();
+    }
+
+    public float getHighMovement() {
+        return (float) highMovement.quantile();
+    }
+
+    public long getFailedSaves() {
+        return failedSaves;
+    }
+
+    /** The sketches and the pacing of the next sample, e.g. for a snapshot of the whole analyzer. */
+    public void writeTo(ByteBuffer out) {
+        for (P2Quantile sketch : sketches) {
+            sketch.writeTo(out);
+        }
+        out.putLong(lastSampleNanos);
+    }
+
+    /**
+     * Restores what {@link #writeTo} wrote.
+     *
+     * @throws IllegalArgumentException if it was written for other quantiles
+     */
+    public void readFrom(ByteBuffer in) {
+        for (P2Quantile sketch : sketches) {
+            sketch.readFrom(in);
+        }
+        lastSampleNanos = in.getLong();
+        updateShifts();
+    }
+
+    /**
+     * Writes the sketches to the file given to {@link #open}, through a
+     * temporary file so a crash leaves the old copy. A failure is counted
+     * rather than thrown.
+     */
+    public void save() {
+        if (file == null) {
+            return;
+        }
+        buffer.clear();
+        buffer.putInt(MAGIC).putInt(VERSION);
+        for (P2Quantile sketch : sketches) {
+            sketch.writeTo(buffer);
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temporary)) {
+            out.write(buffer.array(), 0, buffer.position());
+        } catch (IOException e) {
+            failedSaves++;
+            return;
+        }
+        if (!temporary.renameTo(file)) {
+            failedSaves++;
+        }
+    }
+
+    private void load(File source) throws IOException {
+        byte[] bytes = new byte[BYTES];
+        int read = 0;
+        try (InputStream in = new FileInputStream(source)) {
+            int n;
+            while (read < BYTES && (n = in.read(bytes, read, BYTES - read)) > 0) {
+                read += n;
+            }
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes, 0, read);
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("Not a baseline: " + source);
+            }
+            for (P2Quantile sketch : sketches) {
+                sketch.readFrom(in);
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupt baseline: " + source, e);
+        }
+        updateShifts();
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.phoneapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Every {@link RecommendationContent}, read once from a text resource and
+ * then handed out by state: no strings are built per frame, and the same
+ * state always gets the same object back.
+ *
+ * <p>The resource has one section per state, each of them required:
+ *
+ * <pre>
+ * [ANXIOUS] youtube: calming music playlist
+ * Try this calming breathing exercise:
+ * ...
+ * [CALM]
+ * You seem relaxed!
+ * </pre>
+ *
+ * A section header may name an action and its query after the state; the
+ * lines up to the next header are the text, blank lines in between kept.
+ * Lines starting with {@code #} are comments.
+ *
+ * <p>Translations sit next to {@link #DEFAULT_CATALOG} as
+ * {@code recommendations_de.txt} or {@code recommendations_de_CH.txt} and
+ * are looked up like Java resource bundles.
+ */
+public final class RecommendationCatalog {
+    public static final String DEFAULT_CATALOG = "recommendations.txt";
+
+    private static final String BASE_NAME = "recommendations";
+    private static final String SUFFIX = ".txt";
+    private static final String YOUTUBE = "youtube";
+
+    private final RecommendationContent[] contents;
+
+    private RecommendationCatalog(RecommendationContent[] contents) {
+        this.contents = contents;
+    }
+
+    public RecommendationContent get(EmotionalState state) {
+        return contents[state.ordinal()];
+    }
+
+    /**
+     * The shipped catalog closest to {@code locale}: language and country,
+     * then language alone, then {@link #DEFAULT_CATALOG}.
+     */
+    public static RecommendationCatalog load(Locale locale) throws IOException {
+        for (String name : candidates(locale)) {
+            InputStream in = RecommendationCatalog.class.getResourceAsStream(name);
+            if (in != null) {
+                try {
+                    return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+                } finally {
+                    in.close();
+                }
+            }
+        }
+        throw new IOException("Missing resource " + DEFAULT_CATALOG);
+    }
+
+    static List<String> candidates(Locale locale) {
+        List<String> names = new ArrayList<>();
+        if (!locale.getLanguage().isEmpty()) {
+            if (!locale.getCountry().isEmpty()) {
+                names.add(BASE_NAME + "_" + locale.getLanguage() + "_" + locale.getCountry() + SUFFIX);
+            }
+            names.add(BASE_NAME + "_" + locale.getLanguage() + SUFFIX);
+        }
+        names.add(DEFAULT_CATALOG);
+        return names;
+    }
+
+    public static RecommendationCatalog parse(Reader source) throws IOException {
+        RecommendationContent[] contents = new RecommendationContent[EmotionalState.values().length];
+        BufferedReader reader = new BufferedReader(source);
+        Section section = null;
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("[")) {
+                if (section != null) {
+                    section.addTo(contents);
+                }
+                section = Section.parseHeader(line, lineNumber);
+            } else if (section != null) {
+                section.text.add(trimEnd(line));
+            } else if (!line.trim().isEmpty()) {
+                throw new IOException("Text before the first section on line " + lineNumber);
+            }
+        }
+        if (section != null) {
+            section.addTo(contents);
+        }
+        for (EmotionalState state : EmotionalState.values()) {
+            if (contents[state.ordinal()] == null) {
+                throw new IOException("No section for " + state);
+            }
+        }
+        return new RecommendationCatalog(contents);
+    }
+
+    private static String trimEnd(String line) {
+        int end = line.length();
+        while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        return line.substring(0, end);
+    }
+
+    private static final class Section {
+        final EmotionalState state;
+        final String query;
+        final int line;
+        final List<String> text = new ArrayList<>();
+
+        private Section(EmotionalState state, String query, int line) {
+            this.state = state;
+            this.query = query;
+            this.line = line;
+        }
+
+        static Section parseHeader(String header, int line) throws IOException {
+            int close = header.indexOf(']');
+            if (close < 0) {
+                throw new IOException("Unclosed section header on line " + line);
+            }
+            String name = header.substring(1, close).trim();
+            EmotionalState state;
+            try {
+                state = EmotionalState.valueOf(name.toUpperCase(Locale.US));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown state '" + name + "' on line " + line);
+            }
+            String action = header.substring(close + 1).trim();
+            if (action.isEmpty()) {
+                return new Section(state, null, line);
+            }
+            int colon = action.indexOf(':');
+            if (colon < 0 || !action.substring(0, colon).trim().equals(YOUTUBE)) {
+                throw new IOException("Unknown action '" + action + "' on line " + line);
+            }
+            String query = action.substring(colon + 1).trim();
+            if (query.isEmpty()) {
+                throw new IOException("Action without a query on line " + line);
+            }
+            return new Section(state, query, line);
+        }
+
+        // Blank lines around the text are dropped, those within it kept
+        void addTo(RecommendationContent[] contents) throws IOException {
+            if (contents[state.ordinal()] != null) {
+                throw new IOException("Second section for " + state + " on line " + line);
+            }
+            int from = 0;
+            int to = text.size();
+            while (from < to && text.get(from).isEmpty()) {
+                from++;
+            }
+            while (to > from && text.get(to - 1).isEmpty()) {
+                to--;
+            }
+            if (from == to) {
+                throw new IOException("No text for " + state + " on line " + line);
+            }
+            contents[state.ordinal()] = new RecommendationContent(state, String.join("\n", text.subList(from, to)),
+                    query == null ? RecommendationContent.Action.NONE : RecommendationContent.Action.YOUTUBE_SEARCH,
+                    query);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.phoneapp;
+
+/**
+ * What to tell the user for an {@link EmotionalState}, without the Android
+ * views {@code RecommendationEngine} shows it in. Immutable; each state has
+ * one, made when its {@link RecommendationCatalog} is loaded.
+ */
+public final class RecommendationContent {
+    /** What the user is offered next to the text. */
+    public enum Action {
+        NONE,
+        YOUTUBE_SEARCH,
+    }
+
+    public final EmotionalState state;
+    public final String text;
+    public final Action action;
+    // What the action is about, such as the search terms, or null for NONE
+    public final String query;
+
+    RecommendationContent(EmotionalState state, String text, Action action, String query) {
+        this.state = state;
+        this.text = text;
+        this.action = action;
+        this.query = query;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.phoneapp;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Summary of one stretch of time in {@link Rollups}: heart rate and movement
+ * statistics, and how long the wearer spent in each {@link EmotionalState}.
+ * Buckets merge exactly, so an hour is the sum of its minutes. Reusable.
+ */
+public final class RollupBucket {
+    /** Size of {@link #writeTo}'s output. */
+    public static final int BYTES = 8 + 2 * Stats.BYTES + 4 * EmotionalState.values().length;
+
+    public long startMillis;
+    public final Stats heartRate = new Stats();
+    // Magnitude of acceleration, gravity included, as the analyzer sees it
+    public final Stats movement = new Stats();
+    private final long[] stateMillis = new long[EmotionalState.values().length];
+
+    public void clear(long startMillis) {
+        this.startMillis = startMillis;
+        heartRate.clear();
+        movement.clear();
+        Arrays.fill(stateMillis, 0);
+    }
+
+    public boolean isEmpty() {
+        if (heartRate.count > 0 || movement.count > 0) {
+            return false;
+        }
+        for (long millis : stateMillis) {
+            if (millis > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getStateMillis(EmotionalState state) {
+        return stateMillis[state.ordinal()];
+    }
+
+    void addStateMillis(EmotionalState state, long millis) {
+        stateMillis[state.ordinal()] += millis;
+    }
+
+    /** Adds everything in {@code other}; the start stays this bucket's. */
+    public void merge(RollupBucket other) {
+        heartRate.merge(other.heartRate);
+        movement.merge(other.movement);
+        for (int i = 0; i < stateMillis.length; i++) {
+            stateMillis[i] += other.stateMillis[i];
+        }
+    }
+
+    public void copyFrom(RollupBucket other) {
+        clear(other.startMillis);
+        merge(other);
+    }
+
+    void writeTo(ByteBuffer out) {
+        out.putLong(startMillis);
+        heartRate.writeTo(out);
+        movement.writeTo(out);
+        for (long millis : stateMillis) {
+            // A day is 86.4 million milliseconds
+            out.putInt((int) millis);
+        }
+    }
+
+    void readFrom(ByteBuffer in) {
+        startMillis = in.getLong();
+        heartRate.readFrom(in);
+        movement.readFrom(in);
+        for (int i = 0; i < stateMillis.length; i++) {
+            stateMillis[i] = in.getInt() & 0xffffffffL;
+        }
+    }
+
+    /**
+     * Count, min, max, mean and variance of one signal. Mean and squared
+     * deviations are kept as Welford's running sums, which merge without the
+     * cancellation that summing squares would suffer over a month of data.
+     */
+    public static final class Stats {
+        static final int BYTES = 4 + 4 + 4 + 8 + 8;
+
+        public long count;
+        public float min;
+        public float max;
+        public double mean;
+        // Sum of squared deviations from the mean
+        double m2;
+
+        Stats() {
+            clear();
+        }
+
+        void clear() {
+            count = 0;
+            min = Float.POSITIVE_INFINITY;
+            max = Float.NEGATIVE_INFINITY;
+            mean = 0;
+            m2 = 0;
+        }
+
+        void add(float value) {
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        void merge(Stats other) {
+            if (other.count == 0) {
+                return;
+            }
+            if (count == 0) {
+                count = other.count;
+                min = other.min;
+                max = other.max;
+                mean = other.mean;
+                m2 = other.m2;
+                return;
+            }
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / total;
+            m2 += other.m2 + delta * delta * count * other.count / total;
+            count = total;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        /** Population variance, 0 with fewer than two values. */
+        public double variance() {
+            return count < 2 ? 0 : m2 / count;
+        }
+
+        void writeTo(ByteBuffer out) {
+            out.putInt((int) count).putFloat(min).putFloat(max).putDouble(mean).putDouble(m2);
+        }
+
+        void readFrom(ByteBuffer in) {
+            count = in.getInt() & 0xffffffffL;
+            min = in.getFloat();
+            max = in.getFloat();
+            mean = in.getDouble();
+            m2 = in.getDouble();
+        }
+    }
+}
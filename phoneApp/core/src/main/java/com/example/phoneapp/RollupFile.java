@@ -0,0 +1,194 @@
+package com.example.phoneapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Closed {@link RollupBucket}s of one resolution, appended in time order as
+ * fixed-size records after a small header:
+ *
+ * <pre>
+ * header   magic, version, record size
+ * records  RollupBucket.BYTES each, oldest first
+ * </pre>
+ *
+ * Fixed-size records make the file its own index: a time range is found by
+ * binary search on the start times and then read in one pass. A record cut
+ * short by a crash is dropped on open.
+ */
+final class RollupFile {
+    private static final int MAGIC = 0x524c5550; // "RLUP"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    // Records read per call when visiting a range
+    private static final int CHUNK_RECORDS = 64;
+
+    private final File file;
+    private final int maxRecords;
+    private final ByteBuffer record = ByteBuffer.allocate(RollupBucket.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_RECORDS * RollupBucket.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer startTime = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private long count;
+
+    /**
+     * @param maxRecords how many of the newest records to keep; the file is
+     *                   compacted once it holds twice as many
+     */
+    RollupFile(File file, int maxRecords) throws IOException {
+        this.file = file;
+        this.maxRecords = maxRecords;
+        open();
+    }
+
+    private void open() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (raf.length() < HEADER_SIZE) {
+            header.putInt(0, MAGIC).putShort(4, VERSION).putInt(8, RollupBucket.BYTES);
+            channel.truncate(0);
+            channel.write(header, 0);
+        } else {
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION
+                    || header.getInt(8) != RollupBucket.BYTES) {
+                close();
+                throw new IOException("Not a rollup file: " + file);
+            }
+        }
+        count = (raf.length() - HEADER_SIZE) / RollupBucket.BYTES;
+        long end = HEADER_SIZE + count * RollupBucket.BYTES;
+        if (raf.length() != end) {
+            channel.truncate(end);
+        }
+    }
+
+    long count() {
+        return count;
+    }
+
+    void append(RollupBucket bucket) throws IOException {
+        record.clear();
+        bucket.writeTo(record);
+        record.flip();
+        long position = offset(count);
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        count++;
+        if (count > 2L * maxRecords) {
+            compact();
+        }
+    }
+
+    void read(long index, RollupBucket out) throws IOException {
+        record.clear();
+        readFully(record, offset(index));
+        record.flip();
+        out.readFrom(record);
+    }
+
+    /** Start of the newest record, or {@link Long#MIN_VALUE} if there is none. */
+    long lastStartMillis() throws IOException {
+        return count == 0 ? Long.MIN_VALUE : startMillis(count - 1);
+    }
+
+    /** Index of the first record starting at or after {@code millis}. */
+    long lowerBound(long millis) throws IOException {
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (startMillis(middle) < millis) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Hands every record starting in {@code [fromMillis, toMillis)} to the
+     * visitor, in order, through {@code scratch}.
+     */
+    void visit(long fromMillis, long toMillis, RollupBucket scratch, Rollups.BucketVisitor visitor)
+            throws IOException {
+        long index = lowerBound(fromMillis);
+        while (index < count) {
+            int batch = (int) Math.min(CHUNK_RECORDS, count - index);
+            chunk.clear().limit(batch * RollupBucket.BYTES);
+            readFully(chunk, offset(index));
+            chunk.flip();
+            for (int i = 0; i < batch; i++) {
+                scratch.readFrom(chunk);
+                if (scratch.startMillis >= toMillis) {
+                    return;
+                }
+                visitor.visit(scratch);
+            }
+            index += batch;
+        }
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    void close() throws IOException {
+        raf.close();
+    }
+
+    // Keeps the newest maxRecords, through a temporary file
+    private void compact() throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        long keep = Math.min(count, maxRecords);
+        try (RandomAccessFile out = new RandomAccessFile(temporary, "rw")) {
+            out.setLength(0);
+            FileChannel target = out.getChannel();
+            transfer(0, HEADER_SIZE, target);
+            transfer(offset(count - keep), keep * RollupBucket.BYTES, target);
+        }
+        close();
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            open();
+            throw new IOException("Cannot rename " + temporary + " to " + file);
+        }
+        open();
+    }
+
+    private void transfer(long position, long length, FileChannel target) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            position += channel.transferTo(position, end - position, target);
+        }
+    }
+
+    private long startMillis(long index) throws IOException {
+        startTime.clear();
+        readFully(startTime, offset(index));
+        return startTime.getLong(0);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+            position += read;
+        }
+    }
+
+    private static long offset(long index) {
+        return HEADER_SIZE + index * RollupBucket.BYTES;
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.phoneapp;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Heart rate, movement and time per {@link EmotionalState}, summarized at
+ * one second, one minute, one hour and one day, so that a trend over weeks
+ * reads a few kilobytes of {@link RollupBucket}s instead of the raw samples.
+ *
+ * <p>Each resolution has one open bucket that samples go into. When time
+ * moves past it the bucket is closed: stored, then merged into the open
+ * bucket one level up. Seconds are kept in memory for the last ten
+ * minutes; minutes, hours and days are appended to a
+ * {@link RollupFile} each under {@code directory}. Days are UTC days.
+ *
+ * <p>On open, the hour and day still in progress are rebuilt from the
+ * minutes and hours on disk, so a restart loses at most the last minute.
+ *
+ * <p>Not thread-safe; meant to be used from the thread that feeds the
+ * analyzer, like {@link TimeSeries}.
+ */
+public final class Rollups {
+    public enum Resolution {
+        SECOND(1_000L),
+        MINUTE(60_000L),
+        HOUR(3_600_000L),
+        DAY(86_400_000L);
+
+        public final long millis;
+
+        Resolution(long millis) {
+            this.millis = millis;
+        }
+
+        long floor(long timeMillis) {
+            return Math.floorDiv(timeMillis, millis) * millis;
+        }
+    }
+
+    /** Receives buckets from a query. {@code bucket} is reused between calls. */
+    public interface BucketVisitor {
+        void visit(RollupBucket bucket);
+    }
+
+    static final int SECOND_BUCKETS = 600;
+    // Two months of minutes, about 5 MB; hours and days are small enough to keep
+    private static final int MINUTE_RECORDS = 60 * 24 * 62;
+    private static final int HOUR_RECORDS = 24 * 800;
+    private static final int DAY_RECORDS = 10 * 366;
+    // Longer silences are not counted as time spent in the last state
+    static final long MAX_STATE_GAP_MILLIS = 10_000L;
+
+    private static final long NONE = Long.MIN_VALUE;
+    private static final Resolution[] LEVELS = Resolution.values();
+
+    private final RollupBucket[] open = new RollupBucket[LEVELS.length];
+    private final RollupFile[] files = new RollupFile[LEVELS.length];
+    private final RollupBucket[] seconds = new RollupBucket[SECOND_BUCKETS];
+    private int secondsHead;
+    private int secondsSize;
+    private final RollupBucket scratch = new RollupBucket();
+    private final RollupBucket merged = new RollupBucket();
+
+    private EmotionalState lastState;
+    private long lastStateMillis;
+    // State time is counted up to here
+    private long creditedMillis;
+    private long writeFailures;
+
+    public Rollups(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        for (int level = 0; level < LEVELS.length; level++) {
+            open[level] = new RollupBucket();
+            open[level].clear(NONE);
+        }
+        for (int i = 0; i < SECOND_BUCKETS; i++) {
+            seconds[i] = new RollupBucket();
+        }
+        files[Resolution.MINUTE.ordinal()] = new RollupFile(new File(directory, "minute.rlp"), MINUTE_RECORDS);
+        files[Resolution.HOUR.ordinal()] = new RollupFile(new File(directory, "hour.rlp"), HOUR_RECORDS);
+        files[Resolution.DAY.ordinal()] = new RollupFile(new File(directory, "day.rlp"), DAY_RECORDS);
+        restoreOpen(Resolution.HOUR.ordinal());
+        restoreOpen(Resolution.DAY.ordinal());
+    }
+
+    // Rebuilds the open bucket of 'level' from the closed buckets of the level below
+    private void restoreOpen(int level) throws IOException {
+        RollupFile children = files[level - 1];
+        long latest = Math.max(children.lastStartMillis(), open[level - 1].startMillis);
+        if (latest == NONE) {
+            return;
+        }
+        long start = LEVELS[level].floor(latest);
+        if (files[level].lastStartMillis() >= start) {
+            return;
+        }
+        open[level].clear(start);
+        children.visit(start, start + LEVELS[level].millis, scratch, open[level]::merge);
+    }
+
+    public void addHeartRate(long timeMillis, float bpm) {
+        current(timeMillis).heartRate.add(bpm);
+    }
+
+    /** {@code magnitude} is that of the acceleration, gravity included. */
+    public void addMovement(long timeMillis, float magnitude) {
+        current(timeMillis).movement.add(magnitude);
+    }
+
+    /**
+     * Reports the state at {@code timeMillis}. The time until the next
+     * report is counted for this state, split across the seconds it spans,
+     * up to {@link #MAX_STATE_GAP_MILLIS}.
+     */
+    public void addState(long timeMillis, EmotionalState state) {
+        creditState(timeMillis);
+        if (lastState == null || timeMillis >= lastStateMillis) {
+            lastState = state;
+            lastStateMillis = timeMillis;
+            creditedMillis = Math.max(creditedMillis, timeMillis);
+        }
+    }
+
+    // Counts the time since the last report, up to timeMillis, for the state reported then
+    private void creditState(long timeMillis) {
+        if (lastState == null) {
+            return;
+        }
+        long end = Math.min(timeMillis, lastStateMillis + MAX_STATE_GAP_MILLIS);
+        while (creditedMillis < end) {
+            RollupBucket second = open[0];
+            if (creditedMillis >= second.startMillis + Resolution.SECOND.millis) {
+                advance(creditedMillis);
+            }
+            long stop = Math.min(end, second.startMillis + Resolution.SECOND.millis);
+            second.addStateMillis(lastState, stop - creditedMillis);
+            creditedMillis = stop;
+        }
+    }
+
+    // The open second for timeMillis; time going back stays in the open second
+    private RollupBucket current(long timeMillis) {
+        RollupBucket second = open[0];
+        if (second.startMillis == NONE || timeMillis >= second.startMillis + Resolution.SECOND.millis) {
+            // The last state held until now, in the seconds about to be closed too
+            creditState(timeMillis);
+            advance(timeMillis);
+        }
+        return second;
+    }
+
+    // Moves every level to the bucket holding timeMillis, closing those it moves past
+    private void advance(long timeMillis) {
+        for (int level = 0; level < LEVELS.length; level++) {
+            long start = LEVELS[level].floor(timeMillis);
+            if (open[level].startMillis == start) {
+                break;
+            }
+            if (open[level].startMillis != NONE) {
+                close(level);
+            }
+            open[level].clear(start);
+        }
+    }
+
+    private void close(int level) {
+        RollupBucket bucket = open[level];
+        if (bucket.isEmpty()) {
+            return;
+        }
+        if (level == 0) {
+            seconds[(secondsHead + secondsSize) % SECOND_BUCKETS].copyFrom(bucket);
+            if (secondsSize < SECOND_BUCKETS) {
+                secondsSize++;
+            } else {
+                secondsHead = (secondsHead + 1) % SECOND_BUCKETS;
+            }
+        } else {
+            try {
+                files[level].append(bucket);
+            } catch (IOException e) {
+                writeFailures++;
+            }
+        }
+        if (level + 1 < LEVELS.length) {
+            RollupBucket parent = open[level + 1];
+            if (parent.startMillis == NONE) {
+                parent.clear(LEVELS[level + 1].floor(bucket.startMillis));
+            }
+            parent.merge(bucket);
+        }
+    }
+
+    /**
+     * Hands every bucket of {@code resolution} starting in
+     * {@code [fromMillis, toMillis)} to the visitor, oldest first, the one
+     * still open included. Empty buckets are skipped.
+     */
+    public void visit(Resolution resolution, long fromMillis, long toMillis, BucketVisitor visitor)
+            throws IOException {
+        int level = resolution.ordinal();
+        if (level == 0) {
+            for (int i = 0; i < secondsSize; i++) {
+                RollupBucket bucket = seconds[(secondsHead + i) % SECOND_BUCKETS];
+                if (bucket.startMillis >= fromMillis && bucket.startMillis < toMillis) {
+                    visitor.visit(bucket);
+                }
+            }
+        } else {
+            files[level].visit(fromMillis, toMillis, scratch, visitor);
+        }
+        long start = open[level].startMillis;
+        if (start != NONE && start >= fromMillis && start < toMillis) {
+            // The open bucket only holds its closed children so far
+            merged.copyFrom(open[level]);
+            for (int finer = 0; finer < level; finer++) {
+                merged.merge(open[finer]);
+            }
+            if (!merged.isEmpty()) {
+                visitor.visit(merged);
+            }
+        }
+    }
+
+    /**
+     * Merges everything in {@code [fromMillis, toMillis)} into {@code out},
+     * from the coarsest buckets that fit inside the range and finer ones at
+     * its edges. Edges are rounded to the second, or to the minute further
+     * back than the seconds kept.
+     */
+    public RollupBucket summarize(long fromMillis, long toMillis, RollupBucket out) throws IOException {
+        out.clear(fromMillis);
+        summarize(LEVELS.length - 1, fromMillis, toMillis, out);
+        return out;
+    }
+
+    private void summarize(int level, long fromMillis, long toMillis, RollupBucket out) throws IOException {
+        if (fromMillis >= toMillis) {
+            return;
+        }
+        if (level == 0) {
+            visit(LEVELS[0], fromMillis, toMillis, out::merge);
+            return;
+        }
+        long unit = LEVELS[level].millis;
+        long alignedFrom = -Math.floorDiv(-fromMillis, unit) * unit;
+        long alignedTo = LEVELS[level].floor(toMillis);
+        if (alignedFrom >= alignedTo) {
+            summarize(level - 1, fromMillis, toMillis, out);
+            return;
+        }
+        summarize(level - 1, fromMillis, alignedFrom, out);
+        visit(LEVELS[level], alignedFrom, alignedTo, out::merge);
+        summarize(level - 1, alignedTo, toMillis, out);
+    }
+
+    /** Appends and flushes that failed; a bucket that failed to append is dropped, not retried. */
+    public long getWriteFailures() {
+        return writeFailures;
+    }
+
+    public void flush() {
+        for (RollupFile file : files) {
+            if (file != null) {
+                try {
+                    file.force();
+                } catch (IOException e) {
+                    writeFailures++;
+                }
+            }
+        }
+    }
+}
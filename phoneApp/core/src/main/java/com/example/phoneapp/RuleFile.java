@@ -0,0 +1,41 @@
+package com.example.phoneapp;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A rule table on disk that can be edited while the app runs. Each
+ * {@link #reloadIfChanged} call looks at the file's size and modification
+ * time and only parses it again when one of them moved.
+ *
+ * <p>Not thread-safe; meant to be polled from one thread.
+ */
+public final class RuleFile {
+    private final File file;
+    private long loadedModified = -1;
+    private long loadedLength = -1;
+
+    public RuleFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the new rules, or null if the file is missing or unchanged
+     * @throws IOException if it changed but does not parse; asking again
+     *                     does not retry until it changes once more
+     */
+    public RuleTableClassifier reloadIfChanged() throws IOException {
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified == 0 || (modified == loadedModified && length == loadedLength)) {
+            return null;
+        }
+        loadedModified = modified;
+        loadedLength = length;
+        return RuleTableClassifier.load(file);
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.phoneapp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A classifier read from a rule table rather than compiled in, so the
+ * thresholds can be tuned without a rebuild. One rule per line:
+ *
+ * <pre>
+ * # State    conditions, all of which must hold
+ * ANXIOUS    heartRate &gt; 90
+ * ANXIOUS    heartRate &gt; 85 and rmssd &lt; 20
+ * NORMAL
+ * </pre>
+ *
+ * The first rule whose conditions all hold decides the state; a rule
+ * without conditions always holds. If none does the state is UNKNOWN.
+ * Features go by {@link EmotionalStateClassifier#featureName}, and the
+ * operators {@code <}, {@code <=}, {@code >} and {@code >=}. A missing
+ * feature (NaN) fails every comparison.
+ *
+ * <p>Parsing happens once. The rules end up in a single int array that
+ * {@link #classify} walks front to back, with no lookups, allocation or
+ * branching on the operator.
+ */
+public final class RuleTableClassifier implements EmotionalStateClassifier {
+    /** Rules equivalent to {@link ThresholdClassifier}. */
+    public static final String DEFAULT_RULES = "default-rules.txt";
+
+    private static final String[] OPERATORS = {"<", "<=", ">", ">="};
+    private static final int LESS = 0;
+    private static final int LESS_OR_EQUAL = 1;
+    private static final int GREATER = 2;
+    private static final int GREATER_OR_EQUAL = 3;
+
+    // Rule: [condition count, state ordinal], then per condition [feature, sign bits, threshold bits].
+    // Every operator is compiled to "sign * value < threshold", see compile()
+    private static final int RULE_HEADER = 2;
+    private static final int CONDITION_SIZE = 3;
+
+    private static final EmotionalState[] STATES = EmotionalState.values();
+
+    private final int[] code;
+    private final int ruleCount;
+
+    private RuleTableClassifier(int[] code, int ruleCount) {
+        this.code = code;
+        this.ruleCount = ruleCount;
+    }
+
+    @Override
+    public EmotionalState classify(float[] features) {
+        int[] code = this.code;
+        int rule = 0;
+        while (rule < code.length) {
+            int end = rule + RULE_HEADER + code[rule] * CONDITION_SIZE;
+            int at = rule + RULE_HEADER;
+            while (at < end && features[code[at]] * Float.intBitsToFloat(code[at + 1])
+                    < Float.intBitsToFloat(code[at + 2])) {
+                at += CONDITION_SIZE;
+            }
+            if (at == end) {
+                return STATES[code[rule + 1]];
+            }
+            rule = end;
+        }
+        return EmotionalState.UNKNOWN;
+    }
+
+    // No branch on the operator at run time: x > t is -x < -t, and x <= t is x < nextUp(t)
+    private static void compile(int[] code, int at, int feature, int operator, float threshold) {
+        float sign = operator == LESS || operator == LESS_OR_EQUAL ? 1f : -1f;
+        float bound = sign * threshold;
+        if (operator == LESS_OR_EQUAL || operator == GREATER_OR_EQUAL) {
+            bound = Math.nextUp(bound);
+        }
+        code[at] = feature;
+        code[at + 1] = Float.floatToIntBits(sign);
+        code[at + 2] = Float.floatToIntBits(bound);
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    public static RuleTableClassifier load(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    /** The rules shipped with the app, see {@link #DEFAULT_RULES}. */
+    public static RuleTableClassifier loadDefault() throws IOException {
+        InputStream in = RuleTableClassifier.class.getResourceAsStream(DEFAULT_RULES);
+        if (in == null) {
+            throw new IOException("Missing resource " + DEFAULT_RULES);
+        }
+        try {
+            return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } finally {
+            in.close();
+        }
+    }
+
+    public static RuleTableClassifier parse(Reader source) throws IOException {
+        int[] code = new int[64];
+        int size = 0;
+        int rules = 0;
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            EmotionalState state;
+            try {
+                state = EmotionalState.valueOf(tokens[0].toUpperCase(Locale.US));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown state '" + tokens[0] + "' on line " + lineNumber);
+            }
+
+            int conditions = 0;
+            int header = size;
+            code = ensureCapacity(code, size + RULE_HEADER + tokens.length);
+            size += RULE_HEADER;
+            int i = 1;
+            while (i < tokens.length) {
+                if (conditions > 0) {
+                    if (!tokens[i].equalsIgnoreCase("and")) {
+                        throw new IOException("Expected 'and' on line " + lineNumber + ": " + line);
+                    }
+                    i++;
+                }
+                if (i + CONDITION_SIZE > tokens.length) {
+                    throw new IOException("Incomplete condition on line " + lineNumber + ": " + line);
+                }
+                int feature = EmotionalStateClassifier.featureIndex(tokens[i]);
+                if (feature < 0) {
+                    throw new IOException("Unknown feature '" + tokens[i] + "' on line " + lineNumber);
+                }
+                int operator = indexOf(OPERATORS, tokens[i + 1]);
+                if (operator < 0) {
+                    throw new IOException("Unknown operator '" + tokens[i + 1] + "' on line " + lineNumber);
+                }
+                float threshold;
+                try {
+                    threshold = Float.parseFloat(tokens[i + 2]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed threshold on line " + lineNumber + ": " + line, e);
+                }
+                compile(code, size, feature, operator, threshold);
+                size += CONDITION_SIZE;
+                conditions++;
+                i += CONDITION_SIZE;
+            }
+            code[header] = conditions;
+            code[header + 1] = state.ordinal();
+            rules++;
+        }
+        if (rules == 0) {
+            throw new IOException("No rules");
+        }
+        return new RuleTableClassifier(Arrays.copyOf(code, size), rules);
+    }
+
+    private static int[] ensureCapacity(int[] code, int needed) {
+        return needed <= code.length ? code : Arrays.copyOf(code, Math.max(needed, code.length * 2));
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
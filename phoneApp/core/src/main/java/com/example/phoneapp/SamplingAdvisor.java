@@ -0,0 +1,84 @@
+package com.example.phoneapp;
+
+import com.example.shared.RateHint;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how fast one watch should sample, from the states its analyzer
+ * reports. The watch may slow down once the wearer has been CALM or NORMAL
+ * for {@code dwellMillis} of sensor time; any other state, or too little
+ * data to tell, asks for full rate again at once.
+ *
+ * <p>While slowed down the watch wakes itself up when heart rate comes
+ * within {@link #WAKE_MARGIN_BPM} of the stress threshold, since the phone
+ * only hears about it after the watch's sensor batch has been delivered.
+ * With a {@link PersonalBaseline} that is the wearer's own threshold, the
+ * one the classifier applies after shifting heart rate.
+ *
+ * <p>Not thread-safe, except {@link #getLevel}; meant for the analyzer thread.
+ */
+public final class SamplingAdvisor {
+    public static final long DEFAULT_DWELL_MILLIS = 120_000;
+    static final float WAKE_MARGIN_BPM = 5f;
+
+    private static final long NOT_RESTING = Long.MIN_VALUE;
+
+    private final long dwellNanos;
+    private volatile int level = RateHint.LEVEL_HIGH;
+    private long restingSinceNanos = NOT_RESTING;
+    private volatile PersonalBaseline baseline;
+
+    public SamplingAdvisor() {
+        this(DEFAULT_DWELL_MILLIS);
+    }
+
+    public SamplingAdvisor(long dwellMillis) {
+        this.dwellNanos = TimeUnit.MILLISECONDS.toNanos(dwellMillis);
+    }
+
+    /**
+     * @param timestampNanos sensor time of the frame behind {@code state}
+     * @return true if the advice changed and should be sent to the watch
+     */
+    public boolean update(EmotionalState state, boolean enoughData, long timestampNanos) {
+        boolean resting = enoughData && (state == EmotionalState.CALM || state == EmotionalState.NORMAL);
+        if (!resting) {
+            restingSinceNanos = NOT_RESTING;
+            return setLevel(RateHint.LEVEL_HIGH);
+        }
+        if (restingSinceNanos == NOT_RESTING) {
+            restingSinceNanos = timestampNanos;
+        }
+        if (timestampNanos - restingSinceNanos >= dwellNanos) {
+            return setLevel(RateHint.LEVEL_LOW);
+        }
+        return false;
+    }
+
+    private boolean setLevel(int next) {
+        if (level == next) {
+            return false;
+        }
+        level = next;
+        return true;
+    }
+
+    /** One of the RateHint levels; safe to read from any thread. */
+    public int getLevel() {
+        return level;
+    }
+
+    /** The analyzer's baseline, if it has one. */
+    public void setBaseline(PersonalBaseline baseline) {
+        this.baseline = baseline;
+    }
+
+    /** Heart rate as the watch measures it; safe to read from any thread. */
+    public float getWakeHeartRate() {
+        PersonalBaseline current = baseline;
+        // The classifier sees heart rate minus the shift, so its threshold sits that much higher
+        float shift = current != null ? current.getHeartRateShift() : 0f;
+        return EmotionalStateAnalyzer.STRESS_HR_THRESHOLD + shift - WAKE_MARGIN_BPM;
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.phoneapp;
+
+import com.example.shared.SensorFrame;
+import com.example.shared.WindowFeatures;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-device history of everything the watch sends, one {@link TimeSeries}
+ * per sensor under {@code directory}. Frames are recorded as they leave the
+ * analyzer, so trends can be looked at later or replayed with other
+ * thresholds. Segments that age out are compressed and kept for a while
+ * longer, heart rate, movement and state are summarized in
+ * {@link Rollups} for trends over weeks, and every stretch spent in one
+ * state is kept in a {@link StateTimeline}.
+ *
+ * <p>Sensor timestamps count from the watch's boot, so they are shifted
+ * onto the phone's wall clock before being stored. The shift is taken from
+ * the first sample, and taken again whenever the sensor clock jumps back
+ * (the watch rebooted), which keeps stored time moving forward across
+ * sessions.
+ */
+public final class SensorHistory {
+    private static final int SEGMENT_CAPACITY = 1 << 16;
+    // About 18 h of heart rate at 1 Hz per segment; a month with the archived ones
+    private static final int HEART_RATE_SEGMENTS = 4;
+    private static final int HEART_RATE_ARCHIVED = 40;
+    // About 22 min of accelerometer at 50 Hz per segment, 1 MB each; rollups keep the trend
+    private static final int ACCELEROMETER_SEGMENTS = 48;
+    private static final int ACCELEROMETER_ARCHIVED = 48;
+    private static final int INTER_BEAT_INTERVAL_SEGMENTS = 4;
+    private static final int INTER_BEAT_INTERVAL_ARCHIVED = 40;
+    private static final int FEATURE_SEGMENT_CAPACITY = 1 << 12;
+    // About 11 h of 10 s windows per segment
+    private static final int FEATURE_SEGMENTS = 4;
+    private static final int FEATURE_ARCHIVED = 64;
+
+    private static final long CLOCK_JUMP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final TimeSeries heartRate;
+    private final TimeSeries accelerometer;
+    private final TimeSeries interBeatIntervals;
+    private final TimeSeries features;
+    private final Rollups rollups;
+    private final StateTimeline timeline;
+
+    private boolean hasOffset;
+    private long offsetNanos;
+    private long lastSensorNanos;
+    private long failedAppends;
+
+    public SensorHistory(File directory) throws IOException {
+        heartRate = new TimeSeries(new File(directory, "heart_rate"), 1,
+                SEGMENT_CAPACITY, HEART_RATE_SEGMENTS, HEART_RATE_ARCHIVED);
+        accelerometer = new TimeSeries(new File(directory, "accelerometer"), 3,
+                SEGMENT_CAPACITY, ACCELEROMETER_SEGMENTS, ACCELEROMETER_ARCHIVED);
+        interBeatIntervals = new TimeSeries(new File(directory, "inter_beat_interval"), 1,
+                SEGMENT_CAPACITY, INTER_BEAT_INTERVAL_SEGMENTS, INTER_BEAT_INTERVAL_ARCHIVED);
+        features = new TimeSeries(new File(directory, "features"), WindowFeatures.VALUE_COUNT,
+                FEATURE_SEGMENT_CAPACITY, FEATURE_SEGMENTS, FEATURE_ARCHIVED);
+        rollups = new Rollups(new File(directory, "rollups"));
+        timeline = new StateTimeline(new File(directory, "timeline"));
+    }
+
+    /**
+     * Stores one frame, and the state the analyzer was in after it. Legacy
+     * text frames carry no sensor time, so {@code receivedNanos} is used for
+     * them. A failed write is counted rather than thrown, so storage trouble
+     * never stops the analysis.
+     */
+    public void record(SensorFrame frame, long receivedNanos, EmotionalState state) {
+        long sensorNanos = frame.timestampNanos != SensorFrame.NO_TIMESTAMP
+                ? frame.timestampNanos
+                : receivedNanos;
+        long timestampNanos = toWallClock(sensorNanos);
+        long timestampMillis = TimeUnit.NANOSECONDS.toMillis(timestampNanos);
+        float[] values = frame.values;
+        // First, so a sample that changed the state counts towards the new episode
+        timeline.update(timestampMillis, state);
+        try {
+            if (frame.isHeartRate()) {
+                heartRate.append(timestampNanos, values[0]);
+                rollups.addHeartRate(timestampMillis, values[0]);
+                timeline.addHeartRate(values[0]);
+            } else if (frame.isAccelerometer()) {
+                accelerometer.append(timestampNanos, values[0], values[1], values[2]);
+                float magnitude = (float) Math.sqrt(values[0] * values[0] + values[1] * values[1]
+                        + values[2] * values[2]);
+                rollups.addMovement(timestampMillis, magnitude);
+                timeline.addMovement(magnitude);
+            } else if (frame.isInterBeatInterval()) {
+                interBeatIntervals.append(timestampNanos, values[0]);
+            } else if (frame.isFeatures()) {
+                features.append(timestampNanos, values);
+                // One value per window; the raw samples never reach the phone
+                if (values[WindowFeatures.HR_COUNT] > 0) {
+                    rollups.addHeartRate(timestampMillis, values[WindowFeatures.HR_MEAN]);
+                    timeline.addHeartRate(values[WindowFeatures.HR_MAX]);
+                }
+                if (values[WindowFeatures.ACC_COUNT] > 0) {
+                    rollups.addMovement(timestampMillis, values[WindowFeatures.ACC_MEAN]);
+                    timeline.addMovement(values[WindowFeatures.ACC_MEAN]);
+                }
+            }
+        } catch (IOException e) {
+            failedAppends++;
+        }
+        rollups.addState(timestampMillis, state);
+    }
+
+    private long toWallClock(long sensorNanos) {
+        if (!hasOffset || sensorNanos < lastSensorNanos - CLOCK_JUMP_NANOS) {
+            offsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - sensorNanos;
+            hasOffset = true;
+        }
+        lastSensorNanos = sensorNanos;
+        return sensorNanos + offsetNanos;
+    }
+
+    public TimeSeries getHeartRate() {
+        return heartRate;
+    }
+
+    public TimeSeries getAccelerometer() {
+        return accelerometer;
+    }
+
+    public TimeSeries getInterBeatIntervals() {
+        return interBeatIntervals;
+    }
+
+    /** Columns are indexed by the {@link WindowFeatures} constants. */
+    public TimeSeries getFeatures() {
+        return features;
+    }
+
+    public Rollups getRollups() {
+        return rollups;
+    }
+
+    public StateTimeline getTimeline() {
+        return timeline;
+    }
+
+    public long getFailedAppends() {
+        return failedAppends;
+    }
+
+    public void flush() {
+        heartRate.flush();
+        accelerometer.flush();
+        interBeatIntervals.flush();
+        features.flush();
+        rollups.flush();
+        timeline.flush();
+    }
+}
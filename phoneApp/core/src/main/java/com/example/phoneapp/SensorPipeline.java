@@ -0,0 +1,450 @@
+package com.example.phoneapp;
+
+import com.example.phoneapp.metrics.Counter;
+import com.example.phoneapp.metrics.Meter;
+import com.example.phoneapp.metrics.MetricsRegistry;
+import com.example.phoneapp.metrics.Tracer;
+import com.example.shared.SensorFrame;
+import com.example.shared.SequenceFilter;
+import com.example.shared.StreamFrameDecoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Receive path split into stages, each on its own thread:
+ *
+ * <pre>
+ * reader -> [chunks] -> decoder -> [frames] -> analyzer -> [results] -> presenter
+ * </pre>
+ *
+ * Stages are joined by {@link BoundedSpscQueue}s, so a slow analysis or UI
+ * never stalls the socket read directly, and nothing is allocated per item.
+ * Chunks always use BLOCK, since dropping bytes would cut frames apart, and
+ * a full chunk queue simply leaves the data in the socket. Frames use BLOCK
+ * by default as well. Results use COALESCE_LATEST: the presenter only ever
+ * needs the newest state.
+ *
+ * <p>The decoder drops frames a reconnecting watch sent again (see
+ * {@link SequenceFilter}); the filter outlives streams for that reason.
+ *
+ * <p>With a {@link StateTracker} the analyzer reports the tracker's steady
+ * state instead of the classifier's verdict on each frame, and marks the
+ * results where it changed.
+ *
+ * <p>The reader stage runs on whichever thread calls {@link #readFrom}; one
+ * stream at a time. The analyzer thread is the only one touching the
+ * {@link EmotionalStateAnalyzer} once the pipeline is started.
+ */
+public final class SensorPipeline {
+    public static final int DEFAULT_CHUNK_CAPACITY = 64;
+    public static final int DEFAULT_FRAME_CAPACITY = 256;
+    private static final int RESULT_CAPACITY = 4;
+    private static final int CHUNK_SIZE = 1024;
+
+    /** Receives the latest analysis on the presenter thread. */
+    public interface Presenter {
+        void present(AnalysisResult result);
+    }
+
+    /** Sees every analysis, on the analyzer thread, before results are coalesced. */
+    public interface AnalysisListener {
+        void onAnalysis(AnalysisResult result);
+    }
+
+    private final EmotionalStateAnalyzer analyzer;
+    private final Presenter presenter;
+
+    private final BoundedSpscQueue<Chunk> chunks;
+    private final BoundedSpscQueue<ReceivedFrame> frames;
+    private final BoundedSpscQueue<AnalysisResult> results;
+
+    private final StageMetrics decoderMetrics;
+    private final StageMetrics analyzerMetrics;
+    private final StageMetrics presenterMetrics;
+    private final StageMetrics endToEndMetrics;
+    private final Meter bytesReceived = new Meter();
+    private final Counter framesReceived = new Counter();
+    private final Counter parseErrors = new Counter();
+    private final Counter duplicateFrames = new Counter();
+    private final Counter lostFrames = new Counter();
+    // Decoded, but the frame queue was closed or the decoder interrupted
+    private final Counter undeliveredFrames = new Counter();
+    private final Counter stateChanges = new Counter();
+    private final Counter[] decisions = new Counter[EmotionalState.values().length];
+
+    private final StreamFrameDecoder decoder = new StreamFrameDecoder();
+    private final SequenceFilter sequenceFilter = new SequenceFilter();
+    private final Chunk readChunk = new Chunk();
+    private final AtomicBoolean reading = new AtomicBoolean();
+
+    private volatile SensorHistory history;
+    private volatile AnalysisListener analysisListener;
+    private volatile StateTracker stateTracker;
+    private volatile Tracer tracer = Tracer.NONE;
+    private Thread decoderThread;
+    private Thread analyzerThread;
+    private Thread presenterThread;
+
+    public SensorPipeline(EmotionalStateAnalyzer analyzer, Presenter presenter) {
+        this(analyzer, presenter, DEFAULT_CHUNK_CAPACITY, DEFAULT_FRAME_CAPACITY,
+                BoundedSpscQueue.OverflowPolicy.BLOCK);
+    }
+
+    public SensorPipeline(EmotionalStateAnalyzer analyzer, Presenter presenter,
+                          int chunkCapacity, int frameCapacity,
+                          BoundedSpscQueue.OverflowPolicy framePolicy) {
+        this.analyzer = analyzer;
+        this.presenter = presenter;
+        chunks = new BoundedSpscQueue<>(chunkCapacity, BoundedSpscQueue.OverflowPolicy.BLOCK, Chunk::new);
+        frames = new BoundedSpscQueue<>(frameCapacity, framePolicy, ReceivedFrame::new);
+        results = new BoundedSpscQueue<>(RESULT_CAPACITY,
+                BoundedSpscQueue.OverflowPolicy.COALESCE_LATEST, AnalysisResult::new);
+        decoderMetrics = new StageMetrics("decoder", chunks);
+        analyzerMetrics = new StageMetrics("analyzer", frames);
+        presenterMetrics = new StageMetrics("presenter", results);
+        endToEndMetrics = new StageMetrics("end-to-end", null);
+        for (int i = 0; i < decisions.length; i++) {
+            decisions[i] = new Counter();
+        }
+    }
+
+    /** Records every frame the analyzer sees. Set before {@link #start}. */
+    public void setHistory(SensorHistory history) {
+        this.history = history;
+    }
+
+    /** Set before {@link #start}; keep it cheap, it runs for every frame. */
+    public void setAnalysisListener(AnalysisListener listener) {
+        this.analysisListener = listener;
+    }
+
+    /** Debounces the states reported from now on. Set before {@link #start}. */
+    public void setStateTracker(StateTracker tracker) {
+        this.stateTracker = tracker;
+    }
+
+    /** Wraps each stage's per-item work in a trace section. Set before {@link #start}. */
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /** Adds the pipeline's counters, queue gauges and stage latencies to {@code registry}. */
+    public void registerMetrics(MetricsRegistry registry) {
+        registerMetrics(registry, "");
+    }
+
+    /** Same, with every name prefixed, for one pipeline among several. */
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.register(prefix + "pipeline.bytes_received", bytesReceived);
+        registry.register(prefix + "pipeline.frames_received", framesReceived);
+        registry.register(prefix + "pipeline.parse_errors", parseErrors);
+        registry.register(prefix + "pipeline.duplicate_frames", duplicateFrames);
+        registry.register(prefix + "pipeline.lost_frames", lostFrames);
+        registry.register(prefix + "analyzer.state_changes", stateChanges);
+        registry.gauge(prefix + "pipeline.frames_dropped",
+                () -> analyzerMetrics.getDiscarded() + undeliveredFrames.get());
+        // Expected: the presenter only ever gets the newest result
+        registry.gauge(prefix + "pipeline.results_skipped", presenterMetrics::getDiscarded);
+        registry.gauge(prefix + "pipeline.chunk_queue_depth", chunks::size);
+        registry.gauge(prefix + "pipeline.frame_queue_depth", frames::size);
+        registry.register(prefix + "stage.decoder", decoderMetrics.getLatency());
+        registry.register(prefix + "stage.analyzer", analyzerMetrics.getLatency());
+        registry.register(prefix + "stage.presenter", presenterMetrics.getLatency());
+        registry.register(prefix + "stage.end_to_end", endToEndMetrics.getLatency());
+        for (EmotionalState state : EmotionalState.values()) {
+            registry.register(prefix + "analyzer.state." + state.name().toLowerCase(Locale.ROOT),
+                    decisions[state.ordinal()]);
+        }
+    }
+
+    public synchronized void start() {
+        if (decoderThread != null) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+        decoderThread = startStage("pipeline-decoder", this::runDecoder);
+        analyzerThread = startStage("pipeline-analyzer", this::runAnalyzer);
+        presenterThread = startStage("pipeline-presenter", this::runPresenter);
+    }
+
+    private static Thread startStage(String name, Runnable stage) {
+        Thread thread = new Thread(stage, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Reader stage: reads {@code in} until end of stream and hands the bytes to
+     * the decoder. Blocks while the decoder is behind. A new stream starts with
+     * a fresh decoder state, so a half frame from the last one is discarded.
+     *
+     * @return false if the stream ended, true if the pipeline was stopped first
+     * @throws IllegalStateException if another stream is already being read
+     */
+    public boolean readFrom(InputStream in) throws IOException {
+        if (!reading.compareAndSet(false, true)) {
+            throw new IllegalStateException("Already reading another stream");
+        }
+        try {
+            readChunk.length = Chunk.STREAM_START;
+            if (!chunks.offer(readChunk)) {
+                return true;
+            }
+            while (true) {
+                int read = in.read(readChunk.data, 0, CHUNK_SIZE);
+                if (read < 0) {
+                    return false;
+                }
+                readChunk.length = read;
+                readChunk.receivedNanos = System.nanoTime();
+                bytesReceived.mark(read);
+                if (read > 0 && !chunks.offer(readChunk)) {
+                    return true;
+                }
+            }
+        } finally {
+            reading.set(false);
+        }
+    }
+
+    /**
+     * Lets every stage finish what is queued, then stops the threads. The
+     * queues close one after another, so each stage sees all of its input.
+     */
+    public void shutdown() throws InterruptedException {
+        chunks.close();
+        Thread decoder;
+        Thread analyzer;
+        Thread presenter;
+        synchronized (this) {
+            decoder = decoderThread;
+            analyzer = analyzerThread;
+            presenter = presenterThread;
+        }
+        if (decoder == null) {
+            return;
+        }
+        decoder.join();
+        analyzer.join();
+        presenter.join();
+    }
+
+    /**
+     * Stops every stage right away, dropping whatever is still queued. The
+     * threads may still be finishing an item; see {@link #awaitStopped}.
+     */
+    public synchronized void stop() {
+        chunks.close();
+        frames.close();
+        results.close();
+        if (decoderThread != null) {
+            decoderThread.interrupt();
+            analyzerThread.interrupt();
+            presenterThread.interrupt();
+        }
+    }
+
+    /**
+     * Waits up to {@code timeoutMillis} for the stage threads to end, e.g.
+     * after {@link #stop}. Until this returns true the analyzer and the
+     * history still belong to the analyzer thread.
+     *
+     * @return true if every stage has ended or the pipeline never started
+     */
+    public boolean awaitStopped(long timeoutMillis) throws InterruptedException {
+        Thread[] stages;
+        synchronized (this) {
+            if (decoderThread == null) {
+                return true;
+            }
+            stages = new Thread[] {decoderThread, analyzerThread, presenterThread};
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Thread stage : stages) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0) {
+                TimeUnit.NANOSECONDS.timedJoin(stage, remaining);
+            }
+            if (stage.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void runDecoder() {
+        Chunk chunk = new Chunk();
+        ReceivedFrame received = new ReceivedFrame();
+        Tracer tracer = this.tracer;
+        long resyncs = 0;
+        long duplicates = 0;
+        long lost = 0;
+        while (chunks.take(chunk)) {
+            long start = System.nanoTime();
+            if (chunk.length == Chunk.STREAM_START) {
+                decoder.reset();
+                sequenceFilter.connectionEnded();
+                continue;
+            }
+            tracer.beginSection("decode");
+            decoder.feed(chunk.data, 0, chunk.length);
+            int decoded = 0;
+            while (decoder.next(received.frame)) {
+                if (!sequenceFilter.accept(received.frame)) {
+                    continue;
+                }
+                received.receivedNanos = chunk.receivedNanos;
+                if (frames.offer(received)) {
+                    decoded++;
+                } else {
+                    undeliveredFrames.increment();
+                }
+            }
+            tracer.endSection();
+            framesReceived.add(decoded);
+            // The decoder's counters are only safe to read here, on its own thread
+            parseErrors.add(decoder.getResyncCount() - resyncs);
+            resyncs = decoder.getResyncCount();
+            duplicateFrames.add(sequenceFilter.getDuplicateCount() - duplicates);
+            duplicates = sequenceFilter.getDuplicateCount();
+            lostFrames.add(sequenceFilter.getLostCount() - lost);
+            lost = sequenceFilter.getLostCount();
+            decoderMetrics.record(System.nanoTime() - start);
+        }
+        frames.close();
+    }
+
+    private void runAnalyzer() {
+        ReceivedFrame received = new ReceivedFrame();
+        AnalysisResult result = new AnalysisResult();
+        SensorHistory history = this.history;
+        AnalysisListener listener = this.analysisListener;
+        StateTracker stateTracker = this.stateTracker;
+        Tracer tracer = this.tracer;
+        EmotionalState previous = EmotionalState.UNKNOWN;
+        while (frames.take(received)) {
+            long start = System.nanoTime();
+            tracer.beginSection("analyze");
+            analyzer.addFrame(received.frame, received.receivedNanos);
+            if (stateTracker != null) {
+                long timestamp = received.frame.timestampNanos != SensorFrame.NO_TIMESTAMP
+                        ? received.frame.timestampNanos
+                        : received.receivedNanos;
+                stateTracker.update(analyzer, timestamp);
+                result.state = stateTracker.getState();
+            } else {
+                result.state = analyzer.analyzeEmotionalState();
+            }
+            if (history != null) {
+                history.record(received.frame, received.receivedNanos, result.state);
+            }
+            result.stateChanged = result.state != previous;
+            previous = result.state;
+            result.enoughData = analyzer.hasEnoughData();
+            result.frame.copyFrom(received.frame);
+            result.receivedNanos = received.receivedNanos;
+            if (listener != null) {
+                listener.onAnalysis(result);
+            }
+            tracer.endSection();
+            decisions[result.state.ordinal()].increment();
+            if (result.stateChanged) {
+                stateChanges.increment();
+            }
+            results.offer(result);
+            analyzerMetrics.record(System.nanoTime() - start);
+        }
+        results.close();
+    }
+
+    private void runPresenter() {
+        AnalysisResult result = new AnalysisResult();
+        Tracer tracer = this.tracer;
+        while (results.take(result)) {
+            long start = System.nanoTime();
+            tracer.beginSection("present");
+            presenter.present(result);
+            tracer.endSection();
+            long end = System.nanoTime();
+            presenterMetrics.record(end - start);
+            endToEndMetrics.record(end - result.receivedNanos);
+        }
+    }
+
+    public StageMetrics getDecoderMetrics() {
+        return decoderMetrics;
+    }
+
+    public StageMetrics getAnalyzerMetrics() {
+        return analyzerMetrics;
+    }
+
+    public StageMetrics getPresenterMetrics() {
+        return presenterMetrics;
+    }
+
+    /** From the socket read that delivered a frame until its result was presented. */
+    public StageMetrics getEndToEndMetrics() {
+        return endToEndMetrics;
+    }
+
+    /** Decoder counters; read them after {@link #shutdown} for exact values. */
+    public StreamFrameDecoder getDecoder() {
+        return decoder;
+    }
+
+    static final class Chunk implements BoundedSpscQueue.Slot<Chunk> {
+        // Marks the start of a new stream rather than carrying bytes
+        static final int STREAM_START = -1;
+
+        final byte[] data = new byte[CHUNK_SIZE];
+        int length;
+        long receivedNanos;
+
+        @Override
+        public void copyFrom(Chunk other) {
+            length = other.length;
+            receivedNanos = other.receivedNanos;
+            if (other.length > 0) {
+                System.arraycopy(other.data, 0, data, 0, other.length);
+            }
+        }
+    }
+
+    static final class ReceivedFrame implements BoundedSpscQueue.Slot<ReceivedFrame> {
+        final SensorFrame frame = new SensorFrame();
+        long receivedNanos;
+
+        @Override
+        public void copyFrom(ReceivedFrame other) {
+            frame.copyFrom(other.frame);
+            receivedNanos = other.receivedNanos;
+        }
+    }
+
+    /** Outcome of analyzing one frame. Reused; copy what you keep. */
+    public static final class AnalysisResult implements BoundedSpscQueue.Slot<AnalysisResult> {
+        public EmotionalState state = EmotionalState.UNKNOWN;
+        // Differs from the state of the frame before. Presenters only see the
+        // newest result, so they should compare with what they last showed.
+        public boolean stateChanged;
+        public boolean enoughData;
+        // The frame that led to this result
+        public final SensorFrame frame = new SensorFrame();
+        // System.nanoTime() when the frame's bytes were read
+        public long receivedNanos;
+
+        @Override
+        public void copyFrom(AnalysisResult other) {
+            state = other.state;
+            stateChanged = other.stateChanged;
+            enoughData = other.enoughData;
+            frame.copyFrom(other.frame);
+            receivedNanos = other.receivedNanos;
+        }
+    }
+}
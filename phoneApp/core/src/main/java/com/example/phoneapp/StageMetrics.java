@@ -0,0 +1,74 @@
+package com.example.phoneapp;
+
+import com.example.phoneapp.metrics.LatencyHistogram;
+
+import java.util.Locale;
+
+/**
+ * Counters for one pipeline stage: how much is waiting in its input queue
+ * and how long it takes per item. Written by the stage's own thread only,
+ * readable from anywhere. Without an input queue it is just a latency
+ * tracker, e.g. for end-to-end latency.
+ */
+public final class StageMetrics {
+    private final String name;
+    private final BoundedSpscQueue<?> input;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    StageMetrics(String name, BoundedSpscQueue<?> input) {
+        this.name = name;
+        this.input = input;
+    }
+
+    void record(long nanos) {
+        latency.record(nanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getItems() {
+        return latency.getCount();
+    }
+
+    public int getQueueDepth() {
+        return input == null ? 0 : input.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return input == null ? 0 : input.getMaxDepth();
+    }
+
+    public int getQueueCapacity() {
+        return input == null ? 0 : input.capacity();
+    }
+
+    /** Items lost to the input queue's overflow policy, dropped or coalesced. */
+    public long getDiscarded() {
+        return input == null ? 0 : input.getDropped() + input.getCoalesced();
+    }
+
+    public double getAverageLatencyMicros() {
+        return latency.getMeanNanos() / 1000.0;
+    }
+
+    public double getMaxLatencyMicros() {
+        return latency.getMaxNanos() / 1000.0;
+    }
+
+    /** Per-item latency distribution, in nanoseconds. */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "%s: %d items, queue %d/%d (max %d), discarded %d, avg %.1f us, p99 %.1f us, max %.1f us",
+                name, getItems(), getQueueDepth(), getQueueCapacity(), getMaxQueueDepth(),
+                getDiscarded(), getAverageLatencyMicros(),
+                latency.snapshot().getValueAtPercentile(99) / 1000.0, getMaxLatencyMicros());
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.phoneapp;
+
+/**
+ * One stretch of time the wearer spent in a single {@link EmotionalState},
+ * as kept by {@link StateTimeline}. Reusable.
+ */
+public final class StateEpisode {
+    public long startMillis;
+    // Exclusive; the time of the first sample after the episode
+    public long endMillis;
+    public EmotionalState state;
+    // NaN if no heart rate arrived during the episode
+    public float peakHeartRate;
+    // Mean acceleration magnitude, NaN if no movement arrived
+    public float meanMovement;
+
+    public long durationMillis() {
+        return endMillis - startMillis;
+    }
+
+    /** How much of {@code [fromMillis, toMillis)} the episode covers. */
+    public long overlapMillis(long fromMillis, long toMillis) {
+        return Math.max(0, Math.min(endMillis, toMillis) - Math.max(startMillis, fromMillis));
+    }
+
+    public void copyFrom(StateEpisode other) {
+        startMillis = other.startMillis;
+        endMillis = other.endMillis;
+        state = other.state;
+        peakHeartRate = other.peakHeartRate;
+        meanMovement = other.meanMovement;
+    }
+
+    @Override
+    public String toString() {
+        return state + " " + startMillis + ".." + endMillis;
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.phoneapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Every {@link StateEpisode} of one wearer, oldest first, so that "when was
+ * this user anxious last week, and for how long" is answered from the
+ * episodes rather than by analyzing the history again.
+ *
+ * <p>The state is reported as it is decided, and an episode is appended to
+ * the file when it ends: on a change of state, or when no sample arrived for
+ * {@link #MAX_GAP_MILLIS}. UNKNOWN is not kept.
+ *
+ * <pre>
+ * header   magic, version, record size
+ * records  start, end, state, peak heart rate, mean movement, CRC-32
+ * </pre>
+ *
+ * Records are fixed-size and grouped in blocks of {@value #BLOCK_EPISODES};
+ * the start of each block is kept in memory. A range query binary searches
+ * those starts, then reads from the block it lands in until past the range,
+ * so it costs O(log n + k). Only the tail can be torn by a crash, so on open
+ * the checksums are checked from the end back to the first intact record.
+ *
+ * <p>Not thread-safe; meant to be used from the thread that feeds the
+ * analyzer, like {@link TimeSeries}.
+ */
+public final class StateTimeline {
+    /** Receives episodes from a query. {@code episode} is reused between calls. */
+    public interface EpisodeVisitor {
+        void visit(StateEpisode episode);
+    }
+
+    static final int BLOCK_EPISODES = 128;
+    /** Longer silences end the episode at the last sample before them. */
+    public static final long MAX_GAP_MILLIS = 60_000L;
+
+    private static final int MAGIC = 0x53544c4e; // "STLN"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 32;
+    private static final int CRC_OFFSET = 28;
+    private static final EmotionalState[] STATES = EmotionalState.values();
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer block = ByteBuffer.allocate(BLOCK_EPISODES * RECORD_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+    private final StateEpisode scratch = new StateEpisode();
+    private long count;
+    // Start of the first episode of each block
+    private long[] blockStarts = new long[16];
+    private int blockCount;
+    private long lastEndMillis = Long.MIN_VALUE;
+    private long writeFailures;
+
+    // The episode in progress
+    private final StateEpisode current = new StateEpisode();
+    private boolean open;
+    private long lastMillis;
+    private double movementSum;
+    private long movementCount;
+
+    public StateTimeline(File file) throws IOException {
+        this.file = file;
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        try {
+            openExisting();
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    private void openExisting() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        if (raf.length() < HEADER_SIZE) {
+            header.putInt(0, MAGIC).putShort(4, VERSION).putInt(8, RECORD_SIZE);
+            channel.truncate(0);
+            channel.write(header, 0);
+            return;
+        }
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION || header.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Not a state timeline: " + file);
+        }
+        count = (raf.length() - HEADER_SIZE) / RECORD_SIZE;
+        while (count > 0 && !readRecord(count - 1, scratch)) {
+            count--;
+        }
+        if (raf.length() != offset(count)) {
+            channel.truncate(offset(count));
+        }
+        for (long index = 0; index < count; index += BLOCK_EPISODES) {
+            if (readRecord(index, scratch)) {
+                addBlock(scratch.startMillis);
+            } else {
+                // Searching from the block before costs a read, not a wrong answer
+                addBlock(blockCount > 0 ? blockStarts[blockCount - 1] : Long.MIN_VALUE);
+            }
+        }
+        if (count > 0) {
+            readRecord(count - 1, scratch);
+            lastEndMillis = scratch.endMillis;
+        }
+    }
+
+    /**
+     * Reports the state at {@code timeMillis}, normally once per sample.
+     * Ends the episode in progress if the state changed or the samples
+     * stopped for a while, and starts the next one.
+     */
+    public void update(long timeMillis, EmotionalState state) {
+        if (open) {
+            if (timeMillis - lastMillis > MAX_GAP_MILLIS) {
+                finish(lastMillis);
+            } else if (state != current.state) {
+                finish(Math.max(timeMillis, lastMillis));
+            }
+        }
+        if (!open && state != EmotionalState.UNKNOWN) {
+            // Never before what is already on disk, or the file would be out of order
+            long start = Math.max(timeMillis, lastEndMillis);
+            current.startMillis = start;
+            current.endMillis = start;
+            current.state = state;
+            current.peakHeartRate = Float.NaN;
+            movementSum = 0;
+            movementCount = 0;
+            open = true;
+            lastMillis = start;
+        }
+        if (open) {
+            lastMillis = Math.max(lastMillis, timeMillis);
+        }
+    }
+
+    /** Counts towards the episode in progress, if any. */
+    public void addHeartRate(float bpm) {
+        if (open && !(bpm <= current.peakHeartRate)) {
+            current.peakHeartRate = bpm;
+        }
+    }
+
+    /** {@code magnitude} is that of the acceleration, gravity included. */
+    public void addMovement(float magnitude) {
+        if (open) {
+            movementSum += magnitude;
+            movementCount++;
+        }
+    }
+
+    private void finish(long endMillis) {
+        current.endMillis = endMillis;
+        current.meanMovement = movementCount > 0 ? (float) (movementSum / movementCount) : Float.NaN;
+        open = false;
+        try {
+            append(current);
+        } catch (IOException e) {
+            writeFailures++;
+        }
+    }
+
+    private void append(StateEpisode episode) throws IOException {
+        record.clear();
+        record.putLong(0, episode.startMillis);
+        record.putLong(8, episode.endMillis);
+        record.putInt(16, episode.state.ordinal());
+        record.putFloat(20, episode.peakHeartRate);
+        record.putFloat(24, episode.meanMovement);
+        crc.reset();
+        crc.update(record.array(), 0, CRC_OFFSET);
+        record.putInt(CRC_OFFSET, (int) crc.getValue());
+        long position = offset(count);
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        if (count % BLOCK_EPISODES == 0) {
+            addBlock(episode.startMillis);
+        }
+        count++;
+        lastEndMillis = episode.endMillis;
+    }
+
+    private void addBlock(long startMillis) {
+        if (blockCount == blockStarts.length) {
+            blockStarts = Arrays.copyOf(blockStarts, blockCount * 2);
+        }
+        blockStarts[blockCount++] = startMillis;
+    }
+
+    /**
+     * Visits every episode overlapping {@code [fromMillis, toMillis)},
+     * oldest first, the one in progress included with its end so far.
+     *
+     * @param state only episodes in this state, or null for all of them
+     * @return the number of episodes visited
+     */
+    public long visit(long fromMillis, long toMillis, EmotionalState state, EpisodeVisitor visitor)
+            throws IOException {
+        long visited = 0;
+        // Episodes don't overlap, so nothing before the block holding fromMillis can reach it
+        int first = Arrays.binarySearch(blockStarts, 0, blockCount, fromMillis);
+        if (first < 0) {
+            first = Math.max(0, -first - 2);
+        }
+        while (first > 0 && blockStarts[first - 1] == fromMillis) {
+            first--;
+        }
+        long index = (long) first * BLOCK_EPISODES;
+        while (index < count) {
+            int batch = (int) Math.min(BLOCK_EPISODES, count - index);
+            block.clear().limit(batch * RECORD_SIZE);
+            readFully(block, offset(index));
+            for (int i = 0; i < batch; i++) {
+                if (!decode(block, i * RECORD_SIZE, scratch)) {
+                    // Damaged since it was written; the rest of the file is still in order
+                    continue;
+                }
+                if (scratch.startMillis >= toMillis) {
+                    return visited;
+                }
+                if (scratch.endMillis > fromMillis && (state == null || scratch.state == state)) {
+                    visitor.visit(scratch);
+                    visited++;
+                }
+            }
+            index += batch;
+        }
+        if (open && current.startMillis < toMillis && lastMillis > fromMillis
+                && (state == null || current.state == state)) {
+            scratch.copyFrom(current);
+            scratch.endMillis = lastMillis;
+            scratch.meanMovement = movementCount > 0 ? (float) (movementSum / movementCount) : Float.NaN;
+            visitor.visit(scratch);
+            visited++;
+        }
+        return visited;
+    }
+
+    /** Time spent in {@code state} within {@code [fromMillis, toMillis)}. */
+    public long totalMillis(EmotionalState state, long fromMillis, long toMillis) throws IOException {
+        long[] total = new long[1];
+        visit(fromMillis, toMillis, state, episode -> total[0] += episode.overlapMillis(fromMillis, toMillis));
+        return total[0];
+    }
+
+    /** Episodes on disk; the one in progress is not counted. */
+    public long size() {
+        return count;
+    }
+
+    public long getWriteFailures() {
+        return writeFailures;
+    }
+
+    /** Episodes reach the OS as they end; this also gets them onto storage. */
+    public void flush() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            writeFailures++;
+        }
+    }
+
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    private boolean readRecord(long index, StateEpisode out) throws IOException {
+        record.clear();
+        readFully(record, offset(index));
+        return decode(record, 0, out);
+    }
+
+    // False if the checksum does not match
+    private boolean decode(ByteBuffer buffer, int offset, StateEpisode out) {
+        crc.reset();
+        crc.update(buffer.array(), offset, CRC_OFFSET);
+        int state = buffer.getInt(offset + 16);
+        if (buffer.getInt(offset + CRC_OFFSET) != (int) crc.getValue() || state < 0 || state >= STATES.length) {
+            return false;
+        }
+        out.startMillis = buffer.getLong(offset);
+        out.endMillis = buffer.getLong(offset + 8);
+        out.state = STATES[state];
+        out.peakHeartRate = buffer.getFloat(offset + 20);
+        out.meanMovement = buffer.getFloat(offset + 24);
+        return true;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of " + file);
+            }
+            position += read;
+        }
+    }
+
+    private static long offset(long index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+}
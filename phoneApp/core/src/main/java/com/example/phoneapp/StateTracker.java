@@ -0,0 +1,147 @@
+package com.example.phoneapp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steadies the classifier's output before anything acts on it. Heart rate
+ * hovering around a threshold would otherwise flip the state several times
+ * a second, and each flip rebuilds the recommendation and the UI.
+ *
+ * <p>Two things keep the current state until it is really over. Hysteresis:
+ * the classifier must not give it back with heart rate moved
+ * {@code hysteresisBpm} up or down, so a threshold counts as crossed only
+ * once heart rate is clear of it. Dwell: that must then hold for
+ * {@code dwellMillis} of sensor time without a break, after which the
+ * latest verdict is taken. Leaving or entering UNKNOWN is immediate, so
+ * the first state shows up at once.
+ *
+ * <p>Not thread-safe, except {@link #getState}; meant for the analyzer thread.
+ */
+public final class StateTracker {
+    public static final long DEFAULT_DWELL_MILLIS = 5_000;
+    public static final float DEFAULT_HYSTERESIS_BPM = 2f;
+
+    /** Size of {@link #writeTo}'s output. */
+    public static final int BYTES = 4 + 4 + 8;
+
+    private static final long NOT_LEAVING = Long.MIN_VALUE;
+    private static final EmotionalState[] STATES = EmotionalState.values();
+
+    private final long dwellNanos;
+    private final float hysteresisBpm;
+    private final float[] features = new float[EmotionalStateClassifier.FEATURE_COUNT];
+    private final float[] shifted = new float[EmotionalStateClassifier.FEATURE_COUNT];
+
+    private volatile EmotionalState state = EmotionalState.UNKNOWN;
+    private EmotionalState previousState = EmotionalState.UNKNOWN;
+    // Since when every verdict was clear of the state, or NOT_LEAVING
+    private long leavingSinceNanos = NOT_LEAVING;
+    private long transitions;
+
+    public StateTracker() {
+        this(DEFAULT_DWELL_MILLIS, DEFAULT_HYSTERESIS_BPM);
+    }
+
+    public StateTracker(long dwellMillis, float hysteresisBpm) {
+        this.dwellNanos = TimeUnit.MILLISECONDS.toNanos(dwellMillis);
+        this.hysteresisBpm = hysteresisBpm;
+    }
+
+    /**
+     * Classifies what {@code analyzer} has now with its own classifier.
+     *
+     * @param timestampNanos sensor time of the frame that was just added
+     * @return true if the state changed
+     */
+    public boolean update(EmotionalStateAnalyzer analyzer, long timestampNanos) {
+        return update(analyzer.getClassifier(), analyzer.getFeatures(features), timestampNanos);
+    }
+
+    /** Same, for a feature vector indexed as in {@link EmotionalStateClassifier}; left unchanged. */
+    public boolean update(EmotionalStateClassifier classifier, float[] input, long timestampNanos) {
+        EmotionalState raw = classifier.classify(input);
+        if (raw == state) {
+            leavingSinceNanos = NOT_LEAVING;
+            return false;
+        }
+        if (raw == EmotionalState.UNKNOWN || state == EmotionalState.UNKNOWN) {
+            return change(raw);
+        }
+        if (!clearOfState(classifier, input)) {
+            leavingSinceNanos = NOT_LEAVING;
+            return false;
+        }
+        // A sensor clock that went back means the watch rebooted; start the dwell over
+        if (leavingSinceNanos == NOT_LEAVING || timestampNanos < leavingSinceNanos) {
+            leavingSinceNanos = timestampNanos;
+        }
+        if (timestampNanos - leavingSinceNanos >= dwellNanos) {
+            return change(raw);
+        }
+        return false;
+    }
+
+    // Only a verdict that differs pays for the two extra classifications
+    private boolean clearOfState(EmotionalStateClassifier classifier, float[] input) {
+        if (hysteresisBpm <= 0) {
+            return true;
+        }
+        System.arraycopy(input, 0, shifted, 0, shifted.length);
+        shiftHeartRate(hysteresisBpm);
+        if (classifier.classify(shifted) == state) {
+            return false;
+        }
+        shiftHeartRate(-2 * hysteresisBpm);
+        return classifier.classify(shifted) != state;
+    }
+
+    private void shiftHeartRate(float bpm) {
+        shifted[EmotionalStateClassifier.HEART_RATE] += bpm;
+        shifted[EmotionalStateClassifier.AVERAGE_HEART_RATE] += bpm;
+    }
+
+    private boolean change(EmotionalState next) {
+        previousState = state;
+        state = next;
+        leavingSinceNanos = NOT_LEAVING;
+        transitions++;
+        return true;
+    }
+
+    /** The steady state, the one before it, and how long it has been on its way out. */
+    public void writeTo(ByteBuffer out) {
+        out.putInt(state.ordinal()).putInt(previousState.ordinal()).putLong(leavingSinceNanos);
+    }
+
+    /**
+     * Restores what {@link #writeTo} wrote, before the first update.
+     *
+     * @throws IllegalArgumentException if a state is not one this version knows
+     */
+    public void readFrom(ByteBuffer in) {
+        int current = in.getInt();
+        int previous = in.getInt();
+        long leavingSince = in.getLong();
+        if (current < 0 || current >= STATES.length || previous < 0 || previous >= STATES.length) {
+            throw new IllegalArgumentException("Unknown state: " + current + ", " + previous);
+        }
+        state = STATES[current];
+        previousState = STATES[previous];
+        leavingSinceNanos = leavingSince;
+    }
+
+    /** The steady state; safe to read from any thread. */
+    public EmotionalState getState() {
+        return state;
+    }
+
+    /** What the state was before the last change. */
+    public EmotionalState getPreviousState() {
+        return previousState;
+    }
+
+    public long getTransitionCount() {
+        return transitions;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.phoneapp;
+
+import static com.example.phoneapp.EmotionalStateAnalyzer.ANXIETY_HR_THRESHOLD;
+import static com.example.phoneapp.EmotionalStateAnalyzer.ANXIETY_RMSSD_THRESHOLD;
+import static com.example.phoneapp.EmotionalStateAnalyzer.CALM_HR_THRESHOLD;
+import static com.example.phoneapp.EmotionalStateAnalyzer.STRESS_HR_THRESHOLD;
+import static com.example.phoneapp.EmotionalStateAnalyzer.STRESS_RMSSD_THRESHOLD;
+
+/**
+ * The built-in thresholds as plain code; what the analyzer uses until a
+ * rule table is loaded. {@code default-rules.txt} says the same thing.
+ */
+public final class ThresholdClassifier implements EmotionalStateClassifier {
+    public static final ThresholdClassifier INSTANCE = new ThresholdClassifier();
+
+    private ThresholdClassifier() {
+    }
+
+    @Override
+    public EmotionalState classify(float[] features) {
+        float heartRate = features[HEART_RATE];
+        // NaN compares false, so without beat data this falls back to heart rate alone
+        boolean lowHrv = features[RMSSD] < STRESS_RMSSD_THRESHOLD;
+        boolean veryLowHrv = features[RMSSD] < ANXIETY_RMSSD_THRESHOLD;
+
+        if (heartRate > ANXIETY_HR_THRESHOLD ||
+                (heartRate > STRESS_HR_THRESHOLD && veryLowHrv)) {
+            return EmotionalState.ANXIOUS;
+        }
+
+        if (heartRate > STRESS_HR_THRESHOLD ||
+                (heartRate >= CALM_HR_THRESHOLD && lowHrv)) {
+            return EmotionalState.STRESSED;
+        }
+
+        if (heartRate < CALM_HR_THRESHOLD) {
+            return EmotionalState.CALM;
+        }
+
+        return EmotionalState.NORMAL;
+    }
+}
@@ -0,0 +1,397 @@
+package com.example.phoneapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Append-only history of one sensor, stored column by column in fixed-size
+ * memory-mapped segment files (see {@link TimeSeriesSegment}). Timestamps are
+ * kept with microsecond resolution, as deltas from the previous sample.
+ *
+ * <p>When the newest segment is full a new one is started, and once there
+ * are more than {@code maxSegments} the oldest file is deleted, so retention
+ * is bounded by {@code maxSegments * segmentCapacity} samples.
+ *
+ * <p>With {@code maxArchivedSegments} the oldest segment is not simply
+ * deleted but first compressed into an {@link ArchivedSegment}, typically a
+ * fraction of the size, and up to that many are kept behind the hot ones.
+ * Scans and aggregates cover both tiers; archived samples are kept to the
+ * millisecond.
+ *
+ * <p>Appending stores straight into the mapping and allocates nothing,
+ * except when a segment rolls over. Not thread-safe; meant to be used from
+ * the thread that feeds the analyzer.
+ */
+public final class TimeSeries {
+    private static final String SUFFIX = ".seg";
+    private static final String ARCHIVE_SUFFIX = ".gor";
+
+    /** Receives samples from a scan. {@code values} is reused between calls. */
+    public interface SampleVisitor {
+        void visit(long timestampNanos, float[] values);
+    }
+
+    /** Receives one bucket of a downsampled read. */
+    public interface BucketVisitor {
+        void visit(long bucketStartNanos, Aggregate aggregate);
+    }
+
+    private final File directory;
+    private final int columns;
+    private final int segmentCapacity;
+    private final int maxSegments;
+    private final int maxArchivedSegments;
+    private final List<TimeSeriesSegment> segments = new ArrayList<>();
+    private final List<ArchivedSegment> archived = new ArrayList<>();
+    private final float[] appendValues;
+    private final float[] scanValues;
+    private final Aggregate bucket = new Aggregate();
+    // Only needed once something is archived
+    private GorillaEncoder encoder;
+    private GorillaDecoder decoder;
+    private byte[] archiveBuffer;
+    private long archiveFailures;
+
+    private long nextSequence;
+    private long lastMicros = Long.MIN_VALUE;
+
+    public TimeSeries(File directory, int columns, int segmentCapacity, int maxSegments) throws IOException {
+        this(directory, columns, segmentCapacity, maxSegments, 0);
+    }
+
+    public TimeSeries(File directory, int columns, int segmentCapacity, int maxSegments,
+                      int maxArchivedSegments) throws IOException {
+        if (columns <= 0 || segmentCapacity <= 0 || maxSegments <= 0) {
+            throw new IllegalArgumentException("Columns, segment capacity and segment count must be positive");
+        }
+        if (maxArchivedSegments < 0) {
+            throw new IllegalArgumentException("Archived segment count must not be negative");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        this.columns = columns;
+        this.segmentCapacity = segmentCapacity;
+        this.maxSegments = maxSegments;
+        this.maxArchivedSegments = maxArchivedSegments;
+        appendValues = new float[columns];
+        scanValues = new float[columns];
+        openExisting();
+    }
+
+    private void openExisting() throws IOException {
+        File[] archives = directory.listFiles((dir, name) -> name.endsWith(ARCHIVE_SUFFIX));
+        if (archives != null) {
+            Arrays.sort(archives);
+            for (File file : archives) {
+                if (parseSequence(file.getName(), ARCHIVE_SUFFIX) < 0) {
+                    continue;
+                }
+                try {
+                    archived.add(ArchivedSegment.open(file, columns));
+                } catch (IOException e) {
+                    // Only old data is lost; the hot tier is unaffected
+                    archiveFailures++;
+                    file.delete();
+                }
+            }
+        }
+
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            long sequence = parseSequence(file.getName(), SUFFIX);
+            if (sequence < 0) {
+                continue;
+            }
+            TimeSeriesSegment segment = TimeSeriesSegment.open(file, columns);
+            segments.add(segment);
+            nextSequence = sequence + 1;
+            if (!segment.isEmpty()) {
+                lastMicros = segment.lastMicros();
+            }
+        }
+        enforceRetention();
+    }
+
+    private static long parseSequence(String name, String suffix) {
+        try {
+            return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public void append(long timestampNanos, float value) throws IOException {
+        appendValues[0] = value;
+        append(timestampNanos, appendValues);
+    }
+
+    public void append(long timestampNanos, float x, float y, float z) throws IOException {
+        appendValues[0] = x;
+        appendValues[1] = y;
+        appendValues[2] = z;
+        append(timestampNanos, appendValues);
+    }
+
+    /** Appends one sample; {@code values} holds one value per column. */
+    public void append(long timestampNanos, float[] values) throws IOException {
+        long micros = Math.floorDiv(timestampNanos, 1000L);
+        if (micros < lastMicros) {
+            // Slightly out of order; keep each segment monotonic
+            micros = lastMicros;
+        }
+        TimeSeriesSegment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || !segment.append(micros, values)) {
+            segment = startSegment();
+            segment.append(micros, values);
+        }
+        lastMicros = micros;
+    }
+
+    private TimeSeriesSegment startSegment() throws IOException {
+        File file = new File(directory, String.format(Locale.ROOT, "%012d%s", nextSequence++, SUFFIX));
+        TimeSeriesSegment segment = TimeSeriesSegment.create(file, columns, segmentCapacity);
+        segments.add(segment);
+        enforceRetention();
+        return segment;
+    }
+
+    private void enforceRetention() {
+        while (segments.size() > maxSegments) {
+            TimeSeriesSegment oldest = segments.remove(0);
+            if (maxArchivedSegments > 0 && !oldest.isEmpty()) {
+                archive(oldest);
+            }
+            // Safe while still mapped; the space is freed once the mapping is collected
+            if (!oldest.file.delete()) {
+                oldest.file.deleteOnExit();
+            }
+        }
+        while (archived.size() > maxArchivedSegments) {
+            archived.remove(0).file.delete();
+        }
+    }
+
+    // A few milliseconds per segment, on the appending thread; failing only loses old data
+    private void archive(TimeSeriesSegment segment) {
+        String name = segment.file.getName();
+        File file = new File(directory, name.substring(0, name.length() - SUFFIX.length()) + ARCHIVE_SUFFIX);
+        if (encoder == null) {
+            encoder = new GorillaEncoder(columns);
+        }
+        try {
+            archived.add(ArchivedSegment.write(file, segment, columns, encoder));
+        } catch (IOException e) {
+            archiveFailures++;
+        }
+    }
+
+    /**
+     * Visits every sample with a timestamp in {@code [fromNanos, toNanos]},
+     * oldest first. Segments outside the range are skipped by their header.
+     *
+     * @return the number of samples visited
+     */
+    public long scan(long fromNanos, long toNanos, SampleVisitor visitor) {
+        long fromMicros = Math.floorDiv(fromNanos, 1000L);
+        long toMicros = Math.floorDiv(toNanos, 1000L);
+        long visited = 0;
+        for (int i = 0; i < archived.size(); i++) {
+            ArchivedSegment segment = archived.get(i);
+            if (segment.lastMicros() < fromMicros) {
+                continue;
+            }
+            if (segment.firstMicros() > toMicros) {
+                return visited;
+            }
+            visited += scanArchived(segment, fromMicros, toMicros, -1, null, visitor);
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            TimeSeriesSegment segment = segments.get(i);
+            if (segment.isEmpty() || segment.lastMicros() < fromMicros) {
+                continue;
+            }
+            if (segment.firstMicros() > toMicros) {
+                break;
+            }
+            visited += segment.scan(fromMicros, toMicros, scanValues, visitor);
+        }
+        return visited;
+    }
+
+    /**
+     * Count, min, max and sum of one column over {@code [fromNanos, toNanos]}.
+     * Segments that lie entirely inside the range are answered from their
+     * summaries; only the segments at the edges are read sample by sample.
+     */
+    public Aggregate aggregate(int column, long fromNanos, long toNanos, Aggregate out) {
+        checkColumn(column);
+        out.clear();
+        long fromMicros = Math.floorDiv(fromNanos, 1000L);
+        long toMicros = Math.floorDiv(toNanos, 1000L);
+        for (int i = 0; i < archived.size(); i++) {
+            ArchivedSegment segment = archived.get(i);
+            if (segment.lastMicros() < fromMicros || segment.firstMicros() > toMicros) {
+                continue;
+            }
+            if (segment.within(fromMicros, toMicros)) {
+                segment.addSummary(column, out);
+            } else {
+                scanArchived(segment, fromMicros, toMicros, column, out, null);
+            }
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            segments.get(i).aggregate(column, fromMicros, toMicros, out);
+        }
+        return out;
+    }
+
+    // Either visits the samples in range or adds one column of them to out
+    private int scanArchived(ArchivedSegment segment, long fromMicros, long toMicros,
+                             int column, Aggregate out, SampleVisitor visitor) {
+        try {
+            archiveBuffer = segment.read(archiveBuffer);
+        } catch (IOException e) {
+            archiveFailures++;
+            return 0;
+        }
+        if (decoder == null) {
+            decoder = new GorillaDecoder(columns);
+        }
+        decoder.reset(archiveBuffer, segment.dataOffset(), segment.dataLength(), segment.count());
+        int visited = 0;
+        while (decoder.next(scanValues)) {
+            long micros = decoder.getTimestampMillis() * 1000L;
+            if (micros < fromMicros) {
+                continue;
+            }
+            if (micros > toMicros) {
+                break;
+            }
+            if (visitor != null) {
+                visitor.visit(micros * 1000L, scanValues);
+            } else {
+                float value = scanValues[column];
+                out.add(1, value, value, value);
+            }
+            visited++;
+        }
+        return visited;
+    }
+
+    /**
+     * Splits {@code [fromNanos, toNanos)} into buckets of {@code bucketNanos}
+     * and visits the aggregate of each non-empty one, e.g. for a trend chart.
+     */
+    public void downsample(int column, long fromNanos, long toNanos, long bucketNanos,
+                           BucketVisitor visitor) {
+        if (bucketNanos <= 0) {
+            throw new IllegalArgumentException("Bucket size must be positive: " + bucketNanos);
+        }
+        for (long start = fromNanos; start < toNanos; start += bucketNanos) {
+            long end = Math.min(start + bucketNanos, toNanos) - 1;
+            aggregate(column, start, end, bucket);
+            if (bucket.count > 0) {
+                visitor.visit(start, bucket);
+            }
+        }
+    }
+
+    private void checkColumn(int column) {
+        if (column < 0 || column >= columns) {
+            throw new IndexOutOfBoundsException("Column " + column + " of " + columns);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (int i = 0; i < archived.size(); i++) {
+            size += archived.get(i).count();
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            size += segments.get(i).count();
+        }
+        return size;
+    }
+
+    public int getColumnCount() {
+        return columns;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public int getArchivedSegmentCount() {
+        return archived.size();
+    }
+
+    /** Samples in the archive; {@link #size} counts these as well. */
+    public long getArchivedSampleCount() {
+        long count = 0;
+        for (int i = 0; i < archived.size(); i++) {
+            count += archived.get(i).count();
+        }
+        return count;
+    }
+
+    /** What the archive takes on disk. */
+    public long getArchivedBytes() {
+        long bytes = 0;
+        for (int i = 0; i < archived.size(); i++) {
+            bytes += archived.get(i).fileSize();
+        }
+        return bytes;
+    }
+
+    /** Archives that could not be written or read back. */
+    public long getArchiveFailures() {
+        return archiveFailures;
+    }
+
+    /** Writes dirty pages to storage; appends are otherwise flushed by the OS. */
+    public void flush() {
+        for (int i = 0; i < segments.size(); i++) {
+            segments.get(i).force();
+        }
+    }
+
+    /** Running count/min/max/sum, reusable across queries. */
+    public static final class Aggregate {
+        public long count;
+        public float min;
+        public float max;
+        public double sum;
+
+        public Aggregate() {
+            clear();
+        }
+
+        void add(long count, float min, float max, double sum) {
+            this.count += count;
+            this.min = Math.min(this.min, min);
+            this.max = Math.max(this.max, max);
+            this.sum += sum;
+        }
+
+        public float mean() {
+            return count == 0 ? 0f : (float) (sum / count);
+        }
+
+        public void clear() {
+            count = 0;
+            min = Float.POSITIVE_INFINITY;
+            max = Float.NEGATIVE_INFINITY;
+            sum = 0;
+        }
+    }
+}
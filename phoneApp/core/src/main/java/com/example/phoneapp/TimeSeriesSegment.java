@@ -0,0 +1,242 @@
+package com.example.phoneapp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * One fixed-size, memory-mapped segment file of a {@link TimeSeries}.
+ *
+ * <pre>
+ * header   magic, version, columns, capacity, count,
+ *          first and last timestamp (microseconds),
+ *          min/max/sum per column
+ * times    int32[capacity]  microseconds since the previous sample, or
+ *                           if negative, minus the milliseconds since it
+ * column 0 float32[capacity]
+ * column 1 float32[capacity]
+ * ...
+ * </pre>
+ *
+ * A gap too long for a microsecond delta (about 35 minutes, e.g. a phone
+ * idle overnight) is stored in milliseconds instead, and the sample's time
+ * rounded down to match, so the segment does not have to roll over.
+ *
+ * <p>The file is sized up front, so appends are plain stores into the mapping.
+ * The count in the header is written last, after the sample, so a sample
+ * only becomes visible on reopen once it is complete.
+ */
+final class TimeSeriesSegment {
+    private static final int MAGIC = 0x54535347; // "TSSG"
+    // Version 2 added millisecond deltas; version 1 files read the same
+    private static final short VERSION = 2;
+
+    private static final int COUNT_OFFSET = 12;
+    private static final int FIRST_OFFSET = 16;
+    private static final int LAST_OFFSET = 24;
+    private static final int SUMMARY_OFFSET = 32;
+    private static final int SUMMARY_SIZE = 16; // float min, float max, double sum
+
+    final File file;
+    private final MappedByteBuffer buffer;
+    private final int columns;
+    private final int capacity;
+    private final int timesOffset;
+    private final int valuesOffset;
+
+    private int count;
+    private long firstMicros;
+    private long lastMicros;
+
+    private TimeSeriesSegment(File file, MappedByteBuffer buffer, int columns, int capacity) {
+        this.file = file;
+        this.buffer = buffer;
+        this.columns = columns;
+        this.capacity = capacity;
+        timesOffset = headerSize(columns);
+        valuesOffset = timesOffset + 4 * capacity;
+    }
+
+    static TimeSeriesSegment create(File file, int columns, int capacity) throws IOException {
+        TimeSeriesSegment segment = new TimeSeriesSegment(file,
+                map(file, fileSize(columns, capacity)), columns, capacity);
+        MappedByteBuffer b = segment.buffer;
+        b.putInt(0, MAGIC);
+        b.putShort(4, VERSION);
+        b.putShort(6, (short) columns);
+        b.putInt(8, capacity);
+        b.putInt(COUNT_OFFSET, 0);
+        for (int c = 0; c < columns; c++) {
+            int offset = SUMMARY_OFFSET + c * SUMMARY_SIZE;
+            b.putFloat(offset, Float.POSITIVE_INFINITY);
+            b.putFloat(offset + 4, Float.NEGATIVE_INFINITY);
+            b.putDouble(offset + 8, 0.0);
+        }
+        return segment;
+    }
+
+    static TimeSeriesSegment open(File file, int columns) throws IOException {
+        MappedByteBuffer b = map(file, file.length());
+        if (b.capacity() < SUMMARY_OFFSET || b.getInt(0) != MAGIC
+                || b.getShort(4) < 1 || b.getShort(4) > VERSION) {
+            throw new IOException("Not a time series segment: " + file);
+        }
+        if (b.getShort(6) != columns) {
+            throw new IOException("Expected " + columns + " columns in " + file + ", found " + b.getShort(6));
+        }
+        int capacity = b.getInt(8);
+        if (capacity <= 0 || b.capacity() < fileSize(columns, capacity)) {
+            throw new IOException("Truncated segment: " + file);
+        }
+        TimeSeriesSegment segment = new TimeSeriesSegment(file, b, columns, capacity);
+        segment.count = Math.min(Math.max(b.getInt(COUNT_OFFSET), 0), capacity);
+        segment.firstMicros = b.getLong(FIRST_OFFSET);
+        segment.lastMicros = b.getLong(LAST_OFFSET);
+        return segment;
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+
+    static int headerSize(int columns) {
+        return SUMMARY_OFFSET + columns * SUMMARY_SIZE;
+    }
+
+    static long fileSize(int columns, int capacity) {
+        return headerSize(columns) + 4L * capacity * (1 + columns);
+    }
+
+    /**
+     * @return false if the segment is full or the gap since the last sample
+     *         does not fit even a millisecond delta (about 24 days); the
+     *         caller then starts a new segment
+     */
+    boolean append(long micros, float[] values) {
+        if (count == capacity) {
+            return false;
+        }
+        long delta = count == 0 ? 0 : micros - lastMicros;
+        int stored;
+        if (delta <= Integer.MAX_VALUE) {
+            stored = (int) delta;
+        } else if (delta / 1000 <= Integer.MAX_VALUE) {
+            stored = (int) -(delta / 1000);
+            micros = lastMicros + delta / 1000 * 1000;
+        } else {
+            return false;
+        }
+
+        buffer.putInt(timesOffset + 4 * count, stored);
+        for (int c = 0; c < columns; c++) {
+            float value = values[c];
+            buffer.putFloat(valuesOffset + 4 * (c * capacity + count), value);
+
+            int summary = SUMMARY_OFFSET + c * SUMMARY_SIZE;
+            if (value < buffer.getFloat(summary)) {
+                buffer.putFloat(summary, value);
+            }
+            if (value > buffer.getFloat(summary + 4)) {
+                buffer.putFloat(summary + 4, value);
+            }
+            buffer.putDouble(summary + 8, buffer.getDouble(summary + 8) + value);
+        }
+
+        if (count == 0) {
+            firstMicros = micros;
+            buffer.putLong(FIRST_OFFSET, micros);
+        }
+        lastMicros = micros;
+        buffer.putLong(LAST_OFFSET, micros);
+        buffer.putInt(COUNT_OFFSET, ++count);
+        return true;
+    }
+
+    /**
+     * Visits the samples in {@code [fromMicros, toMicros]}.
+     *
+     * @return the number of samples visited
+     */
+    int scan(long fromMicros, long toMicros, float[] scratch, TimeSeries.SampleVisitor visitor) {
+        int visited = 0;
+        long micros = firstMicros;
+        for (int i = 0; i < count; i++) {
+            micros += deltaAt(i);
+            if (micros < fromMicros) {
+                continue;
+            }
+            if (micros > toMicros) {
+                break;
+            }
+            for (int c = 0; c < columns; c++) {
+                scratch[c] = buffer.getFloat(valuesOffset + 4 * (c * capacity + i));
+            }
+            visitor.visit(micros * 1000L, scratch);
+            visited++;
+        }
+        return visited;
+    }
+
+    /** Adds the samples of one column in {@code [fromMicros, toMicros]} to {@code out}. */
+    void aggregate(int column, long fromMicros, long toMicros, TimeSeries.Aggregate out) {
+        if (count == 0 || toMicros < firstMicros || fromMicros > lastMicros) {
+            return;
+        }
+        if (fromMicros <= firstMicros && toMicros >= lastMicros) {
+            // Whole segment: the header summary answers without touching the data
+            int summary = SUMMARY_OFFSET + column * SUMMARY_SIZE;
+            out.add(count, buffer.getFloat(summary), buffer.getFloat(summary + 4),
+                    buffer.getDouble(summary + 8));
+            return;
+        }
+        long micros = firstMicros;
+        int columnOffset = valuesOffset + 4 * column * capacity;
+        for (int i = 0; i < count; i++) {
+            micros += deltaAt(i);
+            if (micros < fromMicros) {
+                continue;
+            }
+            if (micros > toMicros) {
+                break;
+            }
+            float value = buffer.getFloat(columnOffset + 4 * i);
+            out.add(1, value, value, value);
+        }
+    }
+
+    private long deltaAt(int index) {
+        int stored = buffer.getInt(timesOffset + 4 * index);
+        return stored >= 0 ? stored : -(long) stored * 1000;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    int count() {
+        return count;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    long firstMicros() {
+        return firstMicros;
+    }
+
+    long lastMicros() {
+        return lastMicros;
+    }
+}
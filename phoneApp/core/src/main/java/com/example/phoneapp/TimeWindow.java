@@ -0,0 +1,234 @@
+package com.example.phoneapp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sliding window over the samples of the last {@code duration}, keyed on the
+ * sensor timestamps that come with each frame rather than on a sample count.
+ * Heart rate (about 1 Hz) and the accelerometer (5-50 Hz) can then be
+ * windowed over the same stretch of time.
+ *
+ * <p>Samples live in a circular pair of arrays. Each add expires what has
+ * fallen out of the window from the head, which is amortized O(1) since
+ * every sample is expired at most once. Mean and variance are maintained
+ * with Welford's update, run forwards on add and backwards on expiry, so
+ * queries never rescan the window. The arrays only grow when the window
+ * holds more samples than ever before; in steady state nothing is allocated.
+ */
+public final class TimeWindow {
+    private static final int DEFAULT_INITIAL_CAPACITY = 64;
+
+    private final long durationNanos;
+
+    private long[] timestamps;
+    private float[] values;
+    private int head;
+    private int size;
+
+    private double mean;
+    private double m2;
+    private int removalsSinceRecompute;
+
+    // Timestamp of the first sample since the window was last empty
+    private long coverageStartNanos;
+    private long newestNanos;
+
+    public TimeWindow(long durationNanos) {
+        this(durationNanos, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public TimeWindow(long durationNanos, int initialCapacity) {
+        if (durationNanos <= 0) {
+            throw new IllegalArgumentException("Duration must be positive: " + durationNanos);
+        }
+        this.durationNanos = durationNanos;
+        timestamps = new long[Math.max(initialCapacity, 2)];
+        values = new float[timestamps.length];
+    }
+
+    public void add(long timestampNanos, float value) {
+        if (size > 0 && timestampNanos < newestNanos) {
+            if (timestampNanos < newestNanos - durationNanos) {
+                // The sensor clock went backwards, e.g. the watch rebooted
+                clear();
+            } else {
+                // Slightly out of order; keep the window monotonic
+                timestampNanos = newestNanos;
+            }
+        }
+
+        expireBefore(timestampNanos - durationNanos);
+
+        if (size == timestamps.length) {
+            grow();
+        }
+        int tail = (head + size) % timestamps.length;
+        timestamps[tail] = timestampNanos;
+        values[tail] = value;
+        if (size == 0) {
+            coverageStartNanos = timestampNanos;
+        }
+        size++;
+        newestNanos = timestampNanos;
+
+        double delta = value - mean;
+        mean += delta / size;
+        m2 += delta * (value - mean);
+    }
+
+    /**
+     * Drops samples that are older than {@code duration} before
+     * {@code nowNanos}, on the sensor clock. Useful when a stream goes quiet.
+     */
+    public void advanceTo(long nowNanos) {
+        expireBefore(nowNanos - durationNanos);
+    }
+
+    /** True once the window has been receiving samples for its whole duration. */
+    public boolean isFull() {
+        return size > 0 && newestNanos - coverageStartNanos >= durationNanos;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getNewestTimestampNanos() {
+        return newestNanos;
+    }
+
+    public float mean() {
+        return size == 0 ? 0f : (float) mean;
+    }
+
+    public float variance() {
+        return size == 0 ? 0f : (float) Math.max(0.0, m2 / size);
+    }
+
+    public float standardDeviation() {
+        return (float) Math.sqrt(variance());
+    }
+
+    /** Root mean square, i.e. sqrt(mean^2 + variance). */
+    public float rms() {
+        return size == 0 ? 0f : (float) Math.sqrt(mean * mean + Math.max(0.0, m2 / size));
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        mean = 0;
+        m2 = 0;
+        removalsSinceRecompute = 0;
+    }
+
+    /** Size of {@link #writeTo}'s output for the samples held now. */
+    public int serializedSize() {
+        return 8 + 4 + 8 + 8 + 8 + 8 + size * (8 + 4);
+    }
+
+    /**
+     * Writes the samples with the running mean and variance as they are, so
+     * {@link #readFrom} neither rescans nor drifts from what was written.
+     */
+    public void writeTo(ByteBuffer out) {
+        out.putLong(durationNanos).putInt(size);
+        out.putLong(coverageStartNanos).putLong(newestNanos);
+        out.putDouble(mean).putDouble(m2);
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % timestamps.length;
+            out.putLong(timestamps[index]).putFloat(values[index]);
+        }
+    }
+
+    /** Replaces the contents with what {@link #writeTo} wrote; the window must be as long. */
+    public void readFrom(ByteBuffer in) {
+        long storedDuration = in.getLong();
+        if (storedDuration != durationNanos) {
+            throw new IllegalArgumentException("Window is " + storedDuration + " ns, not " + durationNanos);
+        }
+        int storedSize = in.getInt();
+        if (storedSize < 0 || 8 * 4 + storedSize * (8L + 4) > in.remaining()) {
+            throw new IllegalArgumentException("Bad sample count: " + storedSize);
+        }
+        if (storedSize > timestamps.length) {
+            timestamps = new long[Integer.highestOneBit(storedSize - 1) << 1];
+            values = new float[timestamps.length];
+        }
+        coverageStartNanos = in.getLong();
+        newestNanos = in.getLong();
+        mean = in.getDouble();
+        m2 = in.getDouble();
+        for (int i = 0; i < storedSize; i++) {
+            timestamps[i] = in.getLong();
+            values[i] = in.getFloat();
+        }
+        head = 0;
+        size = storedSize;
+        removalsSinceRecompute = 0;
+    }
+
+    private void expireBefore(long cutoffNanos) {
+        // A sample exactly at the cutoff is still inside the window
+        while (size > 0 && timestamps[head] < cutoffNanos) {
+            removeOldest();
+        }
+    }
+
+    private void removeOldest() {
+        float value = values[head];
+        head = (head + 1) % timestamps.length;
+        size--;
+        if (size == 0) {
+            mean = 0;
+            m2 = 0;
+            removalsSinceRecompute = 0;
+            return;
+        }
+
+        double delta = value - mean;
+        mean -= delta / size;
+        m2 -= delta * (value - mean);
+
+        if (++removalsSinceRecompute >= timestamps.length) {
+            recompute();
+        }
+    }
+
+    private void recompute() {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[(head + i) % values.length];
+        }
+        double newMean = sum / size;
+        double newM2 = 0;
+        for (int i = 0; i < size; i++) {
+            double diff = values[(head + i) % values.length] - newMean;
+            newM2 += diff * diff;
+        }
+        mean = newMean;
+        m2 = newM2;
+        removalsSinceRecompute = 0;
+    }
+
+    private void grow() {
+        long[] newTimestamps = new long[timestamps.length * 2];
+        float[] newValues = new float[values.length * 2];
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % timestamps.length;
+            newTimestamps[i] = timestamps[index];
+            newValues[i] = values[index];
+        }
+        timestamps = newTimestamps;
+        values = newValues;
+        head = 0;
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.phoneapp.ingest;
+
+import com.example.phoneapp.AnalyzerSnapshot;
+import com.example.phoneapp.EmotionalStateAnalyzer;
+import com.example.phoneapp.SamplingAdvisor;
+import com.example.phoneapp.SensorHistory;
+import com.example.phoneapp.SensorPipeline;
+import com.example.phoneapp.StateTracker;
+import com.example.phoneapp.metrics.Counter;
+import com.example.shared.FrameEncoder;
+import com.example.shared.RateHint;
+import com.example.shared.SensorFrame;
+import com.example.shared.WireFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Everything the phone keeps for one watch: its own analyzer, the pipeline
+ * in front of it and, optionally, its history. Outlives connections, so a
+ * watch that reconnects picks up where its windows left off.
+ *
+ * <p>States are steadied by a {@link StateTracker} before anything acts on
+ * them, so the listener, the advisor and the UI only hear about changes
+ * that last.
+ *
+ * <p>The link is two-way: whenever the {@link SamplingAdvisor} changes its
+ * mind, and on every reconnect, the watch is sent a rate hint. Hints the
+ * analyzer decides on are written on a thread of the session's own, so a
+ * stalled link never holds up analysis.
+ *
+ * <p>Every {@link #SNAPSHOT_INTERVAL_MILLIS} the analyzer thread serializes
+ * an {@link AnalyzerSnapshot}, which is then written on the server's
+ * snapshot thread, so a killed app loses at most that much. Closing the
+ * server writes a last one.
+ */
+public final class DeviceSession {
+    public static final long SNAPSHOT_INTERVAL_MILLIS = 10_000;
+
+    private final String deviceId;
+    private final EmotionalStateAnalyzer analyzer;
+    private final SensorPipeline pipeline;
+    private final SensorHistory history;
+    private final AnalyzerSnapshot snapshot;
+    private final Executor snapshotWriter;
+    private final IngestServer.Listener listener;
+    private final StateTracker stateTracker = new StateTracker();
+    // Held by whichever connection is being read; the next one waits for it
+    private final Object readLock = new Object();
+    private final SamplingAdvisor samplingAdvisor = new SamplingAdvisor();
+    private final Object writeLock = new Object();
+    // Guarded by writeLock
+    private final ByteBuffer hintBuffer = ByteBuffer.allocate(WireFormat.frameSize(2));
+    private final Counter rateHintsSent = new Counter();
+    // A hint waiting for the hint writer; it sends whatever the advice is by then
+    private final AtomicBoolean hintPending = new AtomicBoolean();
+    // Starts its thread with the first hint
+    private final ExecutorService hintWriter;
+    // Analyzer thread
+    private long lastSnapshotNanos = System.nanoTime();
+
+    private SensorConnection connection;
+
+    DeviceSession(String deviceId, EmotionalStateAnalyzer analyzer, SensorPipeline pipeline,
+                  SensorHistory history, AnalyzerSnapshot snapshot, Executor snapshotWriter,
+                  IngestServer.Listener listener) {
+        this.deviceId = deviceId;
+        this.analyzer = analyzer;
+        this.pipeline = pipeline;
+        this.history = history;
+        this.snapshot = snapshot;
+        this.snapshotWriter = snapshotWriter;
+        this.listener = listener;
+        samplingAdvisor.setBaseline(analyzer.getBaseline());
+        hintWriter = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "ingest-hints-" + deviceId);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads {@code next} until it ends. A watch that reconnects before the
+     * phone noticed the old link died would otherwise wait for that link to
+     * time out, so the old connection is closed first.
+     */
+    void read(SensorConnection next, IngestServer.Listener listener) {
+        SensorConnection previous;
+        synchronized (this) {
+            previous = connection;
+            connection = next;
+        }
+        closeQuietly(previous);
+
+        synchronized (readLock) {
+            synchronized (this) {
+                if (connection != next) {
+                    // An even newer connection took over while this one waited
+                    closeQuietly(next);
+                    return;
+                }
+            }
+            listener.onConnected(deviceId);
+            // The watch may have missed the last hint. One that never got any
+            // samples at full rate already, so there is nothing to say yet.
+            if (samplingAdvisor.getLevel() != RateHint.LEVEL_HIGH || rateHintsSent.get() > 0) {
+                sendRateHint(next);
+            }
+            IOException error = null;
+            try {
+                pipeline.readFrom(next.getInputStream());
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                synchronized (this) {
+                    if (connection == next) {
+                        connection = null;
+                    }
+                }
+                closeQuietly(next);
+            }
+            listener.onDisconnected(deviceId, error);
+        }
+    }
+
+    /**
+     * Analyzer thread: passes on state changes, feeds the advisor, tells
+     * the watch if the advice changed, and takes snapshots when due.
+     */
+    void onAnalysis(SensorPipeline.AnalysisResult result) {
+        if (result.stateChanged) {
+            listener.onStateChanged(deviceId, stateTracker.getPreviousState(), result.state);
+        }
+        if (snapshot != null) {
+            long now = System.nanoTime();
+            if (now - lastSnapshotNanos >= TimeUnit.MILLISECONDS.toNanos(SNAPSHOT_INTERVAL_MILLIS)) {
+                lastSnapshotNanos = now;
+                snapshot.saveLater(analyzer, stateTracker, snapshotWriter);
+            }
+        }
+        // Legacy text frames carry no sensor time; the advisor's dwell runs on receive time then
+        long timestamp = result.frame.timestampNanos != SensorFrame.NO_TIMESTAMP
+                ? result.frame.timestampNanos
+                : result.receivedNanos;
+        if (samplingAdvisor.update(result.state, result.enoughData, timestamp)
+                && hintPending.compareAndSet(false, true)) {
+            try {
+                hintWriter.execute(this::sendPendingHint);
+            } catch (RejectedExecutionException e) {
+                // Closed; the next connection gets the hint
+                hintPending.set(false);
+            }
+        }
+    }
+
+    // Hint writer thread
+    private void sendPendingHint() {
+        hintPending.set(false);
+        SensorConnection current;
+        synchronized (this) {
+            current = connection;
+        }
+        if (current != null) {
+            sendRateHint(current);
+        }
+    }
+
+    private void sendRateHint(SensorConnection target) {
+        synchronized (writeLock) {
+            try {
+                OutputStream out = target.getOutputStream();
+                if (out == null) {
+                    return;
+                }
+                hintBuffer.clear();
+                FrameEncoder.encodeRateHint(hintBuffer, System.nanoTime(),
+                        samplingAdvisor.getLevel(), samplingAdvisor.getWakeHeartRate());
+                out.write(hintBuffer.array(), 0, hintBuffer.position());
+                out.flush();
+                rateHintsSent.increment();
+            } catch (IOException ignored) {
+                // The reader notices a dead link; the next connection gets the hint
+            }
+        }
+    }
+
+    /** A hint being written is finished; none are sent after this. */
+    void stopHints() {
+        hintWriter.shutdown();
+    }
+
+    /** Closes the current connection, if any; the reader then ends. */
+    void disconnect() {
+        SensorConnection current;
+        synchronized (this) {
+            current = connection;
+        }
+        closeQuietly(current);
+    }
+
+    public synchronized boolean isConnected() {
+        return connection != null;
+    }
+
+    public SamplingAdvisor getSamplingAdvisor() {
+        return samplingAdvisor;
+    }
+
+    public StateTracker getStateTracker() {
+        return stateTracker;
+    }
+
+    public Counter getRateHintsSent() {
+        return rateHintsSent;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * Owned by the pipeline's analyzer thread; only read it after a shutdown.
+     * Its classifier is the exception, that may be swapped at any time.
+     */
+    public EmotionalStateAnalyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    public SensorPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /** Null if the server has no history directory or it could not be opened. */
+    public SensorHistory getHistory() {
+        return history;
+    }
+
+    /** Null if the server has no history directory. */
+    public AnalyzerSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private static void closeQuietly(SensorConnection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+            // Already gone
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package com.example.phoneapp.ingest;
+
+import com.example.phoneapp.AnalyzerSnapshot;
+import com.example.phoneapp.EmotionalState;
+import com.example.phoneapp.EmotionalStateAnalyzer;
+import com.example.phoneapp.EmotionalStateClassifier;
+import com.example.phoneapp.PersonalBaseline;
+import com.example.phoneapp.SensorHistory;
+import com.example.phoneapp.SensorPipeline;
+import com.example.phoneapp.metrics.Counter;
+import com.example.phoneapp.metrics.MetricsRegistry;
+import com.example.phoneapp.metrics.Tracer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accepts any number of watches. Each connection gets a reader thread of its
+ * own, and each watch a {@link DeviceSession} with its own analyzer and
+ * pipeline, so one wearer's data never mixes with another's and a slow
+ * watch cannot hold up the rest.
+ *
+ * <p>Reader threads come from an unbounded pool: a household has a handful
+ * of watches, and each reader spends its life blocked in a socket read.
+ */
+public final class IngestServer implements Closeable {
+    static final String BASELINE_FILE = "baseline.bin";
+    static final String SNAPSHOT_FILE = "analyzer.bin";
+    /** How long {@link #close} waits for the analyzer threads, all watches together. */
+    public static final long CLOSE_TIMEOUT_MILLIS = 500;
+
+    /** Callbacks arrive on the reader and presenter threads, never the caller's. */
+    public interface Listener {
+        /** The newest analysis for one watch, on that watch's presenter thread. */
+        void onResult(String deviceId, SensorPipeline.AnalysisResult result);
+
+        /**
+         * The watch's steady state changed, on that watch's analyzer thread.
+         * Unlike results these are never coalesced, and come only on a change.
+         */
+        default void onStateChanged(String deviceId, EmotionalState previous, EmotionalState current) {
+        }
+
+        default void onConnected(String deviceId) {
+        }
+
+        /** @param error null if the watch closed the connection */
+        default void onDisconnected(String deviceId, IOException error) {
+        }
+
+        /** The transport failed or was closed; no more watches are accepted. */
+        default void onStopped(IOException error) {
+        }
+    }
+
+    private final Listener listener;
+    private final ConcurrentMap<String, DeviceSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger readerCount = new AtomicInteger();
+    private final ExecutorService readers = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "ingest-reader-" + readerCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Counter connections = new Counter();
+    private final Counter historyFailures = new Counter();
+    private final Counter baselineFailures = new Counter();
+    private final Counter closeTimeouts = new Counter();
+    // Writes every watch's snapshot, off the analyzer threads
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "ingest-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean closed;
+    private MetricsRegistry metrics;
+    private Tracer tracer = Tracer.NONE;
+    private File historyDirectory;
+    private EmotionalStateClassifier classifier;
+    private SensorTransport transport;
+    private Thread acceptThread;
+
+    public IngestServer(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Each watch's metrics are registered under "device.&lt;id&gt;.". Set before any watch connects. */
+    public synchronized void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        metrics.register("ingest.connections", connections);
+        metrics.register("ingest.history_failures", historyFailures);
+        metrics.register("ingest.baseline_failures", baselineFailures);
+        metrics.register("ingest.close_timeouts", closeTimeouts);
+        metrics.gauge("ingest.active_connections", this::getActiveConnections);
+    }
+
+    public synchronized void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Each watch records its history in a directory of its own below this
+     * one, next to its {@link PersonalBaseline} and {@link AnalyzerSnapshot}.
+     */
+    public synchronized void setHistoryDirectory(File directory) {
+        this.historyDirectory = directory;
+    }
+
+    /**
+     * Swaps the classifier of every watch, connected or not, and of those
+     * that connect later. Analyses already under way finish with the old one.
+     */
+    public synchronized void setClassifier(EmotionalStateClassifier classifier) {
+        this.classifier = classifier;
+        for (DeviceSession session : sessions.values()) {
+            session.getAnalyzer().setClassifier(classifier);
+        }
+    }
+
+    /** Starts accepting from {@code transport} on a thread of its own. */
+    public synchronized void serve(SensorTransport transport) {
+        if (closed) {
+            throw new IllegalStateException("Server closed");
+        }
+        if (acceptThread != null) {
+            throw new IllegalStateException("Already serving");
+        }
+        this.transport = transport;
+        acceptThread = new Thread(() -> acceptLoop(transport), "ingest-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    private void acceptLoop(SensorTransport transport) {
+        IOException error = null;
+        while (!closed) {
+            try {
+                submit(transport.accept());
+            } catch (IOException e) {
+                if (!closed) {
+                    error = e;
+                }
+                break;
+            }
+        }
+        listener.onStopped(error);
+    }
+
+    /**
+     * Reads {@code connection} on a reader thread. Also how connections that
+     * did not come through a transport get in, e.g. the emulator sample.
+     */
+    public void submit(SensorConnection connection) {
+        if (closed) {
+            closeQuietly(connection);
+            return;
+        }
+        connections.increment();
+        DeviceSession existing = sessions.get(connection.getDeviceId());
+        DeviceSession session = existing != null ? existing : openSession(connection.getDeviceId());
+        try {
+            readers.execute(() -> session.read(connection, listener));
+        } catch (RejectedExecutionException e) {
+            // Shut down in the meantime
+            closeQuietly(connection);
+        }
+    }
+
+    // Under the lock, so setClassifier sees every session once it is in the map
+    private synchronized DeviceSession openSession(String deviceId) {
+        DeviceSession existing = sessions.get(deviceId);
+        if (existing != null) {
+            return existing;
+        }
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer();
+        if (classifier != null) {
+            analyzer.setClassifier(classifier);
+        }
+        SensorPipeline pipeline = new SensorPipeline(analyzer,
+                result -> listener.onResult(deviceId, result));
+        pipeline.setTracer(tracer);
+        SensorHistory history = null;
+        AnalyzerSnapshot snapshot = null;
+        if (historyDirectory != null) {
+            File directory = new File(historyDirectory, directoryName(deviceId));
+            try {
+                history = new SensorHistory(directory);
+                pipeline.setHistory(history);
+            } catch (IOException e) {
+                // Analysis still works without it
+                historyFailures.increment();
+            }
+            analyzer.setBaseline(openBaseline(new File(directory, BASELINE_FILE)));
+            snapshot = new AnalyzerSnapshot(new File(directory, SNAPSHOT_FILE));
+        }
+        DeviceSession session = new DeviceSession(deviceId, analyzer, pipeline, history,
+                snapshot, snapshotWriter, listener);
+        if (snapshot != null) {
+            // Before the pipeline starts; whatever cannot be restored is built up from the samples
+            snapshot.restore(analyzer, session.getStateTracker());
+        }
+        pipeline.setStateTracker(session.getStateTracker());
+        pipeline.setAnalysisListener(session::onAnalysis);
+        if (metrics != null) {
+            String prefix = "device." + deviceId + ".";
+            pipeline.registerMetrics(metrics, prefix);
+            metrics.register(prefix + "sampling.hints_sent", session.getRateHintsSent());
+            metrics.gauge(prefix + "sampling.level", () -> session.getSamplingAdvisor().getLevel());
+            PersonalBaseline baseline = analyzer.getBaseline();
+            if (baseline != null) {
+                metrics.gauge(prefix + "baseline.calibrated", () -> baseline.isCalibrated() ? 1 : 0);
+                metrics.gauge(prefix + "baseline.heart_rate_shift", () -> Math.round(baseline.getHeartRateShift()));
+            }
+            if (snapshot != null) {
+                metrics.register(prefix + "snapshot.saves", snapshot.getSaves());
+                metrics.register(prefix + "snapshot.failed_saves", snapshot.getFailedSaves());
+                metrics.register(prefix + "snapshot.skipped_saves", snapshot.getSkippedSaves());
+                metrics.register(prefix + "snapshot.rejected", snapshot.getRejected());
+            }
+        }
+        pipeline.start();
+        sessions.put(deviceId, session);
+        return session;
+    }
+
+    // A baseline that cannot be read back is started over rather than left unused
+    private PersonalBaseline openBaseline(File file) {
+        try {
+            return PersonalBaseline.open(file);
+        } catch (IOException e) {
+            baselineFailures.increment();
+            if (!file.delete()) {
+                return new PersonalBaseline();
+            }
+            try {
+                return PersonalBaseline.open(file);
+            } catch (IOException again) {
+                return new PersonalBaseline();
+            }
+        }
+    }
+
+    // Bluetooth addresses have colons, which not every file system likes
+    static String directoryName(String deviceId) {
+        return deviceId.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    public DeviceSession getSession(String deviceId) {
+        return sessions.get(deviceId);
+    }
+
+    public List<DeviceSession> getSessions() {
+        return new ArrayList<>(sessions.values());
+    }
+
+    public int getActiveConnections() {
+        int active = 0;
+        for (DeviceSession session : sessions.values()) {
+            if (session.isConnected()) {
+                active++;
+            }
+        }
+        return active;
+    }
+
+    /**
+     * Stops accepting, disconnects every watch and lets each pipeline finish
+     * what it already read. Blocks until that is done.
+     */
+    public void shutdown() throws InterruptedException {
+        stopAccepting();
+        for (DeviceSession session : sessions.values()) {
+            session.disconnect();
+            session.stopHints();
+        }
+        readers.shutdown();
+        readers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        // Periodic snapshots still due are skipped; the final one in persist covers them
+        snapshotWriter.shutdown();
+        snapshotWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        for (DeviceSession session : sessions.values()) {
+            session.getPipeline().shutdown();
+            persist(session);
+        }
+    }
+
+    /**
+     * Stops everything right away, dropping whatever is still queued, and
+     * waits up to {@link #CLOSE_TIMEOUT_MILLIS} for the analyzer threads.
+     * What they leave behind is saved on the snapshot thread, so this may
+     * be called from the main thread. A watch whose analyzer did not stop
+     * in time is counted and not saved.
+     */
+    @Override
+    public void close() {
+        stopAccepting();
+        for (DeviceSession session : sessions.values()) {
+            session.disconnect();
+            session.stopHints();
+            session.getPipeline().stop();
+        }
+        readers.shutdownNow();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+        for (DeviceSession session : sessions.values()) {
+            if (!awaitStopped(session, deadline)) {
+                closeTimeouts.increment();
+                continue;
+            }
+            try {
+                snapshotWriter.execute(() -> persist(session));
+            } catch (RejectedExecutionException e) {
+                // Closed before
+                break;
+            }
+        }
+        // What was submitted is still written; the thread ends after that
+        snapshotWriter.shutdown();
+    }
+
+    private static boolean awaitStopped(DeviceSession session, long deadlineNanos) {
+        try {
+            return session.getPipeline().awaitStopped(
+                    TimeUnit.NANOSECONDS.toMillis(Math.max(0, deadlineNanos - System.nanoTime())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Only once the session's analyzer thread is gone, which owns all of this until then
+    private static void persist(DeviceSession session) {
+        if (session.getHistory() != null) {
+            session.getHistory().flush();
+        }
+        if (session.getAnalyzer().getBaseline() != null) {
+            session.getAnalyzer().getBaseline().save();
+        }
+        if (session.getSnapshot() != null) {
+            session.getSnapshot().save(session.getAnalyzer(), session.getStateTracker());
+        }
+    }
+
+    private void stopAccepting() {
+        SensorTransport current;
+        synchronized (this) {
+            closed = true;
+            current = transport;
+        }
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+                // Nothing left to accept either way
+            }
+        }
+    }
+
+    private static void closeQuietly(SensorConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+            // Already gone
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.phoneapp.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/** One accepted link to a watch, whatever carries it. */
+public interface SensorConnection extends Closeable {
+    /** Stable across reconnects of the same watch, e.g. its Bluetooth address. */
+    String getDeviceId();
+
+    InputStream getInputStream() throws IOException;
+
+    /** Back to the watch, for rate hints. Null if the connection only reads, e.g. a recording. */
+    default OutputStream getOutputStream() throws IOException {
+        return null;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.phoneapp.ingest;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where watch connections come from: RFCOMM on the phone, local sockets in
+ * tests and load runs.
+ */
+public interface SensorTransport extends Closeable {
+    /**
+     * Blocks until a watch connects.
+     *
+     * @throws IOException once the transport is closed, or if it fails
+     */
+    SensorConnection accept() throws IOException;
+}
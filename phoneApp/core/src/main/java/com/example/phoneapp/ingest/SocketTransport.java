@@ -0,0 +1,59 @@
+package com.example.phoneapp.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Loopback TCP standing in for RFCOMM, so the server can be run and loaded
+ * on a plain JVM. A watch is identified by its socket's remote address, so
+ * unlike Bluetooth a reconnect shows up as a new device.
+ */
+public final class SocketTransport implements SensorTransport {
+    private final ServerSocket serverSocket;
+
+    /** @param port 0 for any free port, see {@link #getPort} */
+    public SocketTransport(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public SensorConnection accept() throws IOException {
+        Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        String deviceId = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+        return new SensorConnection() {
+            @Override
+            public String getDeviceId() {
+                return deviceId;
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return socket.getInputStream();
+            }
+
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                return socket.getOutputStream();
+            }
+
+            @Override
+            public void close() throws IOException {
+                socket.close();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.phoneapp.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/** A connection that is just a stream, e.g. the emulator's canned sample. */
+public final class StreamConnection implements SensorConnection {
+    private final String deviceId;
+    private final InputStream in;
+
+    public StreamConnection(String deviceId, InputStream in) {
+        this.deviceId = deviceId;
+        this.in = in;
+    }
+
+    @Override
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.phoneapp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Monotonic count that any number of threads can bump without contending. */
+public final class Counter {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long n) {
+        count.add(n);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+}
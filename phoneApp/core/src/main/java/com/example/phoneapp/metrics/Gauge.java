@@ -0,0 +1,6 @@
+package com.example.phoneapp.metrics;
+
+/** Value read when a snapshot is taken, e.g. a queue depth. Must be cheap and thread-safe. */
+public interface Gauge {
+    long value();
+}
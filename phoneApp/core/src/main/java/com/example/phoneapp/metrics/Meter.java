@@ -0,0 +1,34 @@
+package com.example.phoneapp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter that also reports a rate. Marking is lock-free; the rate is worked
+ * out when it is read, over the time since the previous read, so it is meant
+ * for a single reader taking periodic snapshots.
+ */
+public final class Meter {
+    private final LongAdder count = new LongAdder();
+    private final long createdNanos = System.nanoTime();
+
+    private long lastCount;
+    private long lastNanos = createdNanos;
+
+    public void mark(long n) {
+        count.add(n);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /** Per second since the last call, or since creation on the first one. */
+    public synchronized double getRatePerSecond() {
+        long now = System.nanoTime();
+        long current = count.sum();
+        double rate = now == lastNanos ? 0 : (current - lastCount) * 1e9 / (now - lastNanos);
+        lastCount = current;
+        lastNanos = now;
+        return rate;
+    }
+}
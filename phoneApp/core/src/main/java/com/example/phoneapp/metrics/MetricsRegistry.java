@@ -0,0 +1,144 @@
+package com.example.phoneapp.metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Named metrics for the phone receiver. Lookups happen once, when a component
+ * registers; the hot path only touches the metric objects it holds on to.
+ * Snapshots are exported as JSON, for a file or the debug screen.
+ */
+public final class MetricsRegistry {
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Meter> meters = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+    // Guarded by this; a name is unique across all kinds
+    private final Map<String, Object> names = new HashMap<>();
+
+    public Counter counter(String name) {
+        return getOrAdd(counters, name, new Counter());
+    }
+
+    public Meter meter(String name) {
+        return getOrAdd(meters, name, new Meter());
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return getOrAdd(histograms, name, new LatencyHistogram());
+    }
+
+    /** Registers metrics a component already owns, e.g. its stage histograms. */
+    public void register(String name, Counter counter) {
+        add(counters, name, counter);
+    }
+
+    public void register(String name, Meter meter) {
+        add(meters, name, meter);
+    }
+
+    public void register(String name, LatencyHistogram histogram) {
+        add(histograms, name, histogram);
+    }
+
+    public void gauge(String name, Gauge gauge) {
+        add(gauges, name, gauge);
+    }
+
+    private synchronized <M> M getOrAdd(ConcurrentMap<String, M> metrics, String name, M created) {
+        M existing = metrics.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        add(metrics, name, created);
+        return created;
+    }
+
+    private synchronized <M> void add(ConcurrentMap<String, M> metrics, String name, M metric) {
+        Object previous = names.putIfAbsent(name, metric);
+        if (previous != null) {
+            throw new IllegalArgumentException("Metric already registered: " + name);
+        }
+        metrics.put(name, metric);
+    }
+
+    public String toJson() {
+        StringWriter out = new StringWriter();
+        try {
+            writeJson(out);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the current value of every metric. Latencies are in
+     * microseconds, meter rates per second since the previous export.
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write("{\n  \"timestamp_ms\": " + System.currentTimeMillis());
+
+        out.write(",\n  \"counters\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            out.write(separator + "    " + quote(entry.getKey()) + ": " + entry.getValue().get());
+            separator = ",\n";
+        }
+        out.write("\n  },\n  \"meters\": {");
+        separator = "\n";
+        for (Map.Entry<String, Meter> entry : meters.entrySet()) {
+            Meter meter = entry.getValue();
+            out.write(separator + "    " + quote(entry.getKey()) + ": {\"count\": " + meter.getCount() +
+                    ", \"rate_per_s\": " + number(meter.getRatePerSecond()) + "}");
+            separator = ",\n";
+        }
+        out.write("\n  },\n  \"gauges\": {");
+        separator = "\n";
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            out.write(separator + "    " + quote(entry.getKey()) + ": " + entry.getValue().value());
+            separator = ",\n";
+        }
+        out.write("\n  },\n  \"histograms\": {");
+        separator = "\n";
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram.Snapshot snapshot = entry.getValue().snapshot();
+            out.write(separator + "    " + quote(entry.getKey()) + ": {" +
+                    "\"count\": " + snapshot.getCount() +
+                    ", \"mean_us\": " + number(snapshot.getMeanNanos() / 1000) +
+                    ", \"p50_us\": " + micros(snapshot.getValueAtPercentile(50)) +
+                    ", \"p90_us\": " + micros(snapshot.getValueAtPercentile(90)) +
+                    ", \"p99_us\": " + micros(snapshot.getValueAtPercentile(99)) +
+                    ", \"p999_us\": " + micros(snapshot.getValueAtPercentile(99.9)) +
+                    ", \"max_us\": " + micros(snapshot.getMaxNanos()) + "}");
+            separator = ",\n";
+        }
+        out.write("\n  }\n}\n");
+    }
+
+    private static String micros(long nanos) {
+        return number(nanos / 1000.0);
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.US, "%.1f", value);
+    }
+
+    private static String quote(String name) {
+        StringBuilder quoted = new StringBuilder(name.length() + 2).append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\');
+            }
+            quoted.append(c);
+        }
+        return quoted.append('"').toString();
+    }
+}
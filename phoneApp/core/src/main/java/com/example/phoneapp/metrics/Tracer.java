@@ -0,0 +1,22 @@
+package com.example.phoneapp.metrics;
+
+/**
+ * Marks the stages of the receive path for a system trace. The app plugs
+ * in android.os.Trace; on a plain JVM the sections go nowhere. Sections
+ * nest per thread and must be ended on the thread that began them.
+ */
+public interface Tracer {
+    Tracer NONE = new Tracer() {
+        @Override
+        public void beginSection(String name) {
+        }
+
+        @Override
+        public void endSection() {
+        }
+    };
+
+    void beginSection(String name);
+
+    void endSection();
+}
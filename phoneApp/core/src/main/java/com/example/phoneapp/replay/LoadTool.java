@@ -0,0 +1,149 @@
+package com.example.phoneapp.replay;
+
+import com.example.phoneapp.SensorPipeline;
+import com.example.phoneapp.StageMetrics;
+import com.example.phoneapp.ingest.DeviceSession;
+import com.example.phoneapp.ingest.IngestServer;
+import com.example.phoneapp.ingest.SocketTransport;
+import com.example.phoneapp.metrics.MetricsRegistry;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for {@link IngestServer}: several simulated watches stream
+ * synthetic sessions to it at once over loopback sockets.
+ *
+ * <pre>
+ * load [--watches N] [--minutes M] [--realtime | --speed FACTOR] [--metrics JSON]
+ * </pre>
+ */
+public final class LoadTool {
+    private static final int WRITE_SIZE = 1024;
+
+    private LoadTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int watches = 8;
+        int minutes = 5;
+        double speed = SessionReplayer.AS_FAST_AS_POSSIBLE;
+        String metricsFile = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--watches") && i + 1 < args.length) {
+                watches = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--minutes") && i + 1 < args.length) {
+                minutes = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--realtime")) {
+                speed = SessionReplayer.REAL_TIME;
+            } else if (arg.equals("--speed") && i + 1 < args.length) {
+                speed = Double.parseDouble(args[++i]);
+            } else if (arg.equals("--metrics") && i + 1 < args.length) {
+                metricsFile = args[++i];
+            } else {
+                System.err.println("usage: load [--watches N] [--minutes M] " +
+                        "[--realtime | --speed FACTOR] [--metrics JSON]");
+                System.exit(2);
+            }
+        }
+
+        List<Session> sessions = new ArrayList<>();
+        long totalFrames = 0;
+        for (int i = 0; i < watches; i++) {
+            Session session = Session.synthetic(minutes, i + 1);
+            sessions.add(session);
+            totalFrames += session.getFrameCount();
+        }
+
+        CountDownLatch disconnected = new CountDownLatch(watches);
+        AtomicLong presented = new AtomicLong();
+        IngestServer server = new IngestServer(new IngestServer.Listener() {
+            @Override
+            public void onResult(String deviceId, SensorPipeline.AnalysisResult result) {
+                presented.incrementAndGet();
+            }
+
+            @Override
+            public void onDisconnected(String deviceId, IOException error) {
+                if (error != null) {
+                    System.err.println(deviceId + ": " + error);
+                }
+                disconnected.countDown();
+            }
+        });
+        MetricsRegistry metrics = new MetricsRegistry();
+        server.setMetrics(metrics);
+        SocketTransport transport = new SocketTransport(0);
+        server.serve(transport);
+
+        System.out.printf(Locale.US, "%d watches, %d min each, %d frames in total, %s%n",
+                watches, minutes, totalFrames,
+                speed == SessionReplayer.AS_FAST_AS_POSSIBLE ? "as fast as possible" : speed + "x");
+        long start = System.nanoTime();
+        List<Thread> clients = new ArrayList<>();
+        for (Session session : sessions) {
+            double clientSpeed = speed;
+            Thread client = new Thread(() -> send(session, clientSpeed, transport.getPort()));
+            client.start();
+            clients.add(client);
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        disconnected.await();
+        server.shutdown();
+        long elapsed = System.nanoTime() - start;
+
+        long analyzed = 0;
+        for (DeviceSession device : server.getSessions()) {
+            StageMetrics endToEnd = device.getPipeline().getEndToEndMetrics();
+            long items = device.getPipeline().getAnalyzerMetrics().getItems();
+            analyzed += items;
+            System.out.printf(Locale.US, "  %-16s %8d frames, end-to-end p99 %.1f us%n",
+                    device.getDeviceId(), items,
+                    endToEnd.getLatency().snapshot().getValueAtPercentile(99) / 1000.0);
+        }
+        System.out.printf(Locale.US, "Analyzed %d of %d frames in %.3f s, %.0f frames/s, %d presented%n",
+                analyzed, totalFrames, elapsed / 1e9, analyzed * 1e9 / elapsed, presented.get());
+
+        if (metricsFile != null) {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(metricsFile), StandardCharsets.UTF_8)) {
+                metrics.writeJson(out);
+            }
+        }
+    }
+
+    private static void send(Session session, double speed, int port) {
+        byte[] buffer = new byte[WRITE_SIZE];
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new SessionInputStream(session, speed);
+            int read;
+            while ((read = in.read(buffer, 0, buffer.length)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            socket.shutdownOutput();
+            // Take the rate hints like a watch would; unread data would turn the close into a reset
+            InputStream hints = socket.getInputStream();
+            while (hints.read(buffer) >= 0) {
+                // Discarded
+            }
+        } catch (IOException e) {
+            System.err.println("Watch failed: " + e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.phoneapp.replay;
+
+import com.example.phoneapp.EmotionalState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/** Outcome of one {@link SessionReplayer} run. */
+public final class ReplayReport {
+    private final int frames;
+    private final long bytes;
+    private final long elapsedNanos;
+    private final long[] sortedLatencies;
+    private final List<StateChange> stateChanges;
+    private final long presented;
+    private final List<String> stageMetrics;
+
+    ReplayReport(int frames, long bytes, long elapsedNanos, long[] latencies, int latencyCount,
+                 List<StateChange> stateChanges, long presented, List<String> stageMetrics) {
+        this.frames = frames;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+        sortedLatencies = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sortedLatencies);
+        this.stateChanges = Collections.unmodifiableList(new ArrayList<>(stateChanges));
+        this.presented = presented;
+        this.stageMetrics = Collections.unmodifiableList(new ArrayList<>(stageMetrics));
+    }
+
+    /** Frames that made it through the analyzer. */
+    public int getFrames() {
+        return frames;
+    }
+
+    public double getElapsedSeconds() {
+        return elapsedNanos / 1e9;
+    }
+
+    public double getFramesPerSecond() {
+        return elapsedNanos == 0 ? 0 : frames / getElapsedSeconds();
+    }
+
+    /**
+     * Latency from the socket read that delivered a frame until the analyzer
+     * was done with it, in microseconds, at {@code percentile} (0-100).
+     */
+    public double getLatencyMicros(double percentile) {
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length) - 1;
+        index = Math.max(0, Math.min(sortedLatencies.length - 1, index));
+        return sortedLatencies[index] / 1000.0;
+    }
+
+    /** Every change of the analyzed state, in session order. */
+    public List<StateChange> getStateChanges() {
+        return stateChanges;
+    }
+
+    /** Results that reached the presenter after coalescing. */
+    public long getPresented() {
+        return presented;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "Frames: %d (%d bytes) in %.3f s, %.0f frames/s%n",
+                frames, bytes, getElapsedSeconds(), getFramesPerSecond()));
+        out.append(String.format(Locale.US,
+                "Latency (us): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                getLatencyMicros(50), getLatencyMicros(90), getLatencyMicros(99),
+                getLatencyMicros(99.9), getLatencyMicros(100)));
+        out.append("Presented: ").append(presented).append(String.format("%n"));
+        for (String stage : stageMetrics) {
+            out.append("  ").append(stage).append(String.format("%n"));
+        }
+        out.append("States:").append(String.format("%n"));
+        for (StateChange change : stateChanges) {
+            out.append(String.format(Locale.US, "  %10.3f s  %s%n",
+                    change.sessionNanos / 1e9, change.state));
+        }
+        return out.toString();
+    }
+
+    public static final class StateChange {
+        // Sensor time since the start of the session
+        public final long sessionNanos;
+        public final EmotionalState state;
+
+        StateChange(long sessionNanos, EmotionalState state) {
+            this.sessionNanos = sessionNanos;
+            this.state = state;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.phoneapp.replay;
+
+import com.example.phoneapp.metrics.MetricsRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Command line entry point for replaying sessions without a phone or watch:
+ *
+ * <pre>
+ * replay [--realtime | --speed FACTOR] [--metrics JSON] [--synthetic MINUTES | FILE]
+ * </pre>
+ *
+ * FILE is a CSV session (.csv) or a binary capture of the socket stream.
+ * Without --realtime or --speed the session runs as fast as possible.
+ * --metrics writes the pipeline's metrics snapshot, as the app exports it.
+ */
+public final class ReplayTool {
+
+    private ReplayTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        double speed = SessionReplayer.AS_FAST_AS_POSSIBLE;
+        Session session = null;
+        String source = null;
+        File metricsFile = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--realtime")) {
+                speed = SessionReplayer.REAL_TIME;
+            } else if (arg.equals("--speed") && i + 1 < args.length) {
+                speed = Double.parseDouble(args[++i]);
+            } else if (arg.equals("--metrics") && i + 1 < args.length) {
+                metricsFile = new File(args[++i]);
+            } else if (arg.equals("--synthetic") && i + 1 < args.length) {
+                int minutes = Integer.parseInt(args[++i]);
+                session = Session.synthetic(minutes, 1);
+                source = "synthetic, " + minutes + " min";
+            } else if (!arg.startsWith("--") && session == null) {
+                session = load(new File(arg));
+                source = arg;
+            } else {
+                usage();
+                return;
+            }
+        }
+        if (session == null) {
+            usage();
+            return;
+        }
+
+        System.out.printf("Replaying %s: %d frames, %.1f s of sensor time, %s%n",
+                source, session.getFrameCount(), session.getDurationNanos() / 1e9,
+                speed == SessionReplayer.AS_FAST_AS_POSSIBLE ? "as fast as possible" : speed + "x");
+        SessionReplayer replayer = new SessionReplayer(speed);
+        MetricsRegistry metrics = new MetricsRegistry();
+        replayer.setMetrics(metrics);
+        ReplayReport report = replayer.replay(session);
+        System.out.print(report);
+        if (metricsFile != null) {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(metricsFile), StandardCharsets.UTF_8)) {
+                metrics.writeJson(out);
+            }
+        }
+    }
+
+    static Session load(File file) throws IOException {
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(".csv")) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                return Session.fromCsv(reader);
+            }
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            return Session.fromCapture(in);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: replay [--realtime | --speed FACTOR] [--metrics JSON] [--synthetic MINUTES | FILE]");
+        System.exit(2);
+    }
+}
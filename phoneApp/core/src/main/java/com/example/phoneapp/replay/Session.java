@@ -0,0 +1,265 @@
+package com.example.phoneapp.replay;
+
+import com.example.phoneapp.EmotionalState;
+import com.example.shared.FrameEncoder;
+import com.example.shared.SensorFrame;
+import com.example.shared.StreamFrameDecoder;
+import com.example.shared.WireFormat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A recorded or generated sensor session, held as the exact bytes the watch
+ * would send (see {@link WireFormat}) plus the sensor timestamp of each
+ * frame, so a replay can pace itself.
+ *
+ * <p>Sessions can be read from:
+ * <ul>
+ *   <li>CSV, one sample per line: {@code timestamp_ns,HR,bpm},
+ *       {@code timestamp_ns,ACC,x,y,z} or {@code timestamp_ns,IBI,millis}.
+ *       {@code timestamp_ns,LABEL,STATE} says how the wearer actually felt
+ *       from then on, e.g. from a self-report, for training a classifier.
+ *       Blank lines, lines starting with '#' and a header line are skipped.</li>
+ *   <li>A binary capture of what came over the socket. Legacy text frames
+ *       are re-encoded as binary frames.</li>
+ * </ul>
+ */
+public final class Session {
+    private final byte[] data;
+    private final int[] frameEnds;
+    private final long[] timestamps;
+    private final int frameCount;
+    // Sorted by time; each label holds until the next one
+    private final long[] labelTimestamps;
+    private final EmotionalState[] labels;
+
+    private Session(byte[] data, int[] frameEnds, long[] timestamps, int frameCount,
+                    long[] labelTimestamps, EmotionalState[] labels) {
+        this.data = data;
+        this.frameEnds = frameEnds;
+        this.timestamps = timestamps;
+        this.frameCount = frameCount;
+        this.labelTimestamps = labelTimestamps;
+        this.labels = labels;
+    }
+
+    public static Session fromCsv(Reader source) throws IOException {
+        Builder builder = new Builder();
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#") || !Character.isDigit(line.charAt(0))) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            try {
+                long timestamp = Long.parseLong(fields[0].trim());
+                String sensor = fields[1].trim().toUpperCase(Locale.US);
+                if (sensor.equals("HR")) {
+                    builder.heartRate(timestamp, Float.parseFloat(fields[2]));
+                } else if (sensor.equals("ACC")) {
+                    builder.accelerometer(timestamp, Float.parseFloat(fields[2]),
+                            Float.parseFloat(fields[3]), Float.parseFloat(fields[4]));
+                } else if (sensor.equals("IBI")) {
+                    builder.interBeatInterval(timestamp, Float.parseFloat(fields[2]));
+                } else if (sensor.equals("LABEL")) {
+                    builder.label(timestamp, EmotionalState.valueOf(fields[2].trim().toUpperCase(Locale.US)));
+                } else {
+                    throw new IOException("Unknown sensor '" + fields[1] + "' on line " + lineNumber);
+                }
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Malformed line " + lineNumber + ": " + line, e);
+            }
+        }
+        return builder.build();
+    }
+
+    public static Session fromCapture(InputStream in) throws IOException {
+        Builder builder = new Builder();
+        StreamFrameDecoder decoder = new StreamFrameDecoder();
+        SensorFrame frame = new SensorFrame();
+        while (decoder.readFrom(in) >= 0) {
+            while (decoder.next(frame)) {
+                builder.frame(frame);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * A session that moves from calm through normal and stressed to anxious,
+     * in four equal phases. Heart rate at 1 Hz, accelerometer at 50 Hz and
+     * one inter-beat interval per beat, as a watch in raw mode would send.
+     * Each phase is labelled with its state.
+     */
+    public static Session synthetic(int minutes, long seed) {
+        return synthetic(minutes, seed, 0f);
+    }
+
+    /**
+     * Same, for a wearer whose heart rate runs {@code heartRateOffset} bpm
+     * above the usual in every phase, or below it for an athlete. Beat
+     * variability still follows the phase.
+     */
+    public static Session synthetic(int minutes, long seed, float heartRateOffset) {
+        Random random = new Random(seed);
+        Builder builder = new Builder();
+        float[] phaseHeartRate = {65f, 80f, 88f, 102f};
+        // Beat-to-beat spread in ms; low variability goes with stress
+        float[] phaseSpread = {60f, 40f, 12f, 8f};
+
+        long durationNanos = minutes * 60_000_000_000L;
+        // Sensor clocks never start at 0, which also means "no timestamp"
+        long start = 1_000_000_000L;
+        long nextHeartRate = start;
+        long nextBeat = start;
+        EmotionalState[] phaseState = {
+                EmotionalState.CALM, EmotionalState.NORMAL, EmotionalState.STRESSED, EmotionalState.ANXIOUS
+        };
+        int labelled = -1;
+        for (long t = start; t < start + durationNanos; t += 20_000_000L) {
+            int phase = (int) Math.min(3, (t - start) * 4 / durationNanos);
+            float bpm = phaseHeartRate[phase] + heartRateOffset;
+            if (phase != labelled) {
+                builder.label(t, phaseState[phase]);
+                labelled = phase;
+            }
+
+            float step = (t / 500_000_000L) % 2 == 0 ? 2.5f : 0f;
+            builder.accelerometer(t,
+                    (float) random.nextGaussian() * 0.3f,
+                    9.81f + step + (float) random.nextGaussian() * 0.3f,
+                    (float) random.nextGaussian() * 0.3f);
+
+            if (t >= nextBeat) {
+                float interval = 60_000f / bpm + (float) random.nextGaussian() * phaseSpread[phase];
+                builder.interBeatInterval(t, interval);
+                nextBeat = t + (long) (interval * 1_000_000L);
+            }
+            if (t >= nextHeartRate) {
+                builder.heartRate(t, bpm + (float) random.nextGaussian());
+                nextHeartRate += 1_000_000_000L;
+            }
+        }
+        return builder.build();
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getByteCount() {
+        return frameCount == 0 ? 0 : frameEnds[frameCount - 1];
+    }
+
+    public long getDurationNanos() {
+        return frameCount == 0 ? 0 : timestamps[frameCount - 1] - timestamps[0];
+    }
+
+    /** How the wearer felt at {@code timestampNanos}, or null if not labelled. */
+    public EmotionalState getLabel(long timestampNanos) {
+        int index = Arrays.binarySearch(labelTimestamps, timestampNanos);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return index < 0 ? null : labels[index];
+    }
+
+    public boolean hasLabels() {
+        return labels.length > 0;
+    }
+
+    long getTimestamp(int frame) {
+        return timestamps[frame];
+    }
+
+    int getFrameEnd(int frame) {
+        return frameEnds[frame];
+    }
+
+    byte[] getData() {
+        return data;
+    }
+
+    private static final class Builder {
+        private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private int[] frameEnds = new int[1024];
+        private long[] timestamps = new long[1024];
+        private int count;
+        private long[] labelTimestamps = new long[4];
+        private EmotionalState[] labels = new EmotionalState[4];
+        private int labelCount;
+
+        void heartRate(long timestamp, float bpm) {
+            ensureCapacity();
+            FrameEncoder.encodeHeartRate(buffer, timestamp, bpm);
+            added(timestamp);
+        }
+
+        void accelerometer(long timestamp, float x, float y, float z) {
+            ensureCapacity();
+            FrameEncoder.encodeAccelerometer(buffer, timestamp, x, y, z);
+            added(timestamp);
+        }
+
+        void interBeatInterval(long timestamp, float intervalMillis) {
+            ensureCapacity();
+            FrameEncoder.encodeInterBeatInterval(buffer, timestamp, intervalMillis);
+            added(timestamp);
+        }
+
+        void label(long timestamp, EmotionalState state) {
+            if (labelCount > 0 && timestamp < labelTimestamps[labelCount - 1]) {
+                throw new IllegalArgumentException("Labels out of order at " + timestamp);
+            }
+            if (labelCount == labels.length) {
+                labelTimestamps = Arrays.copyOf(labelTimestamps, labelCount * 2);
+                labels = Arrays.copyOf(labels, labelCount * 2);
+            }
+            labelTimestamps[labelCount] = timestamp;
+            labels[labelCount] = state;
+            labelCount++;
+        }
+
+        void frame(SensorFrame frame) {
+            ensureCapacity();
+            FrameEncoder.encode(buffer, frame);
+            added(frame.timestampNanos);
+        }
+
+        private void ensureCapacity() {
+            if (buffer.remaining() < WireFormat.MAX_FRAME_SIZE) {
+                ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+            if (count == frameEnds.length) {
+                frameEnds = Arrays.copyOf(frameEnds, count * 2);
+                timestamps = Arrays.copyOf(timestamps, count * 2);
+            }
+        }
+
+        private void added(long timestamp) {
+            frameEnds[count] = buffer.position();
+            timestamps[count] = timestamp;
+            count++;
+        }
+
+        Session build() {
+            return new Session(Arrays.copyOf(buffer.array(), buffer.position()),
+                    frameEnds, timestamps, count,
+                    Arrays.copyOf(labelTimestamps, labelCount), Arrays.copyOf(labels, labelCount));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.phoneapp.replay;
+
+import com.example.shared.SensorFrame;
+
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a {@link Session}'s bytes back like a socket would. With a speed of
+ * zero everything is available at once; otherwise each frame is held back
+ * until its sensor timestamp, scaled by the speed, has passed on the wall
+ * clock.
+ */
+final class SessionInputStream extends InputStream {
+    private final Session session;
+    private final double speed;
+    private final byte[] data;
+    private final int end;
+    private final long firstTimestamp;
+    private final byte[] single = new byte[1];
+
+    private int position;
+    private int frame;
+    private long startNanos;
+
+    SessionInputStream(Session session, double speed) {
+        this.session = session;
+        this.speed = speed;
+        data = session.getData();
+        end = session.getByteCount();
+        firstTimestamp = firstTimestamp(session);
+    }
+
+    @Override
+    public int read() throws InterruptedIOException {
+        int read = read(single, 0, 1);
+        return read < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws InterruptedIOException {
+        if (position >= end) {
+            return -1;
+        }
+        if (length == 0) {
+            return 0;
+        }
+
+        int available = end;
+        if (speed > 0) {
+            if (startNanos == 0) {
+                startNanos = System.nanoTime();
+            }
+            waitUntil(dueNanos(frame));
+            // Everything that is due by now goes out in this read
+            int last = frame;
+            long now = System.nanoTime();
+            while (last + 1 < session.getFrameCount() && dueNanos(last + 1) <= now) {
+                last++;
+            }
+            available = session.getFrameEnd(last);
+        }
+
+        int count = Math.min(length, available - position);
+        System.arraycopy(data, position, buffer, offset, count);
+        position += count;
+        while (frame < session.getFrameCount() && session.getFrameEnd(frame) <= position) {
+            frame++;
+        }
+        return count;
+    }
+
+    private long dueNanos(int index) {
+        long timestamp = session.getTimestamp(index);
+        if (timestamp == SensorFrame.NO_TIMESTAMP) {
+            // Legacy frames have no time of their own and are not held back
+            return startNanos;
+        }
+        return startNanos + (long) ((timestamp - firstTimestamp) / speed);
+    }
+
+    private static long firstTimestamp(Session session) {
+        for (int i = 0; i < session.getFrameCount(); i++) {
+            if (session.getTimestamp(i) != SensorFrame.NO_TIMESTAMP) {
+                return session.getTimestamp(i);
+            }
+        }
+        return 0;
+    }
+
+    private static void waitUntil(long dueNanos) throws InterruptedIOException {
+        long wait;
+        while ((wait = dueNanos - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Replay interrupted");
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.phoneapp.replay;
+
+import com.example.phoneapp.EmotionalState;
+import com.example.phoneapp.EmotionalStateAnalyzer;
+import com.example.phoneapp.SensorPipeline;
+import com.example.phoneapp.metrics.MetricsRegistry;
+import com.example.shared.SensorFrame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Feeds a {@link Session} through a fresh {@link SensorPipeline}, the same
+ * reader, decoder and analyzer stages the Bluetooth connection uses, and
+ * records what came out.
+ */
+public final class SessionReplayer {
+    /** Hands the whole session to the reader at once. */
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+    public static final double REAL_TIME = 1;
+
+    private final double speed;
+    private MetricsRegistry metrics;
+
+    /**
+     * @param speed how many session seconds pass per wall-clock second, or
+     *              {@link #AS_FAST_AS_POSSIBLE}
+     */
+    public SessionReplayer(double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Speed must not be negative: " + speed);
+        }
+        this.speed = speed;
+    }
+
+    /** Registry the next replay's pipeline reports into, or null for none. */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    public ReplayReport replay(Session session) throws IOException, InterruptedException {
+        Recorder recorder = new Recorder(session.getFrameCount());
+        long[] presented = new long[1];
+        SensorPipeline pipeline = new SensorPipeline(new EmotionalStateAnalyzer(),
+                result -> presented[0]++);
+        pipeline.setAnalysisListener(recorder);
+        if (metrics != null) {
+            pipeline.registerMetrics(metrics);
+        }
+        pipeline.start();
+
+        long start = System.nanoTime();
+        try {
+            pipeline.readFrom(new SessionInputStream(session, speed));
+        } finally {
+            pipeline.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        List<String> stages = Arrays.asList(
+                pipeline.getDecoderMetrics().toString(),
+                pipeline.getAnalyzerMetrics().toString(),
+                pipeline.getPresenterMetrics().toString(),
+                pipeline.getEndToEndMetrics().toString());
+        // shutdown() joined the stage threads, so their writes are visible here
+        return new ReplayReport(recorder.count, session.getByteCount(), elapsed,
+                recorder.latencies, Math.min(recorder.count, recorder.latencies.length),
+                recorder.changes, presented[0], stages);
+    }
+
+    // Runs on the analyzer thread; allocates only when the state changes
+    private static final class Recorder implements SensorPipeline.AnalysisListener {
+        final long[] latencies;
+        final List<ReplayReport.StateChange> changes = new ArrayList<>();
+        int count;
+        EmotionalState lastState;
+        long firstTimestamp = SensorFrame.NO_TIMESTAMP;
+        long lastSessionNanos;
+
+        Recorder(int frames) {
+            latencies = new long[frames];
+        }
+
+        @Override
+        public void onAnalysis(SensorPipeline.AnalysisResult result) {
+            if (count < latencies.length) {
+                latencies[count] = System.nanoTime() - result.receivedNanos;
+            }
+            count++;
+
+            long timestamp = result.frame.timestampNanos;
+            if (timestamp != SensorFrame.NO_TIMESTAMP) {
+                if (firstTimestamp == SensorFrame.NO_TIMESTAMP) {
+                    firstTimestamp = timestamp;
+                }
+                lastSessionNanos = timestamp - firstTimestamp;
+            }
+            if (result.state != lastState) {
+                lastState = result.state;
+                changes.add(new ReplayReport.StateChange(lastSessionNanos, result.state));
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.phoneapp.replay;
+
+import com.example.phoneapp.EmotionalState;
+import com.example.phoneapp.EmotionalStateAnalyzer;
+import com.example.phoneapp.EmotionalStateClassifier;
+import com.example.phoneapp.HrvEngine;
+import com.example.phoneapp.LogisticRegressionClassifier;
+import com.example.phoneapp.ModelTrainer;
+import com.example.phoneapp.ThresholdClassifier;
+import com.example.shared.SensorFrame;
+import com.example.shared.StreamFrameDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trains the model behind {@link LogisticRegressionClassifier} from labelled
+ * sessions and checks it against the built-in thresholds:
+ *
+ * <pre>
+ * train [--train FILE]... [--test FILE]... [--synthetic SESSIONS] [--minutes M] [--out MODEL]
+ * </pre>
+ *
+ * FILEs are CSV sessions with LABEL lines or binary captures. Without any,
+ * or with --synthetic, it generates sessions whose heart rate is shifted up
+ * or down by as much as 20 bpm, as for athletes and people with a high
+ * resting rate; test sessions use other seeds and shifts than training ones.
+ * Nothing here is random beyond those fixed seeds, so a rerun on any
+ * machine writes the same model.
+ *
+ * <p>Sessions are fed to an analyzer frame by frame on this thread, and the
+ * features are sampled every {@link #SAMPLE_INTERVAL_NANOS} of sensor time,
+ * skipping the first minute after a label changes, while the windows still
+ * hold data from the state before.
+ */
+public final class TrainTool {
+    static final long SAMPLE_INTERVAL_NANOS = 5_000_000_000L;
+    static final long SETTLE_NANOS = Math.max(EmotionalStateAnalyzer.DEFAULT_HEART_RATE_WINDOW_MILLIS,
+            HrvEngine.DEFAULT_WINDOW_MILLIS) * 1_000_000L;
+
+    static final int[] FEATURES = {
+            EmotionalStateClassifier.AVERAGE_HEART_RATE,
+            EmotionalStateClassifier.HEART_RATE_SPREAD,
+            EmotionalStateClassifier.AVERAGE_MOVEMENT,
+            EmotionalStateClassifier.MOVEMENT_RMS,
+            EmotionalStateClassifier.RMSSD,
+    };
+    static final EmotionalState[] CLASSES = {
+            EmotionalState.CALM, EmotionalState.NORMAL, EmotionalState.STRESSED, EmotionalState.ANXIOUS,
+    };
+
+    /** Gets the features and true state of every sample taken from a session. */
+    interface SampleSink {
+        void accept(float[] features, EmotionalState label);
+    }
+
+    private TrainTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Session> train = new ArrayList<>();
+        List<Session> test = new ArrayList<>();
+        int synthetic = 0;
+        int minutes = 20;
+        File out = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--train") && i + 1 < args.length) {
+                train.add(ReplayTool.load(new File(args[++i])));
+            } else if (arg.equals("--test") && i + 1 < args.length) {
+                test.add(ReplayTool.load(new File(args[++i])));
+            } else if (arg.equals("--synthetic") && i + 1 < args.length) {
+                synthetic = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--minutes") && i + 1 < args.length) {
+                minutes = Integer.parseInt(args[++i]);
+            } else if (arg.equals("--out") && i + 1 < args.length) {
+                out = new File(args[++i]);
+            } else {
+                usage();
+                return;
+            }
+        }
+        if (train.isEmpty() && synthetic == 0) {
+            synthetic = 12;
+        }
+        addSynthetic(train, test, synthetic, minutes);
+        if (test.isEmpty()) {
+            usage();
+            return;
+        }
+
+        ModelTrainer trainer = new ModelTrainer(FEATURES, CLASSES);
+        for (Session session : train) {
+            sample(session, trainer::add);
+        }
+        System.out.printf("Training on %d samples from %d sessions%n", trainer.getSampleCount(), train.size());
+        LogisticRegressionClassifier model = trainer.train();
+
+        System.out.println("Model:");
+        System.out.print(evaluate(model, test));
+        System.out.println("Thresholds:");
+        System.out.print(evaluate(ThresholdClassifier.INSTANCE, test));
+
+        if (out != null) {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8)) {
+                writer.write("# Written by TrainTool, see LogisticRegressionClassifier\n");
+                model.write(writer);
+            }
+            System.out.println("Model written to " + out);
+        }
+    }
+
+    // Shifts spread evenly over -20..+20 bpm; test sessions sit between the training ones
+    static void addSynthetic(List<Session> train, List<Session> test, int count, int minutes) {
+        for (int i = 0; i < count; i++) {
+            float shift = count == 1 ? 0f : -20f + 40f * i / (count - 1);
+            train.add(Session.synthetic(minutes, i + 1, shift));
+        }
+        int testCount = (count + 1) / 2;
+        for (int i = 0; i < testCount; i++) {
+            float shift = -17.5f + 35f * i / Math.max(1, testCount - 1);
+            test.add(Session.synthetic(minutes, 1000 + i, shift));
+        }
+    }
+
+    /** Feeds {@code session} through a fresh analyzer and samples its labelled stretches. */
+    static void sample(Session session, SampleSink sink) {
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer();
+        float[] features = new float[EmotionalStateClassifier.FEATURE_COUNT];
+        StreamFrameDecoder decoder = new StreamFrameDecoder();
+        SensorFrame frame = new SensorFrame();
+        InputStream in = new ByteArrayInputStream(session.getData(), 0, session.getByteCount());
+        long nextSample = Long.MIN_VALUE;
+        try {
+            while (decoder.readFrom(in) >= 0) {
+                while (decoder.next(frame)) {
+                    long t = frame.timestampNanos;
+                    if (t == SensorFrame.NO_TIMESTAMP) {
+                        continue;
+                    }
+                    analyzer.addFrame(frame, t);
+                    if (nextSample == Long.MIN_VALUE) {
+                        nextSample = t + SETTLE_NANOS;
+                    }
+                    if (t < nextSample) {
+                        continue;
+                    }
+                    nextSample = t + SAMPLE_INTERVAL_NANOS;
+                    EmotionalState label = session.getLabel(t);
+                    if (label != null && label == session.getLabel(t - SETTLE_NANOS) && analyzer.hasEnoughData()) {
+                        sink.accept(analyzer.getFeatures(features), label);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // A byte array does not fail
+            throw new AssertionError(e);
+        }
+    }
+
+    static Evaluation evaluate(EmotionalStateClassifier classifier, List<Session> sessions) {
+        Evaluation evaluation = new Evaluation();
+        for (Session session : sessions) {
+            sample(session, (features, label) -> evaluation.add(label, classifier.classify(features)));
+        }
+        return evaluation;
+    }
+
+    /** Confusion matrix over {@link EmotionalState}, true state by row. */
+    static final class Evaluation {
+        private final int[][] counts = new int[EmotionalState.values().length][EmotionalState.values().length];
+        private int total;
+        private int correct;
+
+        void add(EmotionalState actual, EmotionalState predicted) {
+            counts[actual.ordinal()][predicted.ordinal()]++;
+            total++;
+            if (actual == predicted) {
+                correct++;
+            }
+        }
+
+        float accuracy() {
+            return total == 0 ? 0f : (float) correct / total;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("  accuracy %.1f%% of %d samples%n", accuracy() * 100, total));
+            text.append(String.format("  %-10s", "actual"));
+            for (EmotionalState state : EmotionalState.values()) {
+                text.append(String.format("%10s", state));
+            }
+            text.append(String.format("%n"));
+            for (EmotionalState actual : EmotionalState.values()) {
+                text.append(String.format("  %-10s", actual));
+                for (EmotionalState predicted : EmotionalState.values()) {
+                    text.append(String.format("%10d", counts[actual.ordinal()][predicted.ordinal()]));
+                }
+                text.append(String.format("%n"));
+            }
+            return text.toString();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: train [--train FILE]... [--test FILE]... [--synthetic SESSIONS]"
+                + " [--minutes M] [--out MODEL]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AnalyzerSnapshotTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static EmotionalStateAnalyzer warmedUp(float heartRateOffset) {
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer();
+        analyzer.setBaseline(new PersonalBaseline(1_000, 5));
+        for (int i = 0; i < 40 * 20; i++) {
+            long t = i * SECOND / 20;
+            analyzer.addAccelerometerData(t, 0.5f, -0.25f, 9.81f + (i % 7) * 0.1f);
+            if (i % 20 == 0) {
+                analyzer.addHeartRateData(t, heartRateOffset + 70f + (i / 20) % 9);
+            }
+            if (i % 16 == 0) {
+                analyzer.addInterBeatInterval(t, 800f + (i % 5) * 15f);
+            }
+        }
+        return analyzer;
+    }
+
+    private static EmotionalStateAnalyzer empty() {
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer();
+        analyzer.setBaseline(new PersonalBaseline(1_000, 5));
+        return analyzer;
+    }
+
+    private static float[] features(EmotionalStateAnalyzer analyzer) {
+        return analyzer.getFeatures(new float[EmotionalStateClassifier.FEATURE_COUNT]);
+    }
+
+    private static void flipByte(File file, long position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0x10);
+        }
+    }
+
+    @Test
+    public void restoresWindowsBaselineAndState() {
+        EmotionalStateAnalyzer original = warmedUp(0);
+        StateTracker tracker = new StateTracker();
+        tracker.update(original, 40 * SECOND);
+        File file = new File(folder.getRoot(), "analyzer.bin");
+        AnalyzerSnapshot snapshot = new AnalyzerSnapshot(file);
+        snapshot.save(original, tracker);
+        assertEquals(1, snapshot.getSaves().get());
+
+        EmotionalStateAnalyzer restored = empty();
+        StateTracker restoredTracker = new StateTracker();
+        assertTrue(new AnalyzerSnapshot(file).restore(restored, restoredTracker));
+        assertTrue(restored.hasEnoughData());
+        assertTrue(restored.getBaseline().isCalibrated());
+        assertEquals(original.getBaseline().getSampleCount(), restored.getBaseline().getSampleCount());
+        assertArrayEquals(features(original), features(restored), 0f);
+        assertArrayEquals(original.getACC(), restored.getACC(), 0f);
+        assertEquals(tracker.getState(), restoredTracker.getState());
+
+        // Both go on the same way from here
+        original.addHeartRateData(41 * SECOND, 99f);
+        restored.addHeartRateData(41 * SECOND, 99f);
+        assertEquals(original.getAverageHeartRate(), restored.getAverageHeartRate(), 0f);
+        assertEquals(original.getHeartRateVariability(), restored.getHeartRateVariability(), 0f);
+    }
+
+    @Test
+    public void newestIntactSlotWins() throws Exception {
+        File file = new File(folder.getRoot(), "analyzer.bin");
+        AnalyzerSnapshot snapshot = new AnalyzerSnapshot(file);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            for (int offset = 0; offset <= 20; offset += 10) {
+                assertTrue(snapshot.saveLater(warmedUp(offset), null, writer));
+                // The test's own pace; on the phone a snapshot is due every few seconds
+                while (snapshot.getSaves().get() + snapshot.getFailedSaves().get() < offset / 10 + 1) {
+                    Thread.sleep(1);
+                }
+            }
+        } finally {
+            writer.shutdown();
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(3, snapshot.getSaves().get());
+        File newest = new File(file.getPath() + ".0");
+        assertTrue(newest.exists() && new File(file.getPath() + ".1").exists());
+
+        EmotionalStateAnalyzer restored = empty();
+        assertTrue(new AnalyzerSnapshot(file).restore(restored, null));
+        assertEquals(warmedUp(20).getAverageHeartRate(), restored.getAverageHeartRate(), 0f);
+
+        // Torn newest slot: the one before is taken
+        flipByte(newest, newest.length() / 2);
+        restored = empty();
+        AnalyzerSnapshot fallback = new AnalyzerSnapshot(file);
+        assertTrue(fallback.restore(restored, null));
+        assertEquals(1, fallback.getRejected().get());
+        assertEquals(warmedUp(10).getAverageHeartRate(), restored.getAverageHeartRate(), 0f);
+    }
+
+    @Test
+    public void unknownVersionStartsFreshAndVersionOneIsStillRead() throws IOException {
+        File file = new File(folder.getRoot(), "analyzer.bin");
+        new AnalyzerSnapshot(file).save(warmedUp(0), null);
+        File slot = new File(file.getPath() + ".0");
+        // The version, as a later release might write it
+        flipByte(slot, 4);
+        EmotionalStateAnalyzer analyzer = empty();
+        AnalyzerSnapshot snapshot = new AnalyzerSnapshot(file);
+        assertFalse(snapshot.restore(analyzer, null));
+        assertEquals(1, snapshot.getRejected().get());
+        assertFalse(analyzer.hasEnoughData());
+
+        // What the first release wrote: the windows alone, in the file itself
+        assertTrue(slot.delete());
+        EmotionalStateAnalyzer original = warmedUp(0);
+        ByteBuffer payload = ByteBuffer.allocate(original.stateSize());
+        original.writeState(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, payload.position());
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putInt(0x414e4c5a).putShort((short) 1).putShort((short) 0)
+                .putInt(payload.position()).putInt((int) crc.getValue());
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(header.array());
+            out.write(payload.array(), 0, payload.position());
+        }
+        analyzer = empty();
+        assertTrue(new AnalyzerSnapshot(file).restore(analyzer, null));
+        // Version 1 had no baseline, so only the windows themselves compare
+        assertEquals(original.getAverageHeartRate(), analyzer.getAverageHeartRate(), 0f);
+        assertEquals(original.getHeartRateVariability(), analyzer.getHeartRateVariability(), 0f);
+        assertEquals(original.getAverageMovement(), analyzer.getAverageMovement(), 0f);
+    }
+
+    @Test
+    public void sectionThatNoLongerFitsIsDroppedAlone() {
+        EmotionalStateAnalyzer original = warmedUp(0);
+        StateTracker tracker = new StateTracker();
+        tracker.update(original, 40 * SECOND);
+        File file = new File(folder.getRoot(), "analyzer.bin");
+        new AnalyzerSnapshot(file).save(original, tracker);
+
+        // Longer heart rate window than when the snapshot was taken
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer(60_000, 10_000);
+        StateTracker restoredTracker = new StateTracker();
+        AnalyzerSnapshot snapshot = new AnalyzerSnapshot(file);
+        assertTrue(snapshot.restore(analyzer, restoredTracker));
+        assertEquals(1, snapshot.getRejected().get());
+        assertFalse(analyzer.hasEnoughData());
+        assertEquals(0f, analyzer.getAverageMovement(), 0f);
+        assertEquals(tracker.getState(), restoredTracker.getState());
+    }
+}
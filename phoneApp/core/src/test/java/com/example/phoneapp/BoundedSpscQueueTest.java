@@ -0,0 +1,104 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BoundedSpscQueueTest {
+
+    @Test
+    public void blockingQueueKeepsEveryItemInOrderAcrossThreads() throws Exception {
+        BoundedSpscQueue<LongSlot> queue =
+                new BoundedSpscQueue<>(8, BoundedSpscQueue.OverflowPolicy.BLOCK, LongSlot::new);
+        int count = 200_000;
+
+        Thread producer = new Thread(() -> {
+            LongSlot item = new LongSlot();
+            for (int i = 0; i < count; i++) {
+                item.value = i;
+                queue.offer(item);
+            }
+            queue.close();
+        });
+        producer.start();
+
+        LongSlot item = new LongSlot();
+        long expected = 0;
+        while (queue.take(item)) {
+            assertEquals(expected++, item.value);
+        }
+        producer.join();
+
+        assertEquals(count, expected);
+        assertEquals(0, queue.getDropped());
+        assertTrue(queue.getMaxDepth() <= 8);
+    }
+
+    @Test
+    public void dropOldestKeepsNewestItems() {
+        BoundedSpscQueue<LongSlot> queue =
+                new BoundedSpscQueue<>(4, BoundedSpscQueue.OverflowPolicy.DROP_OLDEST, LongSlot::new);
+        offerRange(queue, 10);
+
+        assertEquals(4, queue.size());
+        assertEquals(6, queue.getDropped());
+        LongSlot item = new LongSlot();
+        for (long expected = 6; expected < 10; expected++) {
+            assertTrue(queue.poll(item));
+            assertEquals(expected, item.value);
+        }
+        assertFalse(queue.poll(item));
+    }
+
+    @Test
+    public void coalesceLatestSkipsToNewestItem() {
+        BoundedSpscQueue<LongSlot> queue =
+                new BoundedSpscQueue<>(4, BoundedSpscQueue.OverflowPolicy.COALESCE_LATEST, LongSlot::new);
+        offerRange(queue, 3);
+
+        LongSlot item = new LongSlot();
+        assertTrue(queue.poll(item));
+        assertEquals(2, item.value);
+        assertEquals(2, queue.getCoalesced());
+        assertFalse(queue.poll(item));
+    }
+
+    @Test
+    public void closedQueueDrainsThenStops() {
+        BoundedSpscQueue<LongSlot> queue =
+                new BoundedSpscQueue<>(4, BoundedSpscQueue.OverflowPolicy.BLOCK, LongSlot::new);
+        offerRange(queue, 2);
+        queue.close();
+
+        LongSlot item = new LongSlot();
+        assertFalse(queue.offer(item));
+        assertTrue(queue.take(item));
+        assertTrue(queue.take(item));
+        assertEquals(1, item.value);
+        assertFalse(queue.take(item));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCapacityThatIsNotPowerOfTwo() {
+        new BoundedSpscQueue<>(6, BoundedSpscQueue.OverflowPolicy.BLOCK, LongSlot::new);
+    }
+
+    private static void offerRange(BoundedSpscQueue<LongSlot> queue, int count) {
+        LongSlot item = new LongSlot();
+        for (int i = 0; i < count; i++) {
+            item.value = i;
+            queue.offer(item);
+        }
+    }
+
+    private static final class LongSlot implements BoundedSpscQueue.Slot<LongSlot> {
+        long value;
+
+        @Override
+        public void copyFrom(LongSlot other) {
+            value = other.value;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class EmotionalStateAnalyzerTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void heartRateThresholdsWithoutHrv() {
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer();
+
+        analyzer.setHeartRate(95f);
+        assertEquals(EmotionalState.ANXIOUS, analyzer.analyzeEmotionalState());
+        analyzer.setHeartRate(87f);
+        assertEquals(EmotionalState.STRESSED, analyzer.analyzeEmotionalState());
+        analyzer.setHeartRate(80f);
+        assertEquals(EmotionalState.NORMAL, analyzer.analyzeEmotionalState());
+        analyzer.setHeartRate(65f);
+        assertEquals(EmotionalState.CALM, analyzer.analyzeEmotionalState());
+    }
+
+    @Test
+    public void lowHrvRaisesStressLevel() {
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer();
+        long t = 0;
+        for (int i = 0; i < 60; i++) {
+            t += 700_000_000L;
+            analyzer.addInterBeatInterval(t, i % 2 == 0 ? 700f : 710f);
+        }
+
+        analyzer.setHeartRate(80f);
+        assertEquals(EmotionalState.STRESSED, analyzer.analyzeEmotionalState());
+        analyzer.setHeartRate(87f);
+        assertEquals(EmotionalState.ANXIOUS, analyzer.analyzeEmotionalState());
+        analyzer.setHeartRate(65f);
+        assertEquals(EmotionalState.CALM, analyzer.analyzeEmotionalState());
+    }
+
+    @Test
+    public void classifierCanBeSwapped() throws Exception {
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer();
+        analyzer.setHeartRate(80f);
+        assertEquals(EmotionalState.NORMAL, analyzer.analyzeEmotionalState());
+
+        analyzer.setClassifier(RuleTableClassifier.parse(new StringReader("STRESSED heartRate > 78\nNORMAL\n")));
+        assertEquals(EmotionalState.STRESSED, analyzer.analyzeEmotionalState());
+    }
+
+    @Test
+    public void windowsFillByTimeNotSampleCount() {
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer(10_000, 10_000);
+        for (int i = 0; i <= 50; i++) {
+            analyzer.addAccelerometerData(i * SECOND / 5, 0f, 0f, 9.81f);
+        }
+        for (int i = 0; i < 5; i++) {
+            analyzer.addHeartRateData(i * SECOND, 70f);
+        }
+        assertFalse(analyzer.hasEnoughData());
+
+        for (int i = 5; i <= 10; i++) {
+            analyzer.addHeartRateData(i * SECOND, 72f);
+        }
+        assertTrue(analyzer.hasEnoughData());
+        assertEquals(9.81f, analyzer.getAverageMovement(), 1e-4f);
+        assertEquals(9.81f, analyzer.getMovementRms(), 1e-4f);
+    }
+}
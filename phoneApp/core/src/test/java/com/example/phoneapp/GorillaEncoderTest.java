@@ -0,0 +1,73 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GorillaEncoderTest {
+
+    @Test
+    public void roundTripsIrregularTimestampsAndValues() {
+        Random random = new Random(7);
+        int count = 5000;
+        long[] times = new long[count];
+        float[][] values = new float[count][3];
+        long time = 1_700_000_000_000L;
+        GorillaEncoder encoder = new GorillaEncoder(3);
+        for (int i = 0; i < count; i++) {
+            // Mostly steady, with jitter, gaps and the odd step back
+            time += i % 500 == 0 ? 100_000 : i % 997 == 0 ? -3 : 20 + random.nextInt(3);
+            times[i] = time;
+            values[i][0] = i % 3 == 0 ? values[Math.max(i - 1, 0)][0] : (float) random.nextGaussian();
+            values[i][1] = i % 100 == 0 ? Float.NaN : random.nextFloat() * 1e6f;
+            values[i][2] = -0f;
+            encoder.append(times[i], values[i]);
+        }
+
+        GorillaDecoder decoder = new GorillaDecoder(3);
+        decoder.reset(encoder.getBytes(), 0, encoder.getByteCount(), encoder.getCount());
+        float[] out = new float[3];
+        for (int i = 0; i < count; i++) {
+            assertTrue(decoder.next(out));
+            assertEquals(times[i], decoder.getTimestampMillis());
+            for (int c = 0; c < 3; c++) {
+                assertEquals(Float.floatToRawIntBits(values[i][c]), Float.floatToRawIntBits(out[c]));
+            }
+        }
+        assertFalse(decoder.next(out));
+    }
+
+    @Test
+    public void steadyHeartRateTakesAboutTwoBitsPerSample() {
+        GorillaEncoder encoder = new GorillaEncoder(1);
+        float[] bpm = new float[1];
+        for (int i = 0; i < 10_000; i++) {
+            bpm[0] = 70 + (i / 30) % 5;
+            encoder.append(i * 1000L, bpm);
+        }
+
+        // 12 bytes per sample uncompressed
+        assertTrue(encoder.getByteCount() < 10_000 / 2);
+    }
+
+    @Test
+    public void resetStartsAFreshStream() {
+        GorillaEncoder encoder = new GorillaEncoder(1);
+        encoder.append(5, new float[] {1f});
+        encoder.append(9, new float[] {2f});
+        encoder.reset();
+        encoder.append(100, new float[] {3f});
+
+        GorillaDecoder decoder = new GorillaDecoder(1);
+        decoder.reset(encoder.getBytes(), 0, encoder.getByteCount(), encoder.getCount());
+        float[] out = new float[1];
+        assertTrue(decoder.next(out));
+        assertEquals(100, decoder.getTimestampMillis());
+        assertEquals(3f, out[0], 0f);
+        assertFalse(decoder.next(out));
+    }
+}
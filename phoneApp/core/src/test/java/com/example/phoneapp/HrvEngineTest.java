@@ -0,0 +1,150 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.shared.SensorFrame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HrvEngineTest {
+    private static final long MILLI = 1_000_000L;
+
+    @Test
+    public void steadyRhythmHasNoVariability() {
+        HrvEngine engine = feed(new HrvEngine(), constant(800f, 100));
+
+        assertTrue(engine.isReady());
+        assertEquals(800f, engine.getMeanInterval(), 1e-3f);
+        assertEquals(0f, engine.getSdnn(), 1e-2f);
+        assertEquals(0f, engine.getRmssd(), 1e-2f);
+        assertEquals(0f, engine.getPnn50(), 0f);
+    }
+
+    @Test
+    public void alternatingRhythm() {
+        float[] intervals = new float[60];
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = i % 2 == 0 ? 800f : 900f;
+        }
+        HrvEngine engine = feed(new HrvEngine(), intervals);
+
+        assertEquals(50f, engine.getSdnn(), 1e-2f);
+        assertEquals(100f, engine.getRmssd(), 1e-2f);
+        assertEquals(1f, engine.getPnn50(), 0f);
+    }
+
+    @Test
+    public void matchesBatchComputationOnRandomSeries() {
+        Random random = new Random(11);
+        float[] intervals = new float[70];
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = 850f + (float) random.nextGaussian() * 40f;
+        }
+        // Long enough window that every beat is still inside it
+        HrvEngine engine = feed(new HrvEngine(600_000, 30), intervals);
+
+        double mean = 0;
+        for (float interval : intervals) {
+            mean += interval;
+        }
+        mean /= intervals.length;
+        double squares = 0;
+        for (float interval : intervals) {
+            squares += (interval - mean) * (interval - mean);
+        }
+        double successive = 0;
+        int nn50 = 0;
+        for (int i = 1; i < intervals.length; i++) {
+            double difference = intervals[i] - intervals[i - 1];
+            successive += difference * difference;
+            if (Math.abs(difference) > 50) {
+                nn50++;
+            }
+        }
+
+        assertEquals(Math.sqrt(squares / intervals.length), engine.getSdnn(), 1e-2);
+        assertEquals(Math.sqrt(successive / (intervals.length - 1)), engine.getRmssd(), 1e-2);
+        assertEquals((double) nn50 / (intervals.length - 1), engine.getPnn50(), 1e-6);
+    }
+
+    @Test
+    public void oldBeatsLeaveTheWindow() {
+        HrvEngine engine = new HrvEngine(60_000, 10);
+        long t = 0;
+        // Erratic minute followed by a steady minute
+        for (int i = 0; i < 60; i++) {
+            float interval = i % 2 == 0 ? 700f : 1000f;
+            t += (long) (interval * MILLI);
+            engine.addInterval(t, interval);
+        }
+        for (int i = 0; i < 90; i++) {
+            t += 800 * MILLI;
+            engine.addInterval(t, 800f);
+        }
+
+        assertEquals(0f, engine.getRmssd(), 1e-2f);
+        assertEquals(0f, engine.getPnn50(), 1e-6f);
+    }
+
+    @Test
+    public void artifactsAreRejectedAndNotDifferenced() {
+        HrvEngine engine = new HrvEngine();
+        long t = 0;
+        float[] intervals = {800f, 810f, 3000f, 150f, 805f, 815f};
+        for (float interval : intervals) {
+            t += 800 * MILLI;
+            engine.addInterval(t, interval);
+        }
+
+        assertEquals(2, engine.getRejectedIntervals());
+        assertEquals(4, engine.getBeatCount());
+        // Only 810-800 and 815-805 count; 805 follows an artifact
+        assertEquals(10f, engine.getRmssd(), 1e-3f);
+    }
+
+    @Test
+    public void noDifferenceIsTakenAcrossABeatGap() {
+        HrvEngine engine = new HrvEngine();
+        long t = 0;
+        float[] intervals = {800f, 810f, SensorFrame.BEAT_GAP, 900f, 905f};
+        for (float interval : intervals) {
+            t += 800 * MILLI;
+            engine.addInterval(t, interval);
+        }
+
+        assertEquals(0, engine.getRejectedIntervals());
+        assertEquals(4, engine.getBeatCount());
+        // 810-800 and 905-900; 900 came after a dropped beat
+        assertEquals((float) Math.sqrt((100 + 25) / 2.0), engine.getRmssd(), 1e-3f);
+        assertEquals(0f, engine.getPnn50(), 0f);
+    }
+
+    @Test
+    public void notReadyUntilMinimumBeats() {
+        HrvEngine engine = feed(new HrvEngine(60_000, 30), constant(800f, 29));
+        assertFalse(engine.isReady());
+
+        HrvEngine.HrvSnapshot snapshot = engine.snapshot(new HrvEngine.HrvSnapshot());
+        assertFalse(snapshot.ready);
+        assertEquals(29, snapshot.beatCount);
+    }
+
+    private static HrvEngine feed(HrvEngine engine, float[] intervals) {
+        long t = 0;
+        for (float interval : intervals) {
+            t += (long) (interval * MILLI);
+            engine.addInterval(t, interval);
+        }
+        return engine;
+    }
+
+    private static float[] constant(float interval, int count) {
+        float[] intervals = new float[count];
+        java.util.Arrays.fill(intervals, interval);
+        return intervals;
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LogisticRegressionClassifierTest {
+    private static final int[] FEATURES = {
+            EmotionalStateClassifier.AVERAGE_HEART_RATE, EmotionalStateClassifier.RMSSD
+    };
+
+    @Test
+    public void learnsSeparableStatesAndSurvivesRoundTrip() throws Exception {
+        ModelTrainer trainer = new ModelTrainer(FEATURES, EmotionalState.CALM, EmotionalState.STRESSED);
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            boolean stressed = i % 2 == 1;
+            float heartRate = (stressed ? 95 : 70) + (float) random.nextGaussian() * 3;
+            float rmssd = (stressed ? 15 : 60) + (float) random.nextGaussian() * 5;
+            trainer.add(features(heartRate, rmssd), stressed ? EmotionalState.STRESSED : EmotionalState.CALM);
+        }
+        // Not one of the classes, skipped
+        trainer.add(features(80, 40), EmotionalState.NORMAL);
+        assertEquals(200, trainer.getSampleCount());
+        LogisticRegressionClassifier model = trainer.train();
+
+        StringWriter text = new StringWriter();
+        model.write(text);
+        LogisticRegressionClassifier loaded = LogisticRegressionClassifier.parse(new StringReader(text.toString()));
+
+        for (LogisticRegressionClassifier classifier : new LogisticRegressionClassifier[]{model, loaded}) {
+            assertEquals(EmotionalState.CALM, classifier.classify(features(68, 65)));
+            assertEquals(EmotionalState.STRESSED, classifier.classify(features(97, 12)));
+        }
+        for (int i = 0; i < 100; i++) {
+            float[] input = features(60 + random.nextFloat() * 50, 5 + random.nextFloat() * 70);
+            assertEquals(model.classify(input), loaded.classify(input));
+        }
+    }
+
+    @Test
+    public void missingFeatureUsesItsOwnWeight() throws Exception {
+        LogisticRegressionClassifier model = LogisticRegressionClassifier.parse(new StringReader(
+                "model logistic 1\n"
+                        + "features averageHeartRate rmssd\n"
+                        + "mean 80 40\n"
+                        + "scale 10 20\n"
+                        + "# bias, then weight and missing weight per feature\n"
+                        + "CALM      0 -1 0  1 0\n"
+                        + "STRESSED  0  1 0 -1 2\n"));
+
+        assertEquals(EmotionalState.CALM, model.classify(features(80, 50)));
+        assertEquals(EmotionalState.STRESSED, model.classify(features(80, 30)));
+        // Without RMSSD the missing weight tips it
+        assertEquals(EmotionalState.STRESSED, model.classify(features(80, Float.NaN)));
+        assertEquals(EmotionalState.CALM, model.classify(features(55, Float.NaN)));
+    }
+
+    private static float[] features(float averageHeartRate, float rmssd) {
+        float[] features = new float[EmotionalStateClassifier.FEATURE_COUNT];
+        features[EmotionalStateClassifier.AVERAGE_HEART_RATE] = averageHeartRate;
+        features[EmotionalStateClassifier.RMSSD] = rmssd;
+        return features;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class P2QuantileTest {
+
+    @Test
+    public void exactForTheFirstFiveValues() {
+        P2Quantile median = new P2Quantile(0.5);
+        assertTrue(Double.isNaN(median.quantile()));
+        median.add(9);
+        median.add(1);
+        median.add(5);
+        assertEquals(5, median.quantile(), 0);
+        median.add(7);
+        median.add(3);
+        assertEquals(5, median.quantile(), 0);
+    }
+
+    @Test
+    public void tracksQuantilesOfLargeStreams() {
+        Random random = new Random(11);
+        double[] ps = {0.1, 0.5, 0.9};
+        for (double p : ps) {
+            P2Quantile sketch = new P2Quantile(p);
+            double[] values = new double[20_000];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = 70 + random.nextGaussian() * 10;
+                sketch.add(values[i]);
+            }
+            Arrays.sort(values);
+            double exact = values[(int) (p * (values.length - 1))];
+            assertEquals("p=" + p, exact, sketch.quantile(), 0.5);
+        }
+    }
+
+    @Test
+    public void restoredSketchCarriesOnIdentically() {
+        Random random = new Random(5);
+        P2Quantile original = new P2Quantile(0.1);
+        for (int i = 0; i < 1000; i++) {
+            original.add(random.nextDouble() * 100);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(P2Quantile.BYTES);
+        original.writeTo(buffer);
+        assertEquals(P2Quantile.BYTES, buffer.position());
+        buffer.flip();
+        P2Quantile restored = new P2Quantile(0.1);
+        restored.readFrom(buffer);
+
+        for (int i = 0; i < 1000; i++) {
+            double value = random.nextDouble() * 100;
+            original.add(value);
+            restored.add(value);
+        }
+        assertEquals(original.getCount(), restored.getCount());
+        assertEquals(original.quantile(), restored.quantile(), 0);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PersonalBaselineTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void athleteIsClassifiedAgainstOwnRestingRate() {
+        EmotionalStateAnalyzer analyzer = new EmotionalStateAnalyzer(10_000, 10_000);
+        PersonalBaseline baseline = new PersonalBaseline(1_000, 60);
+        analyzer.setBaseline(baseline);
+
+        // Mostly resting at 48 bpm, with some exercise now and then
+        long t = SECOND;
+        for (int i = 0; i < 600; i++, t += SECOND) {
+            float heartRate = i % 100 < 70 ? 48f : 95f;
+            analyzer.setHeartRate(heartRate);
+            analyzer.addHeartRateData(t, heartRate);
+            analyzer.addAccelerometerData(t, 0f, 9.81f, 0f);
+        }
+        assertTrue(baseline.isCalibrated());
+        assertEquals(48f, baseline.getRestingHeartRate(), 1f);
+        assertEquals(48f - PersonalBaseline.REFERENCE_RESTING_HEART_RATE, baseline.getHeartRateShift(), 1f);
+
+        // 74 bpm is 26 above this wearer's rest; on absolute thresholds it would be calm
+        analyzer.setHeartRate(74f);
+        assertEquals(EmotionalState.ANXIOUS, analyzer.analyzeEmotionalState());
+        analyzer.setHeartRate(50f);
+        assertEquals(EmotionalState.CALM, analyzer.analyzeEmotionalState());
+    }
+
+    @Test
+    public void notAppliedUntilCalibrated() {
+        PersonalBaseline baseline = new PersonalBaseline(1_000, 10);
+        for (int i = 0; i < 9; i++) {
+            baseline.update(i * SECOND, 50f, 10f);
+        }
+        // Too soon after the last one, not taken
+        baseline.update(8 * SECOND + 1, 50f, 10f);
+        float[] features = new float[EmotionalStateClassifier.FEATURE_COUNT];
+        features[EmotionalStateClassifier.HEART_RATE] = 70f;
+        baseline.normalize(features);
+        assertFalse(baseline.isCalibrated());
+        assertEquals(70f, features[EmotionalStateClassifier.HEART_RATE], 0f);
+
+        baseline.update(9 * SECOND, 50f, 10f);
+        baseline.normalize(features);
+        assertTrue(baseline.isCalibrated());
+        assertEquals(85f, features[EmotionalStateClassifier.HEART_RATE], 0f);
+    }
+
+    @Test
+    public void restoredWithoutReplayingHistory() throws Exception {
+        File file = new File(folder.getRoot(), "baseline.bin");
+        PersonalBaseline baseline = PersonalBaseline.open(file, 1_000, 20);
+        for (int i = 0; i < 200; i++) {
+            baseline.update(i * SECOND, 55f + i % 20, 10f + (i % 7) * 0.1f);
+        }
+        baseline.save();
+        assertTrue(file.length() < 512);
+
+        PersonalBaseline restored = PersonalBaseline.open(file, 1_000, 20);
+        assertTrue(restored.isCalibrated());
+        assertEquals(200, restored.getSampleCount());
+        assertEquals(baseline.getRestingHeartRate(), restored.getRestingHeartRate(), 0f);
+        assertEquals(baseline.getHighMovement(), restored.getHighMovement(), 0f);
+        assertEquals(baseline.getHeartRateShift(), restored.getHeartRateShift(), 0f);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class RecommendationCatalogTest {
+
+    @Test
+    public void anxiousAndStressedOfferAVideo() throws IOException {
+        RecommendationCatalog catalog = RecommendationCatalog.load(Locale.ENGLISH);
+        RecommendationContent anxious = catalog.get(EmotionalState.ANXIOUS);
+        RecommendationContent stressed = catalog.get(EmotionalState.STRESSED);
+
+        assertEquals("Try this calming breathing exercise:\n"
+                + "1. Breathe in for 4 seconds\n"
+                + "2. Hold for 4 seconds\n"
+                + "3. Breathe out for 4 seconds\n\n"
+                + "Would you like to listen to calming music?", anxious.text);
+        assertEquals(RecommendationContent.Action.YOUTUBE_SEARCH, anxious.action);
+        assertEquals("calming music playlist", anxious.query);
+        assertTrue(stressed.text.startsWith("Take a short break:\n"));
+        assertEquals("funny cats", stressed.query);
+        // Looked up, not rebuilt
+        assertSame(anxious, catalog.get(EmotionalState.ANXIOUS));
+    }
+
+    @Test
+    public void otherStatesAreTextOnly() throws IOException {
+        RecommendationCatalog catalog = RecommendationCatalog.load(Locale.ENGLISH);
+        assertEquals(RecommendationContent.Action.NONE, catalog.get(EmotionalState.CALM).action);
+        assertNull(catalog.get(EmotionalState.CALM).query);
+        assertEquals("Everything looks good! Keep going!", catalog.get(EmotionalState.NORMAL).text);
+        assertEquals("Gathering more data...", catalog.get(EmotionalState.UNKNOWN).text);
+    }
+
+    @Test
+    public void localeFallsBackToTheDefaultCatalog() throws IOException {
+        assertEquals(Arrays.asList("recommendations_de_CH.txt", "recommendations_de.txt", "recommendations.txt"),
+                RecommendationCatalog.candidates(new Locale("de", "CH")));
+        assertEquals("Gathering more data...",
+                RecommendationCatalog.load(Locale.JAPAN).get(EmotionalState.UNKNOWN).text);
+    }
+
+    @Test
+    public void everyStateNeedsASection() {
+        String catalog = "[CALM]\nRelax\n[NORMAL] youtube: cats\nFine\n";
+        try {
+            RecommendationCatalog.parse(new StringReader(catalog));
+            fail();
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("No section for"));
+        }
+        try {
+            RecommendationCatalog.parse(new StringReader("[CALM] vimeo: cats\nRelax\n"));
+            fail();
+        } catch (IOException expected) {
+            assertEquals("Unknown action 'vimeo: cats' on line 1", expected.getMessage());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RollupsTest {
+    private static final long SECOND = 1000L;
+    private static final long HOUR = 3_600_000L;
+    private static final long DAY = 86_400_000L;
+    // Midnight UTC
+    private static final long START = 1_700_006_400_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // One heart rate sample and one state report per second; CALM in the first half of each hour
+    private static void feed(Rollups rollups, long fromMillis, long toMillis) {
+        for (long t = fromMillis; t < toMillis; t += SECOND) {
+            rollups.addHeartRate(t, 60 + (t / SECOND) % 21);
+            rollups.addState(t, (t % HOUR) < HOUR / 2 ? EmotionalState.CALM : EmotionalState.ANXIOUS);
+        }
+    }
+
+    @Test
+    public void levelsAgreeWithEachOther() throws IOException {
+        Rollups rollups = new Rollups(folder.getRoot());
+        feed(rollups, START, START + 2 * DAY + 3 * HOUR);
+
+        List<RollupBucket> days = new ArrayList<>();
+        rollups.visit(Rollups.Resolution.DAY, 0, Long.MAX_VALUE, bucket -> {
+            RollupBucket copy = new RollupBucket();
+            copy.copyFrom(bucket);
+            days.add(copy);
+        });
+        RollupBucket hours = new RollupBucket();
+        hours.clear(START);
+        rollups.visit(Rollups.Resolution.HOUR, START, START + DAY, hours::merge);
+
+        assertEquals(3, days.size());
+        RollupBucket first = days.get(0);
+        assertEquals(START, first.startMillis);
+        assertEquals(DAY / SECOND, first.heartRate.count);
+        assertEquals(60f, first.heartRate.min, 0f);
+        assertEquals(80f, first.heartRate.max, 0f);
+        assertEquals(70.0, first.heartRate.mean, 0.01);
+        // Uniform over 60..80
+        assertEquals((21 * 21 - 1) / 12.0, first.heartRate.variance(), 0.01);
+        assertEquals(DAY / 2, first.getStateMillis(EmotionalState.CALM));
+        assertEquals(DAY / 2, first.getStateMillis(EmotionalState.ANXIOUS));
+
+        assertEquals(first.heartRate.count, hours.heartRate.count);
+        assertEquals(first.heartRate.m2, hours.heartRate.m2, first.heartRate.m2 * 1e-9);
+        // The open day holds the finished hours and the open minute and second
+        assertEquals(3 * HOUR / SECOND, days.get(2).heartRate.count);
+    }
+
+    @Test
+    public void summarizeMatchesTheSamplesInRange() throws IOException {
+        Rollups rollups = new Rollups(folder.getRoot());
+        feed(rollups, START, START + 3 * DAY);
+
+        long from = START + 5 * HOUR + 17 * 60_000L + 12 * SECOND;
+        long to = START + 3 * DAY - 42 * SECOND;
+        RollupBucket summary = rollups.summarize(from, to, new RollupBucket());
+
+        // Seconds before the last ten minutes are gone, so the start is rounded up to the minute
+        long expectedFrom = START + 5 * HOUR + 18 * 60_000L;
+        assertEquals((to - expectedFrom) / SECOND, summary.heartRate.count);
+        assertEquals(60f, summary.heartRate.min, 0f);
+        assertEquals(to - expectedFrom, summary.getStateMillis(EmotionalState.CALM)
+                + summary.getStateMillis(EmotionalState.ANXIOUS));
+    }
+
+    @Test
+    public void reopeningRestoresTheOpenHourAndDay() throws IOException {
+        File directory = folder.getRoot();
+        Rollups first = new Rollups(directory);
+        feed(first, START, START + 5 * HOUR + 30 * 60_000L);
+        first.flush();
+
+        Rollups reopened = new Rollups(directory);
+        feed(reopened, START + 5 * HOUR + 30 * 60_000L, START + DAY + 1);
+
+        List<RollupBucket> days = new ArrayList<>();
+        reopened.visit(Rollups.Resolution.DAY, 0, Long.MAX_VALUE, bucket -> {
+            RollupBucket copy = new RollupBucket();
+            copy.copyFrom(bucket);
+            days.add(copy);
+        });
+        // The minute open when the first instance stopped is lost
+        assertEquals(2, days.size());
+        assertEquals(DAY / SECOND - 60, days.get(0).heartRate.count);
+        assertEquals(0, reopened.getWriteFailures());
+    }
+}
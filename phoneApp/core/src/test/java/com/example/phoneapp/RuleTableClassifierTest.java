@@ -0,0 +1,107 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RuleTableClassifierTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void defaultRulesMatchBuiltInThresholds() throws Exception {
+        RuleTableClassifier rules = RuleTableClassifier.loadDefault();
+        float[] features = new float[EmotionalStateClassifier.FEATURE_COUNT];
+        float[] rmssds = {Float.NaN, 10f, 19.9f, 20f, 22f, 25f, 40f};
+        for (float rmssd : rmssds) {
+            features[EmotionalStateClassifier.RMSSD] = rmssd;
+            for (float heartRate = 50f; heartRate <= 110f; heartRate += 0.25f) {
+                features[EmotionalStateClassifier.HEART_RATE] = heartRate;
+                assertEquals("HR " + heartRate + ", RMSSD " + rmssd,
+                        ThresholdClassifier.INSTANCE.classify(features), rules.classify(features));
+            }
+        }
+    }
+
+    @Test
+    public void firstMatchingRuleWins() throws Exception {
+        RuleTableClassifier rules = parse(
+                "# Comments and blank lines are skipped\n"
+                        + "\n"
+                        + "CALM     averageMovement < 1 and heartRate <= 60   # resting\n"
+                        + "STRESSED averageMovement >= 1 and heartRateSpread > 8\n"
+                        + "normal   heartRate < 100\n");
+        assertEquals(3, rules.getRuleCount());
+
+        assertEquals(EmotionalState.CALM, rules.classify(features(60f, 0.5f, 10f)));
+        assertEquals(EmotionalState.NORMAL, rules.classify(features(61f, 0.5f, 10f)));
+        assertEquals(EmotionalState.STRESSED, rules.classify(features(61f, 1f, 10f)));
+        assertEquals(EmotionalState.UNKNOWN, rules.classify(features(120f, 0.5f, 0f)));
+    }
+
+    @Test
+    public void reportsTheBrokenLine() {
+        assertParseError("CALM heartRate < 70\nCALM pulse < 70\n", "line 2");
+        assertParseError("CALM heartRate = 70\n", "operator");
+        assertParseError("CALM heartRate < 70 rmssd > 10\n", "'and'");
+        assertParseError("CALM heartRate <\n", "Incomplete");
+        assertParseError("BORED\n", "Unknown state");
+        assertParseError("# nothing\n", "No rules");
+    }
+
+    @Test
+    public void ruleFileReloadsOnlyWhenChanged() throws Exception {
+        File file = new File(folder.getRoot(), "rules.txt");
+        RuleFile ruleFile = new RuleFile(file);
+        assertNull(ruleFile.reloadIfChanged());
+
+        write(file, "CALM\n");
+        assertEquals(EmotionalState.CALM, ruleFile.reloadIfChanged().classify(features(70f, 0f, 0f)));
+        assertNull(ruleFile.reloadIfChanged());
+
+        write(file, "STRESSED heartRate > 0\n");
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        assertEquals(EmotionalState.STRESSED, ruleFile.reloadIfChanged().classify(features(70f, 0f, 0f)));
+    }
+
+    private static float[] features(float heartRate, float movement, float spread) {
+        float[] features = new float[EmotionalStateClassifier.FEATURE_COUNT];
+        features[EmotionalStateClassifier.HEART_RATE] = heartRate;
+        features[EmotionalStateClassifier.AVERAGE_MOVEMENT] = movement;
+        features[EmotionalStateClassifier.HEART_RATE_SPREAD] = spread;
+        features[EmotionalStateClassifier.RMSSD] = Float.NaN;
+        return features;
+    }
+
+    private static RuleTableClassifier parse(String rules) throws IOException {
+        return RuleTableClassifier.parse(new StringReader(rules));
+    }
+
+    private static void assertParseError(String rules, String expected) {
+        try {
+            parse(rules);
+            fail("Parsed: " + rules);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(expected));
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(text);
+        }
+    }
+}
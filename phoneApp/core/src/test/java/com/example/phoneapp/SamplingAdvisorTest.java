@@ -0,0 +1,78 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.shared.RateHint;
+
+import org.junit.Test;
+
+public class SamplingAdvisorTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void slowsDownAfterTheWearerRestsForTheDwellTime() {
+        SamplingAdvisor advisor = new SamplingAdvisor(60_000);
+
+        // Asleep: one analysis per second, calm throughout
+        int changedAt = -1;
+        for (int t = 0; t <= 90; t++) {
+            EmotionalState state = t % 20 < 10 ? EmotionalState.CALM : EmotionalState.NORMAL;
+            if (advisor.update(state, true, t * SECOND)) {
+                changedAt = t;
+            }
+        }
+
+        assertEquals(60, changedAt);
+        assertEquals(RateHint.LEVEL_LOW, advisor.getLevel());
+    }
+
+    @Test
+    public void speedsUpAtOnceWhenStressReturns() {
+        SamplingAdvisor advisor = new SamplingAdvisor(60_000);
+        run(advisor, EmotionalState.CALM, 0, 70);
+        assertEquals(RateHint.LEVEL_LOW, advisor.getLevel());
+
+        assertTrue(advisor.update(EmotionalState.STRESSED, true, 71 * SECOND));
+        assertEquals(RateHint.LEVEL_HIGH, advisor.getLevel());
+        // Back to calm: the dwell time starts over
+        assertFalse(run(advisor, EmotionalState.CALM, 72, 131));
+        assertTrue(run(advisor, EmotionalState.CALM, 132, 132));
+    }
+
+    @Test
+    public void staysAtFullRateWithoutEnoughData() {
+        SamplingAdvisor advisor = new SamplingAdvisor(60_000);
+        for (int t = 0; t < 300; t++) {
+            assertFalse(advisor.update(EmotionalState.CALM, false, t * SECOND));
+        }
+        assertEquals(RateHint.LEVEL_HIGH, advisor.getLevel());
+        assertTrue(advisor.getWakeHeartRate() < EmotionalStateAnalyzer.STRESS_HR_THRESHOLD);
+    }
+
+    @Test
+    public void wakeHeartRateFollowsThePersonalBaseline() {
+        SamplingAdvisor advisor = new SamplingAdvisor(60_000);
+        PersonalBaseline baseline = new PersonalBaseline(1_000, 10);
+        advisor.setBaseline(baseline);
+        float uncalibrated = EmotionalStateAnalyzer.STRESS_HR_THRESHOLD - SamplingAdvisor.WAKE_MARGIN_BPM;
+        assertEquals(uncalibrated, advisor.getWakeHeartRate(), 0f);
+
+        // An athlete resting at 50 bpm is stressed 15 bpm below the reference threshold
+        for (int i = 0; i < 20; i++) {
+            baseline.update(i * SECOND, 50f, 10f);
+        }
+        assertEquals(-15f, baseline.getHeartRateShift(), 0.5f);
+        assertEquals(uncalibrated - 15f, advisor.getWakeHeartRate(), 0.5f);
+    }
+
+    // Returns whether the advice changed during [from, to] seconds
+    private static boolean run(SamplingAdvisor advisor, EmotionalState state, int from, int to) {
+        boolean changed = false;
+        for (int t = from; t <= to; t++) {
+            changed |= advisor.update(state, true, t * SECOND);
+        }
+        return changed;
+    }
+}
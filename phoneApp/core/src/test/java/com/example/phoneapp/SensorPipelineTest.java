@@ -0,0 +1,252 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.phoneapp.metrics.MetricsRegistry;
+import com.example.phoneapp.metrics.Tracer;
+import com.example.shared.FrameEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SensorPipelineTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void everyFrameReachesTheAnalyzerAndTheNewestIsPresented() throws Exception {
+        int frames = 5_000;
+        RecordingPresenter presenter = new RecordingPresenter(1);
+        SensorPipeline pipeline = new SensorPipeline(new EmotionalStateAnalyzer(), presenter);
+        pipeline.start();
+
+        assertFalse(pipeline.readFrom(new ByteArrayInputStream(stream(frames, 95f))));
+        pipeline.shutdown();
+
+        assertEquals(frames, pipeline.getDecoder().getFramesDecoded());
+        assertEquals(0, pipeline.getDecoder().getGarbledBytes());
+        assertEquals(frames, pipeline.getAnalyzerMetrics().getItems());
+        assertEquals(0, pipeline.getAnalyzerMetrics().getDiscarded());
+
+        // A slow presenter only sees the latest results, never a backlog
+        assertTrue(presenter.presented < frames);
+        assertEquals(frames - presenter.presented,
+                pipeline.getPresenterMetrics().getDiscarded());
+        assertEquals(presenter.presented, pipeline.getEndToEndMetrics().getItems());
+        assertEquals(EmotionalState.ANXIOUS, presenter.lastState);
+        assertEquals(frames - 1, presenter.lastTimestamp / (SECOND / 10));
+        assertTrue(pipeline.getDecoderMetrics().getMaxQueueDepth()
+                <= pipeline.getDecoderMetrics().getQueueCapacity());
+    }
+
+    @Test
+    public void newStreamDiscardsHalfFrameFromPreviousOne() throws Exception {
+        RecordingPresenter presenter = new RecordingPresenter(0);
+        SensorPipeline pipeline = new SensorPipeline(new EmotionalStateAnalyzer(), presenter);
+        pipeline.start();
+
+        byte[] first = stream(3, 70f);
+        // Connection lost in the middle of the third frame
+        pipeline.readFrom(new ByteArrayInputStream(Arrays.copyOf(first, first.length - 4)));
+        pipeline.readFrom(new ByteArrayInputStream(stream(2, 70f)));
+        pipeline.shutdown();
+
+        assertEquals(4, pipeline.getDecoder().getFramesDecoded());
+        assertEquals(0, pipeline.getDecoder().getGarbledBytes());
+        assertEquals(EmotionalState.CALM, presenter.lastState);
+    }
+
+    @Test
+    public void framesResentAfterReconnectAreAnalyzedOnce() throws Exception {
+        SensorPipeline pipeline = new SensorPipeline(new EmotionalStateAnalyzer(), result -> { });
+        MetricsRegistry metrics = new MetricsRegistry();
+        pipeline.registerMetrics(metrics);
+        pipeline.start();
+
+        pipeline.readFrom(new ByteArrayInputStream(sequenced(0, 10)));
+        // The watch was not sure the last four arrived and sends them again
+        pipeline.readFrom(new ByteArrayInputStream(sequenced(6, 10)));
+        pipeline.shutdown();
+
+        assertEquals(16, pipeline.getAnalyzerMetrics().getItems());
+        assertEquals(16, metrics.counter("pipeline.frames_received").get());
+        assertEquals(4, metrics.counter("pipeline.duplicate_frames").get());
+        assertEquals(0, metrics.counter("pipeline.lost_frames").get());
+    }
+
+    @Test
+    public void registeredMetricsFollowTheStream() throws Exception {
+        SensorPipeline pipeline = new SensorPipeline(new EmotionalStateAnalyzer(), result -> { });
+        MetricsRegistry metrics = new MetricsRegistry();
+        pipeline.registerMetrics(metrics);
+        AtomicInteger depth = new AtomicInteger();
+        pipeline.setTracer(new Tracer() {
+            @Override
+            public void beginSection(String name) {
+                depth.incrementAndGet();
+            }
+
+            @Override
+            public void endSection() {
+                depth.decrementAndGet();
+            }
+        });
+        pipeline.start();
+
+        byte[] bytes = stream(20, 95f);
+        // Joined the stream three bytes into something that is not a frame
+        byte[] garbled = new byte[bytes.length + 3];
+        System.arraycopy(bytes, 0, garbled, 3, bytes.length);
+        pipeline.readFrom(new ByteArrayInputStream(garbled));
+        pipeline.shutdown();
+
+        assertEquals(20, metrics.counter("pipeline.frames_received").get());
+        assertEquals(20, metrics.counter("analyzer.state.anxious").get());
+        assertEquals(0, metrics.counter("analyzer.state.calm").get());
+        assertTrue(metrics.counter("pipeline.parse_errors").get() > 0);
+        assertEquals(bytes.length + 3, metrics.meter("pipeline.bytes_received").getCount());
+        assertEquals(20, metrics.histogram("stage.analyzer").getCount());
+        // Each stage thread opened and closed its own sections
+        assertEquals(0, depth.get());
+        assertTrue(metrics.toJson().contains("\"stage.decoder\": {\"count\": 1,"));
+    }
+
+    @Test
+    public void readerRunsOneStreamAtATime() throws Exception {
+        SensorPipeline pipeline = new SensorPipeline(new EmotionalStateAnalyzer(), result -> { });
+        pipeline.start();
+        BlockingStream blocking = new BlockingStream();
+        Thread reader = new Thread(() -> {
+            try {
+                pipeline.readFrom(blocking);
+            } catch (Exception ignored) {
+            }
+        });
+        reader.start();
+        blocking.awaitRead();
+
+        try {
+            pipeline.readFrom(new ByteArrayInputStream(new byte[0]));
+            throw new AssertionError("Second reader was accepted");
+        } catch (IllegalStateException expected) {
+        } finally {
+            blocking.release();
+            reader.join();
+            pipeline.shutdown();
+        }
+    }
+
+    // Heart rate frames 100 ms apart, with an accelerometer frame in between
+    @Test
+    public void awaitStoppedWaitsForTheFrameBeingAnalyzed() throws Exception {
+        CountDownLatch analyzing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SensorPipeline pipeline = new SensorPipeline(new EmotionalStateAnalyzer(), result -> { });
+        pipeline.setAnalysisListener(result -> {
+            analyzing.countDown();
+            // Busy the way a slow write would be; stop's interrupt does not end it
+            while (true) {
+                try {
+                    release.await();
+                    return;
+                } catch (InterruptedException ignored) {
+                    // Keep waiting
+                }
+            }
+        });
+        pipeline.start();
+        pipeline.readFrom(new ByteArrayInputStream(stream(10, 95f)));
+        assertTrue(analyzing.await(5, TimeUnit.SECONDS));
+
+        pipeline.stop();
+        assertFalse(pipeline.awaitStopped(50));
+        release.countDown();
+        assertTrue(pipeline.awaitStopped(5_000));
+    }
+
+    private static byte[] stream(int frames, float bpm) {
+        ByteBuffer out = ByteBuffer.allocate(frames * 32);
+        for (int i = 0; i < frames; i++) {
+            long timestamp = i * (SECOND / 10);
+            if (i % 2 == 0) {
+                FrameEncoder.encodeHeartRate(out, timestamp, bpm);
+            } else {
+                FrameEncoder.encodeAccelerometer(out, timestamp, 0.1f, 9.8f, 0.2f);
+            }
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    // One batch as the watch sends it: a sequence marker, then heart rate frames
+    private static byte[] sequenced(int firstSequence, int frames) {
+        ByteBuffer out = ByteBuffer.allocate(32 + frames * 32);
+        FrameEncoder.encodeSequence(out, 1, firstSequence);
+        for (int i = firstSequence; i < firstSequence + frames; i++) {
+            FrameEncoder.encodeHeartRate(out, i * (SECOND / 10), 70f);
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    private static final class RecordingPresenter implements SensorPipeline.Presenter {
+        private final long delayMillis;
+        volatile int presented;
+        volatile EmotionalState lastState;
+        volatile long lastTimestamp;
+
+        RecordingPresenter(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void present(SensorPipeline.AnalysisResult result) {
+            presented++;
+            lastState = result.state;
+            lastTimestamp = result.frame.timestampNanos;
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // Blocks in read() until released, then reports end of stream
+    private static final class BlockingStream extends InputStream {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        void awaitRead() throws InterruptedException {
+            entered.await();
+        }
+
+        void release() {
+            released.countDown();
+        }
+
+        @Override
+        public int read() {
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            entered.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return -1;
+        }
+    }
+}
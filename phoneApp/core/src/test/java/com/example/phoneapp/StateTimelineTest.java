@@ -0,0 +1,149 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StateTimelineTest {
+    private static final long START = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<StateEpisode> collect(StateTimeline timeline, long from, long to, EmotionalState state)
+            throws IOException {
+        List<StateEpisode> episodes = new ArrayList<>();
+        timeline.visit(from, to, state, episode -> {
+            StateEpisode copy = new StateEpisode();
+            copy.copyFrom(episode);
+            episodes.add(copy);
+        });
+        return episodes;
+    }
+
+    @Test
+    public void transitionsEndEpisodesWithTheirPeakAndMovement() throws IOException {
+        StateTimeline timeline = new StateTimeline(folder.newFile());
+        // Calm for 10 s, anxious for 5 s, calm again
+        for (int second = 0; second <= 20; second++) {
+            long t = START + second * 1000L;
+            EmotionalState state = second >= 10 && second < 15 ? EmotionalState.ANXIOUS : EmotionalState.CALM;
+            timeline.update(t, state);
+            timeline.addHeartRate(state == EmotionalState.ANXIOUS ? 100 + second : 65);
+            timeline.addMovement(second % 2 == 0 ? 9f : 11f);
+        }
+
+        assertEquals(2, timeline.size());
+        List<StateEpisode> episodes = collect(timeline, 0, Long.MAX_VALUE, null);
+        assertEquals(3, episodes.size());
+        StateEpisode anxious = episodes.get(1);
+        assertEquals(EmotionalState.ANXIOUS, anxious.state);
+        assertEquals(START + 10_000, anxious.startMillis);
+        assertEquals(5_000, anxious.durationMillis());
+        assertEquals(114f, anxious.peakHeartRate, 0f);
+        assertEquals(9.8f, anxious.meanMovement, 1e-4f);
+        // The calm episode in progress counts up to the last sample
+        assertEquals(START + 20_000, episodes.get(2).endMillis);
+
+        assertEquals(3_000, timeline.totalMillis(EmotionalState.ANXIOUS, START + 12_000, START + 60_000));
+        assertEquals(10_000 + 2_000, timeline.totalMillis(EmotionalState.CALM, START, START + 17_000));
+    }
+
+    @Test
+    public void silenceEndsTheEpisodeAndUnknownIsNotKept() throws IOException {
+        StateTimeline timeline = new StateTimeline(folder.newFile());
+        timeline.update(START, EmotionalState.NORMAL);
+        timeline.update(START + 30_000, EmotionalState.NORMAL);
+        // The watch was off for an hour
+        timeline.update(START + 3_630_000, EmotionalState.NORMAL);
+        timeline.update(START + 3_640_000, EmotionalState.UNKNOWN);
+        timeline.update(START + 3_650_000, EmotionalState.UNKNOWN);
+
+        List<StateEpisode> episodes = collect(timeline, 0, Long.MAX_VALUE, null);
+        assertEquals(2, episodes.size());
+        assertEquals(30_000, episodes.get(0).durationMillis());
+        assertEquals(10_000, episodes.get(1).durationMillis());
+        assertTrue(Float.isNaN(episodes.get(1).peakHeartRate));
+    }
+
+    @Test
+    public void rangeQueriesMatchBruteForceAcrossBlocks() throws IOException {
+        StateTimeline timeline = new StateTimeline(folder.newFile());
+        Random random = new Random(3);
+        EmotionalState[] states = {EmotionalState.CALM, EmotionalState.NORMAL, EmotionalState.ANXIOUS};
+        List<long[]> expected = new ArrayList<>();
+        long t = START;
+        int state = 0;
+        for (int i = 0; i < 1000; i++) {
+            // Below MAX_GAP_MILLIS, so only the changes end episodes
+            long length = 1_000 + random.nextInt(50_000);
+            expected.add(new long[] {t, t + length, state});
+            timeline.update(t, states[state]);
+            timeline.update(t + length - 1, states[state]);
+            t += length;
+            state = (state + 1 + random.nextInt(2)) % states.length;
+        }
+        timeline.update(t, EmotionalState.UNKNOWN);
+        assertEquals(1000, timeline.size());
+
+        for (int trial = 0; trial < 200; trial++) {
+            long from = START + (long) (random.nextDouble() * (t - START));
+            long to = from + random.nextInt(50_000_000);
+            EmotionalState filter = trial % 2 == 0 ? null : states[trial % 3];
+            List<StateEpisode> episodes = collect(timeline, from, to, filter);
+            int k = 0;
+            for (long[] episode : expected) {
+                if (episode[1] > from && episode[0] < to && (filter == null || states[(int) episode[2]] == filter)) {
+                    assertEquals(episode[0], episodes.get(k).startMillis);
+                    assertEquals(episode[1], episodes.get(k).endMillis);
+                    k++;
+                }
+            }
+            assertEquals(k, episodes.size());
+        }
+    }
+
+    @Test
+    public void reopeningDropsATornTail() throws IOException {
+        File file = folder.newFile();
+        StateTimeline timeline = new StateTimeline(file);
+        for (int i = 0; i <= 300; i++) {
+            timeline.update(START + i * 1000L, i % 2 == 0 ? EmotionalState.CALM : EmotionalState.STRESSED);
+        }
+        timeline.flush();
+        timeline.close();
+
+        // Half of one more record, as if the phone died mid-write
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+        }
+        StateTimeline reopened = new StateTimeline(file);
+        assertEquals(300, reopened.size());
+
+        // A complete record that doesn't check out
+        reopened.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0xff);
+        }
+        reopened = new StateTimeline(file);
+        assertEquals(299, reopened.size());
+        reopened.update(START + 400_000, EmotionalState.CALM);
+        reopened.update(START + 401_000, EmotionalState.ANXIOUS);
+        assertEquals(300, reopened.size());
+        assertEquals(1_000, reopened.totalMillis(EmotionalState.CALM, START + 400_000, Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.shared.FrameEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class StateTrackerTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    private final float[] features = new float[EmotionalStateClassifier.FEATURE_COUNT];
+
+    @Test
+    public void firstStateIsTakenAtOnce() {
+        StateTracker tracker = new StateTracker();
+        assertTrue(update(tracker, 0, 95f));
+        assertEquals(EmotionalState.ANXIOUS, tracker.getState());
+        assertEquals(EmotionalState.UNKNOWN, tracker.getPreviousState());
+    }
+
+    @Test
+    public void heartRateHoveringAroundAThresholdDoesNotFlip() {
+        StateTracker tracker = new StateTracker();
+        update(tracker, 0, 88f);
+        assertEquals(EmotionalState.STRESSED, tracker.getState());
+
+        // Four readings a second either side of 90 bpm for a minute
+        long t = 0;
+        for (int i = 0; i < 240; i++) {
+            t += SECOND / 4;
+            assertFalse(update(tracker, t, i % 2 == 0 ? 89.5f : 91f));
+        }
+        assertEquals(EmotionalState.STRESSED, tracker.getState());
+        assertEquals(1, tracker.getTransitionCount());
+    }
+
+    @Test
+    public void clearChangeIsTakenAfterTheDwell() {
+        StateTracker tracker = new StateTracker(5_000, 2f);
+        update(tracker, 0, 88f);
+
+        assertFalse(update(tracker, SECOND, 95f));
+        assertFalse(update(tracker, 3 * SECOND, 95f));
+        // A single reading back below breaks the dwell
+        assertFalse(update(tracker, 4 * SECOND, 88f));
+        assertFalse(update(tracker, 5 * SECOND, 95f));
+        assertFalse(update(tracker, 9 * SECOND, 95f));
+        assertTrue(update(tracker, 10 * SECOND, 95f));
+        assertEquals(EmotionalState.ANXIOUS, tracker.getState());
+        assertEquals(EmotionalState.STRESSED, tracker.getPreviousState());
+    }
+
+    @Test
+    public void pipelineMarksOnlyTheChanges() throws Exception {
+        ByteBuffer out = ByteBuffer.allocate(600 * 32);
+        for (int i = 0; i < 600; i++) {
+            // Ten readings a second, flapping around 90 bpm after the first 30 s
+            float bpm = i < 300 ? 70f : (i % 2 == 0 ? 89f : 92f);
+            FrameEncoder.encodeHeartRate(out, i * (SECOND / 10), bpm);
+        }
+        SensorPipeline pipeline = new SensorPipeline(new EmotionalStateAnalyzer(), result -> { });
+        StateTracker tracker = new StateTracker();
+        pipeline.setStateTracker(tracker);
+        int[] changes = new int[1];
+        pipeline.setAnalysisListener(result -> {
+            if (result.stateChanged) {
+                changes[0]++;
+            }
+        });
+        pipeline.start();
+        pipeline.readFrom(new ByteArrayInputStream(out.array(), 0, out.position()));
+        pipeline.shutdown();
+
+        // Calm from the first reading, then one change that sticks despite the flapping
+        assertEquals(2, changes[0]);
+        assertEquals(2, tracker.getTransitionCount());
+        assertTrue(tracker.getState() == EmotionalState.STRESSED || tracker.getState() == EmotionalState.ANXIOUS);
+    }
+
+    private boolean update(StateTracker tracker, long timestampNanos, float heartRate) {
+        features[EmotionalStateClassifier.HEART_RATE] = heartRate;
+        features[EmotionalStateClassifier.AVERAGE_HEART_RATE] = heartRate;
+        features[EmotionalStateClassifier.RMSSD] = Float.NaN;
+        return tracker.update(ThresholdClassifier.INSTANCE, features, timestampNanos);
+    }
+}
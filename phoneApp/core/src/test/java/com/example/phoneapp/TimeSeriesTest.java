@@ -0,0 +1,191 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TimeSeriesTest {
+    private static final long MILLI = 1_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void scanReturnsSamplesInRangeWithMicrosecondTimestamps() throws IOException {
+        TimeSeries series = new TimeSeries(folder.getRoot(), 3, 64, 4);
+        for (int i = 0; i < 100; i++) {
+            series.append(i * 20 * MILLI + 1_234, i, -i, i * 0.5f);
+        }
+
+        List<float[]> seen = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        long visited = series.scan(200 * MILLI, 400 * MILLI, (timestamp, values) -> {
+            times.add(timestamp);
+            seen.add(values.clone());
+        });
+
+        // The sample at 400 ms + 1 us is just past the range
+        assertEquals(10, visited);
+        assertEquals(200 * MILLI + 1_000, (long) times.get(0));
+        assertEquals(10f, seen.get(0)[0], 0f);
+        assertEquals(-19f, seen.get(9)[1], 0f);
+        assertEquals(9.5f, seen.get(9)[2], 0f);
+        assertEquals(2, series.getSegmentCount());
+    }
+
+    @Test
+    public void oldSegmentsAreDeletedOnRollover() throws IOException {
+        TimeSeries series = new TimeSeries(folder.getRoot(), 1, 100, 3);
+        for (int i = 0; i < 1000; i++) {
+            series.append(i * MILLI, i);
+        }
+
+        assertEquals(3, series.getSegmentCount());
+        assertEquals(300, series.size());
+        assertEquals(3, folder.getRoot().listFiles().length);
+        TimeSeries.Aggregate all = series.aggregate(0, Long.MIN_VALUE, Long.MAX_VALUE, new TimeSeries.Aggregate());
+        assertEquals(700f, all.min, 0f);
+        assertEquals(999f, all.max, 0f);
+    }
+
+    @Test
+    public void aggregateMatchesBruteForceAcrossSegments() throws IOException {
+        TimeSeries series = new TimeSeries(folder.getRoot(), 1, 128, 16);
+        Random random = new Random(5);
+        float[] values = new float[1500];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 60f + random.nextFloat() * 60f;
+            series.append(i * 100 * MILLI, values[i]);
+        }
+
+        TimeSeries.Aggregate aggregate = new TimeSeries.Aggregate();
+        for (int trial = 0; trial < 50; trial++) {
+            int from = random.nextInt(values.length);
+            int to = from + random.nextInt(values.length - from);
+            series.aggregate(0, from * 100 * MILLI, to * 100 * MILLI, aggregate);
+
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            double sum = 0;
+            for (int i = from; i <= to; i++) {
+                min = Math.min(min, values[i]);
+                max = Math.max(max, values[i]);
+                sum += values[i];
+            }
+            assertEquals(to - from + 1, aggregate.count);
+            assertEquals(min, aggregate.min, 0f);
+            assertEquals(max, aggregate.max, 0f);
+            assertEquals(sum / (to - from + 1), aggregate.mean(), 1e-3);
+        }
+    }
+
+    @Test
+    public void downsampleVisitsOneAggregatePerBucket() throws IOException {
+        TimeSeries series = new TimeSeries(folder.getRoot(), 1, 64, 16);
+        // 10 samples per second for 60 s, value = second
+        for (int i = 0; i < 600; i++) {
+            series.append(i * 100 * MILLI, i / 10);
+        }
+
+        List<Float> means = new ArrayList<>();
+        series.downsample(0, 0, 60_000 * MILLI, 10_000 * MILLI,
+                (start, aggregate) -> {
+                    assertEquals(100, aggregate.count);
+                    means.add(aggregate.mean());
+                });
+
+        assertEquals(6, means.size());
+        assertEquals(4.5f, means.get(0), 1e-4f);
+        assertEquals(54.5f, means.get(5), 1e-4f);
+    }
+
+    @Test
+    public void reopenedSeriesKeepsDataAndAppends() throws IOException {
+        File directory = folder.getRoot();
+        TimeSeries first = new TimeSeries(directory, 1, 50, 8);
+        for (int i = 0; i < 120; i++) {
+            first.append(i * MILLI, i);
+        }
+        first.flush();
+
+        TimeSeries reopened = new TimeSeries(directory, 1, 50, 8);
+        assertEquals(120, reopened.size());
+        reopened.append(120 * MILLI, 120);
+
+        TimeSeries.Aggregate aggregate = reopened.aggregate(0, 0, Long.MAX_VALUE, new TimeSeries.Aggregate());
+        assertEquals(121, aggregate.count);
+        assertEquals(120f, aggregate.max, 0f);
+        assertEquals(3, reopened.getSegmentCount());
+    }
+
+    @Test
+    public void agedOutSegmentsAreArchivedAndStillQueried() throws IOException {
+        File directory = folder.getRoot();
+        TimeSeries series = new TimeSeries(directory, 2, 100, 2, 3);
+        for (int i = 0; i < 1000; i++) {
+            series.append(i * MILLI, new float[] {i, 70 + i % 4});
+        }
+
+        // Two hot segments, three archived, the rest dropped
+        assertEquals(2, series.getSegmentCount());
+        assertEquals(3, series.getArchivedSegmentCount());
+        assertEquals(500, series.size());
+        List<Long> times = new ArrayList<>();
+        series.scan(0, Long.MAX_VALUE, (timestamp, values) -> {
+            times.add(timestamp);
+            assertEquals(timestamp / MILLI, values[0], 0f);
+        });
+        assertEquals(500, times.size());
+        assertEquals(500 * MILLI, (long) times.get(0));
+
+        TimeSeries.Aggregate whole = series.aggregate(0, 0, Long.MAX_VALUE, new TimeSeries.Aggregate());
+        TimeSeries.Aggregate part = series.aggregate(0, 550 * MILLI, 649 * MILLI, new TimeSeries.Aggregate());
+        assertEquals(500, whole.count);
+        assertEquals(500f, whole.min, 0f);
+        assertEquals(100, part.count);
+        assertEquals(599.5f, part.mean(), 1e-3f);
+
+        TimeSeries reopened = new TimeSeries(directory, 2, 100, 2, 3);
+        assertEquals(3, reopened.getArchivedSegmentCount());
+        assertEquals(500, reopened.size());
+        assertEquals(0, reopened.getArchiveFailures());
+    }
+
+    @Test
+    public void overnightGapStaysInTheSegmentToTheMillisecond() throws IOException {
+        TimeSeries series = new TimeSeries(folder.getRoot(), 1, 100, 4);
+        series.append(0, 1f);
+        // More than the ~35 min a microsecond delta can hold
+        long morning = 8 * 3_600_000L * MILLI + 1_234_567L;
+        series.append(morning, 2f);
+        series.append(morning + 500_000L, 3f);
+
+        assertEquals(1, series.getSegmentCount());
+        List<Long> times = new ArrayList<>();
+        series.scan(0, Long.MAX_VALUE, (timestamp, values) -> times.add(timestamp));
+        // Only the sample after the gap is rounded down to the millisecond
+        assertEquals(8 * 3_600_000L * MILLI + MILLI, (long) times.get(1));
+        assertEquals((morning + 500_000L) / 1000 * 1000, (long) times.get(2));
+    }
+
+    @Test
+    public void gapOfMonthsStartsNewSegment() throws IOException {
+        TimeSeries series = new TimeSeries(folder.getRoot(), 1, 100, 4);
+        series.append(0, 1f);
+        long later = 60L * 86_400_000L * MILLI;
+        series.append(later, 2f);
+
+        assertEquals(2, series.getSegmentCount());
+        List<Long> times = new ArrayList<>();
+        series.scan(0, Long.MAX_VALUE, (timestamp, values) -> times.add(timestamp));
+        assertEquals(later, (long) times.get(1));
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.phoneapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimeWindowTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void expiresSamplesOlderThanDuration() {
+        TimeWindow window = new TimeWindow(10 * SECOND);
+        for (int i = 0; i <= 20; i++) {
+            window.add(i * SECOND, i);
+        }
+
+        // Samples at 10..20 s are within 10 s of the newest one
+        assertEquals(11, window.size());
+        assertEquals(15f, window.mean(), 1e-5f);
+    }
+
+    @Test
+    public void fullOnlyAfterCoveringDuration() {
+        TimeWindow window = new TimeWindow(5 * SECOND);
+        window.add(0, 70f);
+        window.add(4 * SECOND, 71f);
+        assertFalse(window.isFull());
+
+        window.add(5 * SECOND, 72f);
+        assertTrue(window.isFull());
+    }
+
+    @Test
+    public void sameDurationRegardlessOfSampleRate() {
+        TimeWindow heartRate = new TimeWindow(10 * SECOND);
+        TimeWindow movement = new TimeWindow(10 * SECOND);
+        for (long t = 0; t <= 30 * SECOND; t += SECOND) {
+            heartRate.add(t, 70f);
+        }
+        for (long t = 0; t <= 30 * SECOND; t += SECOND / 50) {
+            movement.add(t, 9.81f);
+        }
+
+        assertEquals(11, heartRate.size());
+        assertEquals(501, movement.size());
+        assertTrue(heartRate.isFull() && movement.isFull());
+    }
+
+    @Test
+    public void gapEmptiesWindowAndResetsCoverage() {
+        TimeWindow window = new TimeWindow(5 * SECOND);
+        for (int i = 0; i < 10; i++) {
+            window.add(i * SECOND, 80f);
+        }
+        assertTrue(window.isFull());
+
+        window.add(60 * SECOND, 60f);
+        assertEquals(1, window.size());
+        assertEquals(60f, window.mean(), 0f);
+        assertFalse(window.isFull());
+    }
+
+    @Test
+    public void advanceToExpiresWithoutNewSamples() {
+        TimeWindow window = new TimeWindow(5 * SECOND);
+        window.add(0, 1f);
+        window.add(3 * SECOND, 2f);
+
+        window.advanceTo(7 * SECOND);
+        assertEquals(1, window.size());
+        window.advanceTo(9 * SECOND);
+        assertTrue(window.isEmpty());
+        assertEquals(0f, window.mean(), 0f);
+    }
+
+    @Test
+    public void rmsOfMovement() {
+        TimeWindow window = new TimeWindow(10 * SECOND);
+        window.add(0, 3f);
+        window.add(SECOND, 4f);
+
+        assertEquals((float) Math.sqrt((9 + 16) / 2.0), window.rms(), 1e-5f);
+    }
+
+    @Test
+    public void clockGoingBackwardsClearsWindow() {
+        TimeWindow window = new TimeWindow(5 * SECOND);
+        window.add(100 * SECOND, 1f);
+        window.add(101 * SECOND, 2f);
+
+        window.add(2 * SECOND, 3f);
+        assertEquals(1, window.size());
+        assertEquals(3f, window.mean(), 0f);
+    }
+
+    @Test
+    public void matchesDirectComputationWithJitteredRate() {
+        TimeWindow window = new TimeWindow(10 * SECOND, 4);
+        ArrayDeque<long[]> reference = new ArrayDeque<>();
+        Random random = new Random(3);
+        long t = 0;
+
+        for (int i = 0; i < 50_000; i++) {
+            t += 1 + random.nextInt((int) (SECOND / 10));
+            float value = 9.81f + (float) random.nextGaussian();
+            window.add(t, value);
+            reference.addLast(new long[]{t, Float.floatToIntBits(value)});
+            while (reference.peekFirst()[0] < t - 10 * SECOND) {
+                reference.removeFirst();
+            }
+        }
+
+        double sum = 0;
+        for (long[] sample : reference) {
+            sum += Float.intBitsToFloat((int) sample[1]);
+        }
+        double mean = sum / reference.size();
+        double squares = 0;
+        for (long[] sample : reference) {
+            double diff = Float.intBitsToFloat((int) sample[1]) - mean;
+            squares += diff * diff;
+        }
+
+        assertEquals(reference.size(), window.size());
+        assertEquals(mean, window.mean(), 1e-4);
+        assertEquals(Math.sqrt(squares / reference.size()), window.standardDeviation(), 1e-4);
+    }
+}
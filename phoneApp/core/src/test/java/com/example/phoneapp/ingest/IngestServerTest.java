@@ -0,0 +1,294 @@
+package com.example.phoneapp.ingest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.example.phoneapp.AnalyzerSnapshot;
+import com.example.phoneapp.EmotionalState;
+import com.example.phoneapp.EmotionalStateAnalyzer;
+import com.example.phoneapp.PersonalBaseline;
+import com.example.phoneapp.SamplingAdvisor;
+import com.example.phoneapp.SensorPipeline;
+import com.example.phoneapp.StateTracker;
+import com.example.phoneapp.metrics.MetricsRegistry;
+import com.example.shared.FrameEncoder;
+import com.example.shared.RateHint;
+import com.example.shared.SensorFrame;
+import com.example.shared.StreamFrameDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IngestServerTest {
+    private static final long SECOND = 1_000_000_000L;
+    private static final float[] HEART_RATES = {70f, 80f, 88f, 95f};
+    private static final EmotionalState[] STATES = {
+            EmotionalState.CALM, EmotionalState.NORMAL, EmotionalState.STRESSED, EmotionalState.ANXIOUS
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void everyWatchGetsItsOwnReaderAndAnalyzer() throws Exception {
+        int watches = 8;
+        int frames = 2_000;
+        RecordingListener listener = new RecordingListener(watches);
+        IngestServer server = new IngestServer(listener);
+        MetricsRegistry metrics = new MetricsRegistry();
+        server.setMetrics(metrics);
+        SocketTransport transport = new SocketTransport(0);
+        server.serve(transport);
+
+        Map<String, EmotionalState> expected = new ConcurrentHashMap<>();
+        Map<String, List<Integer>> hints = new ConcurrentHashMap<>();
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < watches; i++) {
+            byte[] data = stream(frames, HEART_RATES[i % HEART_RATES.length]);
+            EmotionalState state = STATES[i % STATES.length];
+            Thread client = new Thread(() -> {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), transport.getPort())) {
+                    String id = "127.0.0.1:" + socket.getLocalPort();
+                    expected.put(id, state);
+                    OutputStream out = socket.getOutputStream();
+                    // Several writes, so frames straddle reads on the phone side
+                    for (int offset = 0; offset < data.length; offset += 700) {
+                        out.write(data, offset, Math.min(700, data.length - offset));
+                    }
+                    // Stay connected until the phone has analyzed everything, as a watch would
+                    long deadline = System.currentTimeMillis() + 10_000;
+                    while (server.getSession(id) == null
+                            || server.getSession(id).getPipeline().getAnalyzerMetrics().getItems() < frames) {
+                        if (System.currentTimeMillis() > deadline) {
+                            throw new AssertionError("Analysis did not finish");
+                        }
+                        Thread.sleep(1);
+                    }
+                    socket.shutdownOutput();
+                    // Then read what the phone sent back until it hangs up
+                    hints.put(id, readHints(socket.getInputStream()));
+                } catch (IOException | InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            client.start();
+            clients.add(client);
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        assertTrue(listener.disconnected.await(10, TimeUnit.SECONDS));
+        server.shutdown();
+
+        assertEquals(watches, server.getSessions().size());
+        assertEquals(watches, metrics.counter("ingest.connections").get());
+        for (Map.Entry<String, EmotionalState> watch : expected.entrySet()) {
+            String id = watch.getKey();
+            assertNotNull(id, server.getSession(id));
+            assertEquals(frames, server.getSession(id).getPipeline().getAnalyzerMetrics().getItems());
+            assertEquals(frames, metrics.counter("device." + id + ".pipeline.frames_received").get());
+            assertEquals(id, watch.getValue(), listener.lastStates.get(id));
+            assertNull(listener.errors.get(id));
+            // 200 s of data: resting wearers were told to slow down after two minutes
+            boolean resting = watch.getValue() == EmotionalState.CALM || watch.getValue() == EmotionalState.NORMAL;
+            assertEquals(id, resting ? Arrays.asList(RateHint.LEVEL_LOW) : Arrays.asList(), hints.get(id));
+        }
+        assertEquals(0, server.getActiveConnections());
+    }
+
+    @Test
+    public void reconnectReplacesTheStaleLinkAndKeepsTheSession() throws Exception {
+        RecordingListener listener = new RecordingListener(2);
+        IngestServer server = new IngestServer(listener);
+        BlockingStream stale = new BlockingStream();
+
+        server.submit(new StreamConnection("watch", stale));
+        assertTrue(stale.reading.await(5, TimeUnit.SECONDS));
+        DeviceSession session = server.getSession("watch");
+        server.submit(new StreamConnection("watch", new ByteArrayInputStream(stream(10, 95f))));
+        assertTrue(listener.disconnected.await(5, TimeUnit.SECONDS));
+        server.shutdown();
+
+        assertSame(session, server.getSession("watch"));
+        assertEquals(1, server.getSessions().size());
+        assertEquals(2, listener.connects.get("watch").intValue());
+        assertEquals(10, session.getPipeline().getAnalyzerMetrics().getItems());
+        assertEquals(EmotionalState.ANXIOUS, listener.lastStates.get("watch"));
+    }
+
+    @Test
+    public void closeSavesWhatTheAnalyzerLeftBehind() throws Exception {
+        int frames = 2_000;
+        RecordingListener listener = new RecordingListener(1);
+        IngestServer server = new IngestServer(listener);
+        server.setHistoryDirectory(folder.getRoot());
+        server.submit(new StreamConnection("watch", new ByteArrayInputStream(stream(frames, 70f))));
+        assertTrue(listener.disconnected.await(5, TimeUnit.SECONDS));
+        DeviceSession session = server.getSession("watch");
+        awaitAnalyzed(session, frames);
+        server.close();
+
+        // Fewer samples than the baseline saves on its own after, so only close wrote it
+        File directory = new File(folder.getRoot(), "watch");
+        File baseline = new File(directory, IngestServer.BASELINE_FILE);
+        awaitFile(baseline);
+        long samples = session.getAnalyzer().getBaseline().getSampleCount();
+        assertTrue(samples > 0);
+        assertEquals(samples, PersonalBaseline.open(baseline).getSampleCount());
+
+        // No periodic snapshot was due yet; the one close wrote picks up where the analyzer was
+        awaitFile(new File(directory, IngestServer.SNAPSHOT_FILE + ".0"));
+        EmotionalStateAnalyzer restored = new EmotionalStateAnalyzer();
+        StateTracker tracker = new StateTracker();
+        assertTrue(new AnalyzerSnapshot(new File(directory, IngestServer.SNAPSHOT_FILE)).restore(restored, tracker));
+        assertTrue(restored.hasEnoughData());
+        assertEquals(session.getAnalyzer().getAverageHeartRate(), restored.getAverageHeartRate(), 0f);
+        assertEquals(session.getStateTracker().getState(), tracker.getState());
+    }
+
+    @Test
+    public void legacyFramesPaceTheAdvisorByReceiveTime() {
+        DeviceSession session = new DeviceSession("watch", new EmotionalStateAnalyzer(),
+                new SensorPipeline(new EmotionalStateAnalyzer(), result -> { }), null, null, Runnable::run,
+                new RecordingListener(0));
+        SensorPipeline.AnalysisResult result = new SensorPipeline.AnalysisResult();
+        result.state = EmotionalState.CALM;
+        result.enoughData = true;
+        // What a text frame decodes to: no sensor time
+        result.frame.set(SensorFrame.TYPE_HEART_RATE, SensorFrame.NO_TIMESTAMP);
+        for (long millis = 0; millis <= SamplingAdvisor.DEFAULT_DWELL_MILLIS; millis += 1_000) {
+            result.receivedNanos = millis * 1_000_000L;
+            session.onAnalysis(result);
+        }
+        session.stopHints();
+
+        assertEquals(RateHint.LEVEL_LOW, session.getSamplingAdvisor().getLevel());
+    }
+
+    @Test
+    public void deviceIdsBecomeSafeDirectoryNames() {
+        assertEquals("AA_BB_CC_DD_EE_FF", IngestServer.directoryName("AA:BB:CC:DD:EE:FF"));
+        assertEquals("127.0.0.1_5000", IngestServer.directoryName("127.0.0.1:5000"));
+    }
+
+    private static void awaitAnalyzed(DeviceSession session, int frames) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (session.getPipeline().getAnalyzerMetrics().getItems() < frames) {
+            assertTrue("Analysis did not finish", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    // close() leaves the writing to the snapshot thread
+    private static void awaitFile(File file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!file.exists()) {
+            assertTrue("Not written: " + file, System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static byte[] stream(int frames, float bpm) {
+        ByteBuffer out = ByteBuffer.allocate(frames * 32);
+        for (int i = 0; i < frames; i++) {
+            long timestamp = SECOND + i * (SECOND / 10);
+            if (i % 2 == 0) {
+                FrameEncoder.encodeHeartRate(out, timestamp, bpm);
+            } else {
+                FrameEncoder.encodeAccelerometer(out, timestamp, 0.1f, 9.8f, 0.2f);
+            }
+        }
+        return Arrays.copyOf(out.array(), out.position());
+    }
+
+    private static List<Integer> readHints(InputStream in) throws IOException {
+        StreamFrameDecoder decoder = new StreamFrameDecoder();
+        SensorFrame frame = new SensorFrame();
+        RateHint hint = new RateHint();
+        List<Integer> levels = new ArrayList<>();
+        while (decoder.readFrom(in) >= 0) {
+            while (decoder.next(frame)) {
+                if (hint.readFrom(frame)) {
+                    levels.add(hint.level);
+                }
+            }
+        }
+        return levels;
+    }
+
+    private static final class RecordingListener implements IngestServer.Listener {
+        final Map<String, EmotionalState> lastStates = new ConcurrentHashMap<>();
+        final Map<String, Integer> connects = new ConcurrentHashMap<>();
+        final Map<String, IOException> errors = new ConcurrentHashMap<>();
+        final CountDownLatch disconnected;
+
+        RecordingListener(int expectedDisconnects) {
+            disconnected = new CountDownLatch(expectedDisconnects);
+        }
+
+        @Override
+        public void onResult(String deviceId, SensorPipeline.AnalysisResult result) {
+            lastStates.put(deviceId, result.state);
+        }
+
+        @Override
+        public void onConnected(String deviceId) {
+            connects.merge(deviceId, 1, Integer::sum);
+        }
+
+        @Override
+        public void onDisconnected(String deviceId, IOException error) {
+            if (error != null) {
+                errors.put(deviceId, error);
+            }
+            disconnected.countDown();
+        }
+    }
+
+    // A link that went quiet; reads only end when it is closed
+    private static final class BlockingStream extends InputStream {
+        final CountDownLatch reading = new CountDownLatch(1);
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public int read() throws IOException {
+            reading.countDown();
+            try {
+                closed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Stream closed");
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return read();
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.phoneapp.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsKeepValuesWithinThreePercent() {
+        for (long value = 0; value < LatencyHistogram.MAX_TRACKABLE_NANOS; value = value * 3 / 2 + 1) {
+            long highest = LatencyHistogram.highestValueIn(LatencyHistogram.indexOf(value));
+            assertTrue(value + " -> " + highest, highest >= value);
+            assertTrue(value + " -> " + highest, highest - value <= value / 32);
+        }
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_NANOS,
+                LatencyHistogram.highestValueIn(LatencyHistogram.indexOf(LatencyHistogram.MAX_TRACKABLE_NANOS)));
+    }
+
+    @Test
+    public void percentilesOfAUniformSpread() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500, snapshot.getMeanNanos(), 0.001);
+        assertEquals(500_000, snapshot.getValueAtPercentile(50), 500_000 / 32);
+        assertEquals(990_000, snapshot.getValueAtPercentile(99), 990_000 / 32);
+        assertEquals(1_000_000, snapshot.getValueAtPercentile(100));
+        assertEquals(1_000_000, snapshot.getMaxNanos());
+    }
+
+    @Test
+    public void concurrentWritersLoseNothing() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            long offset = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(i % 5000 + offset);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(400_000, histogram.getCount());
+        assertEquals(400_000, histogram.snapshot().getCount());
+        assertEquals(4999 + 3, histogram.getMaxNanos());
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.phoneapp.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void namesAreLookedUpOnceAndShared() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("frames");
+
+        counter.add(3);
+        registry.counter("frames").increment();
+
+        assertSame(counter, registry.counter("frames"));
+        assertEquals(4, counter.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aNameBelongsToOneMetric() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("queue");
+        registry.gauge("queue", () -> 1);
+    }
+
+    @Test
+    public void exportsEveryKindAsJson() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("b.counter").add(7);
+        registry.meter("bytes").mark(2048);
+        registry.gauge("a.depth", () -> 12);
+        registry.histogram("stage").record(1_500_000);
+
+        String json = registry.toJson();
+
+        assertTrue(json, json.contains("\"counters\": {\n    \"b.counter\": 7\n  }"));
+        assertTrue(json, json.contains("\"bytes\": {\"count\": 2048, \"rate_per_s\": "));
+        assertTrue(json, json.contains("\"a.depth\": 12"));
+        assertTrue(json, json.contains("\"stage\": {\"count\": 1, \"mean_us\": 1500.0,"));
+        assertTrue(json, json.contains("\"max_us\": 1500.0}"));
+    }
+}
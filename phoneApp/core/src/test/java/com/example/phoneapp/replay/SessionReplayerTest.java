@@ -0,0 +1,83 @@
+package com.example.phoneapp.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.phoneapp.EmotionalState;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SessionReplayerTest {
+
+    @Test
+    public void syntheticSessionWalksThroughTheStates() throws Exception {
+        Session session = Session.synthetic(4, 1);
+
+        ReplayReport report = new SessionReplayer(SessionReplayer.AS_FAST_AS_POSSIBLE).replay(session);
+
+        assertEquals(session.getFrameCount(), report.getFrames());
+        assertTrue(report.getFramesPerSecond() > 0);
+        assertTrue(report.getLatencyMicros(50) <= report.getLatencyMicros(99));
+        List<EmotionalState> states = states(report);
+        assertEquals(EmotionalState.CALM, states.get(0));
+        assertTrue(states.toString(), states.contains(EmotionalState.STRESSED));
+        assertEquals(EmotionalState.ANXIOUS, states.get(states.size() - 1));
+    }
+
+    @Test
+    public void csvSessionIsReplayedThroughThePipeline() throws Exception {
+        String csv = "timestamp_ns,sensor,values\n" +
+                "# resting\n" +
+                "1000000000,HR,70\n" +
+                "1020000000,ACC,0.1,9.8,0.2\n" +
+                "1500000000,IBI,850\n" +
+                "2000000000,HR,95\n";
+        Session session = Session.fromCsv(new StringReader(csv));
+
+        ReplayReport report = new SessionReplayer(SessionReplayer.AS_FAST_AS_POSSIBLE).replay(session);
+
+        assertEquals(4, session.getFrameCount());
+        assertEquals(4, report.getFrames());
+        assertEquals(Arrays.asList(EmotionalState.CALM, EmotionalState.ANXIOUS), states(report));
+        assertEquals(1_000_000_000L, report.getStateChanges().get(1).sessionNanos);
+    }
+
+    @Test
+    public void captureReadsBackTheSameFrames() throws Exception {
+        Session original = Session.synthetic(1, 2);
+        byte[] capture = Arrays.copyOf(original.getData(), original.getByteCount());
+
+        Session loaded = Session.fromCapture(new ByteArrayInputStream(capture));
+
+        assertEquals(original.getFrameCount(), loaded.getFrameCount());
+        assertEquals(original.getDurationNanos(), loaded.getDurationNanos());
+    }
+
+    @Test
+    public void realTimeReplayFollowsSensorTimestamps() throws Exception {
+        String csv = "1000000000,HR,70\n" +
+                "1100000000,HR,71\n" +
+                "1200000000,HR,72\n" +
+                "1300000000,HR,73\n";
+        Session session = Session.fromCsv(new StringReader(csv));
+
+        ReplayReport report = new SessionReplayer(SessionReplayer.REAL_TIME).replay(session);
+
+        assertEquals(4, report.getFrames());
+        assertTrue("Took " + report.getElapsedSeconds() + " s", report.getElapsedSeconds() >= 0.29);
+    }
+
+    private static List<EmotionalState> states(ReplayReport report) {
+        List<EmotionalState> states = new ArrayList<>();
+        for (ReplayReport.StateChange change : report.getStateChanges()) {
+            states.add(change.state);
+        }
+        return states;
+    }
+}
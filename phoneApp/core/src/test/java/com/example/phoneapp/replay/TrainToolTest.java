@@ -0,0 +1,49 @@
+package com.example.phoneapp.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.phoneapp.EmotionalState;
+import com.example.phoneapp.LogisticRegressionClassifier;
+import com.example.phoneapp.ThresholdClassifier;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TrainToolTest {
+
+    @Test
+    public void shippedModelBeatsThresholdsWhenHeartRateIsShifted() throws Exception {
+        List<Session> sessions = Arrays.asList(
+                Session.synthetic(8, 2001, -15f),
+                Session.synthetic(8, 2002, 15f));
+        TrainTool.Evaluation model = TrainTool.evaluate(LogisticRegressionClassifier.loadDefault(), sessions);
+        TrainTool.Evaluation thresholds = TrainTool.evaluate(ThresholdClassifier.INSTANCE, sessions);
+
+        assertTrue(model.toString(), model.accuracy() > 0.85f);
+        assertTrue(thresholds.toString(), model.accuracy() > thresholds.accuracy() + 0.2f);
+    }
+
+    @Test
+    public void samplesFollowCsvLabels() throws Exception {
+        StringBuilder csv = new StringBuilder("timestamp_ns,sensor,value\n");
+        csv.append("1000000000,LABEL,calm\n");
+        csv.append("181000000000,LABEL,stressed\n");
+        for (long second = 1; second <= 360; second++) {
+            csv.append(second * 1_000_000_000L).append(",HR,").append(second <= 180 ? 62 : 96).append('\n');
+            csv.append(second * 1_000_000_000L).append(",ACC,0,9.81,0\n");
+        }
+        Session session = Session.fromCsv(new StringReader(csv.toString()));
+        assertEquals(EmotionalState.CALM, session.getLabel(181_000_000_000L - 1));
+        assertEquals(EmotionalState.STRESSED, session.getLabel(181_000_000_000L));
+
+        int[] counts = new int[EmotionalState.values().length];
+        TrainTool.sample(session, (features, label) -> counts[label.ordinal()]++);
+        // Every 5 s, except the first minute of each label
+        assertEquals(24, counts[EmotionalState.CALM.ordinal()]);
+        assertEquals(24, counts[EmotionalState.STRESSED.ordinal()]);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.shared;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps only the latest value for one piece of UI and renders it at most once
+ * per {@code minIntervalMillis}, instead of posting a runnable per sensor
+ * sample. Values may be offered from any thread; rendering happens on
+ * whatever thread the {@link Scheduler} runs tasks on, normally the main
+ * thread. A value equal to the one on screen is not rendered again.
+ *
+ * <p>At most one render task is scheduled at a time, so the main looper sees
+ * at most one runnable per interval however fast updates arrive.
+ */
+public final class CoalescingUpdater<T> {
+    public static final int DEFAULT_MAX_RATE_HZ = 10;
+
+    /** Posts tasks to the UI thread, e.g. aligned to the next display frame. */
+    public interface Scheduler {
+        long uptimeMillis();
+
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    public interface Renderer<T> {
+        void render(T value);
+    }
+
+    private final Scheduler scheduler;
+    private final Renderer<T> renderer;
+    private final long minIntervalMillis;
+    private final Runnable renderTask = this::renderPending;
+
+    private final AtomicReference<T> pending = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    // Only touched by the render task
+    private T rendered;
+    private volatile long lastRenderMillis = Long.MIN_VALUE / 2;
+    private volatile long renders;
+    private volatile long unchanged;
+
+    public CoalescingUpdater(Scheduler scheduler, long minIntervalMillis, Renderer<T> renderer) {
+        this.scheduler = scheduler;
+        this.minIntervalMillis = minIntervalMillis;
+        this.renderer = renderer;
+    }
+
+    public static long intervalForRate(int maxRateHz) {
+        return 1000L / maxRateHz;
+    }
+
+    /** Replaces whatever is waiting to be rendered. {@code value} must not be null. */
+    public void update(T value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        updates.incrementAndGet();
+        if (pending.getAndSet(value) != null) {
+            coalesced.incrementAndGet();
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            long wait = lastRenderMillis + minIntervalMillis - scheduler.uptimeMillis();
+            scheduler.schedule(renderTask, Math.max(0, wait));
+        }
+    }
+
+    private void renderPending() {
+        // Clear the flag first, so an update that lands after we take the value
+        // schedules its own render instead of being lost
+        scheduled.set(false);
+        T value = pending.getAndSet(null);
+        if (value == null) {
+            return;
+        }
+        lastRenderMillis = scheduler.uptimeMillis();
+        if (value.equals(rendered)) {
+            unchanged++;
+            return;
+        }
+        rendered = value;
+        renderer.render(value);
+        renders++;
+    }
+
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    /** Updates replaced by a newer one before they were rendered. */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /** Renders skipped because the value was already on screen. */
+    public long getUnchanged() {
+        return unchanged;
+    }
+
+    public long getRenders() {
+        return renders;
+    }
+
+    @Override
+    public String toString() {
+        return "updates " + getUpdates() + ", rendered " + renders +
+                ", coalesced " + getCoalesced() + ", unchanged " + unchanged;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.shared;
+
+/**
+ * Reduces raw heart-rate and accelerometer samples to one
+ * {@link WindowFeatures} per window of sensor time. The watch runs this in
+ * edge-processing mode and the phone runs the same code on raw data, so both
+ * paths produce identical features for identical samples.
+ *
+ * <p>A window starts at its first sample and is closed by the first sample
+ * that falls {@code windowNanos} or more after that. Every feature is
+ * accumulated as samples arrive; nothing is buffered or allocated.
+ */
+public final class FeatureExtractor {
+    // Used by both apps so watch and phone features line up
+    public static final long DEFAULT_WINDOW_MILLIS = 10_000;
+    public static final float GRAVITY = 9.80665f;
+    // A step shows up as magnitude rising this far above gravity...
+    private static final float STEP_THRESHOLD = GRAVITY + 1.5f;
+    // ...and the next one cannot follow sooner than this
+    private static final long STEP_REFRACTORY_NANOS = 250_000_000L;
+
+    private final long windowNanos;
+    private final WindowFeatures completed = new WindowFeatures();
+
+    private boolean windowOpen;
+    private long windowStartNanos;
+    private long lastTimestampNanos;
+
+    private int accCount;
+    private double accSum;
+    private double accSumSquares;
+    private float accMax;
+    private int previousSign;
+    private int zeroCrossings;
+    private int steps;
+    private boolean stepArmed = true;
+    private long lastStepNanos = Long.MIN_VALUE;
+
+    private int hrCount;
+    private double hrSum;
+    private float hrMin;
+    private float hrMax;
+
+    public FeatureExtractor() {
+        this(DEFAULT_WINDOW_MILLIS * 1_000_000L);
+    }
+
+    public FeatureExtractor(long windowNanos) {
+        if (windowNanos <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + windowNanos);
+        }
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * @return true if this sample closed the previous window, whose features
+     *         are then available from {@link #completed()}
+     */
+    public boolean addAccelerometer(long timestampNanos, float x, float y, float z) {
+        boolean closed = advance(timestampNanos);
+        float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+
+        accCount++;
+        accSum += magnitude;
+        accSumSquares += (double) magnitude * magnitude;
+        if (magnitude > accMax) {
+            accMax = magnitude;
+        }
+
+        int sign = magnitude >= GRAVITY ? 1 : -1;
+        if (previousSign != 0 && sign != previousSign) {
+            zeroCrossings++;
+        }
+        previousSign = sign;
+
+        if (stepArmed && magnitude > STEP_THRESHOLD
+                && (lastStepNanos == Long.MIN_VALUE
+                || timestampNanos - lastStepNanos >= STEP_REFRACTORY_NANOS)) {
+            steps++;
+            lastStepNanos = timestampNanos;
+            stepArmed = false;
+        } else if (magnitude < GRAVITY) {
+            stepArmed = true;
+        }
+        return closed;
+    }
+
+    public boolean addHeartRate(long timestampNanos, float bpm) {
+        boolean closed = advance(timestampNanos);
+        if (hrCount == 0) {
+            hrMin = bpm;
+            hrMax = bpm;
+        } else if (bpm < hrMin) {
+            hrMin = bpm;
+        } else if (bpm > hrMax) {
+            hrMax = bpm;
+        }
+        hrCount++;
+        hrSum += bpm;
+        return closed;
+    }
+
+    /**
+     * Closes the current window early, e.g. when the stream stops.
+     *
+     * @return false if the window held no samples
+     */
+    public boolean flush() {
+        if (!windowOpen) {
+            return false;
+        }
+        finishWindow();
+        return true;
+    }
+
+    /** Features of the most recently closed window. Overwritten by the next one. */
+    public WindowFeatures completed() {
+        return completed;
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    private boolean advance(long timestampNanos) {
+        boolean closed = false;
+        if (windowOpen && timestampNanos - windowStartNanos >= windowNanos) {
+            finishWindow();
+            closed = true;
+        }
+        if (!windowOpen) {
+            windowOpen = true;
+            windowStartNanos = timestampNanos;
+        }
+        lastTimestampNanos = timestampNanos;
+        return closed;
+    }
+
+    private void finishWindow() {
+        float[] v = completed.values;
+        completed.endTimestampNanos = lastTimestampNanos;
+        v[WindowFeatures.ACC_COUNT] = accCount;
+        v[WindowFeatures.ACC_MEAN] = accCount == 0 ? 0f : (float) (accSum / accCount);
+        v[WindowFeatures.ACC_MAX] = accMax;
+        v[WindowFeatures.ACC_RMS] = accCount == 0 ? 0f : (float) Math.sqrt(accSumSquares / accCount);
+        v[WindowFeatures.ZERO_CROSSING_RATE] = accCount < 2 ? 0f : (float) zeroCrossings / (accCount - 1);
+        v[WindowFeatures.STEP_COUNT] = steps;
+        v[WindowFeatures.HR_COUNT] = hrCount;
+        v[WindowFeatures.HR_MEAN] = hrCount == 0 ? 0f : (float) (hrSum / hrCount);
+        v[WindowFeatures.HR_MIN] = hrMin;
+        v[WindowFeatures.HR_MAX] = hrMax;
+        v[WindowFeatures.DURATION_MILLIS] = (lastTimestampNanos - windowStartNanos) / 1_000_000f;
+
+        windowOpen = false;
+        accCount = 0;
+        accSum = 0;
+        accSumSquares = 0;
+        accMax = 0f;
+        previousSign = 0;
+        zeroCrossings = 0;
+        steps = 0;
+        hrCount = 0;
+        hrSum = 0;
+        hrMin = 0f;
+        hrMax = 0f;
+    }
+}
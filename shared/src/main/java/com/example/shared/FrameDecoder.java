@@ -0,0 +1,239 @@
+package com.example.shared;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes frames produced by {@link FrameEncoder}. During the rollout it also
+ * accepts the old "HR:72.0" / "ACC:0.12,9.81,-0.33" text frames, parsed
+ * straight from the bytes without going through String.
+ *
+ * <p>{@link #decode} returns the number of bytes consumed (and advances the
+ * buffer), {@link #NEED_MORE_DATA} if the frame is incomplete, or
+ * {@link #INVALID} if the bytes at the current position are not a frame. The
+ * buffer position is left untouched in the last two cases.
+ *
+ * <p>These methods handle one buffer that is already known to hold whole
+ * frames. Use {@link StreamFrameDecoder} for data read off a socket.
+ */
+public final class FrameDecoder {
+    public static final int NEED_MORE_DATA = 0;
+    public static final int INVALID = -1;
+
+    private static final byte[] HR_TAG = {'H', 'R', ':'};
+    private static final byte[] ACC_TAG = {'A', 'C', 'C', ':'};
+
+    private static final int MAX_MANTISSA_DIGITS = 17;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17
+    };
+
+    private FrameDecoder() {
+    }
+
+    public static int decode(ByteBuffer in, SensorFrame out) {
+        return decode(in, out, true);
+    }
+
+    /**
+     * @param endOfInput whether the buffer limit is a real frame boundary. When
+     *                   false, a text frame that runs up to the limit is only
+     *                   accepted once its last value has all the decimals the
+     *                   old watch build printed.
+     */
+    public static int decode(ByteBuffer in, SensorFrame out, boolean endOfInput) {
+        if (!in.hasRemaining()) {
+            return NEED_MORE_DATA;
+        }
+        byte first = in.get(in.position());
+        if (first == WireFormat.MAGIC) {
+            return decodeBinary(in, out);
+        }
+        if (first == 'H' || first == 'A') {
+            return decodeText(in, out, endOfInput);
+        }
+        return INVALID;
+    }
+
+    public static int decodeBinary(ByteBuffer in, SensorFrame out) {
+        int start = in.position();
+        int available = in.limit() - start;
+        if (available < WireFormat.HEADER_SIZE) {
+            return NEED_MORE_DATA;
+        }
+        if (in.get(start) != WireFormat.MAGIC || in.get(start + 1) != WireFormat.VERSION) {
+            return INVALID;
+        }
+
+        int bodyLength = in.getShort(start + 3) & 0xFFFF;
+        if (bodyLength < WireFormat.TIMESTAMP_SIZE
+                || bodyLength > WireFormat.MAX_BODY_SIZE
+                || (bodyLength - WireFormat.TIMESTAMP_SIZE) % WireFormat.VALUE_SIZE != 0) {
+            return INVALID;
+        }
+
+        int frameLength = WireFormat.HEADER_SIZE + bodyLength + WireFormat.TRAILER_SIZE;
+        if (available < frameLength) {
+            return NEED_MORE_DATA;
+        }
+        int crcIndex = start + frameLength - 1;
+        if (WireFormat.crc8(in, start + 1, crcIndex - start - 1) != in.get(crcIndex)) {
+            return INVALID;
+        }
+
+        int bodyStart = start + WireFormat.HEADER_SIZE;
+        out.set(in.get(start + 2), in.getLong(bodyStart));
+        int valueCount = (bodyLength - WireFormat.TIMESTAMP_SIZE) / WireFormat.VALUE_SIZE;
+        int valueStart = bodyStart + WireFormat.TIMESTAMP_SIZE;
+        for (int i = 0; i < valueCount; i++) {
+            out.values[i] = in.getFloat(valueStart + i * WireFormat.VALUE_SIZE);
+        }
+        out.valueCount = valueCount;
+
+        in.position(start + frameLength);
+        return frameLength;
+    }
+
+    public static boolean isFrameStart(byte b) {
+        return b == WireFormat.MAGIC || b == 'H' || b == 'A';
+    }
+
+    /**
+     * Parses one legacy text frame. Text frames have no terminator, so the
+     * frame ends at the first byte that cannot be part of it, or at the limit
+     * of the buffer if {@code endOfInput} is set.
+     */
+    public static int decodeText(ByteBuffer in, SensorFrame out, boolean endOfInput) {
+        int start = in.position();
+        int limit = in.limit();
+        int index;
+        int expectedValues;
+        byte type;
+
+        if (startsWith(in, start, limit, HR_TAG)) {
+            index = start + HR_TAG.length;
+            expectedValues = 1;
+            type = SensorFrame.TYPE_HEART_RATE;
+        } else if (startsWith(in, start, limit, ACC_TAG)) {
+            index = start + ACC_TAG.length;
+            expectedValues = 3;
+            type = SensorFrame.TYPE_ACCELEROMETER;
+        } else if (isPrefixOfTag(in, start, limit)) {
+            return NEED_MORE_DATA;
+        } else {
+            return INVALID;
+        }
+
+        // The old watch sent "HR:%.1f" and "ACC:%.2f,%.2f,%.2f"
+        int legacyDecimals = type == SensorFrame.TYPE_HEART_RATE ? 1 : 2;
+
+        out.set(type, SensorFrame.NO_TIMESTAMP);
+        for (int v = 0; v < expectedValues; v++) {
+            if (v > 0) {
+                if (index >= limit) {
+                    return NEED_MORE_DATA;
+                }
+                if (in.get(index) != ',') {
+                    return INVALID;
+                }
+                index++;
+            }
+            index = parseDecimal(in, index, limit, out, v);
+            if (index < 0) {
+                return index == -2 ? NEED_MORE_DATA : INVALID;
+            }
+        }
+        if (index == limit && !endOfInput && decimalsBefore(in, index) < legacyDecimals) {
+            return NEED_MORE_DATA;
+        }
+        out.valueCount = expectedValues;
+
+        in.position(index);
+        return index - start;
+    }
+
+    private static int decimalsBefore(ByteBuffer in, int end) {
+        int count = 0;
+        for (int i = end - 1; i >= 0; i--) {
+            byte b = in.get(i);
+            if (b == '.') {
+                return count;
+            }
+            if (b < '0' || b > '9') {
+                return 0;
+            }
+            count++;
+        }
+        return 0;
+    }
+
+    // Returns the index after the number, -1 if malformed, -2 if no digits before the limit
+    private static int parseDecimal(ByteBuffer in, int index, int limit, SensorFrame out, int slot) {
+        boolean negative = false;
+        if (index < limit && in.get(index) == '-') {
+            negative = true;
+            index++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        while (index < limit) {
+            byte b = in.get(index);
+            if (b >= '0' && b <= '9') {
+                if (digits < MAX_MANTISSA_DIGITS) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    if (seenPoint) {
+                        fractionDigits++;
+                    }
+                } else if (!seenPoint) {
+                    return -1;
+                }
+                digits++;
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+            index++;
+        }
+
+        if (digits == 0) {
+            return index >= limit ? -2 : -1;
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        out.values[slot] = (float) (negative ? -value : value);
+        return index;
+    }
+
+    private static boolean startsWith(ByteBuffer in, int start, int limit, byte[] tag) {
+        if (limit - start < tag.length) {
+            return false;
+        }
+        for (int i = 0; i < tag.length; i++) {
+            if (in.get(start + i) != tag[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // True if the buffer ends part-way through a tag, e.g. "AC"
+    private static boolean isPrefixOfTag(ByteBuffer in, int start, int limit) {
+        return isPrefix(in, start, limit, HR_TAG) || isPrefix(in, start, limit, ACC_TAG);
+    }
+
+    private static boolean isPrefix(ByteBuffer in, int start, int limit, byte[] tag) {
+        int length = limit - start;
+        if (length >= tag.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (in.get(start + i) != tag[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
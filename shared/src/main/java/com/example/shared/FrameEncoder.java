@@ -0,0 +1,95 @@
+package com.example.shared;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes sensor readings as binary frames (see {@link WireFormat}) into a
+ * caller-owned buffer. Nothing here allocates, so it is safe to call from
+ * onSensorChanged at full sensor rate.
+ */
+public final class FrameEncoder {
+
+    private FrameEncoder() {
+    }
+
+    public static int encodeHeartRate(ByteBuffer out, long timestampNanos, float bpm) {
+        int start = beginFrame(out, SensorFrame.TYPE_HEART_RATE, timestampNanos, 1);
+        out.putFloat(bpm);
+        return endFrame(out, start);
+    }
+
+    public static int encodeAccelerometer(ByteBuffer out, long timestampNanos, float x, float y, float z) {
+        int start = beginFrame(out, SensorFrame.TYPE_ACCELEROMETER, timestampNanos, 3);
+        out.putFloat(x);
+        out.putFloat(y);
+        out.putFloat(z);
+        return endFrame(out, start);
+    }
+
+    public static int encodeInterBeatInterval(ByteBuffer out, long timestampNanos, float intervalMillis) {
+        int start = beginFrame(out, SensorFrame.TYPE_INTER_BEAT_INTERVAL, timestampNanos, 1);
+        out.putFloat(intervalMillis);
+        return endFrame(out, start);
+    }
+
+    public static int encodeFeatures(ByteBuffer out, WindowFeatures features) {
+        return encode(out, SensorFrame.TYPE_FEATURES, features.endTimestampNanos,
+                features.values, 0, WindowFeatures.VALUE_COUNT);
+    }
+
+    /**
+     * Writes a sequence marker: the next frame written is number {@code sequence}
+     * of stream {@code streamId}. The sequence takes the timestamp's place.
+     */
+    public static int encodeSequence(ByteBuffer out, int streamId, long sequence) {
+        if (streamId < 0 || streamId > SequenceFilter.MAX_STREAM_ID) {
+            throw new IllegalArgumentException("Stream id out of range: " + streamId);
+        }
+        int start = beginFrame(out, SensorFrame.TYPE_SEQUENCE, sequence, 1);
+        out.putFloat(streamId);
+        return endFrame(out, start);
+    }
+
+    public static int encodeRateHint(ByteBuffer out, long timestampNanos, int level, float wakeHeartRate) {
+        int start = beginFrame(out, SensorFrame.TYPE_RATE_HINT, timestampNanos, RateHint.VALUE_COUNT);
+        out.putFloat(level);
+        out.putFloat(wakeHeartRate);
+        return endFrame(out, start);
+    }
+
+    public static int encode(ByteBuffer out, byte type, long timestampNanos,
+                             float[] values, int offset, int count) {
+        if (count < 0 || count > SensorFrame.MAX_VALUES) {
+            throw new IllegalArgumentException("Value count out of range: " + count);
+        }
+        int start = beginFrame(out, type, timestampNanos, count);
+        for (int i = 0; i < count; i++) {
+            out.putFloat(values[offset + i]);
+        }
+        return endFrame(out, start);
+    }
+
+    public static int encode(ByteBuffer out, SensorFrame frame) {
+        return encode(out, frame.type, frame.timestampNanos, frame.values, 0, frame.valueCount);
+    }
+
+    private static int beginFrame(ByteBuffer out, byte type, long timestampNanos, int valueCount) {
+        if (out.remaining() < WireFormat.frameSize(valueCount)) {
+            throw new BufferOverflowException();
+        }
+        int start = out.position();
+        out.put(WireFormat.MAGIC);
+        out.put(WireFormat.VERSION);
+        out.put(type);
+        out.putShort((short) (WireFormat.TIMESTAMP_SIZE + valueCount * WireFormat.VALUE_SIZE));
+        out.putLong(timestampNanos);
+        return start;
+    }
+
+    private static int endFrame(ByteBuffer out, int start) {
+        // Magic byte is not covered by the checksum
+        out.put(WireFormat.crc8(out, start + 1, out.position() - start - 1));
+        return out.position() - start;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.shared;
+
+/**
+ * Sampling advice from the phone, which sees the wearer's state, to the
+ * watch, which pays for every sample. Travels as a
+ * {@link SensorFrame#TYPE_RATE_HINT} frame back over the link the samples
+ * come in on.
+ *
+ * <p>{@link #LEVEL_LOW} lets the watch sample slowly and batch in the sensor
+ * hub. The watch does not wait for the phone to take that back: it returns
+ * to full rate by itself once heart rate reaches {@link #wakeHeartRate}.
+ */
+public final class RateHint {
+    public static final int LEVEL_HIGH = 0;
+    public static final int LEVEL_LOW = 1;
+    static final int VALUE_COUNT = 2;
+
+    public int level = LEVEL_HIGH;
+    public float wakeHeartRate;
+
+    /** Reads a {@link SensorFrame#TYPE_RATE_HINT} frame. */
+    public boolean readFrom(SensorFrame frame) {
+        if (!frame.isRateHint()) {
+            return false;
+        }
+        level = (int) frame.values[0];
+        wakeHeartRate = frame.values[1];
+        return true;
+    }
+}
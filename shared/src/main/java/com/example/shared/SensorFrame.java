@@ -0,0 +1,68 @@
+package com.example.shared;
+
+/**
+ * One decoded sensor reading. Instances are meant to be reused: the decoder
+ * overwrites the fields in place so the receive loop doesn't allocate per sample.
+ */
+public final class SensorFrame {
+    public static final byte TYPE_HEART_RATE = 1;
+    public static final byte TYPE_ACCELEROMETER = 2;
+    // Milliseconds between two consecutive heart beats
+    public static final byte TYPE_INTER_BEAT_INTERVAL = 3;
+    // One WindowFeatures, sent instead of raw samples in edge-processing mode
+    public static final byte TYPE_FEATURES = 4;
+    // Numbers the frames that follow; see SequenceFilter
+    public static final byte TYPE_SEQUENCE = 5;
+    // Phone to watch: how fast to sample; see RateHint
+    public static final byte TYPE_RATE_HINT = 6;
+
+    // Legacy text frames carry no timestamp
+    public static final long NO_TIMESTAMP = 0L;
+    // Inter-beat interval the watch sends for a beat it dropped: the intervals
+    // either side of it are not consecutive
+    public static final float BEAT_GAP = 0f;
+
+    public static final int MAX_VALUES = 32;
+
+    public byte type;
+    public long timestampNanos;
+    public final float[] values = new float[MAX_VALUES];
+    public int valueCount;
+
+    public void set(byte type, long timestampNanos) {
+        this.type = type;
+        this.timestampNanos = timestampNanos;
+        this.valueCount = 0;
+    }
+
+    public void copyFrom(SensorFrame other) {
+        type = other.type;
+        timestampNanos = other.timestampNanos;
+        valueCount = other.valueCount;
+        System.arraycopy(other.values, 0, values, 0, other.valueCount);
+    }
+
+    public boolean isHeartRate() {
+        return type == TYPE_HEART_RATE && valueCount >= 1;
+    }
+
+    public boolean isAccelerometer() {
+        return type == TYPE_ACCELEROMETER && valueCount >= 3;
+    }
+
+    public boolean isInterBeatInterval() {
+        return type == TYPE_INTER_BEAT_INTERVAL && valueCount >= 1;
+    }
+
+    public boolean isFeatures() {
+        return type == TYPE_FEATURES && valueCount >= WindowFeatures.VALUE_COUNT;
+    }
+
+    public boolean isRateHint() {
+        return type == TYPE_RATE_HINT && valueCount >= RateHint.VALUE_COUNT;
+    }
+
+    public boolean isSequence() {
+        return type == TYPE_SEQUENCE && valueCount >= 1;
+    }
+}
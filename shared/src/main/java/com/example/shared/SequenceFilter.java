@@ -0,0 +1,79 @@
+package com.example.shared;
+
+/**
+ * Drops frames the receiver has already seen. A watch that loses its link
+ * cannot tell which of its last writes made it across, so after reconnecting
+ * it sends them again; this is what makes that safe.
+ *
+ * <p>Senders number their data frames consecutively and put a
+ * {@link SensorFrame#TYPE_SEQUENCE} marker in front of each batch, so the
+ * numbering costs one frame per batch rather than a field per sample. A
+ * marker carries the number of the next data frame (in the timestamp field)
+ * and a stream id (as value 0), which changes whenever the sender starts
+ * counting from scratch, e.g. after the watch app restarted.
+ *
+ * <p>Frames from senders that never send markers pass through untouched.
+ * Not thread-safe; meant for the decoder thread.
+ */
+public final class SequenceFilter {
+    // Stream ids travel as a float32, which holds 24-bit integers exactly
+    public static final int MAX_STREAM_ID = (1 << 24) - 1;
+
+    private static final long UNKNOWN = -1;
+
+    private int streamId = -1;
+    // Number of the next data frame on the current connection
+    private long current = UNKNOWN;
+    // Lowest number not yet passed on for streamId
+    private long expected;
+
+    private long duplicates;
+    private long lost;
+
+    /**
+     * @return true if {@code frame} is sensor data to pass on, false if it
+     *         was a marker or a duplicate
+     */
+    public boolean accept(SensorFrame frame) {
+        if (frame.type == SensorFrame.TYPE_SEQUENCE) {
+            if (frame.isSequence()) {
+                int id = (int) frame.values[0];
+                if (id != streamId) {
+                    streamId = id;
+                    expected = frame.timestampNanos;
+                }
+                current = frame.timestampNanos;
+            }
+            return false;
+        }
+        if (current == UNKNOWN) {
+            return true;
+        }
+        long sequence = current++;
+        if (sequence < expected) {
+            duplicates++;
+            return false;
+        }
+        // Gaps are data the sender had to throw away; nothing to wait for
+        lost += sequence - expected;
+        expected = sequence + 1;
+        return true;
+    }
+
+    /**
+     * The connection ended. Numbering resumes with the next marker; what was
+     * already seen is remembered, so a resend after reconnecting is dropped.
+     */
+    public void connectionEnded() {
+        current = UNKNOWN;
+    }
+
+    public long getDuplicateCount() {
+        return duplicates;
+    }
+
+    /** Frames skipped over by the numbering, i.e. never received. */
+    public long getLostCount() {
+        return lost;
+    }
+}
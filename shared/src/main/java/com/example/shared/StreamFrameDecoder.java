@@ -0,0 +1,196 @@
+package com.example.shared;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Turns a byte stream back into frames. RFCOMM does not preserve write
+ * boundaries, so one read can hold several frames, half a frame, or both.
+ * Bytes are kept in a ring buffer until a whole frame is available.
+ *
+ * <p>When the bytes at the read position are not a valid frame (corruption,
+ * or joining the stream mid-frame), the decoder skips forward to the next
+ * byte that could start a frame and counts what it skipped.
+ *
+ * <p>Legacy text frames are accepted until the first binary frame shows up;
+ * after that the stream is assumed to be binary only, so payload bytes that
+ * happen to look like "HR:" cannot be mistaken for frames while resyncing.
+ *
+ * <p>Not thread-safe, meant to be owned by the reader thread.
+ */
+public final class StreamFrameDecoder {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final byte[] ring;
+    private final int mask;
+    private final ByteBuffer ringView;
+    private final ByteBuffer scratch = ByteBuffer.allocate(WireFormat.MAX_FRAME_SIZE);
+
+    // Monotonic positions; the index into ring is position & mask
+    private long readPosition;
+    private long writePosition;
+
+    private boolean acceptLegacyText = true;
+
+    private long framesDecoded;
+    private long garbledBytes;
+    private long droppedBytes;
+    private long resyncCount;
+
+    public StreamFrameDecoder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public StreamFrameDecoder(int capacity) {
+        if (Integer.bitCount(capacity) != 1 || capacity < 2 * WireFormat.MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException(
+                    "Capacity must be a power of two of at least " + 2 * WireFormat.MAX_FRAME_SIZE);
+        }
+        ring = new byte[capacity];
+        mask = capacity - 1;
+        ringView = ByteBuffer.wrap(ring);
+    }
+
+    /**
+     * Performs one blocking read from {@code in} straight into the ring buffer.
+     * Call {@link #next} until it returns false before reading again.
+     *
+     * @return the number of bytes read, or -1 at end of stream
+     */
+    public int readFrom(InputStream in) throws IOException {
+        if (freeSpace() == 0) {
+            discard(1);
+            droppedBytes++;
+        }
+        int index = (int) (writePosition & mask);
+        int length = Math.min(freeSpace(), ring.length - index);
+        int read = in.read(ring, index, length);
+        if (read > 0) {
+            writePosition += read;
+        }
+        return read;
+    }
+
+    /**
+     * Copies bytes into the ring buffer. If they do not fit, the oldest
+     * undecoded bytes are dropped to make room.
+     */
+    public void feed(byte[] source, int offset, int length) {
+        if (length > ring.length) {
+            droppedBytes += length - ring.length;
+            offset += length - ring.length;
+            length = ring.length;
+        }
+        int overflow = length - freeSpace();
+        if (overflow > 0) {
+            discard(overflow);
+            droppedBytes += overflow;
+        }
+        while (length > 0) {
+            int index = (int) (writePosition & mask);
+            int chunk = Math.min(length, ring.length - index);
+            System.arraycopy(source, offset, ring, index, chunk);
+            writePosition += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Decodes the next complete frame into {@code out}.
+     *
+     * @return false if no complete frame is buffered yet
+     */
+    public boolean next(SensorFrame out) {
+        while (available() > 0) {
+            int window = Math.min(available(), WireFormat.MAX_FRAME_SIZE);
+            ByteBuffer view = viewOf(window);
+            // More bytes may still arrive, so the limit of what is buffered is
+            // never taken as the end of a frame
+            int result = acceptLegacyText
+                    ? FrameDecoder.decode(view, out, false)
+                    : FrameDecoder.decodeBinary(view, out);
+            if (result > 0) {
+                readPosition += result;
+                framesDecoded++;
+                if (view.get(view.position() - result) == WireFormat.MAGIC) {
+                    acceptLegacyText = false;
+                }
+                return true;
+            }
+            if (result == FrameDecoder.NEED_MORE_DATA && window < WireFormat.MAX_FRAME_SIZE) {
+                return false;
+            }
+            // Invalid, or claims to be longer than any real frame
+            resync();
+        }
+        return false;
+    }
+
+    public int available() {
+        return (int) (writePosition - readPosition);
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded;
+    }
+
+    /** Bytes skipped while looking for the next frame after corrupt data. */
+    public long getGarbledBytes() {
+        return garbledBytes;
+    }
+
+    /** Bytes thrown away because the ring buffer was full. */
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    public long getResyncCount() {
+        return resyncCount;
+    }
+
+    public void reset() {
+        readPosition = 0;
+        writePosition = 0;
+        acceptLegacyText = true;
+    }
+
+    private void resync() {
+        resyncCount++;
+        long skipped = 1;
+        readPosition++;
+        while (readPosition < writePosition && !isFrameStart(ring[(int) (readPosition & mask)])) {
+            readPosition++;
+            skipped++;
+        }
+        garbledBytes += skipped;
+    }
+
+    private boolean isFrameStart(byte b) {
+        return acceptLegacyText ? FrameDecoder.isFrameStart(b) : b == WireFormat.MAGIC;
+    }
+
+    // Contiguous view of the next length buffered bytes, copied out only if they wrap
+    private ByteBuffer viewOf(int length) {
+        int index = (int) (readPosition & mask);
+        if (index + length <= ring.length) {
+            ringView.limit(index + length).position(index);
+            return ringView;
+        }
+        int firstPart = ring.length - index;
+        scratch.clear();
+        scratch.put(ring, index, firstPart);
+        scratch.put(ring, 0, length - firstPart);
+        scratch.flip();
+        return scratch;
+    }
+
+    private int freeSpace() {
+        return ring.length - available();
+    }
+
+    private void discard(int count) {
+        readPosition += count;
+    }
+}
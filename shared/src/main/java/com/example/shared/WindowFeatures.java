@@ -0,0 +1,85 @@
+package com.example.shared;
+
+/**
+ * Summary of one feature window, as computed by {@link FeatureExtractor}. This
+ * is what the watch sends in edge-processing mode instead of raw samples.
+ * The values are flattened in a fixed order so they fit in one frame.
+ */
+public final class WindowFeatures {
+    public static final int ACC_COUNT = 0;
+    public static final int ACC_MEAN = 1;
+    public static final int ACC_MAX = 2;
+    public static final int ACC_RMS = 3;
+    public static final int ZERO_CROSSING_RATE = 4;
+    public static final int STEP_COUNT = 5;
+    public static final int HR_COUNT = 6;
+    public static final int HR_MEAN = 7;
+    public static final int HR_MIN = 8;
+    public static final int HR_MAX = 9;
+    public static final int DURATION_MILLIS = 10;
+    public static final int VALUE_COUNT = 11;
+
+    // Sensor time of the last sample in the window
+    public long endTimestampNanos;
+    public final float[] values = new float[VALUE_COUNT];
+
+    public int accelerometerCount() {
+        return (int) values[ACC_COUNT];
+    }
+
+    public float movementMean() {
+        return values[ACC_MEAN];
+    }
+
+    public float movementMax() {
+        return values[ACC_MAX];
+    }
+
+    public float movementRms() {
+        return values[ACC_RMS];
+    }
+
+    /** Sign changes of (magnitude - gravity) per accelerometer sample. */
+    public float zeroCrossingRate() {
+        return values[ZERO_CROSSING_RATE];
+    }
+
+    public int stepCount() {
+        return (int) values[STEP_COUNT];
+    }
+
+    public int heartRateCount() {
+        return (int) values[HR_COUNT];
+    }
+
+    public float heartRateMean() {
+        return values[HR_MEAN];
+    }
+
+    public float heartRateMin() {
+        return values[HR_MIN];
+    }
+
+    public float heartRateMax() {
+        return values[HR_MAX];
+    }
+
+    public float durationMillis() {
+        return values[DURATION_MILLIS];
+    }
+
+    public void copyFrom(WindowFeatures other) {
+        endTimestampNanos = other.endTimestampNanos;
+        System.arraycopy(other.values, 0, values, 0, VALUE_COUNT);
+    }
+
+    /** Reads a {@link SensorFrame#TYPE_FEATURES} frame. */
+    public boolean readFrom(SensorFrame frame) {
+        if (!frame.isFeatures()) {
+            return false;
+        }
+        endTimestampNanos = frame.timestampNanos;
+        System.arraycopy(frame.values, 0, values, 0, VALUE_COUNT);
+        return true;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.shared;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the binary frames sent from the watch to the phone, and of the
+ * few sent back (big-endian):
+ *
+ * <pre>
+ *   0      magic     0xA5
+ *   1      version   currently 1
+ *   2      type      see SensorFrame.TYPE_*
+ *   3..4   length    uint16, number of body bytes
+ *   5..    body      int64 timestamp (ns) followed by float32 values
+ *   last   crc8      over version, type, length and body
+ * </pre>
+ *
+ * The magic byte never appears as the first byte of the old "HR:"/"ACC:" text
+ * frames, so the receiver can tell the two formats apart from a single byte.
+ */
+public final class WireFormat {
+    public static final byte MAGIC = (byte) 0xA5;
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_SIZE = 5;
+    public static final int TRAILER_SIZE = 1;
+    public static final int TIMESTAMP_SIZE = 8;
+    public static final int VALUE_SIZE = 4;
+    public static final int MAX_BODY_SIZE = TIMESTAMP_SIZE + SensorFrame.MAX_VALUES * VALUE_SIZE;
+    public static final int MAX_FRAME_SIZE = HEADER_SIZE + MAX_BODY_SIZE + TRAILER_SIZE;
+
+    private static final byte[] CRC8_TABLE = new byte[256];
+
+    static {
+        // CRC-8, polynomial x^8 + x^2 + x + 1
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? (crc << 1) ^ 0x07 : crc << 1;
+            }
+            CRC8_TABLE[i] = (byte) crc;
+        }
+    }
+
+    private WireFormat() {
+    }
+
+    public static int frameSize(int valueCount) {
+        return HEADER_SIZE + TIMESTAMP_SIZE + valueCount * VALUE_SIZE + TRAILER_SIZE;
+    }
+
+    /** CRC-8 of {@code length} bytes starting at absolute index {@code from}. */
+    static byte crc8(ByteBuffer buffer, int from, int length) {
+        int crc = 0;
+        for (int i = from, end = from + length; i < end; i++) {
+            crc = CRC8_TABLE[(crc ^ buffer.get(i)) & 0xFF] & 0xFF;
+        }
+        return (byte) crc;
+    }
+}
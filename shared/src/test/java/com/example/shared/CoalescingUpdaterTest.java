@@ -0,0 +1,112 @@
+package com.example.shared;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class CoalescingUpdaterTest {
+    private final FakeScheduler scheduler = new FakeScheduler();
+    private final List<String> rendered = new ArrayList<>();
+    private final CoalescingUpdater<String> updater =
+            new CoalescingUpdater<>(scheduler, 100, rendered::add);
+
+    @Test
+    public void burstBetweenFramesRendersOnlyLatest() {
+        for (int i = 0; i < 50; i++) {
+            updater.update("sample " + i);
+        }
+
+        assertEquals(1, scheduler.tasks.size());
+        scheduler.runDue();
+
+        assertEquals(Arrays.asList("sample 49"), rendered);
+        assertEquals(50, updater.getUpdates());
+        assertEquals(49, updater.getCoalesced());
+        assertEquals(1, updater.getRenders());
+    }
+
+    @Test
+    public void rendersAreCappedToMinimumInterval() {
+        // 50 Hz of updates for one second
+        for (int t = 0; t < 1000; t += 20) {
+            scheduler.advanceTo(t);
+            updater.update("t=" + t);
+        }
+        scheduler.advanceTo(2000);
+
+        assertTrue("renders: " + rendered.size(), rendered.size() <= 11);
+        assertEquals("t=980", rendered.get(rendered.size() - 1));
+        assertEquals(50, updater.getUpdates());
+        assertEquals(50 - rendered.size(), updater.getCoalesced());
+    }
+
+    @Test
+    public void unchangedValueIsNotRenderedAgain() {
+        updater.update("Not connected");
+        scheduler.advanceTo(0);
+        scheduler.advanceTo(200);
+        updater.update("Not connected");
+        scheduler.advanceTo(400);
+
+        assertEquals(Arrays.asList("Not connected"), rendered);
+        assertEquals(1, updater.getUnchanged());
+    }
+
+    @Test
+    public void updateDuringRenderIsNotLost() {
+        AtomicReference<CoalescingUpdater<String>> self = new AtomicReference<>();
+        List<String> seen = new ArrayList<>();
+        self.set(new CoalescingUpdater<>(scheduler, 100, value -> {
+            seen.add(value);
+            if (value.equals("first")) {
+                self.get().update("second");
+            }
+        }));
+
+        self.get().update("first");
+        scheduler.advanceTo(1000);
+
+        assertEquals(Arrays.asList("first", "second"), seen);
+    }
+
+    // Single-threaded stand-in for the main looper, with a manual clock
+    private static final class FakeScheduler implements CoalescingUpdater.Scheduler {
+        final Queue<long[]> times = new ArrayDeque<>();
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+        long now;
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            times.add(new long[]{now + delayMillis});
+            tasks.add(task);
+        }
+
+        void runDue() {
+            while (!tasks.isEmpty() && times.peek()[0] <= now) {
+                times.poll();
+                tasks.poll().run();
+            }
+        }
+
+        void advanceTo(long millis) {
+            while (!tasks.isEmpty() && times.peek()[0] <= millis) {
+                now = Math.max(now, times.peek()[0]);
+                runDue();
+            }
+            now = millis;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.shared;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FeatureExtractorTest {
+    private static final long MILLI = 1_000_000L;
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void heartRateStatistics() {
+        FeatureExtractor extractor = new FeatureExtractor(10 * SECOND);
+        float[] rates = {70f, 75f, 68f, 80f};
+        for (int i = 0; i < rates.length; i++) {
+            assertFalse(extractor.addHeartRate(i * SECOND, rates[i]));
+        }
+        assertTrue(extractor.flush());
+
+        WindowFeatures features = extractor.completed();
+        assertEquals(4, features.heartRateCount());
+        assertEquals(73.25f, features.heartRateMean(), 1e-5f);
+        assertEquals(68f, features.heartRateMin(), 0f);
+        assertEquals(80f, features.heartRateMax(), 0f);
+        assertEquals(0, features.accelerometerCount());
+        assertEquals(3000f, features.durationMillis(), 0f);
+    }
+
+    @Test
+    public void movementStatistics() {
+        FeatureExtractor extractor = new FeatureExtractor(10 * SECOND);
+        extractor.addAccelerometer(0, 3f, 4f, 0f);
+        extractor.addAccelerometer(SECOND, 0f, 0f, 12f);
+        extractor.flush();
+
+        WindowFeatures features = extractor.completed();
+        assertEquals(2, features.accelerometerCount());
+        assertEquals(8.5f, features.movementMean(), 1e-5f);
+        assertEquals(12f, features.movementMax(), 0f);
+        assertEquals((float) Math.sqrt((25 + 144) / 2.0), features.movementRms(), 1e-5f);
+        assertEquals(1f, features.zeroCrossingRate(), 0f);
+    }
+
+    @Test
+    public void sampleAfterWindowClosesIt() {
+        FeatureExtractor extractor = new FeatureExtractor(10 * SECOND);
+        for (int i = 0; i < 10; i++) {
+            assertFalse(extractor.addHeartRate(i * SECOND, 70f));
+        }
+        assertTrue(extractor.addHeartRate(10 * SECOND, 90f));
+
+        assertEquals(10, extractor.completed().heartRateCount());
+        assertEquals(70f, extractor.completed().heartRateMax(), 0f);
+        assertEquals(9 * SECOND, extractor.completed().endTimestampNanos);
+
+        extractor.flush();
+        assertEquals(1, extractor.completed().heartRateCount());
+        assertEquals(90f, extractor.completed().heartRateMean(), 0f);
+    }
+
+    @Test
+    public void countsStepsInWalkingSignal() {
+        FeatureExtractor extractor = new FeatureExtractor(60 * SECOND);
+        // 2 steps per second for 10 s at 50 Hz, peaks of 3 m/s^2 above gravity
+        for (int i = 0; i < 500; i++) {
+            long t = i * 20 * MILLI;
+            double phase = 2 * Math.PI * 2.0 * t / SECOND;
+            float z = FeatureExtractor.GRAVITY + 3f * (float) Math.sin(phase);
+            extractor.addAccelerometer(t, 0f, 0f, z);
+        }
+        extractor.flush();
+
+        assertEquals(20, extractor.completed().stepCount());
+        // Two crossings per cycle
+        assertEquals(40f / 499f, extractor.completed().zeroCrossingRate(), 2f / 499f);
+    }
+
+    @Test
+    public void stillWatchHasNoSteps() {
+        FeatureExtractor extractor = new FeatureExtractor(60 * SECOND);
+        Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            float noise = (float) random.nextGaussian() * 0.05f;
+            extractor.addAccelerometer(i * 20 * MILLI, noise, noise, FeatureExtractor.GRAVITY + noise);
+        }
+        extractor.flush();
+
+        assertEquals(0, extractor.completed().stepCount());
+        assertEquals(FeatureExtractor.GRAVITY, extractor.completed().movementMean(), 0.05f);
+    }
+
+    @Test
+    public void watchAndPhonePathsAgree() {
+        // The watch sends the features over the wire; the phone recomputes them from raw frames
+        Random random = new Random(9);
+        FeatureExtractor watch = new FeatureExtractor();
+        FeatureExtractor phone = new FeatureExtractor();
+        ByteBuffer wire = ByteBuffer.allocate(1 << 20);
+        SensorFrame frame = new SensorFrame();
+        WindowFeatures received = new WindowFeatures();
+        int windows = 0;
+
+        for (int i = 0; i < 3000; i++) {
+            long t = i * 20 * MILLI;
+            float x = (float) random.nextGaussian();
+            float y = (float) random.nextGaussian();
+            float z = FeatureExtractor.GRAVITY + (float) random.nextGaussian() * 2f;
+
+            wire.clear();
+            FrameEncoder.encodeAccelerometer(wire, t, x, y, z);
+            boolean watchClosed = watch.addAccelerometer(t, x, y, z);
+            if (i % 50 == 0) {
+                float bpm = 60f + random.nextInt(40);
+                FrameEncoder.encodeHeartRate(wire, t, bpm);
+                watchClosed |= watch.addHeartRate(t, bpm);
+            }
+
+            wire.flip();
+            boolean phoneClosed = false;
+            while (FrameDecoder.decode(wire, frame) > 0) {
+                if (frame.isAccelerometer()) {
+                    phoneClosed |= phone.addAccelerometer(frame.timestampNanos,
+                            frame.values[0], frame.values[1], frame.values[2]);
+                } else {
+                    phoneClosed |= phone.addHeartRate(frame.timestampNanos, frame.values[0]);
+                }
+            }
+
+            assertEquals(watchClosed, phoneClosed);
+            if (watchClosed) {
+                wire.clear();
+                FrameEncoder.encodeFeatures(wire, watch.completed());
+                wire.flip();
+                FrameDecoder.decode(wire, frame);
+                assertTrue(received.readFrom(frame));
+                assertEquals(phone.completed().endTimestampNanos, received.endTimestampNanos);
+                assertArrayEquals(phone.completed().values, received.values, 0f);
+                windows++;
+            }
+        }
+        assertEquals(5, windows);
+    }
+}
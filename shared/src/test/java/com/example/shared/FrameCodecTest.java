@@ -0,0 +1,179 @@
+package com.example.shared;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class FrameCodecTest {
+    private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private final SensorFrame frame = new SensorFrame();
+
+    @Test
+    public void heartRateRoundTrip() {
+        int written = FrameEncoder.encodeHeartRate(buffer, 123456789L, 72.5f);
+        assertEquals(WireFormat.frameSize(1), written);
+
+        buffer.flip();
+        assertEquals(written, FrameDecoder.decode(buffer, frame));
+        assertTrue(frame.isHeartRate());
+        assertEquals(123456789L, frame.timestampNanos);
+        assertEquals(72.5f, frame.values[0], 0f);
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void accelerometerRoundTrip() {
+        FrameEncoder.encodeAccelerometer(buffer, Long.MAX_VALUE, 0.12f, -9.81f, 3.3e-5f);
+
+        buffer.flip();
+        assertEquals(WireFormat.frameSize(3), FrameDecoder.decode(buffer, frame));
+        assertTrue(frame.isAccelerometer());
+        assertEquals(Long.MAX_VALUE, frame.timestampNanos);
+        assertEquals(0.12f, frame.values[0], 0f);
+        assertEquals(-9.81f, frame.values[1], 0f);
+        assertEquals(3.3e-5f, frame.values[2], 0f);
+    }
+
+    @Test
+    public void rateHintRoundTrip() {
+        FrameEncoder.encodeRateHint(buffer, 5L, RateHint.LEVEL_LOW, 80f);
+
+        buffer.flip();
+        assertEquals(WireFormat.frameSize(2), FrameDecoder.decode(buffer, frame));
+        RateHint hint = new RateHint();
+        assertTrue(hint.readFrom(frame));
+        assertEquals(RateHint.LEVEL_LOW, hint.level);
+        assertEquals(80f, hint.wakeHeartRate, 0f);
+    }
+
+    @Test
+    public void specialFloatValuesSurvive() {
+        float[] values = {Float.NaN, Float.POSITIVE_INFINITY, -0.0f, Float.MIN_VALUE};
+        FrameEncoder.encode(buffer, (byte) 9, 1L, values, 0, values.length);
+
+        buffer.flip();
+        assertTrue(FrameDecoder.decode(buffer, frame) > 0);
+        assertEquals(9, frame.type);
+        assertEquals(values.length, frame.valueCount);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(Float.floatToRawIntBits(values[i]), Float.floatToRawIntBits(frame.values[i]));
+        }
+    }
+
+    @Test
+    public void decodesConsecutiveFrames() {
+        for (int i = 0; i < 10; i++) {
+            FrameEncoder.encodeHeartRate(buffer, i, 60 + i);
+        }
+
+        buffer.flip();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(FrameDecoder.decode(buffer, frame) > 0);
+            assertEquals(i, frame.timestampNanos);
+            assertEquals(60 + i, frame.values[0], 0f);
+        }
+        assertEquals(FrameDecoder.NEED_MORE_DATA, FrameDecoder.decode(buffer, frame));
+    }
+
+    @Test
+    public void truncatedFrameNeedsMoreData() {
+        int written = FrameEncoder.encodeAccelerometer(buffer, 5L, 1f, 2f, 3f);
+
+        for (int length = 0; length < written; length++) {
+            ByteBuffer partial = ByteBuffer.wrap(buffer.array(), 0, length);
+            assertEquals(FrameDecoder.NEED_MORE_DATA, FrameDecoder.decode(partial, frame));
+            assertEquals(0, partial.position());
+        }
+    }
+
+    @Test
+    public void corruptedFrameIsInvalid() {
+        int written = FrameEncoder.encodeAccelerometer(buffer, 5L, 1f, 2f, 3f);
+
+        for (int i = 1; i < written; i++) {
+            ByteBuffer copy = ByteBuffer.allocate(written);
+            copy.put(buffer.array(), 0, written).flip();
+            copy.put(i, (byte) (copy.get(i) ^ 0x10));
+            assertTrue("byte " + i, FrameDecoder.decode(copy, frame) != written);
+        }
+    }
+
+    @Test
+    public void unknownVersionIsInvalid() {
+        FrameEncoder.encodeHeartRate(buffer, 1L, 70f);
+        buffer.put(1, (byte) (WireFormat.VERSION + 1));
+
+        buffer.flip();
+        assertEquals(FrameDecoder.INVALID, FrameDecoder.decode(buffer, frame));
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void encodeIntoFullBufferThrows() {
+        ByteBuffer small = ByteBuffer.allocate(WireFormat.frameSize(1) - 1);
+        FrameEncoder.encodeHeartRate(small, 1L, 70f);
+    }
+
+    @Test
+    public void legacyHeartRateText() {
+        ByteBuffer text = ascii("HR:72.0");
+        assertEquals(7, FrameDecoder.decode(text, frame));
+        assertTrue(frame.isHeartRate());
+        assertEquals(SensorFrame.NO_TIMESTAMP, frame.timestampNanos);
+        assertEquals(72.0f, frame.values[0], 0f);
+    }
+
+    @Test
+    public void legacyHeartRateWithoutFraction() {
+        ByteBuffer text = ascii("HR:90");
+        assertEquals(5, FrameDecoder.decode(text, frame));
+        assertEquals(90f, frame.values[0], 0f);
+    }
+
+    @Test
+    public void legacyAccelerometerText() {
+        ByteBuffer text = ascii("ACC:0.12,-9.81,0.33");
+        assertEquals(19, FrameDecoder.decode(text, frame));
+        assertTrue(frame.isAccelerometer());
+        assertEquals(0.12f, frame.values[0], 0f);
+        assertEquals(-9.81f, frame.values[1], 0f);
+        assertEquals(0.33f, frame.values[2], 0f);
+    }
+
+    @Test
+    public void legacyTextMatchesParseFloat() {
+        for (int i = -2000; i <= 2000; i++) {
+            String number = String.format(java.util.Locale.ROOT, "%.2f", i / 7.0f);
+            ByteBuffer text = ascii("HR:" + number);
+            assertTrue(FrameDecoder.decode(text, frame) > 0);
+            assertEquals(number, Float.parseFloat(number), frame.values[0], 0f);
+        }
+    }
+
+    @Test
+    public void mergedLegacyFramesSplitAtNextTag() {
+        ByteBuffer text = ascii("HR:72.0ACC:0.10,0.20,0.30");
+        assertEquals(7, FrameDecoder.decode(text, frame));
+        assertEquals(72.0f, frame.values[0], 0f);
+        assertTrue(FrameDecoder.decode(text, frame) > 0);
+        assertTrue(frame.isAccelerometer());
+        assertEquals(0.30f, frame.values[2], 0f);
+    }
+
+    @Test
+    public void malformedLegacyTextIsInvalid() {
+        assertEquals(FrameDecoder.INVALID, FrameDecoder.decode(ascii("HR:abc"), frame));
+        assertEquals(FrameDecoder.INVALID, FrameDecoder.decode(ascii("ACC:1.0;2.0;3.0"), frame));
+        assertEquals(FrameDecoder.INVALID, FrameDecoder.decode(ascii("XYZ"), frame));
+        assertEquals(FrameDecoder.NEED_MORE_DATA, FrameDecoder.decode(ascii("AC"), frame));
+        assertEquals(FrameDecoder.NEED_MORE_DATA, FrameDecoder.decode(ascii("ACC:1.0,2.0"), frame));
+    }
+
+    private static ByteBuffer ascii(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
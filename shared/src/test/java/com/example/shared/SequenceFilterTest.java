@@ -0,0 +1,99 @@
+package com.example.shared;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SequenceFilterTest {
+    private final ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    @Test
+    public void passesUnsequencedFrames() {
+        FrameEncoder.encodeHeartRate(buffer, 1L, 70f);
+        FrameEncoder.encodeHeartRate(buffer, 2L, 71f);
+
+        assertEquals(2, accepted(new SequenceFilter()).size());
+    }
+
+    @Test
+    public void dropsResentFramesAfterReconnect() {
+        SequenceFilter filter = new SequenceFilter();
+        batch(7, 0, 0, 5);
+        assertEquals(5, accepted(filter).size());
+        filter.connectionEnded();
+
+        // The watch could not tell whether 3 and 4 arrived, so it sends them again
+        buffer.clear();
+        batch(7, 3, 3, 4);
+        List<Long> timestamps = accepted(filter);
+
+        assertEquals(2, timestamps.size());
+        assertEquals(5L, (long) timestamps.get(0));
+        assertEquals(6L, (long) timestamps.get(1));
+        assertEquals(2, filter.getDuplicateCount());
+        assertEquals(0, filter.getLostCount());
+    }
+
+    @Test
+    public void newStreamStartsOver() {
+        SequenceFilter filter = new SequenceFilter();
+        batch(1, 0, 0, 10);
+        accepted(filter);
+
+        buffer.clear();
+        batch(2, 0, 100, 3);
+
+        assertEquals(3, accepted(filter).size());
+        assertEquals(0, filter.getDuplicateCount());
+    }
+
+    @Test
+    public void countsGapsAsLost() {
+        SequenceFilter filter = new SequenceFilter();
+        batch(1, 0, 0, 2);
+        batch(1, 10, 10, 2);
+
+        assertEquals(4, accepted(filter).size());
+        assertEquals(8, filter.getLostCount());
+    }
+
+    @Test
+    public void markerRoundTrips() {
+        FrameEncoder.encodeSequence(buffer, SequenceFilter.MAX_STREAM_ID, Long.MAX_VALUE - 1);
+        buffer.flip();
+        SensorFrame frame = new SensorFrame();
+
+        assertTrue(FrameDecoder.decodeBinary(buffer, frame) > 0);
+        assertTrue(frame.isSequence());
+        assertFalse(frame.isHeartRate());
+        assertEquals(Long.MAX_VALUE - 1, frame.timestampNanos);
+        assertEquals(SequenceFilter.MAX_STREAM_ID, (int) frame.values[0]);
+    }
+
+    private void batch(int streamId, long firstSequence, long firstTimestamp, int count) {
+        FrameEncoder.encodeSequence(buffer, streamId, firstSequence);
+        for (int i = 0; i < count; i++) {
+            FrameEncoder.encodeHeartRate(buffer, firstTimestamp + i, 70f);
+        }
+    }
+
+    private List<Long> accepted(SequenceFilter filter) {
+        buffer.flip();
+        SensorFrame frame = new SensorFrame();
+        List<Long> timestamps = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            assertTrue(FrameDecoder.decodeBinary(buffer, frame) > 0);
+            if (filter.accept(frame)) {
+                timestamps.add(frame.timestampNanos);
+            }
+        }
+        buffer.clear();
+        return timestamps;
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.shared;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StreamFrameDecoderTest {
+    private final SensorFrame frame = new SensorFrame();
+
+    @Test
+    public void reassemblesFramesSplitAcrossReads() throws IOException {
+        byte[] capture = binaryCapture(500);
+        StreamFrameDecoder decoder = new StreamFrameDecoder();
+
+        List<Float> values = drain(decoder, new ChunkedInputStream(capture, new Random(1), 7));
+
+        assertEquals(500, values.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, values.get(i), 0f);
+        }
+        assertEquals(0, decoder.getGarbledBytes());
+        assertEquals(0, decoder.getDroppedBytes());
+    }
+
+    @Test
+    public void decodesManyFramesFromOneRead() throws IOException {
+        byte[] capture = binaryCapture(100);
+        StreamFrameDecoder decoder = new StreamFrameDecoder();
+
+        assertEquals(capture.length, decoder.readFrom(new ChunkedInputStream(capture, null, capture.length)));
+        int count = 0;
+        while (decoder.next(frame)) {
+            count++;
+        }
+        assertEquals(100, count);
+        assertEquals(0, decoder.available());
+    }
+
+    @Test
+    public void replaysCaptureThroughPipedStream() throws Exception {
+        byte[] capture = binaryCapture(2000);
+        PipedOutputStream sink = new PipedOutputStream();
+        PipedInputStream source = new PipedInputStream(sink, 256);
+
+        Thread writer = new Thread(() -> {
+            Random random = new Random(7);
+            try {
+                for (int offset = 0; offset < capture.length; ) {
+                    int chunk = Math.min(1 + random.nextInt(40), capture.length - offset);
+                    sink.write(capture, offset, chunk);
+                    offset += chunk;
+                }
+                sink.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+
+        List<Float> values = drain(new StreamFrameDecoder(), source);
+        writer.join();
+
+        assertEquals(2000, values.size());
+        assertEquals(1999f, values.get(1999), 0f);
+    }
+
+    @Test
+    public void resyncsAfterCorruption() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        FrameEncoder.encodeHeartRate(buffer, 1L, 60f);
+        int corruptStart = buffer.position();
+        FrameEncoder.encodeHeartRate(buffer, 2L, 61f);
+        int corruptEnd = buffer.position();
+        buffer.put(new byte[]{1, 2, 3, 4, 5});
+        FrameEncoder.encodeHeartRate(buffer, 3L, 62f);
+        buffer.put(corruptStart + 10, (byte) 0x7F);
+
+        StreamFrameDecoder decoder = new StreamFrameDecoder();
+        decoder.feed(buffer.array(), 0, buffer.position());
+
+        assertTrue(decoder.next(frame));
+        assertEquals(60f, frame.values[0], 0f);
+        assertTrue(decoder.next(frame));
+        assertEquals(62f, frame.values[0], 0f);
+        assertFalse(decoder.next(frame));
+
+        assertEquals(corruptEnd - corruptStart + 5, decoder.getGarbledBytes());
+        assertEquals(2, decoder.getFramesDecoded());
+    }
+
+    @Test
+    public void joinsStreamMidFrame() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        FrameEncoder.encodeAccelerometer(buffer, 1L, 1f, 2f, 3f);
+        FrameEncoder.encodeAccelerometer(buffer, 2L, 4f, 5f, 6f);
+
+        StreamFrameDecoder decoder = new StreamFrameDecoder();
+        decoder.feed(buffer.array(), 11, buffer.position() - 11);
+
+        assertTrue(decoder.next(frame));
+        assertEquals(2L, frame.timestampNanos);
+        assertEquals(WireFormat.frameSize(3) - 11, decoder.getGarbledBytes());
+    }
+
+    @Test
+    public void splitsMergedLegacyTextFrames() {
+        StreamFrameDecoder decoder = new StreamFrameDecoder();
+        feedAscii(decoder, "HR:72.0ACC:0.10,0.2");
+
+        assertTrue(decoder.next(frame));
+        assertTrue(frame.isHeartRate());
+        assertEquals(72.0f, frame.values[0], 0f);
+        // "0.2" could still become "0.25"
+        assertFalse(decoder.next(frame));
+
+        feedAscii(decoder, "5,9.81HR:8");
+        assertTrue(decoder.next(frame));
+        assertTrue(frame.isAccelerometer());
+        assertEquals(0.25f, frame.values[1], 0f);
+        assertEquals(9.81f, frame.values[2], 0f);
+        assertFalse(decoder.next(frame));
+
+        feedAscii(decoder, "0.5");
+        assertTrue(decoder.next(frame));
+        assertEquals(80.5f, frame.values[0], 0f);
+        assertEquals(0, decoder.getGarbledBytes());
+    }
+
+    @Test
+    public void halfTextFrameDoesNotThrow() {
+        StreamFrameDecoder decoder = new StreamFrameDecoder();
+        feedAscii(decoder, "ACC:0.1");
+        assertFalse(decoder.next(frame));
+        feedAscii(decoder, "0,0.20,0.30");
+        assertTrue(decoder.next(frame));
+        assertEquals(0.10f, frame.values[0], 0f);
+    }
+
+    @Test
+    public void ignoresTextOnceBinaryFramesArrive() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        FrameEncoder.encodeHeartRate(buffer, 1L, 60f);
+        buffer.put("HR:99.0".getBytes(StandardCharsets.US_ASCII));
+        FrameEncoder.encodeHeartRate(buffer, 2L, 61f);
+
+        StreamFrameDecoder decoder = new StreamFrameDecoder();
+        decoder.feed(buffer.array(), 0, buffer.position());
+
+        assertTrue(decoder.next(frame));
+        assertTrue(decoder.next(frame));
+        assertEquals(61f, frame.values[0], 0f);
+        assertEquals(7, decoder.getGarbledBytes());
+    }
+
+    @Test
+    public void framesWrappingTheRingAreDecoded() {
+        int capacity = 1024;
+        StreamFrameDecoder decoder = new StreamFrameDecoder(capacity);
+        ByteBuffer buffer = ByteBuffer.allocate(WireFormat.frameSize(3));
+
+        for (int i = 0; i < 1000; i++) {
+            buffer.clear();
+            FrameEncoder.encodeAccelerometer(buffer, i, i, -i, 0f);
+            decoder.feed(buffer.array(), 0, buffer.position());
+            assertTrue(decoder.next(frame));
+            assertEquals(i, frame.timestampNanos);
+            assertEquals(-i, frame.values[1], 0f);
+        }
+        assertEquals(0, decoder.getGarbledBytes());
+    }
+
+    @Test
+    public void overflowDropsOldestBytes() {
+        StreamFrameDecoder decoder = new StreamFrameDecoder(1024);
+        byte[] capture = binaryCapture(200);
+
+        decoder.feed(capture, 0, capture.length);
+
+        assertEquals(capture.length - 1024, decoder.getDroppedBytes());
+        int count = 0;
+        while (decoder.next(frame)) {
+            count++;
+        }
+        assertTrue(count > 0);
+        assertEquals(199f, frame.values[0], 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePowerOfTwo() {
+        new StreamFrameDecoder(3000);
+    }
+
+    private List<Float> drain(StreamFrameDecoder decoder, InputStream in) throws IOException {
+        List<Float> values = new ArrayList<>();
+        while (decoder.readFrom(in) >= 0) {
+            while (decoder.next(frame)) {
+                values.add(frame.values[0]);
+            }
+        }
+        return values;
+    }
+
+    private static byte[] binaryCapture(int frames) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(WireFormat.MAX_FRAME_SIZE);
+        for (int i = 0; i < frames; i++) {
+            buffer.clear();
+            if (i % 2 == 0) {
+                FrameEncoder.encodeHeartRate(buffer, i, i);
+            } else {
+                FrameEncoder.encodeAccelerometer(buffer, i, i, 0f, 9.81f);
+            }
+            out.write(buffer.array(), 0, buffer.position());
+        }
+        return out.toByteArray();
+    }
+
+    private static void feedAscii(StreamFrameDecoder decoder, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        decoder.feed(bytes, 0, bytes.length);
+    }
+
+    // Hands out the capture in chunks of random size, like RFCOMM does
+    private static final class ChunkedInputStream extends InputStream {
+        private final byte[] data;
+        private final Random random;
+        private final int maxChunk;
+        private int position;
+
+        ChunkedInputStream(byte[] data, Random random, int maxChunk) {
+            this.data = data;
+            this.random = random;
+            this.maxChunk = maxChunk;
+        }
+
+        @Override
+        public int read() {
+            return position < data.length ? data[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int chunk = random == null ? maxChunk : 1 + random.nextInt(maxChunk);
+            int count = Math.min(Math.min(chunk, len), data.length - position);
+            System.arraycopy(data, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,560 @@
+package com.example.wearosapp;
+
+import com.example.shared.FrameEncoder;
+import com.example.shared.SensorFrame;
+import com.example.shared.SequenceFilter;
+import com.example.shared.WindowFeatures;
+import com.example.shared.WireFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Collects sensor samples and sends them to the phone in batches from its own
+ * writer thread. A batch goes out when it reaches {@code maxBatchSamples} or
+ * when its oldest sample has waited {@code maxLatencyMillis}, whichever comes
+ * first, so the radio wakes up a few times a second instead of once per sample.
+ *
+ * <p>A batch is a run of ordinary frames written with a single write() and
+ * flush(). The phone's stream decoder already splits those apart, so nothing
+ * changes on the receiving side. Each batch starts with a sequence marker
+ * (see {@link SequenceFilter}), so the phone can drop anything it is sent twice.
+ *
+ * <p>With a {@link SpillBuffer}, batches that cannot be sent are kept on disk
+ * instead of being lost: while there is no connection, and for the last
+ * {@code RESEND_WINDOW_BYTES} written before a write failed, since those may
+ * have died in the socket buffer. Once connected again the backlog is sent
+ * ahead of new batches, several records per write, paced to
+ * {@code drainBytesPerSecond} so the phone and the link are not flooded.
+ *
+ * <p>Samples are copied into two preallocated batches that are swapped
+ * between the sensor thread and the writer thread; nothing is allocated per
+ * sample.
+ */
+public class BatchingSender {
+    public static final int DEFAULT_MAX_BATCH_SAMPLES = 32;
+    public static final long DEFAULT_MAX_LATENCY_MILLIS = 200;
+    public static final long DEFAULT_DRAIN_BYTES_PER_SECOND = 32 * 1024;
+
+    // How many batches' worth of samples may pile up while a write is blocked
+    private static final int BACKLOG_BATCHES = 4;
+    // Widest sample we queue: a feature window
+    private static final int MAX_SAMPLE_VALUES = WindowFeatures.VALUE_COUNT;
+    // Most backlog sent with one write
+    private static final int DRAIN_CHUNK_BYTES = 16 * 1024;
+    // Written but maybe still in the socket buffer when the link dies
+    private static final int RESEND_WINDOW_BYTES = 32 * 1024;
+
+    public interface Listener {
+        void onSendFailed(IOException e);
+    }
+
+    private final int maxBatchSamples;
+    private final long maxLatencyNanos;
+    private final Listener listener;
+    private final Object lock = new Object();
+
+    private SampleBatch filling;
+    private SampleBatch sending;
+    private final ByteBuffer encodeBuffer;
+    // Writer thread only from here on
+    private final byte[] drainBuffer;
+    private final ResendWindow resendWindow;
+    private final int streamId = new Random().nextInt(SequenceFilter.MAX_STREAM_ID + 1);
+    private long nextSequence;
+    private long nextDrainNanos;
+    // Failed once; treated as no connection until a new stream is set
+    private OutputStream brokenStream;
+    private SpillBuffer spill;
+    private long drainBytesPerSecond = DEFAULT_DRAIN_BYTES_PER_SECOND;
+
+    private volatile OutputStream outputStream;
+    private Thread writerThread;
+    private boolean running;
+
+    // Written by the writer thread only
+    private volatile long batchesSent;
+    private volatile long samplesSent;
+    private volatile long bytesSent;
+    private volatile long totalFlushLatencyNanos;
+    private volatile long maxFlushLatencyNanos;
+    private volatile long failedBatches;
+    private volatile long samplesWithoutConnection;
+    private volatile long spilledBatches;
+    private volatile long drainedBytes;
+    private volatile long spillErrors;
+    // Guarded by lock
+    private long droppedSamples;
+
+    public BatchingSender(Listener listener) {
+        this(DEFAULT_MAX_BATCH_SAMPLES, DEFAULT_MAX_LATENCY_MILLIS, listener);
+    }
+
+    public BatchingSender(int maxBatchSamples, long maxLatencyMillis, Listener listener) {
+        if (maxBatchSamples < 1) {
+            throw new IllegalArgumentException("maxBatchSamples must be positive");
+        }
+        this.maxBatchSamples = maxBatchSamples;
+        this.maxLatencyNanos = maxLatencyMillis * 1_000_000L;
+        this.listener = listener;
+
+        int capacity = maxBatchSamples * BACKLOG_BATCHES;
+        filling = new SampleBatch(capacity);
+        sending = new SampleBatch(capacity);
+        encodeBuffer = ByteBuffer.allocate(WireFormat.frameSize(1)
+                + capacity * WireFormat.frameSize(MAX_SAMPLE_VALUES));
+        // A spilled record is one batch or one drain chunk; either must fit
+        drainBuffer = new byte[Math.max(DRAIN_CHUNK_BYTES, encodeBuffer.capacity())];
+        resendWindow = new ResendWindow(Math.max(RESEND_WINDOW_BYTES, 2 * drainBuffer.length));
+        nextDrainNanos = System.nanoTime();
+    }
+
+    /** Keeps unsent batches in {@code spill} rather than dropping them. Set before {@link #start}. */
+    public void setSpillBuffer(SpillBuffer spill) {
+        setSpillBuffer(spill, DEFAULT_DRAIN_BYTES_PER_SECOND);
+    }
+
+    public void setSpillBuffer(SpillBuffer spill, long drainBytesPerSecond) {
+        if (drainBytesPerSecond < 1) {
+            throw new IllegalArgumentException("drainBytesPerSecond must be positive");
+        }
+        this.spill = spill;
+        this.drainBytesPerSecond = drainBytesPerSecond;
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            writerThread = new Thread(this::writerLoop, "BatchingSender");
+            writerThread.start();
+        }
+    }
+
+    /** Stops the writer thread after it has sent whatever is still buffered. */
+    public void stop() {
+        Thread thread;
+        synchronized (lock) {
+            running = false;
+            thread = writerThread;
+            writerThread = null;
+            lock.notifyAll();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Null while disconnected. A new stream wakes the writer to send the backlog. */
+    public void setOutputStream(OutputStream outputStream) {
+        synchronized (lock) {
+            this.outputStream = outputStream;
+            lock.notifyAll();
+        }
+    }
+
+    public boolean offerHeartRate(long timestampNanos, float bpm) {
+        return offer(SensorFrame.TYPE_HEART_RATE, timestampNanos, 1, bpm, 0f, 0f);
+    }
+
+    public boolean offerAccelerometer(long timestampNanos, float x, float y, float z) {
+        return offer(SensorFrame.TYPE_ACCELEROMETER, timestampNanos, 3, x, y, z);
+    }
+
+    public boolean offerInterBeatInterval(long timestampNanos, float intervalMillis) {
+        return offer(SensorFrame.TYPE_INTER_BEAT_INTERVAL, timestampNanos, 1, intervalMillis, 0f, 0f);
+    }
+
+    public boolean offerFeatures(WindowFeatures features) {
+        synchronized (lock) {
+            if (!reserve()) {
+                return false;
+            }
+            filling.add(SensorFrame.TYPE_FEATURES, features.endTimestampNanos,
+                    features.values, WindowFeatures.VALUE_COUNT, System.nanoTime());
+            wakeWriterIfNeeded();
+            return true;
+        }
+    }
+
+    /**
+     * Queues one sample for the next batch.
+     *
+     * @return false if the sample was dropped because the writer has fallen behind
+     */
+    private boolean offer(byte type, long timestampNanos, int valueCount, float v0, float v1, float v2) {
+        synchronized (lock) {
+            if (!reserve()) {
+                return false;
+            }
+            filling.add(type, timestampNanos, valueCount, v0, v1, v2, System.nanoTime());
+            wakeWriterIfNeeded();
+            return true;
+        }
+    }
+
+    // Called with lock held
+    private boolean reserve() {
+        if (filling.isFull()) {
+            droppedSamples++;
+            return false;
+        }
+        return true;
+    }
+
+    // Called with lock held
+    private void wakeWriterIfNeeded() {
+        // Wake the writer to start the latency clock, or to send a full batch
+        if (filling.size == 1 || filling.size >= maxBatchSamples) {
+            lock.notifyAll();
+        }
+    }
+
+    private void writerLoop() {
+        while (true) {
+            SampleBatch batch = null;
+            synchronized (lock) {
+                try {
+                    while (running && !isBatchDue() && !isDrainDue()) {
+                        long waitNanos = Long.MAX_VALUE;
+                        long now = System.nanoTime();
+                        if (filling.size > 0) {
+                            waitNanos = filling.firstEnqueuedNanos + maxLatencyNanos - now;
+                        }
+                        if (canDrain()) {
+                            waitNanos = Math.min(waitNanos, nextDrainNanos - now);
+                        }
+                        if (waitNanos == Long.MAX_VALUE) {
+                            lock.wait();
+                        } else if (waitNanos > 0) {
+                            lock.wait(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    running = false;
+                }
+                if (filling.size > 0 && (!running || isBatchDue())) {
+                    batch = filling;
+                    filling = sending;
+                    sending = batch;
+                } else if (!running) {
+                    // The backlog stays on disk for next time
+                    return;
+                }
+            }
+            if (batch != null) {
+                send(batch);
+                batch.clear();
+            }
+            if (isDrainDue()) {
+                drain();
+            }
+        }
+    }
+
+    // Writer thread only
+    private boolean canDrain() {
+        return spill != null && !spill.isEmpty() && connectedStream() != null;
+    }
+
+    // Writer thread only
+    private OutputStream connectedStream() {
+        OutputStream out = outputStream;
+        return out == brokenStream ? null : out;
+    }
+
+    // Writer thread only
+    private boolean isDrainDue() {
+        return canDrain() && System.nanoTime() - nextDrainNanos >= 0;
+    }
+
+    // Called with lock held
+    private boolean isBatchDue() {
+        return filling.size >= maxBatchSamples
+                || (filling.size > 0 && System.nanoTime() - filling.firstEnqueuedNanos >= maxLatencyNanos);
+    }
+
+    private void send(SampleBatch batch) {
+        encodeBuffer.clear();
+        FrameEncoder.encodeSequence(encodeBuffer, streamId, nextSequence);
+        for (int i = 0; i < batch.size; i++) {
+            FrameEncoder.encode(encodeBuffer, batch.types[i], batch.timestamps[i],
+                    batch.values, i * MAX_SAMPLE_VALUES, batch.valueCounts[i]);
+        }
+        nextSequence += batch.size;
+
+        OutputStream out = connectedStream();
+        if (spill != null && (out == null || !spill.isEmpty())) {
+            // Behind the backlog, to keep the phone's sequence in order
+            spill(batch.size);
+            return;
+        }
+        if (out == null) {
+            samplesWithoutConnection += batch.size;
+            return;
+        }
+
+        try {
+            out.write(encodeBuffer.array(), 0, encodeBuffer.position());
+            out.flush();
+        } catch (IOException e) {
+            failedBatches++;
+            brokenStream = out;
+            if (spill != null) {
+                spill(batch.size);
+                requeueResendWindow();
+            }
+            if (listener != null) {
+                listener.onSendFailed(e);
+            }
+            return;
+        }
+        resendWindow.add(encodeBuffer.array(), 0, encodeBuffer.position());
+
+        long latency = System.nanoTime() - batch.firstEnqueuedNanos;
+        batchesSent++;
+        samplesSent += batch.size;
+        bytesSent += encodeBuffer.position();
+        totalFlushLatencyNanos += latency;
+        if (latency > maxFlushLatencyNanos) {
+            maxFlushLatencyNanos = latency;
+        }
+    }
+
+    private void spill(int samples) {
+        try {
+            spill.append(encodeBuffer.array(), 0, encodeBuffer.position());
+            spilledBatches++;
+        } catch (IOException e) {
+            spillErrors++;
+            samplesWithoutConnection += samples;
+        }
+    }
+
+    // Sends the oldest spilled records, as many as fit one write
+    private void drain() {
+        OutputStream out = connectedStream();
+        int length = 0;
+        try {
+            int next;
+            // Every record starts with a sequence marker, so they can go out back to back
+            while ((next = spill.peekLength()) >= 0 && length + next <= drainBuffer.length) {
+                length += spill.peek(drainBuffer, length);
+                spill.removeFirst();
+            }
+            if (length == 0) {
+                // Left by a build with bigger batches; cannot be sent
+                spill.removeFirst();
+                spillErrors++;
+                return;
+            }
+        } catch (IOException e) {
+            spillErrors++;
+            return;
+        }
+
+        try {
+            out.write(drainBuffer, 0, length);
+            out.flush();
+        } catch (IOException e) {
+            failedBatches++;
+            brokenStream = out;
+            try {
+                spill.prepend(drainBuffer, 0, length);
+            } catch (IOException spillError) {
+                spillErrors++;
+            }
+            requeueResendWindow();
+            if (listener != null) {
+                listener.onSendFailed(e);
+            }
+            return;
+        }
+        resendWindow.add(drainBuffer, 0, length);
+        drainedBytes += length;
+        nextDrainNanos = System.nanoTime() + length * 1_000_000_000L / drainBytesPerSecond;
+    }
+
+    // The phone may or may not have what was last written; it drops duplicates
+    private void requeueResendWindow() {
+        try {
+            resendWindow.prependTo(spill);
+        } catch (IOException e) {
+            spillErrors++;
+        }
+        resendWindow.clear();
+    }
+
+    public long getBatchesSent() {
+        return batchesSent;
+    }
+
+    public long getSamplesSent() {
+        return samplesSent;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getFailedBatches() {
+        return failedBatches;
+    }
+
+    /** Batches written to the spill buffer. */
+    public long getSpilledBatches() {
+        return spilledBatches;
+    }
+
+    /** Backlog bytes sent from the spill buffer. */
+    public long getDrainedBytes() {
+        return drainedBytes;
+    }
+
+    public long getSpillErrors() {
+        return spillErrors;
+    }
+
+    /** Samples thrown away because there was neither a connection nor a spill buffer to take them. */
+    public long getSamplesWithoutConnection() {
+        return samplesWithoutConnection;
+    }
+
+    /** Samples rejected because the writer could not keep up. */
+    public long getDroppedSamples() {
+        synchronized (lock) {
+            return droppedSamples;
+        }
+    }
+
+    public float getAverageBatchSize() {
+        long batches = batchesSent;
+        return batches == 0 ? 0f : (float) samplesSent / batches;
+    }
+
+    public float getBytesPerSample() {
+        long samples = samplesSent;
+        return samples == 0 ? 0f : (float) bytesSent / samples;
+    }
+
+    /** Average time from a batch's first sample being queued to the batch being flushed. */
+    public float getAverageFlushLatencyMillis() {
+        long batches = batchesSent;
+        return batches == 0 ? 0f : totalFlushLatencyNanos / 1e6f / batches;
+    }
+
+    public float getMaxFlushLatencyMillis() {
+        return maxFlushLatencyNanos / 1e6f;
+    }
+
+    /**
+     * The most recently written batches and drain chunks, oldest first, kept
+     * contiguous so each can be spilled again as one record.
+     */
+    private static final class ResendWindow {
+        // The smallest entry is a marker and one heart rate frame
+        private static final int MIN_ENTRY = 2 * WireFormat.frameSize(1);
+
+        final byte[] data;
+        final int[] lengths;
+        int used;
+        int first;
+        int count;
+
+        ResendWindow(int capacity) {
+            data = new byte[capacity];
+            lengths = new int[capacity / MIN_ENTRY + 1];
+        }
+
+        void add(byte[] source, int offset, int length) {
+            if (length > data.length) {
+                clear();
+                return;
+            }
+            while (data.length - used < length || count == lengths.length) {
+                int oldest = lengths[first];
+                System.arraycopy(data, oldest, data, 0, used - oldest);
+                used -= oldest;
+                first = (first + 1) % lengths.length;
+                count--;
+            }
+            System.arraycopy(source, offset, data, used, length);
+            used += length;
+            lengths[(first + count) % lengths.length] = length;
+            count++;
+        }
+
+        // Newest first, so the spill buffer ends up holding them oldest first
+        void prependTo(SpillBuffer spill) throws IOException {
+            int end = used;
+            for (int i = count - 1; i >= 0; i--) {
+                int length = lengths[(first + i) % lengths.length];
+                if (!spill.prepend(data, end - length, length)) {
+                    return;
+                }
+                end -= length;
+            }
+        }
+
+        void clear() {
+            used = 0;
+            first = 0;
+            count = 0;
+        }
+    }
+
+    private static final class SampleBatch {
+        final byte[] types;
+        final long[] timestamps;
+        final int[] valueCounts;
+        final float[] values;
+        int size;
+        long firstEnqueuedNanos;
+
+        SampleBatch(int capacity) {
+            types = new byte[capacity];
+            timestamps = new long[capacity];
+            valueCounts = new int[capacity];
+            values = new float[capacity * MAX_SAMPLE_VALUES];
+        }
+
+        boolean isFull() {
+            return size == types.length;
+        }
+
+        void add(byte type, long timestampNanos, int valueCount,
+                 float v0, float v1, float v2, long enqueuedNanos) {
+            int offset = begin(type, timestampNanos, valueCount, enqueuedNanos);
+            values[offset] = v0;
+            values[offset + 1] = v1;
+            values[offset + 2] = v2;
+        }
+
+        void add(byte type, long timestampNanos, float[] source, int valueCount, long enqueuedNanos) {
+            int offset = begin(type, timestampNanos, valueCount, enqueuedNanos);
+            System.arraycopy(source, 0, values, offset, valueCount);
+        }
+
+        private int begin(byte type, long timestampNanos, int valueCount, long enqueuedNanos) {
+            if (size == 0) {
+                firstEnqueuedNanos = enqueuedNanos;
+            }
+            types[size] = type;
+            timestamps[size] = timestampNanos;
+            valueCounts[size] = valueCount;
+            return size++ * MAX_SAMPLE_VALUES;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
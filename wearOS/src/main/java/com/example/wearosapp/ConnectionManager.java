@@ -0,0 +1,281 @@
+package com.example.wearosapp;
+
+import com.example.shared.SensorFrame;
+import com.example.shared.StreamFrameDecoder;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Keeps the link to the phone up from a background thread of its own:
+ *
+ * <pre>
+ * CONNECTING -> CONNECTED -> (link fails) -> WAITING -> CONNECTING ...
+ *      \-> (connect fails) -> WAITING -/
+ * </pre>
+ *
+ * There is no retry limit; between attempts it waits as long as the
+ * {@link ExponentialBackoff} says. The backoff only starts over once a link
+ * has stayed up for a while, so a phone that accepts and then immediately
+ * drops the connection is not hammered.
+ *
+ * <p>The connected stream is handed to the {@link BatchingSender}, which
+ * spills to disk whenever there is none. Whoever owns the sender reports its
+ * write failures back through {@link #linkFailed}.
+ *
+ * <p>The link also carries frames the other way, such as rate hints. Each
+ * connection gets a reader thread that hands them to the {@link Receiver};
+ * the phone hanging up shows there first, before any write fails.
+ */
+public final class ConnectionManager {
+    public static final long DEFAULT_STABLE_MILLIS = 30_000;
+
+    public enum State {
+        STOPPED, CONNECTING, CONNECTED, WAITING
+    }
+
+    /** An open connection to the phone. */
+    public interface Link extends Closeable {
+        OutputStream getOutputStream() throws IOException;
+
+        InputStream getInputStream() throws IOException;
+
+        /** For the status line, e.g. the phone's name. */
+        String getName();
+    }
+
+    public interface Connector {
+        /** Blocks until connected. */
+        Link connect() throws IOException;
+
+        /** Aborts a {@link #connect} in progress, from another thread. */
+        default void cancel() {
+        }
+    }
+
+    /** Called on the manager's thread. */
+    public interface Listener {
+        void onConnecting(int attempt);
+
+        void onConnected(String name);
+
+        /** @param error why the link went down or could not be opened */
+        void onWaiting(IOException error, long retryInMillis);
+    }
+
+    /** Frames from the phone, on the link's reader thread. The frame is reused. */
+    public interface Receiver {
+        void onFrame(SensorFrame frame);
+    }
+
+    private final Connector connector;
+    private final BatchingSender sender;
+    private final ExponentialBackoff backoff;
+    private final Listener listener;
+    private final long stableMillis;
+    private final Object lock = new Object();
+
+    // Guarded by lock
+    private State state = State.STOPPED;
+    private boolean running;
+    private Link link;
+    private IOException failure;
+    private Thread thread;
+
+    private volatile Receiver receiver;
+    private volatile long connections;
+
+    public ConnectionManager(Connector connector, BatchingSender sender, ExponentialBackoff backoff,
+                             Listener listener) {
+        this(connector, sender, backoff, listener, DEFAULT_STABLE_MILLIS);
+    }
+
+    public ConnectionManager(Connector connector, BatchingSender sender, ExponentialBackoff backoff,
+                             Listener listener, long stableMillis) {
+        this.connector = connector;
+        this.sender = sender;
+        this.backoff = backoff;
+        this.listener = listener;
+        this.stableMillis = stableMillis;
+    }
+
+    /** Set before {@link #start}. */
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            thread = new Thread(this::run, "ConnectionManager");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /** Closes the link and stops reconnecting. Does not wait for the thread. */
+    public void stop() {
+        Link current;
+        synchronized (lock) {
+            running = false;
+            current = link;
+            lock.notifyAll();
+        }
+        connector.cancel();
+        closeQuietly(current);
+    }
+
+    /** The current link is broken; reconnect. Ignored unless connected. */
+    public void linkFailed(IOException error) {
+        linkFailed(null, error);
+    }
+
+    // A reader only speaks for its own link, which may already have been replaced
+    private void linkFailed(Link failed, IOException error) {
+        synchronized (lock) {
+            if (state == State.CONNECTED && failure == null && (failed == null || failed == link)) {
+                failure = error;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    public State getState() {
+        synchronized (lock) {
+            return state;
+        }
+    }
+
+    public long getConnections() {
+        return connections;
+    }
+
+    private void run() {
+        while (setState(State.CONNECTING)) {
+            listener.onConnecting(backoff.getAttempts() + 1);
+            Link opened;
+            OutputStream out;
+            InputStream in;
+            try {
+                opened = connector.connect();
+                try {
+                    out = opened.getOutputStream();
+                    in = opened.getInputStream();
+                } catch (IOException e) {
+                    closeQuietly(opened);
+                    throw e;
+                }
+            } catch (IOException e) {
+                waitBeforeRetry(e);
+                continue;
+            }
+
+            synchronized (lock) {
+                if (!running) {
+                    closeQuietly(opened);
+                    break;
+                }
+                link = opened;
+                failure = null;
+                state = State.CONNECTED;
+            }
+            connections++;
+            long connectedAt = System.nanoTime();
+            sender.setOutputStream(out);
+            startReader(opened, in);
+            listener.onConnected(opened.getName());
+
+            IOException error = awaitFailure();
+            sender.setOutputStream(null);
+            synchronized (lock) {
+                link = null;
+            }
+            closeQuietly(opened);
+            if ((System.nanoTime() - connectedAt) / 1_000_000L >= stableMillis) {
+                backoff.reset();
+            }
+            waitBeforeRetry(error);
+        }
+        setState(State.STOPPED);
+    }
+
+    private void startReader(Link opened, InputStream in) {
+        Thread reader = new Thread(() -> {
+            StreamFrameDecoder decoder = new StreamFrameDecoder();
+            SensorFrame frame = new SensorFrame();
+            Receiver current = receiver;
+            try {
+                while (decoder.readFrom(in) >= 0) {
+                    while (decoder.next(frame)) {
+                        if (current != null) {
+                            current.onFrame(frame);
+                        }
+                    }
+                }
+                linkFailed(opened, new EOFException("Phone closed the connection"));
+            } catch (IOException e) {
+                linkFailed(opened, e);
+            }
+        }, "LinkReader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Returns null if stopped rather than failed
+    private IOException awaitFailure() {
+        synchronized (lock) {
+            try {
+                while (running && failure == null) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            return failure;
+        }
+    }
+
+    private void waitBeforeRetry(IOException error) {
+        long delayMillis = backoff.nextDelayMillis();
+        if (!setState(State.WAITING)) {
+            return;
+        }
+        listener.onWaiting(error, delayMillis);
+        long deadline = System.nanoTime() + delayMillis * 1_000_000L;
+        synchronized (lock) {
+            try {
+                long remaining;
+                while (running && (remaining = deadline - System.nanoTime()) > 0) {
+                    lock.wait(remaining / 1_000_000L, (int) (remaining % 1_000_000L));
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+        }
+    }
+
+    // Returns false once stopped, in which case the state is STOPPED
+    private boolean setState(State next) {
+        synchronized (lock) {
+            state = running ? next : State.STOPPED;
+            return running;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Already gone
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.wearosapp;
+
+import java.util.Random;
+
+/**
+ * Reconnect delays that double with every failed attempt, up to a cap. Each
+ * delay is picked at random from the upper half of its range, so a watch
+ * and phone that lost the link together don't retry in lockstep, yet every
+ * wait is at least half the nominal one.
+ */
+public final class ExponentialBackoff {
+    private final long initialMillis;
+    private final long maxMillis;
+    private final Random random;
+    private int attempts;
+
+    public ExponentialBackoff(long initialMillis, long maxMillis, Random random) {
+        if (initialMillis < 1 || maxMillis < initialMillis) {
+            throw new IllegalArgumentException("Need 0 < initialMillis <= maxMillis");
+        }
+        this.initialMillis = initialMillis;
+        this.maxMillis = maxMillis;
+        this.random = random;
+    }
+
+    public long nextDelayMillis() {
+        // Shifting any further would overflow
+        long ceiling = attempts >= Long.numberOfLeadingZeros(initialMillis) - 1
+                ? maxMillis
+                : Math.min(maxMillis, initialMillis << attempts);
+        attempts++;
+        long half = ceiling / 2;
+        return ceiling - half + (long) (random.nextDouble() * (half + 1));
+    }
+
+    public void reset() {
+        attempts = 0;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.wearosapp;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import com.example.shared.CoalescingUpdater;
+
+/**
+ * Runs coalesced UI updates on the main thread at the start of the next
+ * display frame, so at most one lands per frame.
+ */
+final class FrameScheduler implements CoalescingUpdater.Scheduler {
+    private final Handler mainHandler;
+
+    FrameScheduler(Handler mainHandler) {
+        this.mainHandler = mainHandler;
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMillis) {
+        // Choreographer is per-looper, so it has to be reached from the main thread
+        mainHandler.postDelayed(() -> Choreographer.getInstance()
+                .postFrameCallback(frameTimeNanos -> task.run()), delayMillis);
+    }
+}
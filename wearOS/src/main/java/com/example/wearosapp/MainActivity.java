@@ -20,8 +20,16 @@ import android.widget.Toast;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import com.example.shared.CoalescingUpdater;
+import com.example.shared.FeatureExtractor;
+import com.example.shared.RateHint;
+import com.example.shared.SensorFrame;
+
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Random;
+import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 
@@ -29,20 +37,43 @@ public class MainActivity extends Activity implements SensorEventListener {
     private static final String TAG = "WearOSSensorApp";
     private static final UUID MY_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
     private static final int PERMISSION_REQUEST_CODE = 123;
-    private static final int MAX_RETRIES = 3;  // Maximum number of retries
-    private int retryCount = 0;
-
-    private boolean isBluetoothConnected = false;
+    private static final long RECONNECT_INITIAL_MILLIS = 1_000;
+    private static final long RECONNECT_MAX_MILLIS = 60_000;
+    // Several minutes of raw samples, or days of feature frames
+    private static final long SPILL_CAPACITY_BYTES = 4L * 1024 * 1024;
+    private static final String SPILL_FILE_NAME = "spill.bin";
+    // While the phone says the wearer is resting: every sensor batched in the hub so
+    // the CPU can sleep between deliveries, and in raw mode a slower accelerometer
+    private static final int LOW_RATE_ACCELEROMETER_PERIOD_US = 1_000_000;
+    private static final int LOW_RATE_MAX_REPORT_LATENCY_US = 10_000_000;
+    private static final float MIN_BEAT_CONFIDENCE = 0.5f;
+    // Edge processing: send one feature frame per window instead of every raw sample.
+    // On by default; launching with the extra set to false sends raw samples again,
+    // e.g. to compare both paths on the phone
+    public static final String EXTRA_EDGE_PROCESSING = "com.example.wearosapp.EDGE_PROCESSING";
+    private static final long UI_UPDATE_INTERVAL_MILLIS =
+            CoalescingUpdater.intervalForRate(CoalescingUpdater.DEFAULT_MAX_RATE_HZ);
 
     private TextView statusText;
     private TextView sensorDataTextView;
     private SensorManager sensorManager;
     private Sensor heartRateSensor;
     private Sensor accelerometerSensor;
+    private Sensor heartBeatSensor;
+    private long lastBeatTimestamp;
+    private boolean edgeProcessing;
     private BluetoothAdapter bluetoothAdapter;
-    private BluetoothSocket bluetoothSocket;
-    private OutputStream outputStream;
     private Handler mainHandler;
+    // Sensor callbacks only replace the latest text; it is drawn at most once per frame
+    private CoalescingUpdater<String> statusUpdater;
+    private CoalescingUpdater<SensorReading> sensorDataUpdater;
+    private BatchingSender batchingSender;
+    private volatile ConnectionManager connectionManager;
+    private volatile SpillBuffer spillBuffer;
+    private final FeatureExtractor featureExtractor = new FeatureExtractor();
+    // Main thread only
+    private final SamplingController samplingController = new SamplingController();
+    private final RateHint rateHint = new RateHint();
 
 
 //    Request Permissions Based on the Android Version Application Runs on
@@ -68,6 +99,7 @@ public class MainActivity extends Activity implements SensorEventListener {
         setContentView(R.layout.activity_main);
 
         mainHandler = new Handler(Looper.getMainLooper());
+        edgeProcessing = getIntent().getBooleanExtra(EXTRA_EDGE_PROCESSING, true);
         statusText = findViewById(R.id.statusText);
         sensorDataTextView = findViewById(R.id.sensorDataTextView);
 
@@ -76,6 +108,11 @@ public class MainActivity extends Activity implements SensorEventListener {
             return;
         }
 
+        FrameScheduler frameScheduler = new FrameScheduler(mainHandler);
+        statusUpdater = new CoalescingUpdater<>(frameScheduler, UI_UPDATE_INTERVAL_MILLIS, this::renderStatus);
+        sensorDataUpdater = new CoalescingUpdater<>(frameScheduler, UI_UPDATE_INTERVAL_MILLIS,
+                this::renderSensorData);
+
         showStatus("Starting application...");
 
         if (checkAndRequestPermissions()) {
@@ -133,6 +170,15 @@ public class MainActivity extends Activity implements SensorEventListener {
     }
 
     private void initializeApp() {
+        batchingSender = new BatchingSender(e -> {
+            Log.e(TAG, "Error sending data", e);
+            showStatus("Error sending data: " + e.getMessage());
+            ConnectionManager manager = connectionManager;
+            if (manager != null) {
+                manager.linkFailed(e);
+            }
+        });
+
         showStatus("Initializing sensors...");
         initializeSensors();
 
@@ -146,20 +192,55 @@ public class MainActivity extends Activity implements SensorEventListener {
         heartRateSensor = sensorManager.getDefaultSensor(Sensor.TYPE_HEART_RATE);
         if (heartRateSensor == null) {
             showStatus("Heart rate sensor not available!");
-        } else {
-            sensorManager.registerListener(this, heartRateSensor, SensorManager.SENSOR_DELAY_NORMAL);
         }
 
         accelerometerSensor = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
         if (accelerometerSensor == null) {
             showStatus("Accelerometer not available!");
-        } else {
-            sensorManager.registerListener(this, accelerometerSensor, SensorManager.SENSOR_DELAY_NORMAL);
         }
 
+        // Individual beats give the phone inter-beat intervals for HRV; optional on most watches
+        heartBeatSensor = sensorManager.getDefaultSensor(Sensor.TYPE_HEART_BEAT);
+        if (heartBeatSensor == null) {
+            Log.d(TAG, "Heart beat sensor not available, HRV will not be computed");
+        }
+
+        registerSensors(samplingController.getMode());
         showStatus("Sensors initialized successfully");
     }
 
+    // Main thread; re-registering is how a sensor's rate and batching change
+    private void registerSensors(SamplingController.Mode mode) {
+        sensorManager.unregisterListener(this);
+        boolean low = mode == SamplingController.Mode.LOW;
+        int maxReportLatencyUs = low ? LOW_RATE_MAX_REPORT_LATENCY_US : 0;
+        if (heartRateSensor != null) {
+            sensorManager.registerListener(this, heartRateSensor,
+                    SensorManager.SENSOR_DELAY_NORMAL, maxReportLatencyUs);
+        }
+        if (accelerometerSensor != null) {
+            // Edge mode keeps the full rate: the window's zero crossings and step peaks
+            // mean nothing at 1 Hz, and only one frame per window goes out either way
+            boolean slowAccelerometer = low && !edgeProcessing;
+            sensorManager.registerListener(this, accelerometerSensor,
+                    slowAccelerometer ? LOW_RATE_ACCELEROMETER_PERIOD_US : SensorManager.SENSOR_DELAY_NORMAL,
+                    maxReportLatencyUs);
+        }
+        if (heartBeatSensor != null) {
+            sensorManager.registerListener(this, heartBeatSensor,
+                    SensorManager.SENSOR_DELAY_FASTEST, maxReportLatencyUs);
+        }
+        Log.d(TAG, "Sampling mode: " + mode + (edgeProcessing ? ", edge processing" : ", raw"));
+    }
+
+    private void onRateHint(int level, float wakeHeartRate) {
+        rateHint.level = level;
+        rateHint.wakeHeartRate = wakeHeartRate;
+        if (samplingController.onRateHint(rateHint) && sensorManager != null) {
+            registerSensors(samplingController.getMode());
+        }
+    }
+
     private void initializeBluetooth() {
         bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
         if (bluetoothAdapter == null) {
@@ -168,89 +249,176 @@ public class MainActivity extends Activity implements SensorEventListener {
         }
 
         if (!bluetoothAdapter.isEnabled()) {
+            // The connection manager keeps trying until it is switched on
             showStatus("Please enable Bluetooth!");
-            return;
         }
 
-        showStatus("Starting Bluetooth connection...");
-        new Thread(this::connectToDevice).start();
+        connectionManager = new ConnectionManager(new BluetoothConnector(), batchingSender,
+                new ExponentialBackoff(RECONNECT_INITIAL_MILLIS, RECONNECT_MAX_MILLIS, new Random()),
+                new ConnectionListener());
+        connectionManager.setReceiver(frame -> {
+            if (frame.isRateHint()) {
+                // The frame is reused by the reader thread; hand over copies
+                int level = (int) frame.values[0];
+                float wakeHeartRate = frame.values[1];
+                mainHandler.post(() -> onRateHint(level, wakeHeartRate));
+            }
+        });
+        // Opening the spill file is disk I/O; keep it off the main thread
+        new Thread(this::startSending, "SenderStartup").start();
     }
 
-    private void connectToDevice() {
-        if (retryCount >= MAX_RETRIES) {
-            showStatus("Max retries reached. Connection failed.");
-            return; // Stop trying after max retries
+    private void startSending() {
+        try {
+            spillBuffer = new SpillBuffer(new File(getFilesDir(), SPILL_FILE_NAME), SPILL_CAPACITY_BYTES);
+            batchingSender.setSpillBuffer(spillBuffer);
+            if (!spillBuffer.isEmpty()) {
+                Log.d(TAG, "Backlog from last run: " + spillBuffer.getUsedBytes() + " bytes");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "No spill buffer; samples taken while disconnected will be lost", e);
         }
+        batchingSender.start();
+        connectionManager.start();
+    }
 
-        try {
-            if (ActivityCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT)
+    /** Connects to the first paired device; the connection manager decides when. */
+    private final class BluetoothConnector implements ConnectionManager.Connector {
+        private volatile BluetoothSocket connecting;
+
+        @Override
+        public ConnectionManager.Link connect() throws IOException {
+            if (ActivityCompat.checkSelfPermission(MainActivity.this, Manifest.permission.BLUETOOTH_CONNECT)
                     != PackageManager.PERMISSION_GRANTED) {
-                showStatus("Bluetooth connect permission not granted!");
-                return;
+                throw new IOException("Bluetooth connect permission not granted");
+            }
+            if (!bluetoothAdapter.isEnabled()) {
+                throw new IOException("Bluetooth is off");
             }
-
             Set<BluetoothDevice> pairedDevices = bluetoothAdapter.getBondedDevices();
             if (pairedDevices.isEmpty()) {
-                showStatus("No paired devices found! Please pair a device first.");
-                return;
+                throw new IOException("No paired devices found, please pair the phone first");
             }
 
-            showStatus("Found " + pairedDevices.size() + " paired devices.");
-
             BluetoothDevice device = pairedDevices.iterator().next(); // Pick the first device
-            showStatus("Connecting to: " + device.getName());
+            String name = device.getName();
+            BluetoothSocket socket = device.createRfcommSocketToServiceRecord(MY_UUID);
+            connecting = socket;
+            try {
+                socket.connect();
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            } finally {
+                connecting = null;
+            }
+            return new ConnectionManager.Link() {
+                @Override
+                public OutputStream getOutputStream() throws IOException {
+                    return socket.getOutputStream();
+                }
 
-            bluetoothSocket = device.createRfcommSocketToServiceRecord(MY_UUID);
-            bluetoothSocket.connect();
-            outputStream = bluetoothSocket.getOutputStream();
+                @Override
+                public String getName() {
+                    return name;
+                }
 
-            showStatus("Connected to: " + device.getName());
-            isBluetoothConnected = true;
+                @Override
+                public void close() throws IOException {
+                    socket.close();
+                }
+            };
+        }
 
-        } catch (IOException e) {
-            String errorMsg = "Connection failed: " + e.getMessage();
-            Log.e(TAG, errorMsg, e);
-            showStatus(errorMsg);
+        @Override
+        public void cancel() {
+            BluetoothSocket socket = connecting;
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing socket", e);
+                }
+            }
+        }
+    }
+
+    private final class ConnectionListener implements ConnectionManager.Listener {
+        @Override
+        public void onConnecting(int attempt) {
+            showStatus(attempt == 1 ? "Connecting..." : "Connecting (attempt " + attempt + ")...");
+        }
 
-            retryCount++;  // Increment retry count
-            // Retry after a delay (2 seconds)
-            new Handler(Looper.getMainLooper()).postDelayed(this::connectToDevice, 2000);
+        @Override
+        public void onConnected(String name) {
+            showStatus("Connected to: " + name);
+        }
+
+        @Override
+        public void onWaiting(IOException error, long retryInMillis) {
+            String reason = error != null ? error.getMessage() : "connection lost";
+            Log.e(TAG, "Connection failed: " + reason, error);
+            showStatus("Connection failed: " + reason + ". Retrying in "
+                    + (retryInMillis + 999) / 1000 + " s, samples are kept meanwhile.");
         }
     }
 
     @Override
     public void onSensorChanged(SensorEvent event) {
-
-        try {
-            String data = "";
-            String displayText = "";
-
-            if (event.sensor.getType() == Sensor.TYPE_HEART_RATE) {
-                data = String.format("HR:%.1f", event.values[0]);
-                displayText = "Heart Rate: " + event.values[0] + " BPM";
-            } else if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-                data += String.format("ACC:%.2f,%.2f,%.2f",
-                        event.values[0], event.values[1], event.values[2]);
-                displayText += String.format("\nAccelerometer: X=%.2f, Y=%.2f, Z=%.2f",
-                        event.values[0], event.values[1], event.values[2]);
-            } else {
-                return;
+        SensorReading reading;
+
+        // Samples are handed to the batching sender, which writes them on its own
+        // thread, or keeps them on disk until the phone is back
+        if (event.sensor.getType() == Sensor.TYPE_HEART_RATE) {
+            sendHeartRate(event.timestamp, event.values[0]);
+            if (samplingController.onHeartRate(event.timestamp, event.values[0])) {
+                registerSensors(samplingController.getMode());
             }
+            reading = new SensorReading(true, event.values[0], 0f, 0f);
+        } else if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
+            sendAccelerometer(event.timestamp, event.values[0], event.values[1], event.values[2]);
+            reading = new SensorReading(false, event.values[0], event.values[1], event.values[2]);
+        } else if (event.sensor.getType() == Sensor.TYPE_HEART_BEAT) {
+            onHeartBeat(event.timestamp, event.values[0]);
+            return;
+        } else {
+            return;
+        }
 
-            updateSensorDataOnUI(displayText);
+        // Formatted only for the readings that make it to the screen
+        sensorDataUpdater.update(reading);
+    }
 
-            if (outputStream == null) {
-            showStatus("Bluetooth connection not established. Data not sent.");
-                return;
-            }
+    private void sendHeartRate(long timestamp, float bpm) {
+        if (!edgeProcessing) {
+            batchingSender.offerHeartRate(timestamp, bpm);
+        } else if (featureExtractor.addHeartRate(timestamp, bpm)) {
+            batchingSender.offerFeatures(featureExtractor.completed());
+        }
+    }
 
-            outputStream.write(data.getBytes());
-            outputStream.flush();
+    private void sendAccelerometer(long timestamp, float x, float y, float z) {
+        if (!edgeProcessing) {
+            batchingSender.offerAccelerometer(timestamp, x, y, z);
+        } else if (featureExtractor.addAccelerometer(timestamp, x, y, z)) {
+            batchingSender.offerFeatures(featureExtractor.completed());
+        }
+    }
 
-        } catch (IOException e) {
-            Log.e(TAG, "Error sending data", e);
-            showStatus("Error sending data: " + e.getMessage());
+    private void onHeartBeat(long timestamp, float confidence) {
+        if (confidence < MIN_BEAT_CONFIDENCE) {
+            // Don't bridge an interval across a doubtful beat, and tell the
+            // phone so it doesn't difference the intervals either side
+            if (lastBeatTimestamp != 0) {
+                batchingSender.offerInterBeatInterval(timestamp, SensorFrame.BEAT_GAP);
+            }
+            lastBeatTimestamp = 0;
+            return;
+        }
+        if (lastBeatTimestamp != 0) {
+            batchingSender.offerInterBeatInterval(timestamp, (timestamp - lastBeatTimestamp) / 1_000_000f);
         }
+        lastBeatTimestamp = timestamp;
     }
 
     @Override
@@ -260,13 +428,23 @@ public class MainActivity extends Activity implements SensorEventListener {
 
     private void showStatus(final String message) {
         Log.d(TAG, message);
-        mainHandler.post(() -> { statusText.setText(message);
-//            Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
-        });
+        if (statusUpdater != null) {
+            statusUpdater.update(message);
+        }
     }
 
-    private void updateSensorDataOnUI(final String displayText) {
-        mainHandler.post(() -> sensorDataTextView.setText(displayText));
+    private void renderStatus(String message) {
+        statusText.setText(message);
+//        Toast.makeText(MainActivity.this, message, Toast.LENGTH_SHORT).show();
+    }
+
+    private void renderSensorData(SensorReading reading) {
+        if (reading.heartRate) {
+            sensorDataTextView.setText("Heart Rate: " + reading.x + " BPM");
+        } else {
+            sensorDataTextView.setText(String.format("\nAccelerometer: X=%.2f, Y=%.2f, Z=%.2f",
+                    reading.x, reading.y, reading.z));
+        }
     }
 
     @Override
@@ -278,12 +456,62 @@ public class MainActivity extends Activity implements SensorEventListener {
             sensorManager.unregisterListener(this);
         }
 
-        if (bluetoothSocket != null) {
+        if (connectionManager != null) {
+            // Closes the link too
+            connectionManager.stop();
+        }
+
+        if (batchingSender != null) {
+            batchingSender.stop();
+            Log.d(TAG, "Batches sent: " + batchingSender.getBatchesSent() +
+                    ", avg batch size: " + batchingSender.getAverageBatchSize() +
+                    ", bytes/sample: " + batchingSender.getBytesPerSample() +
+                    ", avg flush latency: " + batchingSender.getAverageFlushLatencyMillis() + " ms" +
+                    ", max flush latency: " + batchingSender.getMaxFlushLatencyMillis() + " ms" +
+                    ", dropped: " + batchingSender.getDroppedSamples() +
+                    ", spilled batches: " + batchingSender.getSpilledBatches() +
+                    ", drained bytes: " + batchingSender.getDrainedBytes());
+        }
+        if (spillBuffer != null) {
+            Log.d(TAG, "Backlog left: " + spillBuffer.getUsedBytes() + " bytes, dropped records: " +
+                    spillBuffer.getDroppedRecords());
             try {
-                bluetoothSocket.close();
+                spillBuffer.close();
             } catch (IOException e) {
-                Log.e(TAG, "Error closing socket", e);
+                Log.e(TAG, "Error closing spill buffer", e);
+            }
+        }
+        if (sensorDataUpdater != null) {
+            Log.d(TAG, "Sensor data text: " + sensorDataUpdater + "; status text: " + statusUpdater);
+        }
+    }
+
+    // The latest sample shown on screen, kept raw until it is rendered
+    private static final class SensorReading {
+        final boolean heartRate;
+        final float x;
+        final float y;
+        final float z;
+
+        SensorReading(boolean heartRate, float x, float y, float z) {
+            this.heartRate = heartRate;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SensorReading)) {
+                return false;
             }
+            SensorReading other = (SensorReading) o;
+            return heartRate == other.heartRate && x == other.x && y == other.y && z == other.z;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(heartRate, x, y, z);
         }
     }
 }
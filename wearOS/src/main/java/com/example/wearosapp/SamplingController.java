@@ -0,0 +1,75 @@
+package com.example.wearosapp;
+
+import com.example.shared.RateHint;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the watch's sampling mode from the phone's rate hints and the heart
+ * rate the watch measures itself.
+ *
+ * <p>The phone decides when the wearer is resting enough to sample slowly
+ * ({@link RateHint#LEVEL_LOW}). The watch never waits for it to take that
+ * back: heart rate at or above the hint's wake threshold switches to full
+ * rate at once, and it stays there until heart rate has been below the
+ * threshold for {@code holdMillis}, so a brief spike does not start the
+ * sensors flapping. The phone's {@link RateHint#LEVEL_HIGH} always wins.
+ *
+ * <p>Not thread-safe; the watch drives it from the main thread.
+ */
+public final class SamplingController {
+    public static final long DEFAULT_HOLD_MILLIS = 60_000;
+
+    public enum Mode {
+        HIGH, LOW
+    }
+
+    private final long holdNanos;
+    private int hintLevel = RateHint.LEVEL_HIGH;
+    private float wakeHeartRate = Float.MAX_VALUE;
+    private boolean awake;
+    private long lastHighNanos;
+    private Mode mode = Mode.HIGH;
+
+    public SamplingController() {
+        this(DEFAULT_HOLD_MILLIS);
+    }
+
+    public SamplingController(long holdMillis) {
+        this.holdNanos = TimeUnit.MILLISECONDS.toNanos(holdMillis);
+    }
+
+    /** @return true if the mode changed */
+    public boolean onRateHint(RateHint hint) {
+        hintLevel = hint.level;
+        wakeHeartRate = hint.wakeHeartRate;
+        return update();
+    }
+
+    /**
+     * @param timestampNanos sensor time of the reading
+     * @return true if the mode changed
+     */
+    public boolean onHeartRate(long timestampNanos, float bpm) {
+        if (bpm >= wakeHeartRate) {
+            awake = true;
+            lastHighNanos = timestampNanos;
+        } else if (awake && timestampNanos - lastHighNanos >= holdNanos) {
+            awake = false;
+        }
+        return update();
+    }
+
+    private boolean update() {
+        Mode next = hintLevel == RateHint.LEVEL_LOW && !awake ? Mode.LOW : Mode.HIGH;
+        if (next == mode) {
+            return false;
+        }
+        mode = next;
+        return true;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.wearosapp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A bounded FIFO of byte records in a file, for batches the watch could not
+ * send. Records live in a ring after a small header; when the ring is full
+ * the oldest records are dropped to make room, so the file never grows past
+ * its capacity and the newest data always gets in.
+ *
+ * <p>Record data is written before the header that points at it, so a
+ * killed app finds its backlog again on the next start. Nothing is forced
+ * to disk, though; a power loss may cost the last records.
+ *
+ * <p>Not thread-safe; owned by the {@link BatchingSender}'s writer thread.
+ */
+public final class SpillBuffer implements Closeable {
+    private static final int MAGIC = 0x5350494C; // "SPIL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int LENGTH_SIZE = 4;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long capacity;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private final ByteBuffer length = ByteBuffer.allocate(LENGTH_SIZE);
+
+    // Offset of the oldest record within the ring
+    private long head;
+    private long used;
+    private int records;
+
+    private long droppedRecords;
+
+    /** Opens {@code path}, keeping its records if it is a spill file of the same capacity. */
+    public SpillBuffer(File path, long capacityBytes) throws IOException {
+        if (capacityBytes < LENGTH_SIZE + 1) {
+            throw new IllegalArgumentException("Capacity too small: " + capacityBytes);
+        }
+        this.capacity = capacityBytes;
+        file = new RandomAccessFile(path, "rw");
+        channel = file.getChannel();
+        if (!readHeader()) {
+            head = 0;
+            used = 0;
+            records = 0;
+            file.setLength(HEADER_SIZE + capacity);
+            writeHeader();
+        }
+    }
+
+    private boolean readHeader() throws IOException {
+        if (file.length() != HEADER_SIZE + capacity) {
+            return false;
+        }
+        header.clear();
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != capacity) {
+            return false;
+        }
+        head = header.getLong();
+        used = header.getLong();
+        records = header.getInt();
+        return head >= 0 && head < capacity && used <= capacity && records >= 0;
+    }
+
+    private void writeHeader() throws IOException {
+        header.clear();
+        header.putInt(MAGIC).putInt(VERSION).putLong(capacity)
+                .putLong(head).putLong(used).putInt(records);
+        header.flip();
+        writeFully(header, 0);
+    }
+
+    /**
+     * Adds a record at the end, dropping the oldest ones if there is no room.
+     *
+     * @throws IllegalArgumentException if the record could never fit
+     */
+    public void append(byte[] data, int offset, int count) throws IOException {
+        long size = LENGTH_SIZE + count;
+        if (size > capacity) {
+            throw new IllegalArgumentException("Record larger than the buffer: " + count);
+        }
+        while (capacity - used < size) {
+            removeFirst();
+            droppedRecords++;
+        }
+        long position = (head + used) % capacity;
+        writeRecord(position, data, offset, count);
+        used += size;
+        records++;
+        writeHeader();
+    }
+
+    /**
+     * Puts a record back in front of the oldest one, e.g. data that has to
+     * be resent before the rest of the backlog. Nothing is dropped for it.
+     *
+     * @return false if there was no room
+     */
+    public boolean prepend(byte[] data, int offset, int count) throws IOException {
+        long size = LENGTH_SIZE + count;
+        if (capacity - used < size) {
+            return false;
+        }
+        long position = Math.floorMod(head - size, capacity);
+        writeRecord(position, data, offset, count);
+        head = position;
+        used += size;
+        records++;
+        writeHeader();
+        return true;
+    }
+
+    /** Length of the oldest record, or -1 if empty. */
+    public int peekLength() throws IOException {
+        if (records == 0) {
+            return -1;
+        }
+        length.clear();
+        readRing(head, length);
+        return length.getInt(0);
+    }
+
+    /**
+     * Copies the oldest record into {@code into} without removing it.
+     *
+     * @return its length, or -1 if empty
+     */
+    public int peek(byte[] into, int offset) throws IOException {
+        int count = peekLength();
+        if (count > 0) {
+            readRing((head + LENGTH_SIZE) % capacity, ByteBuffer.wrap(into, offset, count));
+        }
+        return count;
+    }
+
+    public void removeFirst() throws IOException {
+        int count = peekLength();
+        if (count < 0) {
+            return;
+        }
+        head = (head + LENGTH_SIZE + count) % capacity;
+        used -= LENGTH_SIZE + count;
+        records--;
+        if (records == 0) {
+            head = 0;
+        }
+        writeHeader();
+    }
+
+    public boolean isEmpty() {
+        return records == 0;
+    }
+
+    public int getRecordCount() {
+        return records;
+    }
+
+    /** Bytes in use, record lengths included. */
+    public long getUsedBytes() {
+        return used;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /** Records thrown away because the buffer was full. */
+    public long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private void writeRecord(long position, byte[] data, int offset, int count) throws IOException {
+        length.clear();
+        length.putInt(0, count);
+        writeRing(position, length);
+        writeRing((position + LENGTH_SIZE) % capacity, ByteBuffer.wrap(data, offset, count));
+    }
+
+    // Ring I/O: a record may wrap around the end of the data area
+
+    private void writeRing(long position, ByteBuffer source) throws IOException {
+        int tail = (int) Math.min(source.remaining(), capacity - position);
+        int limit = source.limit();
+        source.limit(source.position() + tail);
+        writeFully(source, HEADER_SIZE + position);
+        source.limit(limit);
+        writeFully(source, HEADER_SIZE);
+    }
+
+    private void readRing(long position, ByteBuffer target) throws IOException {
+        int tail = (int) Math.min(target.remaining(), capacity - position);
+        int limit = target.limit();
+        target.limit(target.position() + tail);
+        readFully(target, HEADER_SIZE + position);
+        target.limit(limit);
+        readFully(target, HEADER_SIZE);
+    }
+
+    private void writeFully(ByteBuffer source, long filePosition) throws IOException {
+        while (source.hasRemaining()) {
+            filePosition += channel.write(source, filePosition);
+        }
+    }
+
+    private void readFully(ByteBuffer target, long filePosition) throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, filePosition);
+            if (read < 0) {
+                throw new IOException("Spill file truncated");
+            }
+            filePosition += read;
+        }
+    }
+}
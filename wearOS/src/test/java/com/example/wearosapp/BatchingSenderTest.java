@@ -0,0 +1,340 @@
+package com.example.wearosapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.shared.SensorFrame;
+import com.example.shared.SequenceFilter;
+import com.example.shared.StreamFrameDecoder;
+import com.example.shared.WindowFeatures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchingSenderTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void fullBatchIsWrittenOnce() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        BatchingSender sender = new BatchingSender(10, 60_000, null);
+        sender.setOutputStream(out);
+        sender.start();
+
+        for (int i = 0; i < 10; i++) {
+            sender.offerAccelerometer(i, i, 0f, 9.81f);
+        }
+        waitFor(() -> sender.getSamplesSent() == 10);
+        sender.stop();
+
+        assertEquals(1, out.writes.get());
+        assertEquals(1, sender.getBatchesSent());
+        assertEquals(10f, sender.getAverageBatchSize(), 0f);
+        assertEquals(out.bytes.size() / 10f, sender.getBytesPerSample(), 0f);
+    }
+
+    @Test
+    public void partialBatchIsFlushedAfterMaxLatency() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        BatchingSender sender = new BatchingSender(100, 50, null);
+        sender.setOutputStream(out);
+        sender.start();
+
+        long start = System.nanoTime();
+        sender.offerHeartRate(1L, 70f);
+        sender.offerHeartRate(2L, 71f);
+        waitFor(() -> sender.getSamplesSent() == 2);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+        sender.stop();
+
+        assertEquals(1, out.writes.get());
+        assertTrue("Flushed after " + elapsedMillis + " ms", elapsedMillis >= 45);
+        assertTrue(sender.getMaxFlushLatencyMillis() >= 45f);
+    }
+
+    @Test
+    public void phoneDecodesBatchedFrames() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        BatchingSender sender = new BatchingSender(16, 20, null);
+        sender.setOutputStream(out);
+        sender.start();
+
+        for (int i = 0; i < 50; i++) {
+            if (i % 5 == 0) {
+                sender.offerHeartRate(i, 60 + i);
+            } else {
+                sender.offerAccelerometer(i, i, -i, 0f);
+            }
+        }
+        sender.stop();
+
+        StreamFrameDecoder decoder = new StreamFrameDecoder();
+        byte[] bytes = out.bytes.toByteArray();
+        decoder.feed(bytes, 0, bytes.length);
+        SequenceFilter filter = new SequenceFilter();
+        SensorFrame frame = new SensorFrame();
+        for (int i = 0; i < 50; i++) {
+            assertTrue(nextSample(decoder, filter, frame));
+            assertEquals(i, frame.timestampNanos);
+            if (i % 5 == 0) {
+                assertTrue(frame.isHeartRate());
+                assertEquals(60 + i, frame.values[0], 0f);
+            } else {
+                assertTrue(frame.isAccelerometer());
+                assertEquals(-i, frame.values[1], 0f);
+            }
+        }
+        assertFalse(nextSample(decoder, filter, frame));
+        assertEquals(50, sender.getSamplesSent());
+    }
+
+    @Test
+    public void sendsFeatureFrames() throws Exception {
+        CountingOutputStream out = new CountingOutputStream();
+        BatchingSender sender = new BatchingSender(4, 20, null);
+        sender.setOutputStream(out);
+        sender.start();
+
+        WindowFeatures features = new WindowFeatures();
+        features.endTimestampNanos = 42L;
+        for (int i = 0; i < WindowFeatures.VALUE_COUNT; i++) {
+            features.values[i] = i * 1.5f;
+        }
+        sender.offerFeatures(features);
+        sender.offerHeartRate(43L, 70f);
+        sender.stop();
+
+        StreamFrameDecoder decoder = new StreamFrameDecoder();
+        byte[] bytes = out.bytes.toByteArray();
+        decoder.feed(bytes, 0, bytes.length);
+        SequenceFilter filter = new SequenceFilter();
+        SensorFrame frame = new SensorFrame();
+        WindowFeatures received = new WindowFeatures();
+        assertTrue(nextSample(decoder, filter, frame));
+        assertTrue(received.readFrom(frame));
+        assertEquals(42L, received.endTimestampNanos);
+        assertEquals(15f, received.values[10], 0f);
+        assertTrue(nextSample(decoder, filter, frame));
+        assertTrue(frame.isHeartRate());
+    }
+
+    @Test
+    public void dropsSamplesWhenWriterIsStuck() throws Exception {
+        BlockingOutputStream out = new BlockingOutputStream();
+        BatchingSender sender = new BatchingSender(4, 60_000, null);
+        sender.setOutputStream(out);
+        sender.start();
+
+        for (int i = 0; i < 4; i++) {
+            sender.offerHeartRate(i, 70f);
+        }
+        waitFor(() -> out.blocked);
+        // Writer is now stuck on the first batch; the backlog holds four more batches
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            if (sender.offerHeartRate(i, 70f)) {
+                accepted++;
+            }
+        }
+        out.release();
+        sender.stop();
+
+        assertEquals(16, accepted);
+        assertEquals(84, sender.getDroppedSamples());
+        assertEquals(20, sender.getSamplesSent());
+    }
+
+    @Test
+    public void reportsWriteFailures() throws Exception {
+        AtomicInteger failures = new AtomicInteger();
+        BatchingSender sender = new BatchingSender(1, 60_000, e -> failures.incrementAndGet());
+        sender.setOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        });
+        sender.start();
+
+        sender.offerHeartRate(1L, 70f);
+        waitFor(() -> sender.getFailedBatches() == 1);
+        sender.stop();
+
+        assertEquals(1, failures.get());
+        assertEquals(0, sender.getSamplesSent());
+    }
+
+    @Test
+    public void spillsWhileDisconnectedAndDrainsAfterReconnect() throws Exception {
+        SpillBuffer spill = new SpillBuffer(folder.newFile(), 64 * 1024);
+        BatchingSender sender = new BatchingSender(10, 60_000, null);
+        sender.setSpillBuffer(spill, 1024 * 1024);
+        sender.start();
+
+        for (int i = 0; i < 50; i++) {
+            sender.offerHeartRate(i, 70f);
+            if (i % 10 == 9) {
+                int batches = i / 10 + 1;
+                waitFor(() -> sender.getSpilledBatches() == batches);
+            }
+        }
+        CountingOutputStream out = new CountingOutputStream();
+        sender.setOutputStream(out);
+        waitFor(() -> out.writes.get() == 1);
+        for (int i = 50; i < 60; i++) {
+            sender.offerHeartRate(i, 70f);
+        }
+        waitFor(() -> sender.getSamplesSent() == 10);
+        sender.stop();
+
+        // The whole backlog went out in one write
+        assertEquals(2, out.writes.get());
+        List<Long> received = timestamps(new SequenceFilter(), out.bytes.toByteArray());
+        assertEquals(60, received.size());
+        assertEquals(59L, (long) received.get(59));
+        assertTrue(spill.isEmpty());
+        assertEquals(0, sender.getSamplesWithoutConnection());
+    }
+
+    @Test
+    public void resendsWhatMightHaveBeenLostWithTheLink() throws Exception {
+        SpillBuffer spill = new SpillBuffer(folder.newFile(), 64 * 1024);
+        AtomicInteger failures = new AtomicInteger();
+        BatchingSender sender = new BatchingSender(5, 60_000, e -> failures.incrementAndGet());
+        sender.setSpillBuffer(spill, 1024 * 1024);
+        FailingOutputStream first = new FailingOutputStream(3);
+        sender.setOutputStream(first);
+        sender.start();
+
+        for (int i = 0; i < 25; i++) {
+            sender.offerHeartRate(i, 70f);
+            if (i % 5 == 4) {
+                int batches = i / 5 + 1;
+                waitFor(() -> sender.getBatchesSent() + sender.getSpilledBatches() >= batches);
+            }
+        }
+        waitFor(() -> failures.get() == 1);
+        CountingOutputStream second = new CountingOutputStream();
+        sender.setOutputStream(second);
+        waitFor(() -> spill.isEmpty() && second.bytes.size() > 0);
+        sender.stop();
+
+        SequenceFilter filter = new SequenceFilter();
+        List<Long> received = timestamps(filter, first.bytes.toByteArray());
+        filter.connectionEnded();
+        received.addAll(timestamps(filter, second.bytes.toByteArray()));
+
+        assertEquals(25, received.size());
+        for (int i = 0; i < 25; i++) {
+            assertEquals(i, (long) received.get(i));
+        }
+        // The three batches that did get through were sent again
+        assertEquals(15, filter.getDuplicateCount());
+        assertEquals(0, filter.getLostCount());
+    }
+
+    private static List<Long> timestamps(SequenceFilter filter, byte[] bytes) {
+        StreamFrameDecoder decoder = new StreamFrameDecoder(64 * 1024);
+        decoder.feed(bytes, 0, bytes.length);
+        SensorFrame frame = new SensorFrame();
+        List<Long> timestamps = new ArrayList<>();
+        while (nextSample(decoder, filter, frame)) {
+            timestamps.add(frame.timestampNanos);
+        }
+        return timestamps;
+    }
+
+    // What the phone does: sequence markers and duplicates never reach the analyzer
+    private static boolean nextSample(StreamFrameDecoder decoder, SequenceFilter filter, SensorFrame frame) {
+        while (decoder.next(frame)) {
+            if (filter.accept(frame)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.isMet()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final AtomicInteger writes = new AtomicInteger();
+
+        @Override
+        public void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            writes.incrementAndGet();
+            bytes.write(b, off, len);
+        }
+    }
+
+    // Accepts a number of writes, then fails like a dropped link
+    private static class FailingOutputStream extends CountingOutputStream {
+        private final int goodWrites;
+
+        FailingOutputStream(int goodWrites) {
+            this.goodWrites = goodWrites;
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            if (writes.get() >= goodWrites) {
+                throw new IOException("Connection reset");
+            }
+            super.write(b, off, len);
+        }
+    }
+
+    private static class BlockingOutputStream extends OutputStream {
+        volatile boolean blocked;
+        private boolean released;
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            blocked = true;
+            while (!released) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        synchronized void release() {
+            released = true;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.wearosapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.shared.FrameEncoder;
+import com.example.shared.RateHint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ConnectionManagerTest {
+
+    @Test
+    public void backoffDoublesWithJitterUpToTheCap() {
+        ExponentialBackoff backoff = new ExponentialBackoff(1000, 60_000, new Random(3));
+        long nominal = 1000;
+        for (int i = 0; i < 100; i++) {
+            long delay = backoff.nextDelayMillis();
+            assertTrue(delay + " at attempt " + i, delay >= nominal / 2 && delay <= nominal);
+            nominal = Math.min(60_000, nominal * 2);
+        }
+        backoff.reset();
+        assertTrue(backoff.nextDelayMillis() <= 1000);
+    }
+
+    @Test
+    public void keepsRetryingUntilThePhoneAnswers() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        ConnectionManager.Connector connector = () -> {
+            if (attempts.incrementAndGet() < 8) {
+                throw new IOException("Phone not listening");
+            }
+            return new FakeLink();
+        };
+        RecordingListener listener = new RecordingListener();
+        BatchingSender sender = new BatchingSender(1, 60_000, null);
+        ConnectionManager manager = new ConnectionManager(connector, sender,
+                new ExponentialBackoff(1, 4, new Random(1)), listener);
+        manager.start();
+
+        waitFor(() -> manager.getState() == ConnectionManager.State.CONNECTED);
+        manager.stop();
+        waitFor(() -> manager.getState() == ConnectionManager.State.STOPPED);
+
+        assertEquals(8, attempts.get());
+        assertEquals(7, listener.delays.size());
+        assertEquals("phone", listener.connectedTo);
+    }
+
+    @Test
+    public void reconnectsAfterTheLinkFails() throws Exception {
+        List<FakeLink> links = new CopyOnWriteArrayList<>();
+        ConnectionManager.Connector connector = () -> {
+            FakeLink link = new FakeLink();
+            links.add(link);
+            return link;
+        };
+        AtomicInteger failures = new AtomicInteger();
+        ConnectionManager[] manager = new ConnectionManager[1];
+        BatchingSender sender = new BatchingSender(1, 60_000, e -> {
+            failures.incrementAndGet();
+            manager[0].linkFailed(e);
+        });
+        manager[0] = new ConnectionManager(connector, sender,
+                new ExponentialBackoff(1, 4, new Random(1)), new RecordingListener());
+        sender.start();
+        manager[0].start();
+
+        waitFor(() -> manager[0].getState() == ConnectionManager.State.CONNECTED);
+        links.get(0).broken = true;
+        sender.offerHeartRate(1L, 70f);
+        waitFor(() -> links.size() == 2 && manager[0].getState() == ConnectionManager.State.CONNECTED);
+        sender.offerHeartRate(2L, 71f);
+        waitFor(() -> links.get(1).out.size() > 0);
+        manager[0].stop();
+        sender.stop();
+
+        assertEquals(1, failures.get());
+        assertTrue(links.get(0).closed);
+        assertEquals(2, manager[0].getConnections());
+    }
+
+    @Test
+    public void framesFromThePhoneReachTheReceiver() throws Exception {
+        List<FakeLink> links = new CopyOnWriteArrayList<>();
+        ConnectionManager manager = new ConnectionManager(() -> {
+            FakeLink link = new FakeLink();
+            links.add(link);
+            return link;
+        }, new BatchingSender(1, 60_000, null), new ExponentialBackoff(1, 4, new Random(1)),
+                new RecordingListener());
+        List<Integer> levels = new CopyOnWriteArrayList<>();
+        RateHint hint = new RateHint();
+        manager.setReceiver(frame -> {
+            if (hint.readFrom(frame)) {
+                levels.add(hint.level);
+            }
+        });
+        manager.start();
+
+        waitFor(() -> manager.getState() == ConnectionManager.State.CONNECTED);
+        ByteBuffer frame = ByteBuffer.allocate(64);
+        FrameEncoder.encodeRateHint(frame, 1L, RateHint.LEVEL_LOW, 80f);
+        links.get(0).fromPhone(frame.array(), frame.position());
+        waitFor(() -> levels.size() == 1);
+        // The phone hanging up is noticed without writing anything
+        links.get(0).hangUp();
+        waitFor(() -> links.size() == 2 && manager.getState() == ConnectionManager.State.CONNECTED);
+        manager.stop();
+
+        assertEquals(RateHint.LEVEL_LOW, (int) levels.get(0));
+        assertTrue(links.get(0).closed);
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.isMet()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private interface Condition {
+        boolean isMet();
+    }
+
+    private static final class RecordingListener implements ConnectionManager.Listener {
+        final List<Long> delays = new CopyOnWriteArrayList<>();
+        volatile String connectedTo;
+
+        @Override
+        public void onConnecting(int attempt) {
+        }
+
+        @Override
+        public void onConnected(String name) {
+            connectedTo = name;
+        }
+
+        @Override
+        public void onWaiting(IOException error, long retryInMillis) {
+            delays.add(retryInMillis);
+        }
+    }
+
+    private static final class FakeLink implements ConnectionManager.Link {
+        private static final int HANG_UP = -1;
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final BlockingQueue<Integer> in = new LinkedBlockingQueue<>();
+        volatile boolean broken;
+        volatile boolean closed;
+
+        void fromPhone(byte[] bytes, int length) {
+            for (int i = 0; i < length; i++) {
+                in.add(bytes[i] & 0xFF);
+            }
+        }
+
+        void hangUp() {
+            in.add(HANG_UP);
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    try {
+                        return in.take();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+
+                // Like a socket: whatever has arrived, blocking only for the first byte
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int first = read();
+                    if (first == HANG_UP) {
+                        return -1;
+                    }
+                    buffer[offset] = (byte) first;
+                    int count = 1;
+                    Integer next;
+                    while (count < length && (next = in.peek()) != null && next != HANG_UP) {
+                        buffer[offset + count++] = (byte) (int) in.poll();
+                    }
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    if (broken) {
+                        throw new IOException("Broken pipe");
+                    }
+                    synchronized (out) {
+                        out.write(b);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public String getName() {
+            return "phone";
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            hangUp();
+        }
+    }
+}
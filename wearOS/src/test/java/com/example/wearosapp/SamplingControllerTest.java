@@ -0,0 +1,79 @@
+package com.example.wearosapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.shared.RateHint;
+
+import org.junit.Test;
+
+public class SamplingControllerTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void followsThePhoneWhileHeartRateStaysLow() {
+        SamplingController controller = new SamplingController(60_000);
+        assertEquals(SamplingController.Mode.HIGH, controller.getMode());
+
+        assertTrue(controller.onRateHint(hint(RateHint.LEVEL_LOW, 80f)));
+        // A night of sleep: heart rate drifting between 52 and 64
+        for (int t = 0; t < 8 * 3600; t += 5) {
+            assertFalse(controller.onHeartRate(t * SECOND, 58f + 6f * (float) Math.sin(t / 600.0)));
+        }
+        assertEquals(SamplingController.Mode.LOW, controller.getMode());
+
+        assertTrue(controller.onRateHint(hint(RateHint.LEVEL_HIGH, 80f)));
+        assertEquals(SamplingController.Mode.HIGH, controller.getMode());
+    }
+
+    @Test
+    public void wakesItselfWhenHeartRateClimbs() {
+        SamplingController controller = new SamplingController(60_000);
+        controller.onRateHint(hint(RateHint.LEVEL_LOW, 80f));
+
+        // Resting, then a climb of 1 bpm every 5 s from 65
+        int wokeAt = -1;
+        for (int t = 0; t <= 200; t += 5) {
+            float bpm = t < 50 ? 65f : 65f + (t - 50) / 5f;
+            if (controller.onHeartRate(t * SECOND, bpm)) {
+                wokeAt = t;
+                break;
+            }
+        }
+
+        assertEquals(125, wokeAt);
+        assertEquals(SamplingController.Mode.HIGH, controller.getMode());
+    }
+
+    @Test
+    public void aShortSpikeHoldsFullRateForTheHoldTime() {
+        SamplingController controller = new SamplingController(60_000);
+        controller.onRateHint(hint(RateHint.LEVEL_LOW, 80f));
+
+        assertTrue(controller.onHeartRate(100 * SECOND, 84f));
+        assertFalse(controller.onHeartRate(101 * SECOND, 70f));
+        assertFalse(controller.onHeartRate(150 * SECOND, 70f));
+        // Spiking again restarts the hold
+        assertFalse(controller.onHeartRate(155 * SECOND, 81f));
+        assertFalse(controller.onHeartRate(210 * SECOND, 70f));
+        assertTrue(controller.onHeartRate(215 * SECOND, 70f));
+        assertEquals(SamplingController.Mode.LOW, controller.getMode());
+    }
+
+    @Test
+    public void staysAtFullRateWithoutAHint() {
+        SamplingController controller = new SamplingController(60_000);
+        for (int t = 0; t < 600; t++) {
+            assertFalse(controller.onHeartRate(t * SECOND, 55f));
+        }
+        assertEquals(SamplingController.Mode.HIGH, controller.getMode());
+    }
+
+    private static RateHint hint(int level, float wakeHeartRate) {
+        RateHint hint = new RateHint();
+        hint.level = level;
+        hint.wakeHeartRate = wakeHeartRate;
+        return hint;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.wearosapp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpillBufferTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsComeOutInOrderAcrossTheWrap() throws Exception {
+        SpillBuffer spill = new SpillBuffer(folder.newFile(), 100);
+        byte[] into = new byte[100];
+        // 24 bytes per record, so the ring wraps mid-record every few rounds
+        for (int i = 0; i < 50; i++) {
+            spill.append(record(i, 20), 0, 20);
+            if (i % 2 == 1) {
+                assertEquals(20, spill.peek(into, 0));
+                assertArrayEquals(record(i - 1, 20), Arrays.copyOf(into, 20));
+                spill.removeFirst();
+                assertEquals(20, spill.peek(into, 0));
+                assertArrayEquals(record(i, 20), Arrays.copyOf(into, 20));
+                spill.removeFirst();
+            }
+        }
+        assertTrue(spill.isEmpty());
+        assertEquals(-1, spill.peek(into, 0));
+        assertEquals(0, spill.getDroppedRecords());
+    }
+
+    @Test
+    public void dropsOldestWhenFull() throws Exception {
+        SpillBuffer spill = new SpillBuffer(folder.newFile(), 100);
+        for (int i = 0; i < 6; i++) {
+            spill.append(record(i, 20), 0, 20);
+        }
+
+        assertEquals(4, spill.getRecordCount());
+        assertEquals(2, spill.getDroppedRecords());
+        byte[] into = new byte[20];
+        spill.peek(into, 0);
+        assertArrayEquals(record(2, 20), into);
+    }
+
+    @Test
+    public void prependedRecordComesOutFirst() throws Exception {
+        SpillBuffer spill = new SpillBuffer(folder.newFile(), 100);
+        spill.append(record(1, 20), 0, 20);
+        spill.append(record(2, 20), 0, 20);
+
+        assertTrue(spill.prepend(record(0, 30), 0, 30));
+        assertFalse(spill.prepend(record(9, 30), 0, 30));
+
+        byte[] into = new byte[30];
+        assertEquals(30, spill.peek(into, 0));
+        assertArrayEquals(record(0, 30), into);
+        spill.removeFirst();
+        assertEquals(20, spill.peekLength());
+    }
+
+    @Test
+    public void backlogSurvivesReopening() throws Exception {
+        File file = folder.newFile();
+        SpillBuffer spill = new SpillBuffer(file, 100);
+        for (int i = 0; i < 5; i++) {
+            spill.append(record(i, 20), 0, 20);
+        }
+        spill.close();
+
+        SpillBuffer reopened = new SpillBuffer(file, 100);
+        assertEquals(4, reopened.getRecordCount());
+        byte[] into = new byte[20];
+        reopened.peek(into, 0);
+        assertArrayEquals(record(1, 20), into);
+        reopened.close();
+
+        // A different capacity starts over rather than misreading the ring
+        assertTrue(new SpillBuffer(file, 200).isEmpty());
+    }
+
+    private static byte[] record(int seed, int length) {
+        byte[] record = new byte[length];
+        for (int i = 0; i < length; i++) {
+            record[i] = (byte) (seed * 31 + i);
+        }
+        return record;
+    }
+}